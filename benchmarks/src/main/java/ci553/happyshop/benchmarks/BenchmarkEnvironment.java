@@ -0,0 +1,151 @@
+package ci553.happyshop.benchmarks;
+
+import ci553.happyshop.catalogue.OrderLine;
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.storageAccess.DatabaseRWFactory;
+import ci553.happyshop.systemSetup.SetOrderFileSystem;
+import ci553.happyshop.utility.StorageLocation;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+
+/**
+ * A throw-away HappyShop installation for the benchmarks: a temp folder holding a fresh Derby database
+ * and a fresh orders folder, so benchmarks never touch happyShopDB/ or orders/ of the working copy.
+ *
+ * <p>{@link #create()} must be called before any HappyShop class reads its storage locations,
+ * ie. in the first @Setup of the forked benchmark JVM. It points DatabaseRWFactory.dbURL and the
+ * "happyshop.ordersFolder" system property (see StorageLocation) at the temp folder, creates the
+ * ProductTable with {@value #PRODUCT_COUNT} products and sets up the order folders.</p>
+ */
+
+public class BenchmarkEnvironment {
+    public static final int PRODUCT_COUNT = 200;
+    public static final int INITIAL_STOCK = 1_000_000_000; // large enough that purchases never run out
+
+    // Descriptions cycle through these names, so a name search like "drive" matches a fixed share of products
+    private static final String[] NAMES = {"40 inch TV", "DAB Radio", "Toaster", "Watch", "Digital Camera",
+            "MP3 player", "USB drive", "USB2 drive", "USB3 drive", "Web Camera"};
+
+    private final Path root;
+    private final String dbURL;
+
+    private BenchmarkEnvironment(Path root) {
+        this.root = root;
+        this.dbURL = "jdbc:derby:" + root.resolve("happyShopDB").toAbsolutePath();
+    }
+
+    public static BenchmarkEnvironment create() throws IOException, SQLException {
+        Path root = Files.createTempDirectory("happyshop-bench");
+        BenchmarkEnvironment environment = new BenchmarkEnvironment(root);
+
+        System.setProperty("derby.stream.error.file", root.resolve("derby.log").toString());
+        System.setProperty("happyshop.ordersFolder", root.resolve("orders").toString());
+        if (!StorageLocation.ordersPath.toAbsolutePath().startsWith(root.toAbsolutePath())) {
+            // StorageLocation was loaded before create(); never set up (and wipe) the real orders folder
+            throw new IllegalStateException("StorageLocation already points at " + StorageLocation.ordersPath);
+        }
+        DatabaseRWFactory.dbURL = environment.dbURL;
+
+        environment.createDatabase();
+        SetOrderFileSystem.main(new String[0]);
+        return environment;
+    }
+
+    // Returns the ID of the n-th product (0-based), eg. 0 -> "0001"
+    public static String productId(int n) {
+        return String.format("%04d", n + 1);
+    }
+
+    /**
+     * Returns a trolley of the given number of distinct products, one of each, as TrolleyService
+     * passes it to purchaseStocks().
+     */
+    public static ArrayList<OrderLine> trolley(int lines) {
+        ArrayList<OrderLine> trolley = new ArrayList<>();
+        for (int i = 0; i < lines; i++) {
+            Product product = new Product(productId(i), description(i), productId(i) + ".jpg", price(i), INITIAL_STOCK);
+            trolley.add(new OrderLine(product, 1));
+        }
+        return trolley;
+    }
+
+    // Puts every product back to the initial stock, eg. between purchaseStocks iterations.
+    public void resetStock() throws SQLException {
+        try (Connection conn = DriverManager.getConnection(dbURL);
+             PreparedStatement stmt = conn.prepareStatement("UPDATE ProductTable SET inStock = ?")) {
+            stmt.setInt(1, INITIAL_STOCK);
+            stmt.executeUpdate();
+        }
+    }
+
+    // Shuts the temp database down and deletes the temp folder.
+    public void close() throws IOException {
+        try {
+            DriverManager.getConnection(dbURL + ";shutdown=true");
+        } catch (SQLException e) {
+            // Derby always reports a successful shutdown with an SQLException (state 08006)
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    // Creates the ProductTable, same definition as SetDatabase, and fills it with PRODUCT_COUNT products
+    private void createDatabase() throws SQLException {
+        try (Connection conn = DriverManager.getConnection(dbURL + ";create=true")) {
+            try (Statement statement = conn.createStatement()) {
+                statement.executeUpdate("CREATE TABLE ProductTable(" +
+                        "productID CHAR(4) PRIMARY KEY," +
+                        "description VARCHAR(100)," +
+                        "unitPricePence BIGINT NOT NULL," +
+                        "image VARCHAR(100)," +
+                        "inStock INT," +
+                        "CHECK (inStock >= 0)" +
+                        ")");
+            }
+            conn.setAutoCommit(false);
+            try (PreparedStatement insert = conn.prepareStatement("INSERT INTO ProductTable VALUES(?, ?, ?, ?, ?)")) {
+                for (int i = 0; i < PRODUCT_COUNT; i++) {
+                    insert.setString(1, productId(i));
+                    insert.setString(2, description(i));
+                    insert.setLong(3, price(i));
+                    insert.setString(4, productId(i) + ".jpg");
+                    insert.setInt(5, INITIAL_STOCK);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+            conn.commit();
+        }
+    }
+
+    private static String description(int n) {
+        return NAMES[n % NAMES.length] + " " + (n / NAMES.length + 1);
+    }
+
+    // In pence, eg. 599 for £5.99
+    private static long price(int n) {
+        return 599 + (n % 50) * 450;
+    }
+}
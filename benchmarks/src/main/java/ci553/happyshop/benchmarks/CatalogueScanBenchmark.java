@@ -0,0 +1,90 @@
+package ci553.happyshop.benchmarks;
+
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.storageAccess.ProductColumns;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of whole-catalogue scans, with one Product object per product (a list as returned by searchProduct)
+ * against the same products in ProductColumns:
+ * the low-stock scan ("inStock &lt; 10") and the value of all stock (price x stock added up).
+ *
+ * <p>The products are made in memory, with stock from 0 to 199, so no database is needed
+ * and only the scan itself is measured.</p>
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CatalogueScanBenchmark {
+    private static final int LOW_STOCK = 10;
+
+    @Param({"1000", "200000"})
+    public int products;
+
+    private ArrayList<Product> productList;
+    private ProductColumns columns;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        productList = new ArrayList<>(products);
+        for (int i = 0; i < products; i++) {
+            String id = String.format("%06d", i + 1);
+            productList.add(new Product(id, "Product " + id, id + ".jpg", 99 + random.nextInt(50_000),
+                    random.nextInt(200)));
+        }
+        columns = ProductColumns.of(productList);
+        if (lowStockProductList().size() != lowStockColumns().length
+                || stockValueProductList() != stockValueColumns()) {
+            throw new IllegalStateException("the columns do not match the product list");
+        }
+    }
+
+    @Benchmark
+    public ArrayList<Product> lowStockProductList() {
+        ArrayList<Product> low = new ArrayList<>();
+        for (Product product : productList) {
+            if (product.getStockQuantity() < LOW_STOCK) {
+                low.add(product);
+            }
+        }
+        return low;
+    }
+
+    @Benchmark
+    public int[] lowStockColumns() {
+        return columns.rowsWithStockBelow(LOW_STOCK);
+    }
+
+    @Benchmark
+    public long stockValueProductList() {
+        long total = 0;
+        for (Product product : productList) {
+            total += product.getUnitPricePence() * product.getStockQuantity();
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long stockValueColumns() {
+        return columns.sumStockValuePence();
+    }
+}
@@ -0,0 +1,91 @@
+package ci553.happyshop.benchmarks;
+
+import ci553.happyshop.catalogue.OrderLine;
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.storageAccess.DatabaseRW;
+import ci553.happyshop.storageAccess.DatabaseRWFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the DerbyRW operations on the customer hot path:
+ * searching a product by ID or by name, and purchasing the stock of a trolley.
+ *
+ * <p>purchaseStocks is measured with 1 to 50 trolley lines, by a single thread (uncontended)
+ * and by 4 threads sharing one DerbyRW and the same products (contended), like several customers
+ * checking out at the same time.</p>
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseBenchmark {
+    @Param({"1", "10", "50"})
+    public int lines;
+
+    private BenchmarkEnvironment environment;
+    private DatabaseRW databaseRW;
+    private ArrayList<OrderLine> trolley;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        environment = BenchmarkEnvironment.create();
+        databaseRW = DatabaseRWFactory.createDatabaseRW();
+        trolley = BenchmarkEnvironment.trolley(lines);
+    }
+
+    @Setup(Level.Iteration)
+    public void resetStock() throws SQLException {
+        environment.resetStock();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        environment.close();
+    }
+
+    @Benchmark
+    public Product searchByProductId() throws SQLException {
+        int n = ThreadLocalRandom.current().nextInt(BenchmarkEnvironment.PRODUCT_COUNT);
+        return databaseRW.searchByProductId(BenchmarkEnvironment.productId(n));
+    }
+
+    // "drive" matches 3 in 10 products, so the result has PRODUCT_COUNT * 3 / 10 rows
+    @Benchmark
+    public ArrayList<Product> searchProductByName() throws SQLException {
+        return databaseRW.searchProduct("drive");
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ArrayList<OrderLine> purchaseStocksUncontended() throws SQLException {
+        return databaseRW.purchaseStocks(trolley);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public ArrayList<OrderLine> purchaseStocksContended() throws SQLException {
+        return databaseRW.purchaseStocks(trolley);
+    }
+}
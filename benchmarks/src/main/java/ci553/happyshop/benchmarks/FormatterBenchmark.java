@@ -0,0 +1,94 @@
+package ci553.happyshop.benchmarks;
+
+import ci553.happyshop.catalogue.Money;
+import ci553.happyshop.catalogue.OrderLine;
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.catalogue.Trolley;
+import ci553.happyshop.utility.ProductListFormatter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of ProductListFormatter.buildString, which formats the trolley, the receipt
+ * and every order file, and of redrawing a Trolley after a click, which only formats the changed line.
+ * legacyBuildString is the String.format version buildString replaced, kept as the baseline;
+ * run with -prof gc to compare the bytes allocated per call (gc.alloc.rate.norm).
+ * No database or files are needed.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormatterBenchmark {
+    @Param({"1", "10", "50"})
+    public int lines;
+
+    private ArrayList<OrderLine> trolley;
+    private Trolley indexedTrolley;
+    private final StringBuilder reusedBuilder = new StringBuilder();
+
+    @Setup
+    public void setUp() {
+        trolley = BenchmarkEnvironment.trolley(lines);
+        indexedTrolley = new Trolley();
+        for (OrderLine line : trolley) {
+            indexedTrolley.add(line.product(), line.quantity());
+        }
+        if (!ProductListFormatter.buildString(trolley).equals(legacyBuildString())) {
+            throw new IllegalStateException("buildString differs from the String.format version");
+        }
+    }
+
+    @Benchmark
+    public String buildString() {
+        return ProductListFormatter.buildString(trolley);
+    }
+
+    // Into a StringBuilder kept between calls, eg. by a window that redraws the same text area
+    @Benchmark
+    public int appendToReusedBuilder() {
+        reusedBuilder.setLength(0);
+        ProductListFormatter.appendTo(reusedBuilder, trolley);
+        return reusedBuilder.length();
+    }
+
+    // ProductListFormatter.buildString as it was, with String.format for every line and the total in double pounds
+    @Benchmark
+    public String legacyBuildString() {
+        StringBuilder sb = new StringBuilder();
+        double totalPrice = 0;
+        for (OrderLine line : trolley) {
+            Product pr = line.product();
+            int orderedQuantity = line.quantity();
+            double unitPrice = Money.toPounds(pr.getUnitPricePence());
+            sb.append(String.format(" %-7s %-18.18s (%2d) £%7.2f\n", pr.getProductId(), pr.getProductDescription(),
+                    orderedQuantity, unitPrice * orderedQuantity));
+            totalPrice = totalPrice + unitPrice * orderedQuantity;
+        }
+        sb.append("-".repeat(44)).append("\n");
+        sb.append(String.format(" %-35s £%7.2f\n", "Total", totalPrice));
+        return sb.toString();
+    }
+
+    // One more unit of a product already in the trolley, then the trolley page is redrawn
+    @Benchmark
+    public String trolleyAddAndDisplay() {
+        indexedTrolley.add(trolley.get(0).product(), 1);
+        return indexedTrolley.display();
+    }
+}
@@ -0,0 +1,67 @@
+package ci553.happyshop.benchmarks;
+
+import ci553.happyshop.catalogue.Order;
+import ci553.happyshop.catalogue.OrderLine;
+import ci553.happyshop.orderManagement.OrderCounter;
+import ci553.happyshop.orderManagement.OrderHub;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of order creation: generating an order ID (file-locked counter)
+ * and OrderHub.newOrder (order ID, order file, orderMap and notifications), with 1 to 50 trolley lines.
+ * Every call creates a real order file in the temp orders folder.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderBenchmark {
+    @Param({"1", "10", "50"})
+    public int lines;
+
+    private BenchmarkEnvironment environment;
+    private OrderHub orderHub;
+    private ArrayList<OrderLine> trolley;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        environment = BenchmarkEnvironment.create();
+        orderHub = OrderHub.getOrderHub();
+        trolley = BenchmarkEnvironment.trolley(lines);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        environment.close();
+    }
+
+    @Benchmark
+    public int generateOrderId() throws IOException {
+        return OrderCounter.generateOrderId();
+    }
+
+    @Benchmark
+    public Order newOrder() throws IOException, SQLException {
+        return orderHub.newOrder(trolley);
+    }
+}
@@ -1,6 +1,7 @@
 package ci553.happyshop;
 
 import ci553.happyshop.client.Main;
+import ci553.happyshop.storageAccess.StorageConfig;
 import javafx.application.Application;
 
 /**
@@ -15,10 +16,12 @@ import javafx.application.Application;
 public class Launcher  {
     /**
      * The main method to start the full system.
-     * It launches the Main JavaFX application.
+     * It sets up the database connection from happyShop.properties (see StorageConfig),
+     * then launches the Main JavaFX application.
      * @param args Command line arguments.
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        StorageConfig.configure(); // embedded, server or client database, before any DatabaseRW is created
         Application.launch(Main.class, args);  // Starts the JavaFX application through Main
     }
 }
\ No newline at end of file
@@ -0,0 +1,564 @@
+package ci553.happyshop.api;
+
+import ci553.happyshop.catalogue.Order;
+import ci553.happyshop.catalogue.OrderLine;
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.catalogue.StockAdjustment;
+import ci553.happyshop.logging.ShopLogger;
+import ci553.happyshop.metrics.MetricsRegistry;
+import ci553.happyshop.metrics.Timer;
+import ci553.happyshop.orderManagement.OrderHub;
+import ci553.happyshop.orderManagement.OrderQueryService;
+import ci553.happyshop.orderManagement.OrderState;
+import ci553.happyshop.service.CatalogueService;
+import ci553.happyshop.service.CheckoutResult;
+import ci553.happyshop.service.InventoryService;
+import ci553.happyshop.service.InventoryWatcher;
+import ci553.happyshop.service.PickingService;
+import ci553.happyshop.service.TrolleyService;
+import ci553.happyshop.storageAccess.DatabaseRW;
+import ci553.happyshop.storageAccess.DatabaseRWFactory;
+import ci553.happyshop.storageAccess.StorageConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * ShopApiServer is an embedded HTTP server with a JSON API, for web and handheld clients.
+ * It uses the JDK's own HTTP server (com.sun.net.httpserver), so nothing else needs to be installed,
+ * and handles every request on its own virtual thread.
+ *
+ * <p>The API calls the same services as the JavaFX clients (see the ci553.happyshop.service package):
+ * <pre>
+ *  GET  /api/products?q=tv                    search products by ID or description
+ *  GET  /api/products/0001                    one product (404 if unknown)
+ *  POST /api/checkout                         buy a trolley, body {"items":[{"productId":"0001","quantity":2}]}
+ *                                             201 with the order, or 409 with the products short of stock
+ *  GET  /api/stock/low?below=10               products with less stock than below (default inventory.reorderThreshold)
+ *  POST /api/stock/adjust                     change many stocks in one transaction, eg. a delivery, body
+ *                                             {"adjustments":[{"productId":"0001","change":40},{"productId":"0002","set":12}]}
+ *                                             200 with the number applied, or 409 with the ones that cannot be applied
+ *  GET  /api/orders/12                        state and timestamps of an order
+ *  GET  /api/picker/orders                    orders waiting to be picked
+ *  POST /api/picker/claim                     claim the next order for picking (204 if none is waiting)
+ *  POST /api/picker/orders/12/collect         mark a claimed order as collected (409 if not claimed)
+ *  GET  /api/metrics                          the hot-path metrics as text, including http.* request latencies
+ * </pre>
+ * Errors are returned as {"error": "..."} with a 4xx or 5xx status.</p>
+ *
+ * <p>Run it headless with the shop's database and orders folder, eg.
+ * <pre>
+ *  java -p target/classes:&lt;dependencies&gt; -m ci553.happyshop/ci553.happyshop.api.ShopApiServer --port=8080
+ *  curl localhost:8080/api/products?q=tv
+ * </pre>
+ * or create one from code with {@link #start()} and {@link #stop()}.</p>
+ */
+
+public class ShopApiServer {
+    private static final ShopLogger log = ShopLogger.getLogger(ShopApiServer.class);
+
+    // Settings, changed with command-line options of the same name, eg. --port=9090
+    public static String host = "localhost";  // only reachable from this computer by default
+    public static int port = 8080;
+    public static int carriers = Math.max(4, Runtime.getRuntime().availableProcessors()); // platform threads running the virtual threads
+
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final int MAX_QUANTITY = 1000; // per product in one checkout
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"); // as in order files
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private final List<Route> routes = new ArrayList<>();
+    private final PickingService pickingService = PickingService.getPickingService();
+
+    /*
+     * Derby waits for row locks with Object.wait(), which pins a virtual thread to its carrier thread.
+     * At most carriers - 1 requests run at once, so a carrier is always free for the request holding the lock.
+     */
+    private final Semaphore requestPermits = new Semaphore(Math.max(1, carriers - 1));
+
+    // The response of a handler: a status and a body (a Map or List sent as JSON, a String sent as text, or null)
+    private record ApiResponse(int status, Object body) {}
+
+    // A request that cannot be served, eg. 404 for an unknown product; sent to the client as {"error": message}
+    private static class ApiException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        private final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    // Handles one route; params are the path segments that matched {} in the route pattern
+    private interface Handler {
+        ApiResponse handle(HttpExchange exchange, List<String> params) throws IOException, SQLException;
+    }
+
+    // One API route, eg. GET /api/products/{}, with the Timer recording its latency ("http.product")
+    private record Route(String method, String[] pattern, Timer timer, Handler handler) {}
+
+    public ShopApiServer() {
+        addRoute("GET", "/api/products", "http.searchProducts", this::searchProducts);
+        addRoute("GET", "/api/products/{}", "http.product", this::product);
+        addRoute("POST", "/api/checkout", "http.checkout", this::checkout);
+        addRoute("GET", "/api/stock/low", "http.lowStock", this::lowStock);
+        addRoute("POST", "/api/stock/adjust", "http.adjustStock", this::adjustStock);
+        addRoute("GET", "/api/orders/{}", "http.orderStatus", this::orderStatus);
+        addRoute("GET", "/api/picker/orders", "http.pickableOrders", this::pickableOrders);
+        addRoute("POST", "/api/picker/claim", "http.claim", this::claim);
+        addRoute("POST", "/api/picker/orders/{}/collect", "http.collect", this::collect);
+        addRoute("GET", "/api/metrics", "http.metrics", (exchange, params) ->
+                new ApiResponse(200, MetricsRegistry.getRegistry().report()));
+    }
+
+    public static void main(String[] args) throws Exception {
+        parseOptions(args);
+        StorageConfig.configure(); // the database from happyShop.properties, eg. shared through a Derby Network Server
+        // Must be set before the first virtual thread is started
+        System.setProperty("jdk.virtualThreadScheduler.parallelism", String.valueOf(carriers));
+        MetricsRegistry.enable(); // request latencies, shown by GET /api/metrics
+        OrderHub.getOrderHub().initializeOrderMap(); // loads the orders waiting to be picked
+
+        ShopApiServer apiServer = new ShopApiServer();
+        apiServer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(apiServer::stop));
+        System.out.println("HappyShop API listening on http://" + host + ":" + apiServer.getPort() + "/api/");
+    }
+
+    // Starts listening for requests
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        executor = Executors.newVirtualThreadPerTaskExecutor(); // one virtual thread per request
+        server.setExecutor(executor);
+        server.createContext("/api/", this::dispatch);
+        server.start();
+        log.info("HTTP API started", "host", host, "port", getPort());
+    }
+
+    // Stops accepting requests and waits up to a second for those in progress
+    public void stop() {
+        if (server != null) {
+            server.stop(1);
+            executor.close();
+            server = null;
+            log.info("HTTP API stopped");
+        }
+    }
+
+    // The port the server listens on, useful when it was started with port 0 (any free port)
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // --- routing ---
+
+    private void addRoute(String method, String pattern, String timerName, Handler handler) {
+        routes.add(new Route(method, pattern.substring(1).split("/"), MetricsRegistry.timer(timerName), handler));
+    }
+
+    // Finds the route for the request, runs it and sends the response
+    private void dispatch(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            // The raw path, so an escaped / (%2F) stays inside its segment; segments are decoded by matches()
+            String[] segments = exchange.getRequestURI().getRawPath().substring(1).split("/");
+            List<String> params = new ArrayList<>();
+            boolean pathFound = false;
+            for (Route route : routes) {
+                try {
+                    if (!matches(route.pattern(), segments, params)) {
+                        continue;
+                    }
+                } catch (ApiException e) { // a bad %-escape in the path
+                    send(exchange, new ApiResponse(e.status, error(e.getMessage())));
+                    return;
+                }
+                pathFound = true;
+                if (route.method().equals(exchange.getRequestMethod())) {
+                    handle(route, exchange, params);
+                    return;
+                }
+            }
+            if (pathFound) {
+                send(exchange, new ApiResponse(405, error("Method " + exchange.getRequestMethod() + " not allowed")));
+            } else {
+                send(exchange, new ApiResponse(404, error("No such API path")));
+            }
+        }
+    }
+
+    // Checks the path against a route pattern, collecting the segments that match {}
+    private static boolean matches(String[] pattern, String[] segments, List<String> params) {
+        params.clear();
+        if (pattern.length != segments.length) {
+            return false;
+        }
+        for (int i = 0; i < pattern.length; i++) {
+            if (pattern[i].equals("{}")) {
+                params.add(decode(segments[i].replace("+", "%2B"))); // in a path, + is a plus, not a space
+            } else if (!pattern[i].equals(segments[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Runs a handler, timing it; server errors (5xx) are counted as errors by the route's Timer
+    private void handle(Route route, HttpExchange exchange, List<String> params) throws IOException {
+        long start = route.timer().start();
+        ApiResponse response;
+        requestPermits.acquireUninterruptibly();
+        try {
+            response = route.handler().handle(exchange, params);
+        } catch (ApiException e) {
+            response = new ApiResponse(e.status, error(e.getMessage()));
+        } catch (SQLException | IOException | RuntimeException e) {
+            log.error("API request failed", e, "method", exchange.getRequestMethod(),
+                    "path", exchange.getRequestURI().getPath());
+            response = new ApiResponse(500, error("Internal server error"));
+        } finally {
+            requestPermits.release();
+        }
+        if (response.status() >= 500) {
+            route.timer().stopWithError(start);
+        } else {
+            route.timer().stop(start);
+        }
+        send(exchange, response);
+    }
+
+    private static void send(HttpExchange exchange, ApiResponse response) throws IOException {
+        if (response.body() == null) {
+            exchange.sendResponseHeaders(response.status(), -1); // no body
+            return;
+        }
+        byte[] bytes;
+        if (response.body() instanceof String text) {
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            bytes = text.getBytes(StandardCharsets.UTF_8);
+        } else {
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            bytes = Json.write(response.body()).getBytes(StandardCharsets.UTF_8);
+        }
+        exchange.sendResponseHeaders(response.status(), bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // --- handlers ---
+
+    private ApiResponse searchProducts(HttpExchange exchange, List<String> params) throws SQLException {
+        String keyword = queryParameter(exchange, "q");
+        if (keyword == null || keyword.isBlank()) {
+            throw new ApiException(400, "Query parameter q is required, eg. /api/products?q=tv");
+        }
+        CatalogueService catalogueService = new CatalogueService(DatabaseRWFactory.createDatabaseRW());
+        List<Map<String, Object>> products = new ArrayList<>();
+        for (Product product : catalogueService.searchProducts(keyword)) {
+            products.add(productJson(product));
+        }
+        return new ApiResponse(200, products);
+    }
+
+    private ApiResponse product(HttpExchange exchange, List<String> params) throws SQLException {
+        Product product = DatabaseRWFactory.createDatabaseRW().searchByProductId(params.get(0));
+        if (product == null) {
+            throw new ApiException(404, "No product with ID " + params.get(0));
+        }
+        return new ApiResponse(200, productJson(product));
+    }
+
+    private ApiResponse lowStock(HttpExchange exchange, List<String> params) throws SQLException {
+        String below = queryParameter(exchange, "below");
+        int threshold = InventoryWatcher.defaultReorderThreshold;
+        if (below != null) {
+            try {
+                threshold = Integer.parseInt(below.trim());
+            } catch (NumberFormatException e) {
+                throw new ApiException(400, "below must be a whole number, eg. /api/stock/low?below=10");
+            }
+        }
+        InventoryService inventoryService = new InventoryService(DatabaseRWFactory.createDatabaseRW());
+        List<Map<String, Object>> products = new ArrayList<>();
+        for (Product product : inventoryService.findLowStock(threshold)) {
+            products.add(productJson(product));
+        }
+        return new ApiResponse(200, products);
+    }
+
+    private ApiResponse adjustStock(HttpExchange exchange, List<String> params) throws IOException, SQLException {
+        Object adjustments = requestBody(exchange).get("adjustments");
+        if (!(adjustments instanceof List<?> adjustmentList) || adjustmentList.isEmpty()) {
+            throw new ApiException(400, "Body must have a non-empty adjustments array");
+        }
+        List<StockAdjustment> stockAdjustments = new ArrayList<>();
+        for (Object adjustment : adjustmentList) {
+            if (!(adjustment instanceof Map<?, ?> line) || !(line.get("productId") instanceof String productId)
+                    || line.containsKey("change") == line.containsKey("set")) {
+                throw new ApiException(400, "Each adjustment needs a productId and either change or set, "
+                        + "eg. {\"productId\":\"0001\",\"change\":40}");
+            }
+            boolean setTo = line.containsKey("set");
+            Object amountValue = setTo ? line.get("set") : line.get("change");
+            if (!(amountValue instanceof Long amount) || amount > Integer.MAX_VALUE || amount < (setTo ? 0 : -Integer.MAX_VALUE)) {
+                throw new ApiException(400, (setTo ? "set" : "change") + " of " + productId + " must be a whole number"
+                        + (setTo ? ", not negative" : ""));
+            }
+            stockAdjustments.add(setTo ? StockAdjustment.setTo(productId, amount.intValue())
+                                       : StockAdjustment.changeBy(productId, amount.intValue()));
+        }
+        DatabaseRW databaseRW = DatabaseRWFactory.createDatabaseRW();
+        List<StockAdjustment> rejected = databaseRW.adjustStocks(stockAdjustments);
+        if (rejected.isEmpty()) {
+            for (StockAdjustment adjustment : stockAdjustments) {
+                InventoryWatcher.getInventoryWatcher().stockChanged(adjustment.productId(), databaseRW);
+            }
+            return new ApiResponse(200, Map.of("adjusted", stockAdjustments.size()));
+        }
+        List<Map<String, Object>> rejectedJson = new ArrayList<>();
+        for (StockAdjustment adjustment : rejected) {
+            Product product = databaseRW.searchByProductId(adjustment.productId());
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("productId", adjustment.productId());
+            json.put(adjustment.absolute() ? "set" : "change", adjustment.amount());
+            json.put("available", product == null ? null : product.getStockQuantity()); // null: no such product
+            rejectedJson.add(json);
+        }
+        Map<String, Object> body = error("Some stock cannot be adjusted, nothing was changed");
+        body.put("rejected", rejectedJson);
+        return new ApiResponse(409, body);
+    }
+
+    private ApiResponse checkout(HttpExchange exchange, List<String> params) throws IOException, SQLException {
+        Object items = requestBody(exchange).get("items");
+        if (!(items instanceof List<?> itemList) || itemList.isEmpty()) {
+            throw new ApiException(400, "Body must have a non-empty items array");
+        }
+        DatabaseRW databaseRW = DatabaseRWFactory.createDatabaseRW();
+        TrolleyService trolleyService = new TrolleyService(databaseRW);
+        CheckoutResult result;
+        try {
+            for (Object item : itemList) {
+                if (!(item instanceof Map<?, ?> line) || !(line.get("productId") instanceof String productId)) {
+                    throw new ApiException(400, "Each item needs a productId, eg. {\"productId\":\"0001\",\"quantity\":2}");
+                }
+                Object quantityValue = line.containsKey("quantity") ? line.get("quantity") : Long.valueOf(1);
+                if (!(quantityValue instanceof Long quantity) || quantity < 1 || quantity > MAX_QUANTITY) {
+                    throw new ApiException(400, "quantity of " + productId + " must be a whole number from 1 to " + MAX_QUANTITY);
+                }
+                Product product = databaseRW.searchByProductId(productId);
+                if (product == null) {
+                    throw new ApiException(404, "No product with ID " + productId);
+                }
+                if (!trolleyService.add(product, quantity.intValue())) {
+                    throw new ApiException(409, "Not enough unreserved stock of " + productId + " for quantity " + quantity);
+                }
+            }
+            result = trolleyService.checkOut();
+        } finally {
+            trolleyService.clear(); // the trolley only lives for this request, release whatever is still reserved
+        }
+        if (result.isSuccess()) {
+            return new ApiResponse(201, orderJson(result.order()));
+        }
+        List<Map<String, Object>> insufficient = new ArrayList<>();
+        for (OrderLine line : result.insufficientLines()) {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("productId", line.productId());
+            json.put("requested", line.quantity());
+            json.put("available", line.product().getStockQuantity());
+            insufficient.add(json);
+        }
+        Map<String, Object> body = error("Insufficient stock, nothing was bought");
+        body.put("insufficient", insufficient);
+        return new ApiResponse(409, body);
+    }
+
+    private ApiResponse orderStatus(HttpExchange exchange, List<String> params) {
+        OrderQueryService.OrderSummary summary = OrderQueryService.getOrderQueryService().getOrder(orderIdParam(params));
+        if (summary == null) {
+            throw new ApiException(404, "No order with ID " + params.get(0));
+        }
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("orderId", summary.getOrderId());
+        json.put("state", summary.getState());
+        json.put("orderedDateTime", dateTime(summary.getOrderedMillis()));
+        json.put("progressingDateTime", dateTime(summary.getProgressingMillis()));
+        json.put("collectedDateTime", dateTime(summary.getCollectedMillis()));
+        return new ApiResponse(200, json);
+    }
+
+    private ApiResponse pickableOrders(HttpExchange exchange, List<String> params) {
+        List<Map<String, Object>> orders = new ArrayList<>();
+        for (Map.Entry<Integer, OrderState> entry : pickingService.getPickableOrders().entrySet()) {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("orderId", entry.getKey());
+            json.put("state", entry.getValue());
+            orders.add(json);
+        }
+        return new ApiResponse(200, orders);
+    }
+
+    private ApiResponse claim(HttpExchange exchange, List<String> params) throws IOException {
+        PickingService.PickTask task = pickingService.claimNextOrder();
+        if (task == null) {
+            return new ApiResponse(204, null); // no order waiting
+        }
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("orderId", task.orderId());
+        json.put("state", OrderState.Progressing);
+        json.put("detail", task.orderDetail());
+        return new ApiResponse(200, json);
+    }
+
+    private ApiResponse collect(HttpExchange exchange, List<String> params) throws IOException {
+        int orderId = orderIdParam(params);
+        if (!pickingService.collect(orderId)) {
+            throw new ApiException(409, "Order " + orderId + " has not been claimed by a picker");
+        }
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("orderId", orderId);
+        json.put("state", OrderState.Collected);
+        return new ApiResponse(200, json);
+    }
+
+    // --- JSON conversion and request helpers ---
+
+    private static Map<String, Object> productJson(Product product) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("productId", product.getProductId());
+        json.put("description", product.getProductDescription());
+        json.put("imageName", product.getProductImageName());
+        json.put("unitPrice", poundsJson(product.getUnitPricePence()));
+        json.put("stock", product.getStockQuantity());
+        return json;
+    }
+
+    private static Map<String, Object> orderJson(Order order) {
+        List<Map<String, Object>> items = new ArrayList<>();
+        long totalPence = 0;
+        for (OrderLine line : order.getOrderLines()) {
+            Product product = line.product();
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("productId", product.getProductId());
+            item.put("description", product.getProductDescription());
+            item.put("unitPrice", poundsJson(product.getUnitPricePence()));
+            item.put("quantity", line.quantity());
+            items.add(item);
+            totalPence += line.lineTotalPence();
+        }
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("orderId", order.getOrderId());
+        json.put("state", order.getState());
+        json.put("orderedDateTime", order.getOrderedDateTime());
+        json.put("items", items);
+        json.put("total", poundsJson(totalPence));
+        return json;
+    }
+
+    // An amount in pence as an exact JSON number in pounds, eg. 2999 -> 29.99 and 26900 -> 269.00
+    private static BigDecimal poundsJson(long pence) {
+        return BigDecimal.valueOf(pence, 2);
+    }
+
+    private static Map<String, Object> error(String message) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("error", message);
+        return json;
+    }
+
+    // Formats epoch milliseconds as local date-time text, or null when the time was not reached (-1)
+    private static String dateTime(long millis) {
+        if (millis < 0) {
+            return null;
+        }
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault()).format(DATE_TIME_FORMAT);
+    }
+
+    private static int orderIdParam(List<String> params) {
+        try {
+            return Integer.parseInt(params.get(0));
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "Order ID must be a number: " + params.get(0));
+        }
+    }
+
+    // Reads the request body as a JSON object
+    private static Map<?, ?> requestBody(HttpExchange exchange) throws IOException {
+        byte[] bytes = exchange.getRequestBody().readNBytes(MAX_BODY_BYTES + 1);
+        if (bytes.length > MAX_BODY_BYTES) {
+            throw new ApiException(413, "Request body is larger than " + MAX_BODY_BYTES + " bytes");
+        }
+        try {
+            if (Json.parse(new String(bytes, StandardCharsets.UTF_8)) instanceof Map<?, ?> body) {
+                return body;
+            }
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, e.getMessage());
+        }
+        throw new ApiException(400, "Body must be a JSON object");
+    }
+
+    // Returns the value of a query parameter, eg. q in /api/products?q=tv, or null if it is missing
+    private static String queryParameter(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            String key = equals < 0 ? pair : pair.substring(0, equals);
+            if (decode(key).equals(name)) {
+                return equals < 0 ? "" : decode(pair.substring(equals + 1));
+            }
+        }
+        return null;
+    }
+
+    // Decodes a %-escaped part of the URL; a bad escape, eg. %zz or a % at the end, is a bad request (400)
+    private static String decode(String text) {
+        try {
+            return URLDecoder.decode(text, StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, "Bad %-escape in the URL: " + text);
+        }
+    }
+
+    // Reads --name=value options into the settings above
+    private static void parseOptions(String[] args) {
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException("Options look like --port=8080, not " + arg);
+            }
+            String name = arg.substring(2, equals);
+            String value = arg.substring(equals + 1);
+            switch (name) {
+                case "host" -> host = value;
+                case "port" -> port = Integer.parseInt(value);
+                case "carriers" -> carriers = Integer.parseInt(value);
+                default -> throw new IllegalArgumentException("Unknown option --" + name);
+            }
+        }
+    }
+}
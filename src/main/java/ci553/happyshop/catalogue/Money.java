@@ -0,0 +1,93 @@
+package ci553.happyshop.catalogue;
+
+/**
+ * Money helps to work with amounts of money held as a long number of pence, eg. £29.99 is 2999.
+ *
+ * Prices and totals are kept in pence everywhere (Product, Trolley, the ProductTable column unitPricePence),
+ * so adding up a trolley is exact: 0.1 + 0.2 is not 0.3 in a double, but 10 + 20 pence is always 30 pence.
+ * A long of pence is also faster to add and compare than a double or a BigDecimal, and needs no rounding
+ * before it is shown or saved.
+ *
+ * This class only has static methods to read, write and multiply amounts; the amounts stay plain longs.
+ */
+
+public final class Money {
+    private Money() {}
+
+    /**
+     * Reads an amount typed in pounds, eg. "12", "12.5" or "12.50" (at most two decimal places).
+     * @return the amount in pence, eg. 1250
+     * @throws NumberFormatException if the text is not an amount of pounds and pence
+     */
+    public static long parse(String text) {
+        String amount = text.trim();
+        boolean negative = amount.startsWith("-");
+        String digits = negative ? amount.substring(1) : amount;
+        int dot = digits.indexOf('.');
+        String pounds = dot < 0 ? digits : digits.substring(0, dot);
+        String pence = dot < 0 ? "" : digits.substring(dot + 1);
+        if (pounds.isEmpty() || pence.length() > 2 || !isDigits(pounds) || !isDigits(pence)) {
+            throw new NumberFormatException("Not an amount of money: " + text);
+        }
+        long value = Math.addExact(Math.multiplyExact(Long.parseLong(pounds), 100),
+                pence.isEmpty() ? 0 : Integer.parseInt(pence.length() == 1 ? pence + "0" : pence));
+        return negative ? -value : value;
+    }
+
+    // Converts pounds held in a double (eg. an old DOUBLE column) to the nearest penny
+    public static long fromPounds(double pounds) {
+        return Math.round(pounds * 100);
+    }
+
+    // The amount in pounds, eg. for a JSON number; only for showing, never add these up
+    public static double toPounds(long pence) {
+        return pence / 100.0;
+    }
+
+    // The price of a number of units, failing rather than overflowing
+    public static long times(long unitPence, int quantity) {
+        return Math.multiplyExact(unitPence, quantity);
+    }
+
+    // Writes the amount in pounds with two decimals and no £ sign, eg. "29.99" or "-0.05"
+    public static String format(long pence) {
+        StringBuilder sb = new StringBuilder(12);
+        appendTo(sb, pence);
+        return sb.toString();
+    }
+
+    // Writes the same text as format() at the end of sb
+    public static void appendTo(StringBuilder sb, long pence) {
+        if (pence < 0) {
+            sb.append('-');
+        }
+        long pounds = Math.abs(pence / 100);
+        int rest = (int) Math.abs(pence % 100);
+        sb.append(pounds).append('.');
+        if (rest < 10) {
+            sb.append('0');
+        }
+        sb.append(rest);
+    }
+
+    // The number of characters format() writes for the amount
+    public static int formattedLength(long pence) {
+        int length = pence < 0 ? 4 : 3; // '-', '.' and two decimals
+        long pounds = Math.abs(pence / 100);
+        do {
+            length++;
+            pounds /= 10;
+        } while (pounds > 0);
+        return length;
+    }
+
+    private static boolean isDigits(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
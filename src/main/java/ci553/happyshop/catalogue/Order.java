@@ -3,13 +3,13 @@ package ci553.happyshop.catalogue;
 import ci553.happyshop.orderManagement.OrderState;
 import ci553.happyshop.utility.ProductListFormatter;
 
-import java.util.ArrayList;
+import java.util.List;
 
 /**
- * The Order class represents a customer order, including metadata and a list of ordered products.
+ * The Order class represents a customer order, including metadata and its order lines (product + quantity).
  *
  * Responsibilities:
- * - sotres information about an order, including order ID, current order state, timestamps, and the list of products.
+ * - sotres information about an order, including order ID, current order state, timestamps, and the order lines.
  * - Provides getter methods for order attributes and allows updating the order state.
  * - Formats the full order details for writing to a file, including timestamps and item list.
  *
@@ -36,23 +36,23 @@ public class Order {
     private String orderedDateTime="";
     private String progressingDateTime="";
     private String collectedDateTime="";
-    private ArrayList<Product> productList = new ArrayList<>(); //Trolley
+    private List<OrderLine> orderLines; //Trolley, the lines share the catalogue's Product objects
 
     // Constructor used by OrderHub to create a new order for a customer.
-    // Initializes the order with an ID, state, order date/time, and a list of ordered products.
-    public Order(int orderId,OrderState state, String orderedDateTime,ArrayList<Product> productList) {
+    // Initializes the order with an ID, state, order date/time, and the ordered lines.
+    public Order(int orderId,OrderState state, String orderedDateTime,List<OrderLine> orderLines) {
         this.orderId = orderId;
         this.state = state;
         this.orderedDateTime =orderedDateTime;
-        this.productList = new ArrayList<>(productList);
+        this.orderLines = List.copyOf(orderLines); // the lines never change, so only the list is copied
     }
 
     //a set of getter methods
     public int getOrderId() { return orderId;}
     public OrderState getState() { return state; }
     public String getOrderedDateTime(){ return orderedDateTime; }
-    public ArrayList<Product> getProductList() {
-        return productList;
+    public List<OrderLine> getOrderLines() {
+        return orderLines;
     }
 
     public void setState(OrderState state) { this.state = state; }
@@ -74,7 +74,7 @@ public class Order {
                 orderedDateTime,
                 progressingDateTime,
                 collectedDateTime,
-                ProductListFormatter.buildString(productList)
+                ProductListFormatter.buildString(orderLines)
                 );
     }
 }
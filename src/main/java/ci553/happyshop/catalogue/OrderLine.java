@@ -0,0 +1,36 @@
+package ci553.happyshop.catalogue;
+
+/**
+ * One line of a trolley or an order: a product and how many units of it the customer wants.
+ *
+ * The product is the shared catalogue object (see ProductCatalogue), it is not copied for the line.
+ * Like Product, an OrderLine never changes; a new quantity is a new line, see withQuantity().
+ *
+ * @param product  the product, as it was when the customer added it (its price is the price paid)
+ * @param quantity the number of units, at least 1
+ */
+public record OrderLine(Product product, int quantity) {
+
+    public OrderLine {
+        if (product == null) {
+            throw new IllegalArgumentException("product must not be null");
+        }
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("quantity must be positive: " + quantity);
+        }
+    }
+
+    public String productId() {
+        return product.getProductId();
+    }
+
+    // The price of the line in pence: unit price x quantity
+    public long lineTotalPence() {
+        return Money.times(product.getUnitPricePence(), quantity);
+    }
+
+    // The same product with another quantity
+    public OrderLine withQuantity(int quantity) {
+        return new OrderLine(product, quantity);
+    }
+}
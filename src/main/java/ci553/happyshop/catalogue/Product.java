@@ -1,85 +1,74 @@
 package ci553.happyshop.catalogue;
 
 /**
- * The Product class used to hold the information about a product:
+ * The Product class used to hold the information about a product, as one row of the catalogue:
  *
  * Fields:
  * - productId: Unique identifier for the product (eg 0001).
  * - description: Textual description of the product.
- * - unitPrice: Price per single unit of the product.
- * - orderedQuantity: Quantity involved in a customer's order.
- * - stockQuantity: Quantity currently available in stock.
+ * - unitPricePence: Price per single unit of the product, in pence (eg 2999 is £29.99, see Money).
+ * - stockQuantity: Quantity in stock when the product was read from the database.
+ * - version: How many times the warehouse has edited the product, used to notice an edit made by someone
+ *   else meanwhile (see DatabaseRW.updateProduct()). Checkouts change the stock but not the version.
+ *
+ * A Product never changes after it is made, so one object can be shared by searches, trolleys and orders
+ * without copying it. It is the stock plus a ProductInfo with all the other values, which is shared by every
+ * Product of that ID until the warehouse edits it. The database classes get their products from ProductCatalogue,
+ * so reading a product again does not copy its description and image name, even after its stock has changed.
+ * How many units a customer wants is not part of the product: a trolley or an order holds an OrderLine
+ * (product + quantity) for that.
  */
 
-public class Product implements Comparable<Product> {
-    private String proId;
-    private String proDescription;
-    private String proImageName;
-    private double unitPrice;
-    private int orderedQuantity =1; //The quantity of this product in the customer's order.
-    private int stockQuantity;//
+public final class Product implements Comparable<Product> {
+    private final ProductInfo info; // everything except the stock, shared (see ProductCatalogue)
+    private final int stockQuantity;
 
     /**
-     * Constructor,used by DatabaseRW, make product from searching ResultSet
+     * Constructor, used by ProductCatalogue to make a product from a database record.
+     * Other code should normally ask ProductCatalogue for the product, so the object is shared.
      * @param id Product ID
      * @param des Description of product
      * @param image image name of product, eg 0001.jpg (0001 is product ID)
-     * @param aPrice The price of the product
+     * @param unitPricePence The price of the product in pence, eg 2999 for £29.99
      * @param stockQuantity The Quantity of the product in stock
+     * @param version The version of the database record, 0 for a product never edited
      */
-    public Product(String id, String des, String image, double aPrice, int stockQuantity) {
-        proId = id;
-        proDescription = des;
-        proImageName = image;
-        unitPrice = aPrice;
+    public Product(String id, String des, String image, long unitPricePence, int stockQuantity, long version) {
+        this(new ProductInfo(id, des, image, unitPricePence, version), stockQuantity);
+    }
+
+    // A product with the shared info of its ID, used by ProductCatalogue
+    Product(ProductInfo info, int stockQuantity) {
+        this.info = info;
         this.stockQuantity = stockQuantity;
     }
 
+    // A product that is not in the database yet, eg. a row of a catalogue file to import
+    public Product(String id, String des, String image, long unitPricePence, int stockQuantity) {
+        this(id, des, image, unitPricePence, stockQuantity, 0);
+    }
+
     // a set of getter methods
-    public String getProductId() { return proId;}
-    public String getProductDescription() { return proDescription;}
-    public String getProductImageName() { return proImageName;}
-    public double getUnitPrice() { return unitPrice;}
-    public int getOrderedQuantity() { return orderedQuantity;}
+    public String getProductId() { return info.productId();}
+    public String getProductDescription() { return info.description();}
+    public String getProductImageName() { return info.imageName();}
+    public long getUnitPricePence() { return info.unitPricePence();}
     public int getStockQuantity() { return stockQuantity;}
-
-    //a setter method
-    public void setOrderedQuantity(int orderedQuantity) {
-        this.orderedQuantity = orderedQuantity;
-    }
+    public long getVersion() { return info.version();}
+    ProductInfo getInfo() { return info;} // used by ProductCatalogue
 
     @Override
     public int compareTo(Product otherProduct) {
         // Compare by product ID or any other attribute you want to sort by
-        return this.proId.compareTo(otherProduct.proId); // Sort by proId alphabetically (ascending);
+        return getProductId().compareTo(otherProduct.getProductId()); // Sort by proId alphabetically (ascending);
     }
 
     @Override
     // Creates a formatted string containing ID, price (with 2 decimal places), stock amount, and description
     // Used in the Warehouse search page to display searched product information
     public String toString() {
-        String productInfo = String.format("Id: %s, £%.2f/uint, stock: %d \n%s",
-                          proId, unitPrice,stockQuantity,proDescription);
+        String productInfo = String.format("Id: %s, £%s/uint, stock: %d \n%s",
+                          getProductId(), Money.format(getUnitPricePence()),stockQuantity,getProductDescription());
         return productInfo;
     }
-
-    /** alternative constructors retained for possible future use.
-     *
-    public Product(String id, String des, double aPrice, int orderedQuantity, int stockQuantity) {
-        proId = id;
-        proDescription = des;
-        unitPrice = aPrice;
-        this.orderedQuantity = orderedQuantity;
-        this.stockQuantity = stockQuantity;
-    }
-
-    public Product(String id, String des, double aPrice, int orderedQuantity) {
-        proId = id;
-        proDescription = des;
-        unitPrice = aPrice;
-        this.orderedQuantity = orderedQuantity;
-    }
-     */
-
 }
-
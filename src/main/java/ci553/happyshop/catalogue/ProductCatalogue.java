@@ -0,0 +1,65 @@
+package ci553.happyshop.catalogue;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ProductCatalogue hands out the shared Product objects, one per product ID.
+ *
+ * <p>The database classes (DerbyRW, InMemoryRW, WriteBehindRW) do not make a new Product for every row they read,
+ * they ask the catalogue with intern(). A Product is its stock plus a ProductInfo (description, image, price,
+ * version), and only the ProductInfo is interned: the catalogue keeps one per ID and replaces it only when
+ * the warehouse edits the product. Checkouts only change the stock, so they never replace it; a product read
+ * with a new stock is a new small Product around the same ProductInfo. The last Product handed out for each ID
+ * is also kept, so reading a product whose stock has not changed does not allocate anything.</p>
+ *
+ * <p>Products never change (see Product), so handing out the same object to many threads is safe.
+ * A trolley or order that holds an older product keeps it; only new reads get the new one.
+ * If two threads read two versions of a product at once, either may be kept; the next read puts the newest back.</p>
+ */
+
+public class ProductCatalogue {
+    private static ProductCatalogue productCatalogue; //singleton instance
+
+    private final ConcurrentHashMap<String, ProductInfo> infos = new ConcurrentHashMap<>(); // productId -> latest info
+    private final ConcurrentHashMap<String, Product> products = new ConcurrentHashMap<>(); // productId -> last handed out
+
+    //Singleton pattern
+    private ProductCatalogue() {}
+    public static synchronized ProductCatalogue getProductCatalogue() {
+        if (productCatalogue == null) {
+            productCatalogue = new ProductCatalogue();
+        }
+        return productCatalogue;
+    }
+
+    /**
+     * The shared product with these values. The ProductInfo is the one kept for the ID unless the description,
+     * image, price or version changed; the Product is the one handed out last unless the stock changed too.
+     */
+    public Product intern(String id, String des, String image, long unitPricePence, int stockQuantity, long version) {
+        ProductInfo info = infos.get(id);
+        if (info == null || !info.hasValues(des, image, unitPricePence, version)) {
+            info = new ProductInfo(id, des, image, unitPricePence, version); // a warehouse edit, or the first read
+            infos.put(id, info);
+        }
+        Product last = products.get(id);
+        if (last != null && last.getInfo() == info && last.getStockQuantity() == stockQuantity) {
+            return last;
+        }
+        Product product = new Product(info, stockQuantity);
+        products.put(id, product);
+        return product;
+    }
+
+    // The shared product with the same values as product, except its stock
+    public Product withStock(Product product, int stockQuantity) {
+        return intern(product.getProductId(), product.getProductDescription(), product.getProductImageName(),
+                product.getUnitPricePence(), stockQuantity, product.getVersion());
+    }
+
+    // Forgets a deleted product, so the catalogue does not keep it
+    public void forget(String productId) {
+        infos.remove(productId);
+        products.remove(productId);
+    }
+}
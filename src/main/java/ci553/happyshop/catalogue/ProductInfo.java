@@ -0,0 +1,25 @@
+package ci553.happyshop.catalogue;
+
+import java.util.Objects;
+
+/**
+ * The parts of a product that only the warehouse changes: its description, image, price and version.
+ *
+ * ProductCatalogue keeps one ProductInfo per product ID and shares it between every Product read for that ID,
+ * whatever its stock. A checkout only changes the stock, so it never replaces the ProductInfo;
+ * a warehouse edit changes the version, and the catalogue then makes a new one.
+ *
+ * @param productId      the product ID, eg. 0001
+ * @param description    the text description of the product
+ * @param imageName      the image name, eg. 0001.jpg
+ * @param unitPricePence the price of one unit in pence
+ * @param version        how many times the warehouse has edited the product (see Product)
+ */
+public record ProductInfo(String productId, String description, String imageName, long unitPricePence, long version) {
+
+    // Whether this has exactly these values, used by ProductCatalogue to decide if it can be shared
+    boolean hasValues(String des, String image, long unitPricePence, long version) {
+        return this.unitPricePence == unitPricePence && this.version == version
+                && Objects.equals(description, des) && Objects.equals(imageName, image);
+    }
+}
@@ -0,0 +1,48 @@
+package ci553.happyshop.catalogue;
+
+import java.util.Objects;
+
+/**
+ * One change to the stock of a product made by the warehouse, eg. a line of a delivery note.
+ * It either changes the stock by an amount (+40 for a delivery, -2 for broken items),
+ * or sets it to a counted amount (absolute, eg. after a stock take).
+ *
+ * Many adjustments are applied together with DatabaseRW.adjustStocks(), in one transaction.
+ *
+ * @param productId the product, eg. 0001
+ * @param amount    the change (absolute is false) or the new stock (absolute is true)
+ * @param absolute  true: the stock is set to amount; false: amount is added to the stock
+ */
+public record StockAdjustment(String productId, int amount, boolean absolute) {
+
+    public StockAdjustment {
+        Objects.requireNonNull(productId, "productId");
+        if (absolute && amount < 0) {
+            throw new IllegalArgumentException("Stock cannot be set below zero: " + amount);
+        }
+    }
+
+    // Adds delta to the stock of the product, eg. changeBy("0001", 40) for a delivery of 40
+    public static StockAdjustment changeBy(String productId, int delta) {
+        return new StockAdjustment(productId, delta, false);
+    }
+
+    // Sets the stock of the product, eg. setTo("0001", 12) after counting 12 on the shelf
+    public static StockAdjustment setTo(String productId, int stock) {
+        return new StockAdjustment(productId, stock, true);
+    }
+
+    // The stock after this adjustment, failing rather than overflowing
+    public int applyTo(int stock) {
+        return absolute ? amount : Math.addExact(stock, amount);
+    }
+
+    // eg. "0001 +40", "0002 -2" or "0003 = 12"
+    @Override
+    public String toString() {
+        if (absolute) {
+            return productId + " = " + amount;
+        }
+        return productId + (amount >= 0 ? " +" : " ") + amount;
+    }
+}
@@ -0,0 +1,141 @@
+package ci553.happyshop.catalogue;
+
+import ci553.happyshop.utility.ProductListFormatter;
+
+import java.util.ArrayList;
+import java.util.TreeMap;
+
+/**
+ * The Trolley class holds the products a customer is going to buy, one OrderLine per product,
+ * kept in a TreeMap sorted by product ID.
+ *
+ * Compared with a list of products that is searched, re-sorted and grouped on every change:
+ * - add, remove and quantity changes find the line by product ID in O(log n),
+ * - the total price (in pence, so it is exact) is kept up to date as lines change, instead of being added up again,
+ * - each line keeps its formatted text (see ProductListFormatter.formatLine()), which is only formatted again
+ *   when its quantity changes, so redrawing the trolley after a click only joins the lines together,
+ * - the lines are already one per ID and sorted, so a checkout can use them as they are,
+ * - a line holds the shared Product (see ProductCatalogue), so adding a product does not copy it.
+ *
+ * display() gives the same text as ProductListFormatter.buildString(getLines()).
+ * A Trolley is used by one customer at a time, so it is not thread-safe.
+ */
+
+public class Trolley {
+    // One line of the trolley with its formatted text
+    private static class TrolleyLine {
+        OrderLine orderLine;
+        String text;
+
+        TrolleyLine(OrderLine orderLine) {
+            this.orderLine = orderLine;
+            this.text = ProductListFormatter.formatLine(orderLine);
+        }
+    }
+
+    private final TreeMap<String, TrolleyLine> lines = new TreeMap<>(); // productId -> line
+    private long totalPence = 0; // exact, see Money
+    private String display = null; // the text of the whole trolley, null when it has to be joined again
+    private final StringBuilder displayBuilder = new StringBuilder(); // reused to join the lines
+
+    /**
+     * Adds units of a product. If the product is already in the trolley its quantity goes up
+     * (the line keeps the product, and so the price, it was first added with),
+     * otherwise a new line is added for the product.
+     */
+    public void add(Product product, int quantity) {
+        TrolleyLine line = lines.get(product.getProductId());
+        if (line == null) {
+            OrderLine orderLine = new OrderLine(product, quantity);
+            lines.put(orderLine.productId(), new TrolleyLine(orderLine));
+            totalPence += orderLine.lineTotalPence();
+            display = null;
+        } else {
+            setQuantity(product.getProductId(), line.orderLine.quantity() + quantity);
+        }
+    }
+
+    /**
+     * Changes the quantity of a product in the trolley; a quantity of 0 or less removes it.
+     * @return false if the product is not in the trolley
+     */
+    public boolean setQuantity(String productId, int quantity) {
+        if (quantity <= 0) {
+            return remove(productId) != null;
+        }
+        TrolleyLine line = lines.get(productId);
+        if (line == null) {
+            return false;
+        }
+        totalPence -= line.orderLine.lineTotalPence();
+        line.orderLine = line.orderLine.withQuantity(quantity);
+        totalPence += line.orderLine.lineTotalPence();
+        line.text = ProductListFormatter.formatLine(line.orderLine);
+        display = null;
+        return true;
+    }
+
+    /**
+     * Removes a product from the trolley.
+     * @return the removed line, or null if the product was not in the trolley
+     */
+    public OrderLine remove(String productId) {
+        TrolleyLine line = lines.remove(productId);
+        if (line == null) {
+            return null;
+        }
+        totalPence -= line.orderLine.lineTotalPence();
+        display = null;
+        return line.orderLine;
+    }
+
+    // The quantity of a product in the trolley, 0 if it is not in the trolley
+    public int getQuantity(String productId) {
+        TrolleyLine line = lines.get(productId);
+        return line == null ? 0 : line.orderLine.quantity();
+    }
+
+    // The lines of the trolley, one per product ID, sorted by product ID
+    public ArrayList<OrderLine> getLines() {
+        ArrayList<OrderLine> orderLines = new ArrayList<>(lines.size());
+        for (TrolleyLine line : lines.values()) {
+            orderLines.add(line.orderLine);
+        }
+        return orderLines;
+    }
+
+    // The total price of the trolley in pence
+    public long getTotalPence() {
+        return totalPence;
+    }
+
+    /**
+     * The trolley as text for the customer's trolley page: the saved line of each product and the total.
+     * The text is only joined again after a change.
+     */
+    public String display() {
+        if (display == null) {
+            displayBuilder.setLength(0);
+            for (TrolleyLine line : lines.values()) {
+                displayBuilder.append(line.text);
+            }
+            ProductListFormatter.appendFooter(displayBuilder, totalPence);
+            display = displayBuilder.toString();
+        }
+        return display;
+    }
+
+    public int size() {
+        return lines.size();
+    }
+
+    public boolean isEmpty() {
+        return lines.isEmpty();
+    }
+
+    public void clear() {
+        lines.clear();
+        totalPence = 0;
+        display = null;
+    }
+}
@@ -150,6 +150,8 @@ public class Main extends Application {
         model.alertSimulator = alertSimulator;
         historyWindow.warehouseView = view;
         alertSimulator.warehouseView = view;
+
+        model.watchLowStock(); // low-stock alerts are shown in the history window
     }
 
     //starts the EmergencyExit GUI, - used to close the entire application immediatelly
@@ -1,9 +1,13 @@
 package ci553.happyshop.client.customer;
 
+import ci553.happyshop.catalogue.Money;
 import ci553.happyshop.catalogue.Order;
+import ci553.happyshop.catalogue.OrderLine;
 import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.service.CatalogueService;
+import ci553.happyshop.service.CheckoutResult;
+import ci553.happyshop.service.TrolleyService;
 import ci553.happyshop.storageAccess.DatabaseRW;
-import ci553.happyshop.orderManagement.OrderHub;
 import ci553.happyshop.utility.StorageLocation;
 import ci553.happyshop.utility.ProductListFormatter;
 
@@ -12,9 +16,6 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Comparator;
 /**
  * TODO
  * You can either directly modify the CustomerModel class to implement the required tasks,
@@ -26,8 +27,11 @@ public class CustomerModel {
                                   //Benefits: Flexibility: Easily change the database implementation.
     public RemoveProductNotifier removeProductNotifier;
 
+    // The shop logic without UI; created on first use, once databaseRW has been set by CustomerClient
+    private CatalogueService catalogueService;
+    private TrolleyService trolleyService;
+
     private Product theProduct =null; // product found from search
-    private ArrayList<Product> trolley =  new ArrayList<>(); // a list of products in trolley
 
     // Four UI elements to be passed to CustomerView for display updates.
     private String imageName = "imageHolder.jpg";                // Image to show in product preview (Search Page)
@@ -39,19 +43,19 @@ public class CustomerModel {
     void search() throws SQLException {
         String productId = cusView.tfId.getText().trim();
         if(!productId.isEmpty()){
-            theProduct = databaseRW.searchByProductId(productId); //search database
-            if(theProduct != null && theProduct.getStockQuantity()>0){
-                double unitPrice = theProduct.getUnitPrice();
+            theProduct = catalogueService().findAvailableProduct(productId); //search database
+            if(theProduct != null){
+                long unitPricePence = theProduct.getUnitPricePence();
                 String description = theProduct.getProductDescription();
-                int stock = theProduct.getStockQuantity();
+                int stock = catalogueService().availableStock(theProduct); // not counting units in other trolleys
 
-                String baseInfo = String.format("Product_Id: %s\n%s,\nPrice: £%.2f", productId, description, unitPrice);
+                String baseInfo = String.format("Product_Id: %s\n%s,\nPrice: £%s", productId, description,
+                        Money.format(unitPricePence));
                 String quantityInfo = stock < 100 ? String.format("\n%d units left.", stock) : "";
                 displayLaSearchResult = baseInfo + quantityInfo;
                 System.out.println(displayLaSearchResult);
             }
             else{
-                theProduct=null;
                 displayLaSearchResult = "No Product was found with ID " + productId;
                 System.out.println("No Product was found with ID " + productId);
             }
@@ -65,33 +69,14 @@ public class CustomerModel {
 
     void addToTrolley(){
         if (theProduct != null) {
-            String id = theProduct.getProductId();
-            boolean found = false;
-
-            // Try to merge with existing item in trolley
-            for (Product p : trolley) {
-                if (p.getProductId().equals(id)) {
-                    p.setOrderedQuantity(p.getOrderedQuantity() + 1);
-                    found = true;
-                    break;
-                }
-            }
-
-            // If not found, add a shallow copy (orderedQuantity defaults to 1)
-            if (!found) {
-                trolley.add(new Product(
-                        theProduct.getProductId(),
-                        theProduct.getProductDescription(),
-                        theProduct.getProductImageName(),
-                        theProduct.getUnitPrice(),
-                        theProduct.getStockQuantity()
-                ));
+            // merges with the same product and keeps the trolley sorted; reserves the unit for this trolley
+            if (trolleyService().add(theProduct)) {
+                displayTaTrolley = trolleyService().getTrolleyDisplay();
+            } else {
+                displayLaSearchResult = "Sorry, no more units of " + theProduct.getProductDescription()
+                        + " are available right now";
+                System.out.println("no unreserved stock left for " + theProduct.getProductId());
             }
-
-            // Sort trolley by productId (Product implements Comparable)
-            trolley.sort(Comparator.naturalOrder());
-
-            displayTaTrolley = ProductListFormatter.buildString(trolley);
         } else {
             displayLaSearchResult = "Please search for an available product before adding it to the trolley";
             System.out.println("must search and get an available product before add to trolley");
@@ -101,48 +86,32 @@ public class CustomerModel {
     }
 
     void checkOut() throws IOException, SQLException {
-        if(!trolley.isEmpty()){
-            // Group the products in the trolley by productId to optimize stock checking
-            // Check the database for sufficient stock for all products in the trolley.
-            // If any products are insufficient, the update will be rolled back.
-            // If all products are sufficient, the database will be updated, and insufficientProducts will be empty.
-            // Note: If the trolley is already organized (merged and sorted), grouping is unnecessary.
-            ArrayList<Product> groupedTrolley= groupProductsById(trolley);
-            ArrayList<Product> insufficientProducts= databaseRW.purchaseStocks(groupedTrolley);
-
-            if(insufficientProducts.isEmpty()){ // If stock is sufficient for all products
-                //get OrderHub and tell it to make a new Order
-                OrderHub orderHub =OrderHub.getOrderHub();
-                Order theOrder = orderHub.newOrder(trolley);
-                trolley.clear();
+        if(!trolleyService().isEmpty()){
+            CheckoutResult result = trolleyService().checkOut();
+            if(result.isSuccess()){ // If stock was sufficient for all products
+                Order theOrder = result.order();
                 displayTaTrolley ="";
                 displayTaReceipt = String.format(
                         "Order_ID: %s\nOrdered_Date_Time: %s\n%s",
                         theOrder.getOrderId(),
                         theOrder.getOrderedDateTime(),
-                        ProductListFormatter.buildString(theOrder.getProductList())
+                        ProductListFormatter.buildString(theOrder.getOrderLines())
                 );
                 System.out.println(displayTaReceipt);
             }
             else { // Some products have insufficient stock — build an error message to inform the customer
                 StringBuilder errorMsg = new StringBuilder();
-                for (Product p : insufficientProducts) {
+                for (OrderLine line : result.insufficientLines()) {
+                    Product p = line.product();
                     errorMsg.append("\u2022 ").append(p.getProductId()).append(", ")
                             .append(p.getProductDescription()).append(" (Only ")
                             .append(p.getStockQuantity()).append(" available, ")
-                            .append(p.getOrderedQuantity()).append(" requested)\n");
+                            .append(line.quantity()).append(" requested)\n");
                 }
                 theProduct = null;
 
-                // Remove products with insufficient stock from the trolley
-                for (Product bad : insufficientProducts) {
-                    String badId = bad.getProductId();
-                    // Remove any trolley entries with the same productId
-                    trolley.removeIf(t -> t.getProductId().equals(badId));
-                }
-
-                // Update trolley display
-                displayTaTrolley = ProductListFormatter.buildString(trolley);
+                // TrolleyService has removed the products with insufficient stock; update trolley display
+                displayTaTrolley = trolleyService().getTrolleyDisplay();
 
                 // Notify the customer using RemoveProductNotifier when available
                 String removalMsg = "Checkout failed for the following products due to insufficient stock:\n" + errorMsg.toString();
@@ -156,7 +125,6 @@ public class CustomerModel {
 
                 System.out.println("stock is not enough");
             }
-
         }
         else{
             displayTaTrolley = "Your trolley is empty";
@@ -165,28 +133,22 @@ public class CustomerModel {
         updateView();
     }
 
-    /**
-     * Groups products by their productId to optimize database queries and updates.
-     * By grouping products, we can check the stock for a given `productId` once, rather than repeatedly
-     */
-    private ArrayList<Product> groupProductsById(ArrayList<Product> proList) {
-        Map<String, Product> grouped = new HashMap<>();
-        for (Product p : proList) {
-            String id = p.getProductId();
-            if (grouped.containsKey(id)) {
-                Product existing = grouped.get(id);
-                existing.setOrderedQuantity(existing.getOrderedQuantity() + p.getOrderedQuantity());
-            } else {
-                // Make a shallow copy to avoid modifying the original
-                grouped.put(id,new Product(p.getProductId(),p.getProductDescription(),
-                        p.getProductImageName(),p.getUnitPrice(),p.getStockQuantity()));
-            }
+    private CatalogueService catalogueService() {
+        if (catalogueService == null) {
+            catalogueService = new CatalogueService(databaseRW);
+        }
+        return catalogueService;
+    }
+
+    private TrolleyService trolleyService() {
+        if (trolleyService == null) {
+            trolleyService = new TrolleyService(databaseRW);
         }
-        return new ArrayList<>(grouped.values());
+        return trolleyService;
     }
 
     void cancel(){
-        trolley.clear();
+        trolleyService().clear(); // also releases the stock reserved for the trolley
         displayTaTrolley="";
         updateView();
     }
@@ -213,7 +175,7 @@ public class CustomerModel {
      //File.toURI(): Converts a File object (a file on the filesystem) to a URI object
 
     //for test only
-    public ArrayList<Product> getTrolley() {
-        return trolley;
+    public ArrayList<OrderLine> getTrolley() {
+        return trolleyService().getTrolley();
     }
 }
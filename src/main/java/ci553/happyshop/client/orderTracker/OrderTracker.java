@@ -1,9 +1,11 @@
 package ci553.happyshop.client.orderTracker;
 
+import ci553.happyshop.orderManagement.OrderEventSubscriber;
 import ci553.happyshop.orderManagement.OrderHub;
 import ci553.happyshop.orderManagement.OrderState;
 import ci553.happyshop.utility.UIStyle;
 import ci553.happyshop.utility.WinPosManager;
+import javafx.application.Platform;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.Label;
@@ -60,6 +62,18 @@ public class OrderTracker {
         orderHub.registerOrderTracker(this);
     }
 
+    /**
+     * Subscribes this OrderTracker to the order events of an OrderHub running in another process,
+     * instead of registering with the OrderHub of this process.
+     * @param address the hub's order event address, eg. localhost:5570 (see OrderEventBus)
+     */
+    public void subscribeToRemoteHub(String address){
+        OrderEventSubscriber subscriber = OrderEventSubscriber.forAddress(address);
+        // the subscriber calls from its own thread, the display must be updated on the JavaFX thread
+        subscriber.addListener(om -> Platform.runLater(() -> setOrderMap(om)));
+        subscriber.start();
+    }
+
     /**
      * Sets the order map with new data and refreshes the display.
      * This method is called by OrderHub when order states are updated.
@@ -9,6 +9,9 @@ import javafx.stage.Stage;
  *
  * This client is simple and does not follow the MVC pattern, as it only registers with the OrderHub
  * to receive order status notifications. All logic is handled internally within the OrderTracker.
+ *
+ * Run with --hub=host:port (eg. --hub=localhost:5570) to follow the orders of a Launcher or ShopApiServer
+ * running in another process with orderEvents.publish=true, instead of an OrderHub in this process.
  */
 
 public class OrderTrackerClient extends Application {
@@ -20,6 +23,11 @@ public class OrderTrackerClient extends Application {
     @Override
     public void start(Stage window) {
         OrderTracker orderTracker = new OrderTracker();
-        orderTracker.registerWithOrderHub();
+        String hubAddress = getParameters().getNamed().get("hub");
+        if (hubAddress != null) {
+            orderTracker.subscribeToRemoteHub(hubAddress); // the OrderHub runs in another process
+        } else {
+            orderTracker.registerWithOrderHub();
+        }
     }
 }
@@ -9,7 +9,7 @@ import javafx.stage.Stage;
 import java.util.ArrayList;
 
 /**
- * This class provides a simple history window to display a list of events (successfully delete, edit and add a new product).
+ * This class provides a simple history window to display a list of events (successfully delete, edit and add a new product, and low-stock alerts).
  *
  * - The scene is created only once to avoid unnecessary scene recreation.
  * - The window is created only when needed. If the window is already visible, it will not be recreated.
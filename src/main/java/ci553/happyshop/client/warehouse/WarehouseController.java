@@ -29,6 +29,24 @@ public class WarehouseController {
             case "Cancel":  // clear the editChild
                 model.doCancel();
                 break;
+            case "Import":  // add the products of a catalogue file
+                model.doImport();
+                break;
+            case "Export":  // write all products to a catalogue file
+                model.doExport();
+                break;
+            case "Add Line":  // add a stock adjustment to the list
+                model.doAddAdjustment();
+                break;
+            case "Remove Line":
+                model.doRemoveAdjustment();
+                break;
+            case "Clear List":
+                model.doClearAdjustments();
+                break;
+            case "Submit All":  // apply all stock adjustments of the list together
+                model.doSubmitAdjustments();
+                break;
         }
     }
 }
@@ -1,10 +1,18 @@
 package ci553.happyshop.client.warehouse;
 
+import ci553.happyshop.catalogue.Money;
 import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.catalogue.StockAdjustment;
+import ci553.happyshop.service.CatalogueFileService;
+import ci553.happyshop.service.ImportReport;
+import ci553.happyshop.service.InventoryResult;
+import ci553.happyshop.service.InventoryService;
+import ci553.happyshop.service.InventoryWatcher;
+import ci553.happyshop.service.NewProductRequest;
+import ci553.happyshop.service.ProductEditRequest;
 import ci553.happyshop.storageAccess.DatabaseRW;
-import ci553.happyshop.storageAccess.DerbyRW;
-import ci553.happyshop.storageAccess.ImageFileManager;
 import ci553.happyshop.utility.StorageLocation;
+import javafx.application.Platform;
 
 import java.io.IOException;
 import java.nio.file.Path;
@@ -18,10 +26,14 @@ public class WarehouseModel {
     public WarehouseView view;
     public DatabaseRW databaseRW; //Interface type, not specific implementation
                          //Benefits: Flexibility: Easily change the database implementation.
+    private InventoryService inventoryService; // the stock logic without UI, created on first use
+    private CatalogueFileService catalogueFileService; // bulk import and export, created on first use
+    private boolean fileTaskRunning = false; // an import or export is running on a background thread
 
     private ArrayList<Product> productList = new ArrayList<>(); // search results fetched from the database
     private Product theSelectedPro; // the product selected from the ListView before the user edits or deletes
     private String theNewProId;
+    private ArrayList<StockAdjustment> adjustmentQueue = new ArrayList<>(); // stock adjustments waiting to be submitted
 
     //information used to update editProduct child in WarehouseView
     String displayIdEdit="";
@@ -56,6 +68,11 @@ public class WarehouseModel {
         BtnCancelNew,
         BtnSummitNew,
 
+        // actions in Adjusting the stock of many products page
+        BtnAddAdjustment,
+        BtnChangeAdjustments, // Refers to both "Remove Line" and "Clear List"
+        BtnSubmitAdjustments,
+
         //show user input error message in alertSimulator
         ShowInputErrorMsg
     }
@@ -63,7 +80,7 @@ public class WarehouseModel {
     void doSearch() throws SQLException {
         String keyword = view.tfSearchKeyword.getText().trim();
         if (!keyword.equals("")) {
-            productList = databaseRW.searchProduct(keyword);
+            productList = inventoryService().searchProducts(keyword);
         }
         else{
             productList.clear();
@@ -79,12 +96,8 @@ public class WarehouseModel {
             theSelectedPro = pro;
             productList.remove(theSelectedPro); //remove the product from product List
 
-            //update databse: delete the product from database
-            databaseRW.deleteProduct(theSelectedPro.getProductId());
-
-            //delete the image from imageFolder "images/"
-            String imageName = theSelectedPro.getProductImageName(); //eg 0011.jpg;
-            ImageFileManager.deleteImageFile(StorageLocation.imageFolder, imageName);
+            //delete the product from database and its image from imageFolder "images/"
+            inventoryService().deleteProduct(theSelectedPro);
 
             updateView(UpdateForAction.BtnDelete);
             theSelectedPro = null;
@@ -98,18 +111,7 @@ public class WarehouseModel {
         System.out.println("Edit gets called in model");
         Product pro = view.obrLvProducts.getSelectionModel().getSelectedItem();
         if (pro != null) {
-            theSelectedPro = pro;
-            displayIdEdit = theSelectedPro.getProductId();
-            displayPriceEdit = String.format("%.2f", theSelectedPro.getUnitPrice());
-            displayStockEdit = String.valueOf (theSelectedPro.getStockQuantity());
-            displayDescriptionEdit = theSelectedPro.getProductDescription();
-
-            String relativeImageUri = StorageLocation.imageFolder + theSelectedPro.getProductImageName();
-            Path imageFullPath = Paths.get(relativeImageUri).toAbsolutePath();
-            displayImageUrlEdit = imageFullPath.toUri().toString();//build the full path Uri
-
-            System.out.println("get new pro image name: " + displayImageUrlEdit);
-            updateView(UpdateForAction.BtnEdit);
+            showInEditChild(pro);
         }
         else{
             System.out.println("No product was selected");
@@ -117,6 +119,22 @@ public class WarehouseModel {
 
     }
 
+    // Fills the editChild with the product; its version is kept in theSelectedPro, to notice edits made meanwhile
+    private void showInEditChild(Product pro) {
+        theSelectedPro = pro;
+        displayIdEdit = theSelectedPro.getProductId();
+        displayPriceEdit = Money.format(theSelectedPro.getUnitPricePence()); // eg. 29.99
+        displayStockEdit = String.valueOf (theSelectedPro.getStockQuantity());
+        displayDescriptionEdit = theSelectedPro.getProductDescription();
+
+        String relativeImageUri = StorageLocation.imageFolder + theSelectedPro.getProductImageName();
+        Path imageFullPath = Paths.get(relativeImageUri).toAbsolutePath();
+        displayImageUrlEdit = imageFullPath.toUri().toString();//build the full path Uri
+
+        System.out.println("get new pro image name: " + displayImageUrlEdit);
+        updateView(UpdateForAction.BtnEdit);
+    }
+
     void doCancel(){
        if(view.theProFormMode.equals("EDIT")){
            updateView(UpdateForAction.BtnCancelEdit);
@@ -141,29 +159,30 @@ public class WarehouseModel {
         if(theSelectedPro!=null) {
             String id=theSelectedPro.getProductId();
             System.out.println("theSelectedPro " + id); //debug purpose
-            String imageName = theSelectedPro.getProductImageName();
-
-            String textPrice =view.tfPriceEdit.getText().trim();
-            String textStock =view.tfStockEdit.getText().trim();
-            String description = view.taDescriptionEdit.getText().trim();
-
-            if(view.isUserSelectedImageEdit == true){  //if the user changed image
-                ImageFileManager.deleteImageFile(StorageLocation.imageFolder, imageName); //delete the old image
-                //copy the user selected image to project image folder
-                //we use productId as image name, but we need to get its extension from the user selected image
-                String newImageNameWithExtension = ImageFileManager.copyFileToDestination(view.userSelectedImageUriEdit, StorageLocation.imageFolder,id);
-                imageName = newImageNameWithExtension;
+            String newImageUri = view.isUserSelectedImageEdit ? view.userSelectedImageUriEdit : null; //if the user changed image
+            ProductEditRequest request = new ProductEditRequest(theSelectedPro, view.tfPriceEdit.getText(),
+                    view.tfStockEdit.getText(), view.taDescriptionEdit.getText(),
+                    newImageUri, !view.tfChangeByEdit.getText().trim().isEmpty());
+
+            InventoryResult result = inventoryService().editProduct(request); //validates, then updates database
+            if(result.conflict()){
+                //the product changed since the user clicked Edit: show the latest details, the user edits again
+                Product latest = databaseRW.searchByProductId(id);
+                if (latest != null) {
+                    showInEditChild(latest);
+                    displayInputErrorMsg = result.errorMessage() + "\u2022 The form now shows the latest details, please edit again.\n";
+                } else {
+                    updateView(UpdateForAction.BtnCancelEdit);
+                    theSelectedPro = null;
+                    displayInputErrorMsg = result.errorMessage();
+                }
+                updateView(UpdateForAction.ShowInputErrorMsg);
             }
-
-            if(validateInputEditChild(textPrice,textStock,description)==false){
+            else if(!result.success()){
+                displayInputErrorMsg = result.errorMessage();
                 updateView(UpdateForAction.ShowInputErrorMsg);
             }
             else{
-                double price = Double.parseDouble(textPrice);
-                int stock= Integer.parseInt(textStock);
-                //update datbase
-                databaseRW.updateProduct(id,description,price,imageName,stock);
-
                 updateView(UpdateForAction.BtnSummitEdit);
                 theSelectedPro=null;
             }
@@ -178,7 +197,9 @@ public class WarehouseModel {
         int newStock =oldStock;
         String TextChangeBy = view.tfChangeByEdit.getText().trim();
         if(!TextChangeBy.isEmpty()){
-            if(validateInputChangeStockBy(TextChangeBy)==false){
+            InventoryResult result = inventoryService().validateStockChange(TextChangeBy);
+            if(!result.success()){
+                displayInputErrorMsg = result.errorMessage();
                 updateView(UpdateForAction.ShowInputErrorMsg);
             } else{
                 int changeBy = Integer.parseInt(TextChangeBy);
@@ -196,155 +217,177 @@ public class WarehouseModel {
         }
     }
 
-    private  boolean validateInputChangeStockBy(String txChangeBy) throws SQLException {
-        StringBuilder errorMessage = new StringBuilder();
-        // Validate Stock changBy Quantity (must be an integer)
-        try {
-            int changeBy = Integer.parseInt(txChangeBy);
-        } catch (NumberFormatException e) {
-            errorMessage.append("Invalid stock quantity format.\n");
-        }
-        // Show Alert if there are errors
-        if (errorMessage.length() > 0) {
-            displayInputErrorMsg = errorMessage.toString();
-            return false;
-        }
-        return true;
-    }
-
     private void doSubmitNew() throws SQLException, IOException {
         System.out.println("Adding new Pro in model");
 
         //all info(input from user) about the new product
         theNewProId = view.tfIdNewPro.getText().trim();
-        String textPrice = view.tfPriceNewPro.getText().trim();
-        String textStock = view.tfStockNewPro.getText().trim();
-        String description = view.taDescriptionNewPro.getText().trim();
-        String iPath = view.imageUriNewPro; //image Path from the imageChooser in View class
-
-        //validate input
-        if (validateInputNewProChild(theNewProId, textPrice, textStock, description, iPath) ==false) {
+        NewProductRequest request = new NewProductRequest(theNewProId, view.tfPriceNewPro.getText(),
+                view.tfStockNewPro.getText(), view.taDescriptionNewPro.getText(),
+                view.imageUriNewPro); //image Path from the imageChooser in View class
+
+        //validates, copies the image to the image folder and inserts the product to databse
+        InventoryResult result = inventoryService().addProduct(request);
+        if (!result.success()) {
+            displayInputErrorMsg = result.errorMessage();
             updateView(UpdateForAction.ShowInputErrorMsg);
         } else {
-            //copy the user selected image to project image folder and using productId as image name
-            //and get the image extension from the source image, we write this name to database
-            String imageNameWithExtension = ImageFileManager.copyFileToDestination(view.imageUriNewPro, StorageLocation.imageFolder,theNewProId);
-            double price = Double.parseDouble(textPrice);
-            int stock = Integer.parseInt(textStock);
-
-            //insertNewProduct to databse (String id, String des,double price,String image,int stock)
-            //a record in databse looks like ('0001', '40 inch TV', 269.00,'0001TV.jpg',100)"
-            databaseRW.insertNewProduct(theNewProId,description,price,imageNameWithExtension,stock);
             updateView(UpdateForAction.BtnSummitNew);
             theNewProId = null;
         }
     }
 
-    private  boolean validateInputEditChild(String txPrice, String txStock,
-                                         String description) throws SQLException {
-
-        StringBuilder errorMessage = new StringBuilder();
-
-        // Validate Price (must be a positive number, and two digitals )
-        try {
-            double price = Double.parseDouble(txPrice);
-
-            // Validate: Ensure at most two decimal places
-            if (!txPrice.matches("^[0-9]+(\\.[0-9]{0,2})?$")) {
-                errorMessage.append("\u2022 Price can have at most two decimal places.\n");
-            }
-
-            if (price <= 0) {
-                errorMessage.append("\u2022 Price must be a positive number.\n");
-            }
-
-        } catch (NumberFormatException e) {
-            errorMessage.append("\u2022 Invalid price format.\n");
-        }
-
-        // Validate if there is unperformed stock changeBy:
-        if(!view.tfChangeByEdit.getText().trim().isEmpty()){
-            errorMessage.append("\u2022 Change stock by not applied.\n");
+    // Checks the typed line of the AdjustChild, and adds it to the list if it is valid
+    void doAddAdjustment() throws SQLException {
+        String id = view.tfIdAdjust.getText().trim();
+        String amountText = view.tfAmountAdjust.getText().trim();
+        boolean setTo = view.cbSetToAdjust.isSelected();
+        InventoryResult result = inventoryService().validateStockAdjustment(id, amountText, setTo);
+        if (!result.success()) {
+            displayInputErrorMsg = result.errorMessage();
+            updateView(UpdateForAction.ShowInputErrorMsg);
+        } else {
+            int amount = Integer.parseInt(amountText);
+            adjustmentQueue.add(setTo ? StockAdjustment.setTo(id, amount) : StockAdjustment.changeBy(id, amount));
+            updateView(UpdateForAction.BtnAddAdjustment);
         }
+    }
 
-        // Validate Stock Quantity (must be a non-negative integer)
-        try {
-            int stock = Integer.parseInt(txStock);
-            if (stock < 0) {
-                errorMessage.append("\u2022 Stock quantity cannot be negative.\n");
-            }
-        } catch (NumberFormatException e) {
-            errorMessage.append("\u2022 Invalid stock quantity format.\n");
+    void doRemoveAdjustment() {
+        int index = view.lvAdjustments.getSelectionModel().getSelectedIndex();
+        if (index >= 0) {
+            adjustmentQueue.remove(index);
+            updateView(UpdateForAction.BtnChangeAdjustments);
+        } else {
+            System.out.println("No adjustment was selected");
         }
+    }
 
-        // Validate Description
-        if (description.isEmpty())
-            errorMessage.append("\u2022 Product description cannot be empty.");
+    void doClearAdjustments() {
+        adjustmentQueue.clear();
+        updateView(UpdateForAction.BtnChangeAdjustments);
+    }
 
-        // Show Alert if there are errors
-        if (errorMessage.length() > 0) {
-            displayInputErrorMsg = errorMessage.toString();
-            return false;
+    /**
+     * Submits all stock adjustments of the list in one transaction (see InventoryService.adjustStocks()).
+     * If one cannot be applied, eg. the stock would go below zero, nothing is changed and the list is kept,
+     * so the warehouse can correct or remove that line and submit again.
+     */
+    void doSubmitAdjustments() throws SQLException {
+        InventoryResult result = inventoryService().adjustStocks(adjustmentQueue);
+        if (!result.success()) {
+            displayInputErrorMsg = result.errorMessage();
+            updateView(UpdateForAction.ShowInputErrorMsg);
+        } else {
+            addHistoryRecord(adjustmentQueue.size() + " stock adjustments applied");
+            adjustmentQueue.clear();
+            updateView(UpdateForAction.BtnSubmitAdjustments);
         }
-        return true;
     }
 
-    private  boolean validateInputNewProChild(String id, String txPrice, String txStock,
-                                   String description, String imageUri) throws SQLException {
-
-        StringBuilder errorMessage = new StringBuilder();
-        // Validate Id (must be exactly 4 digits)
-        if (id == null || !id.matches("\\d{4}"))
-            errorMessage.append("\u2022 Product ID must be exactly 4 digits.\n");
+    /**
+     * Shows the low-stock alerts of InventoryWatcher in the history window, eg.
+     * "0002 low on stock: 7 left (reorder below 10), 2025-05-03 16:52".
+     * Called once when the warehouse client starts.
+     */
+    public void watchLowStock() {
+        InventoryWatcher.getInventoryWatcher().addListener(alert -> Platform.runLater(() -> showStockAlert(alert)));
+    }
 
-        //check Id is unique
-        if(!databaseRW.isProIdAvailable(id))
-            errorMessage.append("\u2022 Product ID " + id + " is not available.\n");
+    private void showStockAlert(InventoryWatcher.StockAlert alert) {
+        String dateTime = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"));
+        String record = alert.low()
+                ? "\u26A0 " + alert.productId() + " low on stock: " + alert.stock() + " left (reorder below "
+                        + alert.reorderThreshold() + "), " + dateTime
+                : alert.productId() + " restocked: " + alert.stock() + " in stock, " + dateTime;
+        displayManageHistory.add(record);
+        historyWindow.showManageHistory(displayManageHistory);
+    }
 
-        // Validate Price (must be a positive number, and two digitals )
-        try {
-            double price = Double.parseDouble(txPrice);
+    /**
+     * Imports the catalogue file chosen in the view (see CatalogueFileService). A large file can take
+     * a few seconds, so it runs on a background thread; the report is added to the history window,
+     * and the rows that were not imported are listed in the alert window.
+     */
+    void doImport() {
+        Path file = view.catalogueFile;
+        runFileTask("catalogue-import", () -> {
+            ImportReport report = catalogueFileService().importProducts(file);
+            Platform.runLater(() -> showImportReport(file, report));
+        });
+    }
 
-            // Validate: Ensure at most two decimal places
-            if (!txPrice.matches("^[0-9]+(\\.[0-9]{0,2})?$")) {
-                errorMessage.append("\u2022 Price can have at most two decimal places.\n");
-            }
+    // Exports all products to the catalogue file chosen in the view, on a background thread
+    void doExport() {
+        Path file = view.catalogueFile;
+        runFileTask("catalogue-export", () -> {
+            int count = catalogueFileService().exportProducts(file);
+            Platform.runLater(() -> addHistoryRecord("Exported " + count + " products to " + file.getFileName()));
+        });
+    }
 
-            if (price <= 0) {
-                errorMessage.append("\u2022 Price must be a positive number.\n");
-            }
+    // A file task that may fail with any of the errors of an import or export
+    private interface FileTask {
+        void run() throws IOException, SQLException;
+    }
 
-        } catch (NumberFormatException e) {
-            errorMessage.append("\u2022 Invalid price format.\n");
+    // Runs one import or export at a time; clicking again while one is running does nothing
+    private void runFileTask(String threadName, FileTask task) {
+        if (fileTaskRunning) {
+            System.out.println("An import or export is still running");
+            return;
         }
+        fileTaskRunning = true;
+        Thread thread = new Thread(() -> {
+            try {
+                task.run();
+            } catch (IOException | SQLException | IllegalArgumentException e) {
+                Platform.runLater(() -> {
+                    displayInputErrorMsg = "\u2022 " + e.getMessage();
+                    updateView(UpdateForAction.ShowInputErrorMsg);
+                });
+            } finally {
+                Platform.runLater(() -> fileTaskRunning = false);
+            }
+        }, threadName);
+        thread.setDaemon(true);
+        thread.start();
+    }
 
-
-        // Validate Stock Quantity (must be a non-negative integer)
-        try {
-            int stock = Integer.parseInt(txStock);
-            if (stock < 0) {
-                errorMessage.append("\u2022 Stock quantity cannot be negative.\n");
+    private void showImportReport(Path file, ImportReport report) {
+        addHistoryRecord(file.getFileName() + ": " + report.summary());
+        if (!report.errors().isEmpty()) {
+            StringBuilder errors = new StringBuilder();
+            for (ImportReport.RowError error : report.errors()) {
+                errors.append("\u2022 ").append(error).append('\n');
             }
-        } catch (NumberFormatException e) {
-            errorMessage.append("\u2022 Invalid stock quantity format.\n");
+            if (report.rejected() > report.errors().size()) {
+                errors.append("\u2022 ... and ").append(report.rejected() - report.errors().size()).append(" more rows");
+            }
+            displayInputErrorMsg = errors.toString();
+            updateView(UpdateForAction.ShowInputErrorMsg);
         }
+    }
 
-        // Validate Description
-        if (description.isEmpty())
-            errorMessage.append("\u2022 Product description cannot be empty.\n");
-
-        // Validate Image Path
-        if (imageUri == null )
-            errorMessage.append("\u2022 An image must be selected.");
+    private void addHistoryRecord(String text) {
+        String dateTime = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"));
+        displayManageHistory.add(text + ", " + dateTime);
+        historyWindow.showManageHistory(displayManageHistory);
+    }
 
-        // Show Alert if there are errors
-        if (errorMessage.length() > 0) {
-            displayInputErrorMsg = errorMessage.toString();
-            return false;
+    private CatalogueFileService catalogueFileService() {
+        if (catalogueFileService == null) {
+            catalogueFileService = new CatalogueFileService(databaseRW);
         }
-        return true;
+        return catalogueFileService;
     }
 
+    private InventoryService inventoryService() {
+        if (inventoryService == null) {
+            inventoryService = new InventoryService(databaseRW);
+        }
+        return inventoryService;
+    }
 
     private void updateView(UpdateForAction updateFor){
         switch (updateFor) {
@@ -388,11 +431,31 @@ public class WarehouseModel {
                 alertSimulator.closeAlertSimulatorWindow();//close AlertSimulatorWindow if exists
                 break;
 
+            case UpdateForAction.BtnAddAdjustment:
+                view.updateAdjustmentList(adjustmentLines(), true);
+                alertSimulator.closeAlertSimulatorWindow();//close AlertSimulatorWindow if exists
+                break;
+
+            case UpdateForAction.BtnChangeAdjustments:
+            case UpdateForAction.BtnSubmitAdjustments:
+                view.updateAdjustmentList(adjustmentLines(), false);
+                alertSimulator.closeAlertSimulatorWindow();//close AlertSimulatorWindow if exists
+                break;
+
             case UpdateForAction.ShowInputErrorMsg:
                 alertSimulator.showErrorMsg(displayInputErrorMsg);
         }
     }
 
+    // the adjustments as shown in the list, eg. "0001 +40" or "0003 = 12"
+    private ArrayList<String> adjustmentLines() {
+        ArrayList<String> lines = new ArrayList<>();
+        for (StockAdjustment adjustment : adjustmentQueue) {
+            lines.add(adjustment.toString());
+        }
+        return lines;
+    }
+
     private void showManageStockHistory(ManageProductType type){
         String dateTime = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"));
         String record="";
@@ -53,13 +53,15 @@ import javafx.scene.input.MouseEvent;
  *      the ListView automatically updates itself based on the specified cell factory.
  *
  * 2. Product Form Page:
- *    - The form page contains a ComboBox for selecting between two actions:
+ *    - The form page contains a ComboBox for selecting between three actions:
  *      * Editing an existing product
  *      * Adding a new product to stock
- *    - Based on the ComboBox selection, one of two VBoxes will be shown:
+ *      * Adjusting the stock of many products together, eg. when a delivery arrives
+ *    - Based on the ComboBox selection, one of three VBoxes will be shown:
  *      * EditProductVBox (for editing existing products), referred to as **EditChild** in the code
  *      * NewProductVBox (for adding new products), referred to as **NewProChild** in the code
- *    - Only one VBox (EditChild or NewProChild) is active and visible at a time, depending on the selected action.
+ *      * AdjustStockVBox (a list of stock adjustments submitted together), referred to as **AdjustChild** in the code
+ *    - Only one VBox (EditChild, NewProChild or AdjustChild) is active and visible at a time, depending on the selected action.
  */
 
 public class WarehouseView  {
@@ -84,16 +86,19 @@ public class WarehouseView  {
     ComboBox<String> cbProductFormMode; //the first child
     private VBox vbEditProduct; //the seceond child
     private VBox vbNewProduct; //another second child
+    private VBox vbAdjustStock; //the third second child
     String theProFormMode ="EDIT";
     /** productFormPage has two children at a time,
-     * 1. cbProductFormMode: A ComboBox that holds two action types for the product form:
+     * 1. cbProductFormMode: A ComboBox that holds three action types for the product form:
      *    - "EDIT": For editing an existing product
      *    - "NEW": For adding a new product to stock
-     * The action mode (either "EDIT" or "NEW") is stored in the 'theProFormMode' variable to keep track of the current mode.
+     *    - "ADJUST": For adjusting the stock of many products at once
+     * The action mode ("EDIT", "NEW" or "ADJUST") is stored in the 'theProFormMode' variable to keep track of the current mode.
      *
-     * The following two second childeren swap based on the selected value of the ComboBox:
+     * The following three second childeren swap based on the selected value of the ComboBox:
      * 2. vbEditProduct: contains the UI elements for editing an existing product (visible when "EDIT" is selected)
      * 2. vbNewProduct: contains the UI elements for adding a new product to stock (visible when "NEW" is selected)
+     * 2. vbAdjustStock: contains the list of stock adjustments to submit together (visible when "ADJUST" is selected)
      */
 
     //some elements in vbEditProduct, we need to getValue from them and setValue for them
@@ -130,6 +135,15 @@ public class WarehouseView  {
     String imageUriNewPro; //user slected image Uri
     // URI of the image selected by the user for a new product. This value is retrieved from the image chooser.
 
+    Path catalogueFile; //the CSV or JSON lines file chosen for Import or Export
+
+    //some elements in vbAdjustStock, we need to getValue from them and setValue for them
+    TextField tfIdAdjust;
+    TextField tfAmountAdjust; //eg. 40 or -2, or the counted stock if cbSetToAdjust is ticked
+    CheckBox cbSetToAdjust; //ticked: set the stock to the amount (a stock take), not ticked: change the stock by it
+    ListView<String> lvAdjustments; //the adjustments waiting to be submitted, eg. "0001 +40"
+    private Label laAdjustSummary; //eg. "3 adjustments to submit"
+
     public void start(Stage window) {
         VBox vbSearchPage = createSearchPage();
         VBox vbProductFormPage = createProductFormPage();
@@ -256,13 +270,15 @@ public class WarehouseView  {
     private VBox createProductFormPage() {
         cbProductFormMode = new ComboBox<>();
         cbProductFormMode.setStyle(UIStyle.comboBoxStyle);
-        cbProductFormMode.getItems().addAll("Edit Existing Product in Stock", "Add New Product to Stock");
+        cbProductFormMode.getItems().addAll("Edit Existing Product in Stock", "Add New Product to Stock",
+                "Adjust Stock of Many Products");
         // Set default selected value, so only when value changed trigger setOnAction
         cbProductFormMode.setValue("Edit Existing Product in Stock");
 
         vbEditProduct = createEditProdcutChild();
         disableEditProductChild(true); //disable editable component until user selects a product and cilck btnEdit
         vbNewProduct = createNewProductChild();
+        vbAdjustStock = createAdjustStockChild();
 
         // Initially set the second child (after ComboBox) to editProduct
         VBox vbProductFormPage = new VBox(10, cbProductFormMode, vbEditProduct);
@@ -278,6 +294,10 @@ public class WarehouseView  {
                 vbProductFormPage.getChildren().set(1,vbNewProduct);
                 theProFormMode = "NEW";
             }
+            if (cbProductFormMode.getValue().equals("Adjust Stock of Many Products")) {
+                vbProductFormPage.getChildren().set(1,vbAdjustStock);
+                theProFormMode = "ADJUST";
+            }
         });
 
         vbProductFormPage.setPrefWidth(COLUMN_WIDTH+20);
@@ -449,12 +469,88 @@ public class WarehouseView  {
         hbOkCancelBtns.setAlignment(Pos.CENTER);
         //hbOkCancelBtns.setPadding(new Insets(5));
 
+        // Import & Export Buttons, for a whole catalogue file (CSV or JSON lines) instead of one product
+        Label laCatalogueFile = new Label("Catalogue file:");
+        laCatalogueFile.setStyle(UIStyle.labelStyle);
+        Button btnImport = new Button("Import");
+        btnImport.setStyle(UIStyle.greenFillBtnStyle);
+        btnImport.setPrefWidth(100);
+        btnImport.setOnAction(this::buttonClick);
+
+        Button btnExport = new Button("Export");
+        btnExport.setStyle(UIStyle.grayFillBtnStyle);
+        btnExport.setPrefWidth(100);
+        btnExport.setOnAction(this::buttonClick);
+        HBox hbImportExportBtns = new HBox(15, laCatalogueFile, btnImport, btnExport);
+        hbImportExportBtns.setAlignment(Pos.CENTER);
+
         // Main Layout
-        VBox vbAddNewProductToStockChild = new VBox(10, hbIdPriceStockImage, vbDescription, hbOkCancelBtns);
+        VBox vbAddNewProductToStockChild = new VBox(10, hbIdPriceStockImage, vbDescription, hbOkCancelBtns,
+                hbImportExportBtns);
         vbAddNewProductToStockChild.setStyle(UIStyle.manageStockChildStyle1);
         return vbAddNewProductToStockChild;
     }
 
+    /**
+     * The AdjustChild: the warehouse types one line per product, eg. of a delivery note, and adds it to the list,
+     * then submits the whole list at once. The adjustments are applied together or not at all.
+     * Pressing Enter in the amount field is the same as clicking "Add Line", so a long list can be typed quickly.
+     */
+    private VBox createAdjustStockChild() {
+        //HBox for Id and amount TextFields
+        Label laId = new Label("ID");
+        laId.setStyle(UIStyle.labelStyle);
+        tfIdAdjust = new TextField();
+        tfIdAdjust.setPromptText("0001");
+        tfIdAdjust.setStyle("-fx-font-size: 14px; -fx-pref-width: 70px;");
+
+        Label laAmount = new Label("Amount");
+        laAmount.setStyle(UIStyle.labelStyle);
+        tfAmountAdjust = new TextField();
+        tfAmountAdjust.setPromptText("+40 / -2");
+        tfAmountAdjust.setStyle("-fx-font-size: 14px; -fx-pref-width: 80px;");
+
+        cbSetToAdjust = new CheckBox("Set to");
+        cbSetToAdjust.setStyle(UIStyle.labelStyle);
+        cbSetToAdjust.setTooltip(new Tooltip("Ticked: the stock is set to the amount, eg. after counting the shelf"));
+
+        Button btnAddLine = new Button("Add Line");
+        btnAddLine.setStyle(UIStyle.greenFillBtnStyle);
+        btnAddLine.setOnAction(this::buttonClick);
+        tfAmountAdjust.setOnAction(actionEvent -> btnAddLine.fire()); //Enter adds the line
+
+        HBox hbIdAmount = new HBox(10, laId, tfIdAdjust, laAmount, tfAmountAdjust, cbSetToAdjust, btnAddLine);
+        hbIdAmount.setAlignment(Pos.CENTER_LEFT);
+
+        //the list of adjustments waiting to be submitted
+        laAdjustSummary = new Label("0 adjustments to submit");
+        laAdjustSummary.setStyle(UIStyle.labelStyle);
+        lvAdjustments = new ListView<>();
+        lvAdjustments.setPrefHeight(HEIGHT - 250);
+        lvAdjustments.setStyle(UIStyle.listViewStyle);
+
+        // Remove, Clear & Submit Buttons
+        Button btnRemoveLine = new Button("Remove Line");
+        btnRemoveLine.setStyle(UIStyle.redFillBtnStyle);
+        btnRemoveLine.setOnAction(this::buttonClick);
+
+        Button btnClearList = new Button("Clear List");
+        btnClearList.setStyle(UIStyle.grayFillBtnStyle);
+        btnClearList.setOnAction(this::buttonClick);
+
+        Button btnSubmitAll = new Button("Submit All");
+        btnSubmitAll.setStyle(UIStyle.blueFillBtnStyle);
+        btnSubmitAll.setOnAction(this::buttonClick);
+
+        HBox hbListBtns = new HBox(15, btnRemoveLine, btnClearList, btnSubmitAll);
+        hbListBtns.setAlignment(Pos.CENTER);
+
+        // Main Layout
+        VBox vbAdjustStockChild = new VBox(10, hbIdAmount, laAdjustSummary, lvAdjustments, hbListBtns);
+        vbAdjustStockChild.setStyle(UIStyle.manageStockChildStyle);
+        return vbAdjustStockChild;
+    }
+
     //disable editable controls before user select a product and click the button edit
     private void disableEditProductChild(boolean disable) {
         tfPriceEdit.setDisable(disable);
@@ -478,6 +574,14 @@ public class WarehouseView  {
             cbProductFormMode.setValue("Edit Existing Product in Stock"); //show EditChild
         }
 
+        //Import and Export ask for the catalogue file first, nothing happens if the user cancels
+        if (action.equals("Import") || action.equals("Export")) {
+            catalogueFile = catalogueFileChooser(action);
+            if (catalogueFile == null) {
+                return;
+            }
+        }
+
         try{
             controller.process(action);
         }
@@ -514,6 +618,26 @@ public class WarehouseView  {
         }
     }
 
+    //asks for the catalogue file to import (an existing file) or to export to (a new file)
+    private Path catalogueFileChooser(String action) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle(action + " catalogue file");
+        fileChooser.getExtensionFilters().addAll(new FileChooser.ExtensionFilter("CSV", "*.csv"),
+                new FileChooser.ExtensionFilter("JSON lines", "*.jsonl"));
+        File file = action.equals("Import") ? fileChooser.showOpenDialog(viewWindow) : fileChooser.showSaveDialog(viewWindow);
+        if (file == null) {
+            return null;
+        }
+        String name = file.getName().toLowerCase();
+        if (action.equals("Export") && !name.endsWith(".csv") && !name.endsWith(".jsonl")) {
+            //the user typed a name without extension, use the one of the chosen file type, eg. products -> products.csv
+            String extension = fileChooser.getSelectedExtensionFilter() == null ? "*.csv"
+                    : fileChooser.getSelectedExtensionFilter().getExtensions().get(0);
+            file = new File(file.getParentFile(), file.getName() + extension.substring(1));
+        }
+        return file.toPath();
+    }
+
     //update the product listVew of serachPage
     void updateObservableProductList( ArrayList<Product> productList) {
         int proCounter = productList.size();
@@ -535,6 +659,7 @@ public class WarehouseView  {
         tfPriceEdit.setText(price);
         tfStockEdit.setText(stock);
         taDescriptionEdit.setText(des);
+        isUserSelectedImageEdit = false; //a new image chosen for the previous product is not used for this one
 
         System.out.println(imageUrl);
         try{
@@ -565,6 +690,17 @@ public class WarehouseView  {
        System.out.println("resetNewProChild in view called");
     }
 
+    //update the list of stock adjustments in the AdjustChild, clearing the typed line after it was added
+    void updateAdjustmentList(ArrayList<String> adjustments, boolean clearLine) {
+        lvAdjustments.getItems().setAll(adjustments);
+        laAdjustSummary.setText(adjustments.size() + " adjustments to submit");
+        if (clearLine) {
+            tfIdAdjust.clear();
+            tfAmountAdjust.clear();
+            tfIdAdjust.requestFocus();
+        }
+    }
+
     WindowBounds getWindowBounds() {
         return new WindowBounds(viewWindow.getX(),
                                 viewWindow.getY(),
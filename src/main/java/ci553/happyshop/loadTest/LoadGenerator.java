@@ -0,0 +1,567 @@
+package ci553.happyshop.loadTest;
+
+import ci553.happyshop.catalogue.Money;
+import ci553.happyshop.catalogue.Order;
+import ci553.happyshop.catalogue.OrderLine;
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.logging.LogLevel;
+import ci553.happyshop.logging.ShopLogger;
+import ci553.happyshop.metrics.MetricsRegistry;
+import ci553.happyshop.service.CatalogueService;
+import ci553.happyshop.service.CheckoutResult;
+import ci553.happyshop.service.InventoryResult;
+import ci553.happyshop.service.InventoryService;
+import ci553.happyshop.service.InventoryWatcher;
+import ci553.happyshop.service.PickingService;
+import ci553.happyshop.service.ProductEditRequest;
+import ci553.happyshop.service.ReservationService;
+import ci553.happyshop.service.TrolleyService;
+import ci553.happyshop.storageAccess.DatabaseRW;
+import ci553.happyshop.storageAccess.DatabaseRWFactory;
+import ci553.happyshop.storageAccess.DatabaseTopology;
+import ci553.happyshop.storageAccess.StockMode;
+import ci553.happyshop.storageAccess.StorageConfig;
+import ci553.happyshop.storageAccess.WriteBehindStock;
+import ci553.happyshop.systemSetup.SetOrderFileSystem;
+import ci553.happyshop.utility.LatencyHistogram;
+import ci553.happyshop.utility.ProductListFormatter;
+import ci553.happyshop.utility.StorageLocation;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A headless load generator: it simulates many customers, pickers and warehouse staff at the same time,
+ * without opening any window, and reports how the system copes.
+ *
+ * <p>Every simulated user runs on its own virtual thread and calls the same services as the clients
+ * (see the ci553.happyshop.service package):
+ * <ul>
+ *   <li>Customer (like CustomerModel): searches products by ID with CatalogueService, adds them to a TrolleyService
+ *       (formatting the trolley after each add), then checks out: purchaseStocks(), and OrderHub.newOrder() if
+ *       all stock was available. Customers arrive at random (Poisson) at --customers sessions per second.</li>
+ *   <li>Picker (like PickerModel): claims the next placed order from PickingService (Progressing), reads its details,
+ *       takes --pickTime ms to pick it, then marks it Collected. --pickers pickers work all the time.</li>
+ *   <li>Warehouse (like WarehouseModel): searches a product and edits it with InventoryService, with --restock
+ *       more units in stock, at --warehouse edits per second.</li>
+ * </ul>
+ * Products are chosen with a Zipf popularity (--zipf), so a few products are in most trolleys,
+ * as in a real shop; these products run out first and cause stock conflicts.</p>
+ *
+ * <p>The run never touches the real data: the database folder (--db, default happyShopDB) is copied
+ * to a temp folder, and orders are written to a temp orders folder. Close the shop before copying the
+ * database. With --db=inmemory no Derby database is used at all: the run uses the in-memory storage
+ * (InMemoryRW) with the default products, to measure the shop without the cost of Derby.
+ * With --stock=writebehind checkouts use the write-behind stock ledger (see WriteBehindStock),
+ * with the ledger file in the temp folder. With --reserve=false customers do not reserve stock when adding to the
+ * trolley (see ReservationService), so shortfalls are only found at checkout. Run it on the module path, eg.
+ * <pre>
+ *  java -p target/classes:&lt;dependencies&gt; -m ci553.happyshop/ci553.happyshop.loadTest.LoadGenerator --customers=50 --duration=60
+ * </pre>
+ * At the end it prints the throughput and latency percentiles of each operation, the stock-conflict rate
+ * (checkouts rolled back because of insufficient stock) and the gaps in the generated order IDs.
+ * It also checks the stock: the units in stock after the run must be the units before, less the units in
+ * the orders created, plus the units added by the warehouse edits.</p>
+ */
+
+public class LoadGenerator {
+    // Settings, changed with command-line options of the same name, eg. --customers=50
+    public static double customers = 20;      // customer sessions arriving per second
+    public static int pickers = 4;            // pickers working in parallel
+    public static double warehouse = 1;       // warehouse edits per second
+    public static int duration = 30;          // length of the run in seconds
+    public static double zipf = 1.0;          // Zipf exponent of product popularity, 0 = all products equally popular
+    public static int maxItems = 5;           // a customer adds 1 to maxItems items to the trolley
+    public static int thinkTime = 100;        // ms a customer waits between steps
+    public static int pickTime = 50;          // ms a picker takes to pick an order
+    public static int restock = 50;           // units added to a product by a warehouse edit
+    public static String db = "happyShopDB";  // database folder copied for the run, or inmemory
+    public static long seed = 42;             // seed for the order of product popularity
+    public static boolean metrics = false;    // also print the hot-path metrics (see MetricsRegistry)
+    public static String stock = "direct";    // stock mode: direct or writebehind (see StockMode)
+    public static boolean reserve = true;     // reserve stock when adding to the trolley (see ReservationService)
+    public static int carriers = Math.max(4, Runtime.getRuntime().availableProcessors()); // platform threads running the virtual threads
+
+    private static final int PROGRESS_INTERVAL_SECONDS = 5;
+    private static final int PICKER_BACKOFF_MIN_MS = 10;   // first wait of a picker after an error
+    private static final int PICKER_BACKOFF_MAX_MS = 1000; // longest wait, after many errors in a row
+
+    // Latencies in microseconds
+    private final LatencyHistogram searchLatency = new LatencyHistogram();
+    private final LatencyHistogram checkoutLatency = new LatencyHistogram();
+    private final LatencyHistogram claimLatency = new LatencyHistogram();
+    private final LatencyHistogram collectLatency = new LatencyHistogram();
+    private final LatencyHistogram warehouseEditLatency = new LatencyHistogram();
+
+    private final LongAdder sessions = new LongAdder();
+    private final LongAdder checkouts = new LongAdder();
+    private final LongAdder stockConflicts = new LongAdder();
+    private final LongAdder reservationsRefused = new LongAdder();
+    private final LongAdder lowStockAlerts = new LongAdder();
+    private final LongAdder restockedAlerts = new LongAdder();
+    private final LongAdder customerErrors = new LongAdder();
+    private final LongAdder ordersPicked = new LongAdder();
+    private final LongAdder pickerErrors = new LongAdder();
+    private final LongAdder warehouseErrors = new LongAdder();
+    private final LongAdder editConflicts = new LongAdder();
+    private final LongAdder unitsOrdered = new LongAdder();   // units in the orders of successful checkouts
+    private final LongAdder unitsRestocked = new LongAdder(); // units added by successful warehouse edits
+    private final ConcurrentSkipListSet<Integer> orderIds = new ConcurrentSkipListSet<>();
+    private final LongAdder duplicateOrderIds = new LongAdder();
+
+    /*
+     * Derby waits for row locks with Object.wait() inside synchronized code, which pins a virtual thread to its
+     * carrier thread. If every carrier was pinned by a waiting user, the user holding the lock could not run
+     * again to release it, and the run would stall until Derby's lock timeout. So at most carriers - 1 users
+     * are inside the database at once; the others wait here, unpinned.
+     */
+    private final Semaphore databasePermits = new Semaphore(Math.max(1, carriers - 1));
+
+    // A database call that can be run through databaseCall()
+    private interface DatabaseCall<T> {
+        T call() throws SQLException, IOException;
+    }
+
+    private final PickingService pickingService;
+    private final DatabaseRW warehouseDatabaseRW; // one warehouse window shared by the warehouse staff
+    private final InventoryService inventoryService;
+    private final List<String> productIds;        // sorted by popularity, most popular first
+    private final ZipfDistribution popularity;
+    private volatile boolean running = true;
+    private long elapsedNanos;
+    private long stockBefore; // total units in stock over all products, before and after the run
+    private long stockAfter;
+
+    private LoadGenerator(List<String> productIds) {
+        this.pickingService = PickingService.getPickingService();
+        this.warehouseDatabaseRW = DatabaseRWFactory.createDatabaseRW();
+        this.inventoryService = new InventoryService(warehouseDatabaseRW);
+        this.productIds = productIds;
+        this.popularity = new ZipfDistribution(productIds.size(), zipf);
+        InventoryWatcher.getInventoryWatcher().addListener(alert ->
+                (alert.low() ? lowStockAlerts : restockedAlerts).increment());
+    }
+
+    public static void main(String[] args) throws Exception {
+        parseOptions(args);
+        // Must be set before the first virtual thread is started
+        System.setProperty("jdk.virtualThreadScheduler.parallelism", String.valueOf(carriers));
+        ShopLogger.level = LogLevel.Warn; // keep the shop's Info messages out of the progress output
+        Path sandbox = setUpSandbox(); // before anything reads the database URL or the order folders
+        try {
+            LoadGenerator generator = new LoadGenerator(loadProductIds());
+            generator.run();
+            generator.printReport();
+            if (metrics) {
+                System.out.print(MetricsRegistry.getRegistry().report());
+            }
+        } finally {
+            deleteSandbox(sandbox);
+        }
+        System.exit(0); // OrderHub's scheduler thread would keep the JVM running
+    }
+
+    // --- the run ---
+
+    private void run() throws InterruptedException, SQLException {
+        System.out.printf("Load test: %ds, customers %.1f/s, %d pickers, warehouse %.1f edits/s, zipf %.2f, %d products, %d carriers%n",
+                duration, customers, pickers, warehouse, zipf, productIds.size(), carriers);
+        stockBefore = totalStock();
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(duration);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < pickers; i++) {
+                executor.execute(this::pickerLoop);
+            }
+            executor.execute(() -> arrivals(customers, end, executor, this::customerSession));
+            executor.execute(() -> arrivals(warehouse, end, executor, this::warehouseEdit));
+
+            for (int second = PROGRESS_INTERVAL_SECONDS; second < duration; second += PROGRESS_INTERVAL_SECONDS) {
+                sleepUntil(start + TimeUnit.SECONDS.toNanos(second));
+                System.out.printf("  %3ds: %d sessions, %d orders, %d picked, %d stock conflicts%n",
+                        second, sessions.sum(), orderIds.size(), ordersPicked.sum(), stockConflicts.sum());
+            }
+            sleepUntil(end);
+            running = false;
+        } // waits for the sessions still in progress
+        elapsedNanos = System.nanoTime() - start;
+        stockAfter = totalStock();
+    }
+
+    /**
+     * Starts tasks at random times, on average ratePerSecond per second (a Poisson process),
+     * until the end of the run. The time between two arrivals is exponentially distributed.
+     */
+    private void arrivals(double ratePerSecond, long endNanos, ExecutorService executor, Runnable task) {
+        if (ratePerSecond <= 0) {
+            return;
+        }
+        long next = System.nanoTime();
+        while (running) {
+            double gapSeconds = -Math.log(1 - ThreadLocalRandom.current().nextDouble()) / ratePerSecond;
+            next += (long) (gapSeconds * 1_000_000_000L);
+            if (next >= endNanos) {
+                return;
+            }
+            sleepUntil(next);
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                return; // the run is over
+            }
+        }
+    }
+
+    // One customer: search and add items to the trolley, then check out
+    private void customerSession() {
+        sessions.increment();
+        Random random = ThreadLocalRandom.current();
+        DatabaseRW databaseRW = DatabaseRWFactory.createDatabaseRW(); // each customer window has its own
+        CatalogueService catalogueService = new CatalogueService(databaseRW);
+        TrolleyService trolleyService = new TrolleyService(databaseRW);
+        try {
+            int items = 1 + random.nextInt(maxItems);
+            for (int i = 0; i < items; i++) {
+                String productId = productIds.get(popularity.sample(random));
+                long start = System.nanoTime();
+                Product product = databaseCall(() -> catalogueService.findAvailableProduct(productId));
+                searchLatency.record(microsSince(start));
+                if (product != null) { // only products in stock can be added
+                    if (trolleyService.add(product)) {
+                        trolleyService.getTrolleyDisplay(); // the trolley is redrawn after every add
+                    } else {
+                        reservationsRefused.increment(); // the last units are in other trolleys
+                    }
+                }
+                Thread.sleep(thinkTime);
+            }
+            if (!trolleyService.isEmpty()) {
+                checkOut(trolleyService);
+            }
+        } catch (SQLException | IOException | RuntimeException e) {
+            customerErrors.increment();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            trolleyService.clear(); // the customer leaves; release what is still reserved after a failed checkout
+        }
+    }
+
+    // Purchases the stock and creates the order; a rollback because of insufficient stock is a stock conflict
+    private void checkOut(TrolleyService trolleyService) throws SQLException, IOException {
+        long start = System.nanoTime();
+        CheckoutResult result = databaseCall(trolleyService::checkOut);
+        if (result.isSuccess()) {
+            Order order = result.order();
+            ProductListFormatter.buildString(order.getOrderLines()); // the receipt
+            for (OrderLine line : order.getOrderLines()) {
+                unitsOrdered.add(line.quantity()); // checked against the stock that was taken, see printReport()
+            }
+            if (!orderIds.add(order.getOrderId())) {
+                duplicateOrderIds.increment();
+            }
+        } else {
+            stockConflicts.increment();
+        }
+        checkouts.increment();
+        checkoutLatency.record(microsSince(start));
+    }
+
+    // One picker: claims orders one by one, picks them and marks them collected.
+    // After an error the picker waits before trying again, twice as long for every error in a row,
+    // so a failing OrderHub (eg. a full disk) is not called in a busy loop.
+    private void pickerLoop() {
+        long backoffMillis = 0;
+        while (running) {
+            try {
+                if (backoffMillis > 0) {
+                    Thread.sleep(backoffMillis);
+                }
+                long start = System.nanoTime();
+                PickingService.PickTask task = pickingService.claimNextOrder();
+                if (task == null) {
+                    backoffMillis = 0;
+                    Thread.sleep(10); // no order waiting
+                    continue;
+                }
+                claimLatency.record(microsSince(start));
+
+                Thread.sleep(pickTime);
+
+                start = System.nanoTime();
+                if (!pickingService.collect(task.orderId())) {
+                    throw new IllegalStateException("Order " + task.orderId() + " could not be collected");
+                }
+                collectLatency.record(microsSince(start));
+                ordersPicked.increment();
+                backoffMillis = 0;
+            } catch (IOException | RuntimeException e) {
+                pickerErrors.increment();
+                backoffMillis = Math.min(Math.max(2 * backoffMillis, PICKER_BACKOFF_MIN_MS), PICKER_BACKOFF_MAX_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // One warehouse edit: finds a product and restocks it, popular products more often
+    private void warehouseEdit() {
+        String productId = productIds.get(popularity.sample(ThreadLocalRandom.current()));
+        try {
+            long start = System.nanoTime();
+            Product product = databaseCall(() -> warehouseDatabaseRW.searchByProductId(productId));
+            if (product != null) {
+                // the same request the warehouse window sends after editing the stock field
+                ProductEditRequest request = new ProductEditRequest(product,
+                        Money.format(product.getUnitPricePence()), String.valueOf(product.getStockQuantity() + restock),
+                        product.getProductDescription(), null, false);
+                InventoryResult result = databaseCall(() -> inventoryService.editProduct(request));
+                if (result.conflict()) {
+                    editConflicts.increment(); // edited by someone else meanwhile; checkouts alone never conflict
+                } else if (!result.success()) {
+                    warehouseErrors.increment();
+                } else {
+                    unitsRestocked.add(restock); // the stock is changed by the difference, not overwritten
+                }
+            }
+            warehouseEditLatency.record(microsSince(start));
+        } catch (SQLException | IOException | RuntimeException e) {
+            warehouseErrors.increment();
+        }
+    }
+
+    // --- report ---
+
+    private void printReport() {
+        double seconds = elapsedNanos / 1e9;
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%nResults after %.1fs (latencies in microseconds):%n", seconds));
+        sb.append(String.format(" %-15s %8s %9s %9s %9s %9s %9s%n", "operation", "count", "per sec", "p50", "p90", "p99", "max"));
+        appendRow(sb, "search", searchLatency, seconds);
+        appendRow(sb, "checkout", checkoutLatency, seconds);
+        appendRow(sb, "claim", claimLatency, seconds);
+        appendRow(sb, "collect", collectLatency, seconds);
+        appendRow(sb, "warehouseEdit", warehouseEditLatency, seconds);
+
+        long checkoutCount = checkouts.sum();
+        double conflictRate = checkoutCount == 0 ? 0 : 100.0 * stockConflicts.sum() / checkoutCount;
+        sb.append(String.format("%nCustomer sessions: %d (%d errors)%n", sessions.sum(), customerErrors.sum()));
+        sb.append(String.format("Checkouts: %d, stock conflicts: %d (%.1f%%)%n", checkoutCount, stockConflicts.sum(), conflictRate));
+        sb.append(String.format("Adds refused by reservations: %d%n", reservationsRefused.sum()));
+        sb.append(String.format("Low-stock alerts: %d, restocked: %d%n", lowStockAlerts.sum(), restockedAlerts.sum()));
+        if (orderIds.isEmpty()) {
+            sb.append("Orders: none created\n");
+        } else {
+            int first = orderIds.first();
+            int last = orderIds.last();
+            long gaps = (long) last - first + 1 - orderIds.size();
+            sb.append(String.format("Orders: %d created, IDs %d..%d, gaps: %d, duplicate IDs: %d%n",
+                    orderIds.size(), first, last, gaps, duplicateOrderIds.sum()));
+        }
+        sb.append(String.format("Orders picked: %d, left to pick: %d (%d picker errors)%n",
+                ordersPicked.sum(), pickingService.getPickableOrders().size(), pickerErrors.sum()));
+        sb.append(String.format("Warehouse edits: %d (%d errors, %d conflicts)%n", warehouseEditLatency.getTotalCount(),
+                warehouseErrors.sum(), editConflicts.sum()));
+
+        // Every unit ordered must have been taken from the stock, and nothing else may have been taken
+        long expectedAfter = stockBefore - unitsOrdered.sum() + unitsRestocked.sum();
+        sb.append(String.format("Stock: %d units before, %d after; %d units ordered, %d restocked: %s%n",
+                stockBefore, stockAfter, unitsOrdered.sum(), unitsRestocked.sum(),
+                stockAfter == expectedAfter ? "OK"
+                        : String.format("MISMATCH, expected %d after (%+d)", expectedAfter, stockAfter - expectedAfter)));
+        System.out.print(sb);
+    }
+
+    private static void appendRow(StringBuilder sb, String name, LatencyHistogram histogram, double seconds) {
+        sb.append(String.format(" %-15s %8d %9.1f %9d %9d %9d %9d%n", name, histogram.getTotalCount(),
+                histogram.getTotalCount() / seconds, histogram.getValueAtPercentile(50),
+                histogram.getValueAtPercentile(90), histogram.getValueAtPercentile(99), histogram.getMax()));
+    }
+
+    // --- set up ---
+
+    // Reads --name=value options into the settings above
+    private static void parseOptions(String[] args) {
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException("Options look like --customers=50, not " + arg);
+            }
+            String name = arg.substring(2, equals);
+            String value = arg.substring(equals + 1);
+            switch (name) {
+                case "customers" -> customers = Double.parseDouble(value);
+                case "pickers" -> pickers = Integer.parseInt(value);
+                case "warehouse" -> warehouse = Double.parseDouble(value);
+                case "duration" -> duration = Integer.parseInt(value);
+                case "zipf" -> zipf = Double.parseDouble(value);
+                case "maxItems" -> maxItems = Integer.parseInt(value);
+                case "thinkTime" -> thinkTime = Integer.parseInt(value);
+                case "pickTime" -> pickTime = Integer.parseInt(value);
+                case "restock" -> restock = Integer.parseInt(value);
+                case "db" -> db = value;
+                case "seed" -> seed = Long.parseLong(value);
+                case "metrics" -> metrics = Boolean.parseBoolean(value);
+                case "carriers" -> carriers = Integer.parseInt(value);
+                case "stock" -> stock = value;
+                case "reserve" -> reserve = Boolean.parseBoolean(value);
+                default -> throw new IllegalArgumentException("Unknown option --" + name);
+            }
+        }
+    }
+
+    /**
+     * Copies the database to a temp folder (unless it is in memory) and points the system at it and at a temp orders folder.
+     * Must run before DatabaseRW, OrderHub or StorageLocation are used.
+     */
+    private static Path setUpSandbox() throws IOException {
+        Path source = Path.of(db);
+        if (!isInMemory() && !Files.isDirectory(source)) {
+            throw new IOException("Database folder not found: " + source.toAbsolutePath());
+        }
+        Path sandbox = Files.createTempDirectory("happyshop-load");
+        System.setProperty("derby.stream.error.file", sandbox.resolve("derby.log").toString());
+        System.setProperty("happyshop.ordersFolder", sandbox.resolve("orders").toString());
+        // Report Derby lock deadlocks and timeouts within seconds instead of the default 20s/60s,
+        // so a lock problem shows up as errors in the report rather than as a stalled run
+        System.setProperty("derby.locks.deadlockTimeout", "2");
+        System.setProperty("derby.locks.waitTimeout", "10");
+        if (!StorageLocation.ordersPath.toAbsolutePath().startsWith(sandbox.toAbsolutePath())) {
+            // StorageLocation was loaded too early; never set up (and wipe) the real orders folder
+            throw new IllegalStateException("StorageLocation already points at " + StorageLocation.ordersPath);
+        }
+
+        if (isInMemory()) {
+            StorageConfig.mode = DatabaseTopology.InMemory; // no database folder to copy
+        } else {
+            copyDatabase(source, sandbox);
+            if (stock.equalsIgnoreCase("writebehind")) {
+                StorageConfig.stockMode = StockMode.WriteBehind;
+                WriteBehindStock.ledgerFile = sandbox.resolve("stockLedger.log");
+            }
+        }
+        ReservationService.enabled = reserve;
+        SetOrderFileSystem.main(new String[0]);
+        if (metrics) {
+            MetricsRegistry.enable();
+        }
+        return sandbox;
+    }
+
+    private static boolean isInMemory() {
+        return db.equalsIgnoreCase("inmemory");
+    }
+
+    // Copies the database folder into the sandbox and points DatabaseRWFactory at the copy
+    private static void copyDatabase(Path source, Path sandbox) throws IOException {
+        Path databaseCopy = sandbox.resolve("happyShopDB");
+        try (var files = Files.walk(source)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".lck")) {
+                    continue; // lock files of a database that was not shut down
+                }
+                Files.copy(file, databaseCopy.resolve(source.relativize(file).toString()));
+            }
+        }
+        DatabaseRWFactory.dbURL = "jdbc:derby:" + databaseCopy.toAbsolutePath();
+    }
+
+    // The units in stock over all products, as a customer would see them
+    private static long totalStock() throws SQLException {
+        long total = 0;
+        for (Product product : DatabaseRWFactory.createDatabaseRW().searchProduct("")) { // "" matches every name
+            total += product.getStockQuantity();
+        }
+        return total;
+    }
+
+    // All product IDs in the database, shuffled with the seed so popularity does not follow the ID order
+    private static List<String> loadProductIds() throws SQLException {
+        ArrayList<String> ids = new ArrayList<>();
+        for (Product product : DatabaseRWFactory.createDatabaseRW().searchProduct("")) { // "" matches every name
+            ids.add(product.getProductId());
+        }
+        if (ids.isEmpty()) {
+            throw new IllegalStateException("No products in the database " + DatabaseRWFactory.dbURL);
+        }
+        Collections.sort(ids);
+        Collections.shuffle(ids, new Random(seed));
+        return ids;
+    }
+
+    private static void deleteSandbox(Path sandbox) throws IOException {
+        if (!isInMemory()) {
+            if (StorageConfig.stockMode == StockMode.WriteBehind) {
+                try {
+                    // write the last checkouts now; the flush at JVM exit would find the database gone
+                    WriteBehindStock.getWriteBehindStock().flush();
+                } catch (SQLException e) {
+                    System.err.println("Stock ledger flush failed: " + e);
+                }
+            }
+            try {
+                DriverManager.getConnection(DatabaseRWFactory.dbURL + ";shutdown=true");
+            } catch (SQLException e) {
+                // Derby always reports a successful shutdown with an SQLException (state 08006)
+            }
+        }
+        Files.walkFileTree(sandbox, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    // --- helpers ---
+
+    // Runs a database call once a database permit is free (see databasePermits)
+    private <T> T databaseCall(DatabaseCall<T> call) throws SQLException, IOException {
+        databasePermits.acquireUninterruptibly();
+        try {
+            return call.call();
+        } finally {
+            databasePermits.release();
+        }
+    }
+
+    private static long microsSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1000;
+    }
+
+    private static void sleepUntil(long deadlineNanos) {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+}
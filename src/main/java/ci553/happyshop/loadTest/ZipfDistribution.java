@@ -0,0 +1,39 @@
+package ci553.happyshop.loadTest;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Samples ranks from a Zipf distribution: rank 0 is the most popular, and the popularity of rank k
+ * is proportional to 1 / (k + 1)^exponent. With exponent 1.0 and 12 products, the most popular product
+ * is chosen about 3 times as often as the 3rd one and 12 times as often as the last one.
+ * An exponent of 0 gives every rank the same popularity.
+ *
+ * <p>The cumulative probabilities are computed once, so sampling is one binary search.</p>
+ */
+
+public class ZipfDistribution {
+    private final double[] cumulative; // cumulative[k] = probability of choosing a rank <= k
+
+    public ZipfDistribution(int size, double exponent) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be positive: " + size);
+        }
+        cumulative = new double[size];
+        double sum = 0;
+        for (int rank = 0; rank < size; rank++) {
+            sum += 1.0 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < size; rank++) {
+            cumulative[rank] /= sum;
+        }
+    }
+
+    // Returns a rank between 0 and size - 1
+    public int sample(Random random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        int rank = index >= 0 ? index : -index - 1;
+        return Math.min(rank, cumulative.length - 1);
+    }
+}
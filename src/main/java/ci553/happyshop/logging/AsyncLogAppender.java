@@ -0,0 +1,172 @@
+package ci553.happyshop.logging;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * AsyncLogAppender writes log messages on a background thread, so the threads serving customers,
+ * pickers and the warehouse never wait for System.out.
+ *
+ * <p>A logging thread only creates a LogEvent and puts it into a lock-free ring buffer (see LogRingBuffer).
+ * The daemon thread "happyshop-log-writer" takes the events out, formats them and prints them in batches.
+ * When there is nothing to print it parks until a logging thread wakes it, so an idle shop uses no CPU for logging.
+ * A line looks like:
+ * <pre>
+ *  2025-05-03 16:52:24.301 INFO  [JavaFX Application Thread] OrderHub - Order created orderId=17 lines=3
+ * </pre>
+ * A message logged with an exception is followed by the full stack trace of the exception.</p>
+ *
+ * <p>If messages are logged faster than they can be printed and the buffer fills up, Debug and Info messages
+ * are dropped (and counted, see {@link #getDroppedCount()}), while Warn and Error messages are printed
+ * directly by the logging thread so they are never lost. Remaining messages are printed when the JVM exits.</p>
+ *
+ * <p>This class implements the Singleton pattern; ShopLogger sends every message to it.</p>
+ */
+
+public class AsyncLogAppender {
+    public static int bufferCapacity = 8192; // number of messages the ring buffer can hold, set before first use
+    public static PrintStream out = System.out; // where the log is written, set before first use
+
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+    private static final int BATCH_SIZE = 64;              // messages printed with one call to the stream
+
+    private final LogRingBuffer buffer;
+    private final PrintStream stream;
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final StringBuilder batch = new StringBuilder(8192); // reused by the writer thread
+    private final Thread writer;
+    private volatile boolean writerParked = false; // true while the writer waits for a message, see writeLoop()
+
+    //Singleton pattern
+    private AsyncLogAppender() {
+        buffer = new LogRingBuffer(bufferCapacity);
+        stream = out;
+        writer = new Thread(this::writeLoop, "happyshop-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "happyshop-log-flush"));
+    }
+    // The instance is created on first use by the class loader (holder idiom),
+    // so getting it on every log call needs no lock.
+    private static class Holder {
+        private static final AsyncLogAppender appender = new AsyncLogAppender();
+    }
+    public static AsyncLogAppender getAppender() {
+        return Holder.appender;
+    }
+
+    // Queues a message for the writer thread. Never blocks.
+    void append(LogEvent event) {
+        if (buffer.offer(event)) {
+            if (writerParked) {
+                LockSupport.unpark(writer); // only when the writer is waiting, so a busy writer costs nothing
+            }
+        } else {
+            if (event.level().compareTo(LogLevel.Warn) >= 0) {
+                stream.print(format(new StringBuilder(256), event)); // keep warnings and errors
+            } else {
+                droppedCount.incrementAndGet();
+            }
+        }
+    }
+
+    // Number of Debug/Info messages dropped because the buffer was full
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    // Prints all messages waiting in the buffer. Used at shutdown.
+    public void flush() {
+        synchronized (this) {
+            drain();
+        }
+    }
+
+    /**
+     * Prints the messages as they come, and parks when there are none.
+     * The writer sets writerParked before checking the buffer one last time, and a logging thread checks
+     * writerParked after adding its message, so at least one of them sees the other: either the writer finds
+     * the message, or the logging thread unparks it. A message is never left waiting while the writer sleeps.
+     */
+    private void writeLoop() {
+        while (true) {
+            int written;
+            synchronized (this) {
+                written = drain();
+            }
+            if (written == 0) {
+                writerParked = true;
+                boolean empty;
+                synchronized (this) {
+                    empty = buffer.isEmpty();
+                }
+                if (empty) {
+                    LockSupport.park(this); // until append() unparks it
+                }
+                writerParked = false;
+            }
+        }
+    }
+
+    // Prints every queued message, BATCH_SIZE at a time, and returns how many there were.
+    // Caller holds the appender lock, so only one thread reads the ring buffer.
+    private int drain() {
+        int written = 0;
+        LogEvent event;
+        while ((event = buffer.poll()) != null) {
+            format(batch, event);
+            written++;
+            if (written % BATCH_SIZE == 0) {
+                printBatch();
+            }
+        }
+        if (batch.length() > 0) {
+            printBatch();
+        }
+        return written;
+    }
+
+    private void printBatch() {
+        stream.print(batch);
+        stream.flush();
+        batch.setLength(0);
+    }
+
+    // Formats one message: time, level, thread, logger, message, then the fields as key=value,
+    // and on the next lines the stack trace of the error if there is one
+    private static StringBuilder format(StringBuilder sb, LogEvent event) {
+        TIME_FORMAT.formatTo(Instant.ofEpochMilli(event.timeMillis()), sb);
+        sb.append(' ').append(event.level().label())
+                .append(" [").append(event.thread()).append("] ")
+                .append(event.logger()).append(" - ").append(event.message());
+        Object[] fields = event.fields();
+        for (int i = 0; i + 1 < fields.length; i += 2) {
+            sb.append(' ').append(fields[i]).append('=');
+            appendValue(sb, fields[i + 1]);
+        }
+        sb.append(System.lineSeparator());
+        if (event.error() != null) {
+            StringWriter stackTrace = new StringWriter();
+            event.error().printStackTrace(new PrintWriter(stackTrace)); // ends with a line separator
+            sb.append(stackTrace);
+        }
+        return sb;
+    }
+
+    // Values containing spaces are quoted, so each field stays one token, eg. description="Web Camera"
+    private static void appendValue(StringBuilder sb, Object value) {
+        String text = String.valueOf(value);
+        if (text.isEmpty() || text.indexOf(' ') >= 0 || text.indexOf('=') >= 0) {
+            sb.append('"').append(text.replace("\"", "\\\"")).append('"');
+        } else {
+            sb.append(text);
+        }
+    }
+}
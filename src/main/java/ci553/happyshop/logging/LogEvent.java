@@ -0,0 +1,17 @@
+package ci553.happyshop.logging;
+
+/**
+ * One log message waiting in the ring buffer of the AsyncLogAppender.
+ * The message is not formatted yet: formatting is done by the writer thread, not by the thread that logs.
+ *
+ * @param timeMillis when the message was logged
+ * @param level      the log level
+ * @param logger     the short name of the logger, eg. "DerbyRW"
+ * @param thread     the name of the thread that logged the message
+ * @param message    the message text
+ * @param fields     structured fields as key, value pairs, eg. {"productId", "0002", "stock", 9}
+ * @param error      an exception to print with the message, or null
+ */
+record LogEvent(long timeMillis, LogLevel level, String logger, String thread,
+                String message, Object[] fields, Throwable error) {
+}
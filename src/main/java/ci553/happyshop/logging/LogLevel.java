@@ -0,0 +1,23 @@
+package ci553.happyshop.logging;
+
+/**
+ * The level of a log message, from the most detailed (Debug) to the most serious (Error).
+ * A ShopLogger only records messages at or above ShopLogger.level.
+ */
+
+public enum LogLevel {
+    Debug,  // detailed dumps, eg. every product row read from the database
+    Info,   // normal events, eg. an order was created
+    Warn,   // something unexpected that the system can recover from
+    Error;  // an operation failed
+
+    // The level name as written in the log, padded to the same width, eg. "INFO "
+    String label() {
+        return switch (this) {
+            case Debug -> "DEBUG";
+            case Info -> "INFO ";
+            case Warn -> "WARN ";
+            case Error -> "ERROR";
+        };
+    }
+}
@@ -0,0 +1,81 @@
+package ci553.happyshop.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free ring buffer of LogEvents: many threads add events, one writer thread takes them out.
+ *
+ * <p>Each slot has a sequence number that tells whose turn it is:
+ * <ul>
+ *   <li>sequence == position: the slot is free for the producer that claims this position</li>
+ *   <li>sequence == position + 1: the slot holds an event ready for the consumer</li>
+ * </ul>
+ * A producer claims a position with one compare-and-set on the tail counter, so logging threads never
+ * wait for a lock or for each other. When the buffer is full, {@link #offer(LogEvent)} returns false
+ * instead of blocking, and the caller decides what to do.</p>
+ */
+
+class LogRingBuffer {
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<LogEvent> slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong(); // next position to be claimed by a producer
+    private long head = 0;                             // next position to be read, used by the consumer only
+
+    // capacity is rounded up to a power of two, so a position maps to a slot with a bit mask
+    LogRingBuffer(int capacity) {
+        this.capacity = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = this.capacity - 1;
+        this.slots = new AtomicReferenceArray<>(this.capacity);
+        this.sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    // Adds an event. Returns false if the buffer is full. Safe to call from any thread.
+    boolean offer(LogEvent event) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.set(index, event);
+                    sequences.set(index, position + 1); // publish the event to the consumer
+                    return true;
+                }
+                position = tail.get(); // another producer claimed this position, try the next one
+            } else if (difference < 0) {
+                return false; // the slot still holds an unread event from one lap ago: the buffer is full
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    // Takes the oldest event out, or returns null if the buffer is empty. Only the writer thread may call this.
+    LogEvent poll() {
+        int index = (int) (head & mask);
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+        LogEvent event = slots.get(index);
+        slots.set(index, null);
+        sequences.set(index, head + capacity); // free the slot for the producer one lap later
+        head++;
+        return event;
+    }
+
+    // Whether there is no event to take out. Only the writer thread may call this, like poll().
+    boolean isEmpty() {
+        return sequences.get((int) (head & mask)) != head + 1;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+}
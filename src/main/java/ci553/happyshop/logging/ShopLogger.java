@@ -0,0 +1,81 @@
+package ci553.happyshop.logging;
+
+/**
+ * ShopLogger is the logging facade used by the storage and order-management code instead of System.out.
+ *
+ * <p>Each class gets its own logger, eg.
+ * <pre>
+ *  private static final ShopLogger log = ShopLogger.getLogger(DerbyRW.class);
+ *  log.info("Stock purchase rolled back", "insufficient", insufficientProducts.size());
+ * </pre>
+ * A message has a level (Debug, Info, Warn, Error), a short text and optional structured fields given as
+ * key, value pairs. The fields are printed as key=value after the text, so the log is easy to search.</p>
+ *
+ * <p>Only messages at or above {@link #level} are recorded; the default is Info, so debug dumps
+ * (eg. every product row read from the database) are off. Set ShopLogger.level = LogLevel.Debug to see them.
+ * In hot loops, check {@link #isDebugEnabled()} first so no field values are built when debug is off.</p>
+ *
+ * <p>Messages are written by the AsyncLogAppender on a background thread.</p>
+ */
+
+public class ShopLogger {
+    public static volatile LogLevel level = LogLevel.Info; // the lowest level that is recorded
+
+    private final String name;
+
+    private ShopLogger(String name) {
+        this.name = name;
+    }
+
+    // Returns a logger named after the class, eg. "DerbyRW"
+    public static ShopLogger getLogger(Class<?> type) {
+        return new ShopLogger(type.getSimpleName());
+    }
+
+    public boolean isDebugEnabled() {
+        return isEnabled(LogLevel.Debug);
+    }
+
+    public boolean isEnabled(LogLevel messageLevel) {
+        return messageLevel.compareTo(level) >= 0;
+    }
+
+    public void debug(String message, Object... fields) {
+        log(LogLevel.Debug, message, null, fields);
+    }
+
+    public void info(String message, Object... fields) {
+        log(LogLevel.Info, message, null, fields);
+    }
+
+    public void warn(String message, Object... fields) {
+        log(LogLevel.Warn, message, null, fields);
+    }
+
+    public void warn(String message, Throwable error, Object... fields) {
+        log(LogLevel.Warn, message, error, fields);
+    }
+
+    public void error(String message, Object... fields) {
+        log(LogLevel.Error, message, null, fields);
+    }
+
+    public void error(String message, Throwable error, Object... fields) {
+        log(LogLevel.Error, message, error, fields);
+    }
+
+    private void log(LogLevel messageLevel, String message, Throwable error, Object[] fields) {
+        if (!isEnabled(messageLevel)) {
+            return;
+        }
+        AsyncLogAppender.getAppender().append(new LogEvent(System.currentTimeMillis(), messageLevel, name,
+                threadName(), message, fields, error));
+    }
+
+    // Virtual threads have no name by default, so they are shown by their ID, eg. "virtual-42"
+    private static String threadName() {
+        Thread thread = Thread.currentThread();
+        String threadName = thread.getName();
+        return threadName.isEmpty() ? "virtual-" + thread.threadId() : threadName;
+    }
+}
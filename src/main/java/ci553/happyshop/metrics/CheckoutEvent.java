@@ -0,0 +1,38 @@
+package ci553.happyshop.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event for a customer checkout (TrolleyService.checkOut),
+ * from buying the stock to creating the order. Enabled by the happyshop.jfc settings profile.
+ * It is recorded for every checkout, including one that fails with an error.
+ */
+
+@Name("ci553.happyshop.Checkout")
+@Label("Checkout")
+@Category({"HappyShop", "Customer"})
+@Description("A customer checks out the trolley: stock purchase and order creation")
+@Enabled(false)
+@StackTrace(false)
+public class CheckoutEvent extends jdk.jfr.Event {
+    @Label("Order ID")
+    @Description("The ID of the created order, 0 if the checkout failed")
+    public int orderId;
+
+    @Label("Line Count")
+    @Description("Number of distinct products in the trolley")
+    public int lineCount;
+
+    @Label("Products")
+    @Description("Product IDs in the trolley, comma separated")
+    public String products;
+
+    @Label("Success")
+    @Description("False if the checkout was rolled back because of insufficient stock, or failed with an error")
+    public boolean success;
+}
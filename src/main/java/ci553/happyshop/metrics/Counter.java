@@ -0,0 +1,33 @@
+package ci553.happyshop.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A Counter counts events, eg. the number of failed checkouts.
+ * It uses a LongAdder, so many threads can increment it without contending on one variable.
+ * When metrics are disabled, increment() returns straight away.
+ */
+
+public class Counter {
+    private final String name;
+    private final LongAdder count = new LongAdder();
+
+    Counter(String name) {
+        this.name = name;
+    }
+
+    public void increment() {
+        if (MetricsRegistry.isEnabled()) {
+            count.increment();
+        }
+    }
+
+    public void add(long amount) {
+        if (MetricsRegistry.isEnabled()) {
+            count.add(amount);
+        }
+    }
+
+    public String getName() { return name; }
+    public long getCount() { return count.sum(); }
+}
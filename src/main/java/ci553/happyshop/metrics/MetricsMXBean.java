@@ -0,0 +1,19 @@
+package ci553.happyshop.metrics;
+
+import java.util.Map;
+
+/**
+ * The JMX management interface of MetricsRegistry, registered as "ci553.happyshop:type=Metrics".
+ * Latencies are in microseconds.
+ */
+
+public interface MetricsMXBean {
+    Map<String, Long> getCallCounts();
+    Map<String, Long> getErrorCounts();
+    Map<String, Long> getP50Micros();
+    Map<String, Long> getP99Micros();
+    Map<String, Long> getCounters();
+
+    // A text report of all timers and counters
+    String report();
+}
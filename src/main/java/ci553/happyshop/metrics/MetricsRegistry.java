@@ -0,0 +1,120 @@
+package ci553.happyshop.metrics;
+
+import ci553.happyshop.logging.ShopLogger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * MetricsRegistry is the central place for the hot-path metrics of the system:
+ * Timers (call count, latency percentiles, error rate) and Counters, each identified by a name
+ * such as "db.purchaseStocks" or "order.newOrder".
+ *
+ * <p>Metrics are disabled by default. Call {@link #enable()} at startup (before the clients are created)
+ * to turn them on, or set metrics.enabled=true in happyShop.properties (StorageConfig calls it);
+ * this also registers the registry with JMX as "ci553.happyshop:type=Metrics".
+ * While disabled, Timers and Counters can still be looked up and called, but they do not read the clock
+ * or count anything, so instrumented code costs almost nothing.</p>
+ *
+ * <p>Where the metrics come from:
+ * - TimedDatabaseRW, a DatabaseRW decorator created by DatabaseRWFactory when metrics are enabled,
+ *   times every database operation ("db.*").
+ * - OrderHub times new orders, order ID generation and state changes ("order.*").</p>
+ *
+ * <p>Use {@link #report()} for a text export, eg.
+ * <pre>
+ *  db.purchaseStocks      calls=120 errors=0 (0.0%) p50=850us p90=1300us p99=4100us max=5200us
+ * </pre></p>
+ */
+
+public class MetricsRegistry implements MetricsMXBean {
+    private static final ShopLogger log = ShopLogger.getLogger(MetricsRegistry.class);
+    private static final MetricsRegistry registry = new MetricsRegistry(); //singleton instance
+    private static volatile boolean enabled = false;
+
+    private final ConcurrentHashMap<String, Timer> timers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+
+    //Singleton pattern
+    private MetricsRegistry() {}
+    public static MetricsRegistry getRegistry() {
+        return registry;
+    }
+
+    // Turns metrics on and registers the registry with JMX.
+    public static void enable() {
+        enabled = true;
+        registry.registerMBean();
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    // Returns the Timer with the given name, creating it on first use. Look timers up once and keep them.
+    public static Timer timer(String name) {
+        return registry.timers.computeIfAbsent(name, Timer::new);
+    }
+
+    // Returns the Counter with the given name, creating it on first use.
+    public static Counter counter(String name) {
+        return registry.counters.computeIfAbsent(name, Counter::new);
+    }
+
+    @Override
+    public String report() {
+        StringBuilder sb = new StringBuilder("Hot-path metrics (latencies in microseconds):\n");
+        for (Timer timer : new TreeMap<>(timers).values()) {
+            if (timer.getCount() == 0) {
+                continue;
+            }
+            sb.append(String.format(" %-32s calls=%d errors=%d (%.1f%%) p50=%dus p90=%dus p99=%dus max=%dus%n",
+                    timer.getName(), timer.getCount(), timer.getErrorCount(), timer.getErrorRate() * 100,
+                    timer.getHistogram().getValueAtPercentile(50), timer.getHistogram().getValueAtPercentile(90),
+                    timer.getHistogram().getValueAtPercentile(99), timer.getHistogram().getMax()));
+        }
+        for (Counter counter : new TreeMap<>(counters).values()) {
+            sb.append(String.format(" %-32s count=%d%n", counter.getName(), counter.getCount()));
+        }
+        return sb.toString();
+    }
+
+    @Override public Map<String, Long> getCallCounts() { return timerValues(Timer::getCount); }
+    @Override public Map<String, Long> getErrorCounts() { return timerValues(Timer::getErrorCount); }
+    @Override public Map<String, Long> getP50Micros() { return timerValues(t -> t.getHistogram().getValueAtPercentile(50)); }
+    @Override public Map<String, Long> getP99Micros() { return timerValues(t -> t.getHistogram().getValueAtPercentile(99)); }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> values = new TreeMap<>();
+        for (Counter counter : counters.values()) {
+            values.put(counter.getName(), counter.getCount());
+        }
+        return values;
+    }
+
+    private Map<String, Long> timerValues(ToLongFunction<Timer> value) {
+        Map<String, Long> values = new TreeMap<>();
+        for (Timer timer : timers.values()) {
+            values.put(timer.getName(), value.applyAsLong(timer));
+        }
+        return values;
+    }
+
+    private void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("ci553.happyshop:type=Metrics");
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (Exception e) {
+            log.warn("Metrics JMX registration failed", e);
+        }
+    }
+}
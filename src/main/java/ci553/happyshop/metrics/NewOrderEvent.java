@@ -0,0 +1,32 @@
+package ci553.happyshop.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event for creating an order (OrderHub.newOrder), including
+ * the order ID generation and writing the order file. Enabled by the happyshop.jfc settings profile.
+ */
+
+@Name("ci553.happyshop.NewOrder")
+@Label("New Order")
+@Category({"HappyShop", "Orders"})
+@Description("OrderHub creates an order and writes its file")
+@Enabled(false)
+@StackTrace(false)
+public class NewOrderEvent extends jdk.jfr.Event {
+    @Label("Order ID")
+    public int orderId;
+
+    @Label("Line Count")
+    @Description("Number of products in the order")
+    public int lineCount;
+
+    @Label("Products")
+    @Description("Product IDs in the order, comma separated")
+    public String products;
+}
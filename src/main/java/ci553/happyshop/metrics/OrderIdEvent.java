@@ -0,0 +1,25 @@
+package ci553.happyshop.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event for generating an order ID (OrderCounter.generateOrderId),
+ * which locks and rewrites the order counter file. Enabled by the happyshop.jfc settings profile.
+ */
+
+@Name("ci553.happyshop.GenerateOrderId")
+@Label("Generate Order ID")
+@Category({"HappyShop", "Orders"})
+@Description("The order counter file is locked, read, incremented and written back")
+@Enabled(false)
+@StackTrace(false)
+public class OrderIdEvent extends jdk.jfr.Event {
+    @Label("Order ID")
+    @Description("The generated order ID")
+    public int orderId;
+}
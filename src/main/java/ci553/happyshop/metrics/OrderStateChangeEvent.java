@@ -0,0 +1,27 @@
+package ci553.happyshop.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event for an order state change (OrderHub.changeOrderStateMoveFile),
+ * including the update of the order file. Enabled by the happyshop.jfc settings profile.
+ */
+
+@Name("ci553.happyshop.OrderStateChange")
+@Label("Order State Change")
+@Category({"HappyShop", "Orders"})
+@Description("A picker claims or completes an order, the order file is updated")
+@Enabled(false)
+@StackTrace(false)
+public class OrderStateChangeEvent extends jdk.jfr.Event {
+    @Label("Order ID")
+    public int orderId;
+
+    @Label("New State")
+    public String newState;
+}
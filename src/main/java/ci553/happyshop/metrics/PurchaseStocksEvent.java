@@ -0,0 +1,33 @@
+package ci553.happyshop.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event for the stock purchase transaction (DerbyRW.purchaseStocks).
+ * Enabled by the happyshop.jfc settings profile.
+ */
+
+@Name("ci553.happyshop.PurchaseStocks")
+@Label("Purchase Stocks")
+@Category({"HappyShop", "Database"})
+@Description("Checks and reduces the stock of every product in a trolley in one transaction")
+@Enabled(false)
+@StackTrace(false)
+public class PurchaseStocksEvent extends jdk.jfr.Event {
+    @Label("Line Count")
+    @Description("Number of products checked in the transaction")
+    public int lineCount;
+
+    @Label("Products")
+    @Description("Product IDs in the transaction, comma separated")
+    public String products;
+
+    @Label("Insufficient Count")
+    @Description("Number of products without enough stock, the transaction is rolled back if above 0")
+    public int insufficientCount;
+}
@@ -0,0 +1,33 @@
+package ci553.happyshop.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event for a product search (CatalogueService.findAvailableProduct and searchProducts),
+ * by a customer, the warehouse or the API. Enabled by the happyshop.jfc settings profile.
+ */
+
+@Name("ci553.happyshop.Search")
+@Label("Search")
+@Category({"HappyShop", "Customer"})
+@Description("A product search by product ID, or by ID or description")
+@Enabled(false)
+@StackTrace(false)
+public class SearchEvent extends jdk.jfr.Event {
+    @Label("Keyword")
+    @Description("The product ID or the word searched for")
+    public String keyword;
+
+    @Label("By ID")
+    @Description("True for a customer looking up one product by ID, false for a search by ID or description")
+    public boolean byId;
+
+    @Label("Result Count")
+    @Description("Number of products found (for a search by ID: 1 if it can be bought, otherwise 0)")
+    public int resultCount;
+}
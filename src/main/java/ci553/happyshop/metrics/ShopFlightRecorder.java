@@ -0,0 +1,62 @@
+package ci553.happyshop.metrics;
+
+import ci553.happyshop.catalogue.OrderLine;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.List;
+
+/**
+ * Helpers for the HappyShop Java Flight Recorder events
+ * (CheckoutEvent, SearchEvent, PurchaseStocksEvent, NewOrderEvent, OrderStateChangeEvent, OrderIdEvent).
+ *
+ * <p>The events are disabled by default and are enabled by the settings profile happyshop.jfc,
+ * shipped in src/main/resources. The profile also enables the JDK events needed to explain a slow checkout:
+ * garbage collection pauses, file reads/writes/forces, monitor contention, thread parking and CPU samples.
+ * Start a recording from the command line:
+ * <pre>
+ *  java -XX:StartFlightRecording:settings=src/main/resources/happyshop.jfc,filename=happyshop.jfr ...
+ * </pre>
+ * or from code with {@link #startRecording(Path)}. Open the .jfr file in JDK Mission Control,
+ * or print the events with "jfr print --events ci553.happyshop.Checkout happyshop.jfr".</p>
+ */
+
+public class ShopFlightRecorder {
+    public static final String SETTINGS_RESOURCE = "/happyshop.jfc";
+
+    /**
+     * Starts a recording with the happyshop.jfc profile. The recording is written to the destination
+     * when it is stopped (or when the JVM exits).
+     */
+    public static Recording startRecording(Path destination) throws IOException, ParseException {
+        try (InputStream in = ShopFlightRecorder.class.getResourceAsStream(SETTINGS_RESOURCE)) {
+            if (in == null) {
+                throw new IOException("JFR settings not found: " + SETTINGS_RESOURCE);
+            }
+            Configuration configuration = Configuration.create(new InputStreamReader(in, StandardCharsets.UTF_8));
+            Recording recording = new Recording(configuration);
+            recording.setDestination(destination);
+            recording.setToDisk(true);
+            recording.start();
+            return recording;
+        }
+    }
+
+    // Joins the product IDs of a list of order lines, eg. "0001,0004,0007", for the Products event field.
+    public static String productIds(List<OrderLine> orderLines) {
+        StringBuilder sb = new StringBuilder();
+        for (OrderLine line : orderLines) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(line.productId());
+        }
+        return sb.toString();
+    }
+}
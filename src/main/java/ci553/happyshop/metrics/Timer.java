@@ -0,0 +1,65 @@
+package ci553.happyshop.metrics;
+
+import ci553.happyshop.utility.LatencyHistogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A Timer measures how long an operation takes, how often it is called, and how often it fails.
+ * Latencies are recorded in microseconds in a LatencyHistogram, so percentiles can be reported.
+ *
+ * Usage:
+ * <pre>
+ *  long start = timer.start();
+ *  try {
+ *      ... the operation ...
+ *      timer.stop(start);
+ *  } catch (SQLException e) {
+ *      timer.stopWithError(start);
+ *      throw e;
+ *  }
+ * </pre>
+ * When metrics are disabled, start() returns 0 without reading the clock and stop() returns straight away,
+ * so an instrumented call costs one branch.
+ */
+
+public class Timer {
+    private final String name;
+    private final LatencyHistogram micros = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+
+    Timer(String name) {
+        this.name = name;
+    }
+
+    // Returns the start time to pass to stop(), or 0 when metrics are disabled.
+    public long start() {
+        return MetricsRegistry.isEnabled() ? System.nanoTime() : 0L;
+    }
+
+    // Records a successful call that started at the given time.
+    public void stop(long start) {
+        if (start != 0L) {
+            micros.record((System.nanoTime() - start) / 1000);
+        }
+    }
+
+    // Records a failed call that started at the given time.
+    public void stopWithError(long start) {
+        if (start != 0L) {
+            micros.record((System.nanoTime() - start) / 1000);
+            errors.increment();
+        }
+    }
+
+    public String getName() { return name; }
+    public long getCount() { return micros.getTotalCount(); }
+    public long getErrorCount() { return errors.sum(); }
+    public LatencyHistogram getHistogram() { return micros; }
+
+    // The fraction of calls that failed, between 0 and 1.
+    public double getErrorRate() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) getErrorCount() / count;
+    }
+}
@@ -1,5 +1,7 @@
 package ci553.happyshop.orderManagement;
 
+import ci553.happyshop.logging.ShopLogger;
+import ci553.happyshop.metrics.OrderIdEvent;
 import ci553.happyshop.utility.StorageLocation;
 
 import java.io.IOException;
@@ -31,9 +33,12 @@ import java.nio.channels.FileLock;
  */
 
 public class OrderCounter {
+    private static final ShopLogger log = ShopLogger.getLogger(OrderCounter.class);
 
     public static int generateOrderId() throws IOException {
         Path path = StorageLocation.orderCounterPath;
+        OrderIdEvent event = new OrderIdEvent(); // JFR event, includes the time waiting for the file lock
+        event.begin();
 
         // Lock and increment the ID
         try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
@@ -60,7 +65,9 @@ public class OrderCounter {
             //This wraps an existing byte array into a buffer — so you can write it with channel.write().
             channel.write(ByteBuffer.wrap(String.valueOf(newId).getBytes()));
 
-            System.out.println("OrderId was generated for now: " + newId);
+            log.debug("OrderId generated", "orderId", newId);
+            event.orderId = newId;
+            event.commit();
             return newId;
         }
     }
@@ -0,0 +1,51 @@
+package ci553.happyshop.orderManagement;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * An OrderEvent records a single change in the order lifecycle.
+ * Events are appended to the order event log by OrderEventLog, one line per event:
+ * <pre>
+ *  sequence|type|orderId|dateTime
+ *  eg. 42|OrderClaimed|17|2025-05-03 16:52:24
+ * </pre>
+ *
+ * @param sequence increasing number of the event in the log, starting at 1
+ * @param type     the kind of change (created, claimed, collected)
+ * @param orderId  the order the event belongs to
+ * @param dateTime when the change happened, in the same format as the order file timestamps
+ */
+
+public record OrderEvent(long sequence, OrderEventType type, int orderId, String dateTime) {
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    // Formats the event as one line of the event log (without the line break)
+    public String toLogLine() {
+        return sequence + "|" + type + "|" + orderId + "|" + dateTime;
+    }
+
+    /**
+     * Parses one line of the event log. Every field is checked, including the whole dateTime,
+     * so a line cut off anywhere is not taken for a valid event.
+     * @return the event, or null if the line is incomplete or not a valid event
+     */
+    public static OrderEvent fromLogLine(String line) {
+        String[] fields = line.split("\\|", -1);
+        if (fields.length != 4) {
+            return null;
+        }
+        try {
+            long sequence = Long.parseLong(fields[0]);
+            int orderId = Integer.parseInt(fields[2]);
+            if (sequence <= 0 || orderId <= 0) {
+                return null;
+            }
+            LocalDateTime.parse(fields[3], DATE_TIME_FORMAT); // only checking the format
+            return new OrderEvent(sequence, OrderEventType.valueOf(fields[1]), orderId, fields[3]);
+        } catch (IllegalArgumentException | DateTimeParseException e) { // also covers NumberFormatException
+            return null;
+        }
+    }
+}
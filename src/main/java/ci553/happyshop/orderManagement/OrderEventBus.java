@@ -0,0 +1,278 @@
+package ci553.happyshop.orderManagement;
+
+import ci553.happyshop.logging.ShopLogger;
+import ci553.happyshop.metrics.Counter;
+import ci553.happyshop.metrics.MetricsRegistry;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * OrderEventBus publishes the order changes of OrderHub to other processes over a local TCP socket,
+ * so order trackers (and other observers) can run as separate processes and one hub can serve many of them.
+ * The other side is OrderEventSubscriber.
+ *
+ * <p>Every published event gets a sequence number and is kept in a ring of the most recent
+ * {@link #replayCapacity} events. The protocol is one text line per message:
+ * <pre>
+ *  hub:        HELLO &lt;epoch&gt;
+ *  subscriber: SUBSCRIBE &lt;epoch&gt; &lt;lastSequence&gt;
+ *  hub:        EVENT 42|OrderClaimed|17|2025-05-03 16:52:24     one per event, see OrderEvent
+ *              SNAPSHOT &lt;sequence&gt;, then ORDER &lt;orderId&gt; &lt;state&gt; lines, then END
+ *              PING                                             when there was nothing to send for a while
+ * </pre>
+ * A subscriber that reconnects sends the last sequence number it has seen, and the hub replays the events after it.
+ * If those events are no longer in the ring, or the epoch is different (the hub was restarted and numbers
+ * its events from 1 again), the hub sends a snapshot of the whole order map instead and continues from there.</p>
+ *
+ * <p>publish() only stores the event and wakes the subscriber threads, it never writes to a socket,
+ * so a slow or disconnected subscriber cannot hold up checkouts or pickers.
+ * Each subscriber has its own virtual thread that sends the events from its own position in the ring.</p>
+ *
+ * <p>Publishing is switched on with orderEvents.publish=true in happyShop.properties (see StorageConfig),
+ * and the bus is started by OrderHub.initializeOrderMap().</p>
+ */
+
+public class OrderEventBus {
+    private static final ShopLogger log = ShopLogger.getLogger(OrderEventBus.class);
+
+    // Settings, read from happyShop.properties by StorageConfig
+    public static boolean publish = false;
+    public static String host = "localhost"; // the address to listen on, eg. 0.0.0.0 for all network interfaces
+    public static int port = 5570;
+    public static int replayCapacity = 10_000; // number of recent events kept for replay
+
+    public static final int HEARTBEAT_MILLIS = 5000; // a PING is sent when nothing else was sent for this long
+
+    private static final Counter publishedCounter = MetricsRegistry.counter("orderEvents.published");
+    private static final Counter snapshotCounter = MetricsRegistry.counter("orderEvents.snapshotsSent");
+
+    /**
+     * The order map at a sequence number, supplied by OrderHub when a subscriber needs a snapshot.
+     * OrderHub publishes while holding its lock, so reading the map and lastSequence() under the
+     * same lock gives a map that contains exactly the events up to that sequence number.
+     */
+    public record Snapshot(long sequence, TreeMap<Integer, OrderState> orderMap) {}
+
+    private final Supplier<Snapshot> snapshotSource;
+    private final long epoch = System.currentTimeMillis(); // identifies this run of the hub
+
+    // The ring of recent events, guarded by lock; the event with sequence s is at ring[s % ring.length]
+    private final OrderEvent[] ring = new OrderEvent[replayCapacity];
+    private long lastSequence = 0;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition newEvents = lock.newCondition();
+
+    private ServerSocket serverSocket;
+    private final Set<Socket> subscribers = ConcurrentHashMap.newKeySet();
+
+    public OrderEventBus(Supplier<Snapshot> snapshotSource) {
+        this.snapshotSource = snapshotSource;
+    }
+
+    // Starts listening for subscribers on host:port
+    public synchronized void start() throws IOException {
+        if (serverSocket != null) {
+            return; // already running
+        }
+        serverSocket = new ServerSocket(port, 50, InetAddress.getByName(host));
+        Thread.ofVirtual().name("order-event-bus").start(this::acceptSubscribers);
+        log.info("Order event bus started", "host", host, "port", port);
+    }
+
+    // Stops listening and disconnects all subscribers; they keep trying to reconnect
+    public synchronized void stop() {
+        if (serverSocket == null) {
+            return;
+        }
+        closeQuietly(serverSocket);
+        for (Socket subscriber : subscribers) {
+            closeQuietly(subscriber);
+        }
+        serverSocket = null;
+        log.info("Order event bus stopped");
+    }
+
+    /**
+     * Adds an event to the ring and wakes the subscriber threads.
+     * @return the event with its sequence number
+     */
+    public OrderEvent publish(OrderEventType type, int orderId, String dateTime) {
+        lock.lock();
+        try {
+            OrderEvent event = new OrderEvent(lastSequence + 1, type, orderId, dateTime);
+            ring[(int) (event.sequence() % ring.length)] = event;
+            lastSequence = event.sequence();
+            newEvents.signalAll();
+            publishedCounter.increment();
+            return event;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The sequence number of the last published event, 0 if none
+    public long lastSequence() {
+        lock.lock();
+        try {
+            return lastSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    // Accepts subscribers until the server socket is closed, one virtual thread each
+    private void acceptSubscribers() {
+        ServerSocket listening = serverSocket;
+        while (!listening.isClosed()) {
+            try {
+                Socket socket = listening.accept();
+                subscribers.add(socket);
+                Thread.ofVirtual().name("order-event-subscriber-" + socket.getPort())
+                        .start(() -> serveSubscriber(socket));
+            } catch (IOException e) {
+                if (!listening.isClosed()) {
+                    log.warn("Error accepting an order event subscriber", e);
+                }
+            }
+        }
+    }
+
+    // Sends the replay or snapshot and then the live events to one subscriber, until it disconnects
+    private void serveSubscriber(Socket socket) {
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            writeLine(out, "HELLO " + epoch);
+            out.flush();
+
+            long position = readSubscribe(in.readLine());
+            log.info("Order event subscriber connected", "address", socket.getRemoteSocketAddress(),
+                    "lastSequence", position);
+            if (position < 0) {
+                position = sendSnapshot(out);
+                out.flush();
+            }
+
+            List<OrderEvent> batch = new ArrayList<>();
+            while (true) {
+                if (!eventsAfter(position, batch)) {
+                    position = sendSnapshot(out); // fell too far behind, the events are no longer in the ring
+                } else if (batch.isEmpty()) {
+                    writeLine(out, "PING");
+                } else {
+                    for (OrderEvent event : batch) {
+                        writeLine(out, "EVENT " + event.toLogLine());
+                    }
+                    position = batch.get(batch.size() - 1).sequence();
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            log.info("Order event subscriber disconnected", "address", socket.getRemoteSocketAddress());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            subscribers.remove(socket);
+        }
+    }
+
+    /**
+     * Reads "SUBSCRIBE epoch lastSequence".
+     * @return the sequence number to replay from, or -1 if the subscriber needs a snapshot
+     */
+    private long readSubscribe(String line) throws IOException {
+        String[] fields = line == null ? new String[0] : line.split(" ");
+        if (fields.length != 3 || !fields[0].equals("SUBSCRIBE")) {
+            throw new IOException("Expected SUBSCRIBE, got " + line);
+        }
+        try {
+            long subscriberEpoch = Long.parseLong(fields[1]);
+            long subscriberSequence = Long.parseLong(fields[2]);
+            return subscriberEpoch == epoch && canReplayFrom(subscriberSequence) ? subscriberSequence : -1;
+        } catch (NumberFormatException e) {
+            throw new IOException("Expected SUBSCRIBE, got " + line);
+        }
+    }
+
+    // True if all events after the given sequence number are still in the ring
+    private boolean canReplayFrom(long sequence) {
+        lock.lock();
+        try {
+            return sequence <= lastSequence && sequence >= lastSequence - ring.length;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits up to HEARTBEAT_MILLIS for events after the given sequence number and copies them into batch.
+     * @return false if the events are no longer in the ring (the caller sends a snapshot instead)
+     */
+    private boolean eventsAfter(long sequence, List<OrderEvent> batch) throws InterruptedException {
+        batch.clear();
+        lock.lock();
+        try {
+            long nanos = TimeUnit.MILLISECONDS.toNanos(HEARTBEAT_MILLIS);
+            while (lastSequence == sequence && nanos > 0) {
+                nanos = newEvents.awaitNanos(nanos);
+            }
+            if (sequence < lastSequence - ring.length) {
+                return false;
+            }
+            for (long s = sequence + 1; s <= lastSequence; s++) {
+                batch.add(ring[(int) (s % ring.length)]);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Sends the whole order map and returns the sequence number it is at
+    private long sendSnapshot(BufferedWriter out) throws IOException {
+        Snapshot snapshot = snapshotSource.get();
+        writeLine(out, "SNAPSHOT " + snapshot.sequence());
+        for (Map.Entry<Integer, OrderState> entry : snapshot.orderMap().entrySet()) {
+            writeLine(out, "ORDER " + entry.getKey() + " " + entry.getValue());
+        }
+        writeLine(out, "END");
+        snapshotCounter.increment();
+        return snapshot.sequence();
+    }
+
+    private static void writeLine(BufferedWriter out, String line) throws IOException {
+        out.write(line);
+        out.write('\n');
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            // already closed or broken, nothing more to do
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package ci553.happyshop.orderManagement;
+
+import ci553.happyshop.logging.ShopLogger;
+import ci553.happyshop.utility.LogFileRecovery;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * OrderEventLog persists the order lifecycle of OrderHub as an append-only event log,
+ * and periodically writes a snapshot of the order map so recovery does not depend on the size of the history.
+ *
+ * <p>Two files are used (see StorageLocation):
+ * <pre>
+ *  orders/orderEvents.log     one line per event, eg. "42|OrderClaimed|17|2025-05-03 16:52:24"
+ *  orders/orderSnapshot.txt   the order map at a point in the log, eg.
+ *                               sequence: 40
+ *                               offset: 1520
+ *                               12,Ordered
+ *                               17,Progressing
+ * </pre>
+ * The snapshot records the sequence number of the last event it includes and the byte offset in the log
+ * just after that event. Recovery loads the snapshot and then replays only the log tail from that offset,
+ * so its cost is bounded by the number of events since the last snapshot, not by the whole history.
+ * The full log is kept as an audit trail of every order state change.</p>
+ *
+ * <p>Every event is forced to disk before OrderHub carries on. An event is only logged once the order file
+ * has been written or changed, so the log never records an order, claim or collection that did not happen
+ * (eg. an order whose file could not be written, which no picker could ever claim).</p>
+ */
+
+public class OrderEventLog {
+    private static final ShopLogger log = ShopLogger.getLogger(OrderEventLog.class);
+
+    // Take a snapshot after this many events, in addition to the periodic snapshot
+    public static final int SNAPSHOT_EVERY_EVENTS = 1000;
+
+    private final Path logPath;
+    private final Path snapshotPath;
+    private FileChannel logChannel; // kept open for appending
+    private long lastSequence = 0;  // sequence number of the last event in the log
+    private int eventsSinceSnapshot = 0;
+
+    /**
+     * A position in the event log: the last event sequence number and the byte offset after it.
+     * Captured together with a copy of the order map so a snapshot is consistent with the log.
+     */
+    public record LogPosition(long sequence, long offset) {}
+
+    public OrderEventLog(Path logPath, Path snapshotPath) {
+        this.logPath = logPath;
+        this.snapshotPath = snapshotPath;
+    }
+
+    // Returns true if a snapshot or an event log already exists, ie. the order map can be recovered from them
+    public boolean exists() {
+        return Files.exists(snapshotPath) || Files.exists(logPath);
+    }
+
+    /**
+     * Appends a new event to the log, forces it to disk and returns it with its sequence number.
+     */
+    public synchronized OrderEvent append(OrderEventType type, int orderId, String dateTime) throws IOException {
+        OrderEvent event = new OrderEvent(lastSequence + 1, type, orderId, dateTime);
+        ByteBuffer line = ByteBuffer.wrap((event.toLogLine() + "\n").getBytes(StandardCharsets.UTF_8));
+        FileChannel channel = openLog();
+        while (line.hasRemaining()) {
+            channel.write(line);
+        }
+        channel.force(false); // durable before the order change goes ahead
+        lastSequence = event.sequence();
+        eventsSinceSnapshot++;
+        return event;
+    }
+
+    // Returns true once enough events have been appended since the last snapshot
+    public synchronized boolean isSnapshotDue() {
+        return eventsSinceSnapshot >= SNAPSHOT_EVERY_EVENTS;
+    }
+
+    // Returns true if any event was appended since the last snapshot
+    public synchronized boolean hasEventsSinceSnapshot() {
+        return eventsSinceSnapshot > 0;
+    }
+
+    // The current end of the log. Call it while no events are appended, eg. while holding the OrderHub lock.
+    public synchronized LogPosition currentPosition() throws IOException {
+        return new LogPosition(lastSequence, openLog().size());
+    }
+
+    /**
+     * Writes a snapshot of the order map at the given log position.
+     * The snapshot is written to a temp file first and then moved over the old one,
+     * so a crash while writing never leaves a half-written snapshot behind.
+     */
+    public void writeSnapshot(TreeMap<Integer, OrderState> orderMap, LogPosition position) throws IOException {
+        Path tempPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+            writer.write("sequence: " + position.sequence());
+            writer.newLine();
+            writer.write("offset: " + position.offset());
+            writer.newLine();
+            for (Map.Entry<Integer, OrderState> entry : orderMap.entrySet()) {
+                writer.write(entry.getKey() + "," + entry.getValue());
+                writer.newLine();
+            }
+        }
+        Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        synchronized (this) {
+            eventsSinceSnapshot = (int) Math.max(0, lastSequence - position.sequence());
+        }
+        log.info("Order snapshot written", "sequence", position.sequence(), "orders", orderMap.size());
+    }
+
+    /**
+     * Rebuilds the order map from the latest snapshot plus the events appended after it.
+     * Only orders that are not collected yet are kept, the same as loading them from the order folders.
+     * The log is read with LogFileRecovery: a last event without its newline was cut off while it was written,
+     * and is removed from the log. A damaged event in the middle is not skipped, as the order map would be wrong:
+     * the rest of the log is copied to a quarantine file and a DamagedLogException is thrown (the log is kept).
+     *
+     * @return the recovered order map
+     * @throws LogFileRecovery.DamagedLogException if an event in the middle of the log cannot be read
+     */
+    public synchronized TreeMap<Integer, OrderState> recover() throws IOException {
+        TreeMap<Integer, OrderState> orderMap = new TreeMap<>();
+        long snapshotSequence = 0;
+        long offset = 0;
+
+        if (Files.exists(snapshotPath)) {
+            try (BufferedReader reader = Files.newBufferedReader(snapshotPath, StandardCharsets.UTF_8)) {
+                snapshotSequence = Long.parseLong(reader.readLine().substring("sequence: ".length()).trim());
+                offset = Long.parseLong(reader.readLine().substring("offset: ".length()).trim());
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split(",");
+                    orderMap.put(Integer.parseInt(fields[0]), OrderState.valueOf(fields[1]));
+                }
+            }
+        }
+
+        FileChannel channel = openLog();
+        if (offset > channel.size()) {
+            // The log is shorter than the snapshot expects (eg. it was replaced), replay it from the start
+            log.warn("Order event log is shorter than the snapshot offset, replaying the whole log", "offset", offset);
+            orderMap.clear();
+            snapshotSequence = 0;
+            offset = 0;
+        }
+
+        lastSequence = snapshotSequence;
+        eventsSinceSnapshot = 0;
+        LogFileRecovery.Result result = LogFileRecovery.replay(channel, offset, logPath, line -> {
+            OrderEvent event = OrderEvent.fromLogLine(line);
+            if (event == null) {
+                return false; // damaged event
+            }
+            if (event.sequence() > lastSequence) {
+                apply(orderMap, event);
+                lastSequence = event.sequence();
+                eventsSinceSnapshot++;
+            }
+            return true;
+        });
+        if (result.tornBytes() > 0) {
+            log.warn("Order event log ended with an incomplete event, cut off", "bytes", result.tornBytes());
+        }
+        log.info("Order map recovered", "snapshotSequence", snapshotSequence, "replayedEvents", eventsSinceSnapshot,
+                "orders", orderMap.size());
+        return orderMap;
+    }
+
+    // Applies one event to the order map. Collected orders are dropped, as they are no longer active.
+    private static void apply(TreeMap<Integer, OrderState> orderMap, OrderEvent event) {
+        if (event.type() == OrderEventType.OrderCollected) {
+            orderMap.remove(event.orderId());
+        } else {
+            orderMap.put(event.orderId(), event.type().resultingState());
+        }
+    }
+
+    private FileChannel openLog() throws IOException {
+        if (logChannel == null || !logChannel.isOpen()) {
+            logChannel = FileChannel.open(logPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            logChannel.position(logChannel.size()); // append at the end of the log
+        }
+        return logChannel;
+    }
+}
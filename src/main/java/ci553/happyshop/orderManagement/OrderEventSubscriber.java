@@ -0,0 +1,286 @@
+package ci553.happyshop.orderManagement;
+
+import ci553.happyshop.logging.ShopLogger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * OrderEventSubscriber receives the order changes published by the OrderEventBus of another process
+ * and keeps its own copy of the hub's order map, so an order tracker can run without an OrderHub of its own.
+ *
+ * <p>Listeners are given a copy of the order map whenever it changes, like OrderHub does for OrderTrackers.
+ * Listeners are called on the subscriber thread, so JavaFX windows must use Platform.runLater().</p>
+ *
+ * <p>If the connection is lost (or the hub is not running yet), the subscriber keeps reconnecting,
+ * waiting a little longer after each failed attempt. It remembers the sequence number of the last event it applied,
+ * so after reconnecting the hub only sends what was missed (or a snapshot, see OrderEventBus).</p>
+ *
+ * <p>Collected orders are removed from the copy 10 seconds after they were collected, the same as OrderHub does.</p>
+ *
+ * <p>Can also be run on its own to print the order map of a hub, eg.
+ * <pre>
+ *  java -p target/classes:&lt;dependencies&gt; -m ci553.happyshop/ci553.happyshop.orderManagement.OrderEventSubscriber localhost:5570
+ * </pre></p>
+ */
+
+public class OrderEventSubscriber {
+    private static final ShopLogger log = ShopLogger.getLogger(OrderEventSubscriber.class);
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+    private static final int MIN_RECONNECT_MILLIS = 100;
+    private static final int MAX_RECONNECT_MILLIS = 5000;
+    // The hub sends a PING at least every HEARTBEAT_MILLIS, so a longer silence means the connection is broken
+    private static final int READ_TIMEOUT_MILLIS = 3 * OrderEventBus.HEARTBEAT_MILLIS;
+    private static final int COLLECTED_DISPLAY_SECONDS = 10;
+
+    private final String host;
+    private final int port;
+    private final List<Consumer<TreeMap<Integer, OrderState>>> listeners = new CopyOnWriteArrayList<>();
+
+    // The copy of the hub's order map, and where it is in the hub's event stream; guarded by this
+    private final TreeMap<Integer, OrderState> orderMap = new TreeMap<>();
+    private long epoch = 0;        // the run of the hub the sequence number belongs to, 0 before the first snapshot
+    private long lastSequence = 0; // the last event applied to orderMap
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "order-event-subscriber-cleanup");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile boolean running = false;
+    private volatile Socket socket;
+    private Thread thread;
+
+    public OrderEventSubscriber(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    // Creates a subscriber from "host:port", eg. "localhost:5570"
+    public static OrderEventSubscriber forAddress(String address) {
+        int colon = address.lastIndexOf(':');
+        if (colon < 0) {
+            return new OrderEventSubscriber(address, OrderEventBus.port);
+        }
+        return new OrderEventSubscriber(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+    }
+
+    // Adds a listener, called with a copy of the order map whenever it changes
+    public void addListener(Consumer<TreeMap<Integer, OrderState>> listener) {
+        listeners.add(listener);
+    }
+
+    // Starts connecting to the hub in the background
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::run, "order-event-subscriber");
+        thread.setDaemon(true); // does not keep the application running
+        thread.start();
+    }
+
+    // Disconnects and stops reconnecting
+    public synchronized void stop() {
+        running = false;
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+        scheduler.shutdownNow();
+    }
+
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    public synchronized TreeMap<Integer, OrderState> getOrderMap() {
+        return new TreeMap<>(orderMap);
+    }
+
+    // Connects, receives events until the connection breaks, and reconnects with a growing delay
+    private void run() {
+        int delay = MIN_RECONNECT_MILLIS;
+        while (running) {
+            try (Socket connection = new Socket()) {
+                socket = connection;
+                connection.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+                connection.setSoTimeout(READ_TIMEOUT_MILLIS);
+                delay = MIN_RECONNECT_MILLIS; // connected, so the next failure starts with a short delay again
+                receive(connection);
+            } catch (IOException e) {
+                if (running) {
+                    log.warn("Order event bus connection lost, reconnecting", "host", host, "port", port,
+                            "error", e.getMessage(), "retryMillis", delay);
+                }
+            }
+            if (!running) {
+                break;
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                break;
+            }
+            delay = Math.min(delay * 2, MAX_RECONNECT_MILLIS);
+        }
+    }
+
+    // Subscribes from the last applied event and applies what the hub sends
+    private void receive(Socket connection) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+        BufferedWriter out = new BufferedWriter(new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8));
+
+        String hello = in.readLine();
+        if (hello == null || !hello.startsWith("HELLO ")) {
+            throw new IOException("Expected HELLO, got " + hello);
+        }
+        long hubEpoch = parseLong(hello.substring(6), hello);
+        synchronized (this) {
+            out.write("SUBSCRIBE " + epoch + " " + lastSequence + "\n");
+        }
+        out.flush();
+        log.info("Subscribed to order events", "host", host, "port", port, "lastSequence", getLastSequence());
+
+        boolean changed = false;
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.startsWith("EVENT ")) {
+                OrderEvent event = OrderEvent.fromLogLine(line.substring(6));
+                if (event == null) {
+                    throw new IOException("Invalid event: " + line);
+                }
+                changed |= apply(event);
+            } else if (line.startsWith("SNAPSHOT ")) {
+                applySnapshot(hubEpoch, parseLong(line.substring(9), line), in);
+                changed = true;
+            } else if (!line.equals("PING")) {
+                throw new IOException("Unexpected message: " + line);
+            }
+            // Tell the listeners once the lines that arrived together are applied, not after each line of a replay
+            if (changed && !in.ready()) {
+                notifyListeners();
+                changed = false;
+            }
+        }
+        throw new IOException("Hub closed the connection");
+    }
+
+    // Applies the next event; an event that was already applied is skipped, a missing event breaks the connection
+    private boolean apply(OrderEvent event) throws IOException {
+        synchronized (this) {
+            if (event.sequence() <= lastSequence) {
+                return false; // already applied
+            }
+            if (event.sequence() != lastSequence + 1) {
+                throw new IOException("Missed order events " + (lastSequence + 1) + " to " + (event.sequence() - 1));
+            }
+            OrderState state = event.type().resultingState();
+            orderMap.put(event.orderId(), state);
+            lastSequence = event.sequence();
+        }
+        if (event.type() == OrderEventType.OrderCollected) {
+            removeCollectedOrderLater(event.orderId());
+        }
+        return true;
+    }
+
+    // Replaces the copy of the order map with the hub's, ending with an END line
+    private void applySnapshot(long hubEpoch, long sequence, BufferedReader in) throws IOException {
+        TreeMap<Integer, OrderState> snapshot = new TreeMap<>();
+        String line;
+        while (!"END".equals(line = in.readLine())) {
+            if (line == null) {
+                throw new IOException("Hub closed the connection during a snapshot");
+            }
+            String[] fields = line.split(" ");
+            if (fields.length != 3 || !fields[0].equals("ORDER")) {
+                throw new IOException("Unexpected snapshot line: " + line);
+            }
+            try {
+                snapshot.put(Integer.parseInt(fields[1]), OrderState.valueOf(fields[2]));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Unexpected snapshot line: " + line);
+            }
+        }
+        synchronized (this) {
+            orderMap.clear();
+            orderMap.putAll(snapshot);
+            epoch = hubEpoch;
+            lastSequence = sequence;
+        }
+        for (Map.Entry<Integer, OrderState> entry : snapshot.entrySet()) {
+            if (entry.getValue() == OrderState.Collected) {
+                removeCollectedOrderLater(entry.getKey());
+            }
+        }
+        log.info("Order map snapshot received", "sequence", sequence, "orders", snapshot.size());
+    }
+
+    // Removes a collected order from the copy after a few seconds, unless its state changed again
+    private void removeCollectedOrderLater(int orderId) {
+        if (!running) {
+            return;
+        }
+        scheduler.schedule(() -> {
+            boolean removed;
+            synchronized (this) {
+                removed = orderMap.remove(orderId, OrderState.Collected);
+            }
+            if (removed) {
+                notifyListeners();
+            }
+        }, COLLECTED_DISPLAY_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private void notifyListeners() {
+        TreeMap<Integer, OrderState> copy = getOrderMap();
+        for (Consumer<TreeMap<Integer, OrderState>> listener : listeners) {
+            listener.accept(copy);
+        }
+    }
+
+    private static long parseLong(String text, String line) throws IOException {
+        try {
+            return Long.parseLong(text.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid message: " + line);
+        }
+    }
+
+    /**
+     * Prints the order map of a hub whenever it changes.
+     * @param args the hub address, eg. localhost:5570 (default: orderEvents.host and orderEvents.port)
+     */
+    public static void main(String[] args) throws Exception {
+        OrderEventSubscriber subscriber = args.length > 0
+                ? forAddress(args[0])
+                : new OrderEventSubscriber(OrderEventBus.host, OrderEventBus.port);
+        subscriber.addListener(orderMap -> System.out.println(subscriber.getLastSequence() + " " + orderMap));
+        subscriber.start();
+        Thread.currentThread().join(); // runs until stopped with Ctrl+C
+    }
+}
@@ -0,0 +1,39 @@
+package ci553.happyshop.orderManagement;
+
+/**
+ * Represents the type of an event in the order lifecycle, as recorded by OrderEventLog.
+ *
+ * - OrderCreated: A customer checked out and a new order was placed (state becomes Ordered).
+ * - OrderClaimed: A picker claimed the order and started preparing it (state becomes Progressing).
+ * - OrderCollected: The customer collected the order (state becomes Collected).
+ */
+
+public enum OrderEventType {
+    OrderCreated,
+    OrderClaimed,
+    OrderCollected;
+
+    // The state an order is in after this event
+    public OrderState resultingState() {
+        switch (this) {
+            case OrderClaimed:
+                return OrderState.Progressing;
+            case OrderCollected:
+                return OrderState.Collected;
+            default:
+                return OrderState.Ordered;
+        }
+    }
+
+    // The event that moves an order into the given state
+    public static OrderEventType forState(OrderState state) {
+        switch (state) {
+            case Progressing:
+                return OrderClaimed;
+            case Collected:
+                return OrderCollected;
+            default:
+                return OrderCreated;
+        }
+    }
+}
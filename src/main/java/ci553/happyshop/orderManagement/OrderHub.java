@@ -1,10 +1,20 @@
 package ci553.happyshop.orderManagement;
 
 import ci553.happyshop.catalogue.Order;
-import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.catalogue.OrderLine;
 import ci553.happyshop.client.orderTracker.OrderTracker;
 import ci553.happyshop.client.picker.PickerModel;
+import ci553.happyshop.logging.ShopLogger;
+import ci553.happyshop.metrics.MetricsRegistry;
+import ci553.happyshop.metrics.NewOrderEvent;
+import ci553.happyshop.metrics.OrderStateChangeEvent;
+import ci553.happyshop.metrics.ShopFlightRecorder;
+import ci553.happyshop.metrics.Timer;
+import ci553.happyshop.service.PickingService;
 import ci553.happyshop.storageAccess.OrderFileManager;
+import ci553.happyshop.storageAccess.OrderStateIndex;
+import ci553.happyshop.storageAccess.OrderStorageMode;
+import ci553.happyshop.utility.ProductListFormatter;
 import ci553.happyshop.utility.StorageLocation;
 
 import java.io.IOException;
@@ -33,19 +43,27 @@ import java.util.stream.Stream;
  *   Delegating file-related operations (e.g., updating state and moving files) to OrderFileManager class
  *   Loading orders in the "ordered" and "progressing" states from storage during system startup
  *
+ * <p> When event sourcing is enabled, every change (OrderCreated, OrderClaimed, OrderCollected) is also appended
+ * to an event log, and the order map is snapshotted periodically. At startup the order map is then recovered
+ * from the latest snapshot plus the log tail instead of listing the order folders (see OrderEventLog).</p>
+ *
  * <p> OrderHub also follows the Observer pattern: it notifies registered observers such as OrderTracker
- * and PickerModel whenever the order data changes, keeping the UI and business logic in sync.</p>
+ * and PickerModel whenever the order data changes, keeping the UI and business logic in sync.
+ * With OrderEventBus.publish enabled, the changes are also published to observers in other processes
+ * (see OrderEventBus and OrderEventSubscriber).</p>
  *
  * <p>As the heart of the ordering system, OrderHub connects customers, pickers, and tracker,
  * managementing logic into a unified workflow.</p>
  */
 
 public class OrderHub  {
+    private static final ShopLogger log = ShopLogger.getLogger(OrderHub.class);
     private static OrderHub orderHub; //singleton instance
 
     private final Path orderedPath = StorageLocation.orderedPath;
     private final Path progressingPath = StorageLocation.progressingPath;
     private final Path collectedPath = StorageLocation.collectedPath;
+    private final Path orderRecordsPath = StorageLocation.orderRecordsPath; // used in InPlace storage mode only
 
     private TreeMap<Integer,OrderState> orderMap = new TreeMap<>();
     private TreeMap<Integer,OrderState> OrderedOrderMap = new TreeMap<>();
@@ -64,34 +82,102 @@ public class OrderHub  {
 
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
 
+    // Event sourcing: true to log order events and recover the order map from snapshot + log,
+    // read from happyShop.properties (orders.eventSourcing) by StorageConfig
+    public static boolean eventSourcing = false;
+    public static final int SNAPSHOT_INTERVAL_SECONDS = 60; // periodic snapshot of the order map
+    private final OrderEventLog eventLog =
+            new OrderEventLog(StorageLocation.orderEventLogPath, StorageLocation.orderSnapshotPath);
+
+    // Publishes order changes to other processes, null unless OrderEventBus.publish is enabled
+    private OrderEventBus eventBus;
+
+    // Time and state index over all orders, kept up to date with every new order and state change
+    private final OrderQueryService queryService = OrderQueryService.getOrderQueryService();
+
+    // Latency histograms of the order lifecycle (time to claim, time to collect, end-to-end)
+    private final OrderLifecycleMetrics lifecycleMetrics = new OrderLifecycleMetrics();
+    public static final int METRICS_DUMP_INTERVAL_MINUTES = 5; // periodic dump of the lifecycle metrics
+
+    // Hot-path timers, only measuring when metrics are enabled (see MetricsRegistry)
+    private static final Timer newOrderTimer = MetricsRegistry.timer("order.newOrder");
+    private static final Timer generateOrderIdTimer = MetricsRegistry.timer("order.generateOrderId");
+    private static final Timer changeOrderStateTimer = MetricsRegistry.timer("order.changeOrderState");
+
     //Singleton pattern
     private OrderHub() {}
-    public static OrderHub getOrderHub() {
+    public static synchronized OrderHub getOrderHub() { // synchronized: pickers and customers may call it at once
         if (orderHub == null)
             orderHub = new OrderHub();
             return orderHub;
     }
 
-    //Creates a new order using the provided list of products.
+    //Creates a new order using the provided order lines (the trolley).
     //and also notify picker and orderTracker
-    public Order newOrder(ArrayList<Product> trolley) throws IOException, SQLException {
-        int orderId = OrderCounter.generateOrderId(); //get unique orderId
+    public synchronized Order newOrder(List<OrderLine> trolley) throws IOException, SQLException {
+        long start = newOrderTimer.start();
+        NewOrderEvent event = new NewOrderEvent(); // JFR event, only recorded when enabled
+        event.begin();
+        try {
+            Order theOrder = createOrder(trolley);
+            newOrderTimer.stop(start);
+            event.orderId = theOrder.getOrderId();
+            event.lineCount = trolley.size();
+            if (event.shouldCommit()) {
+                event.products = ShopFlightRecorder.productIds(trolley);
+            }
+            event.commit();
+            return theOrder;
+        } catch (IOException | RuntimeException e) {
+            newOrderTimer.stopWithError(start);
+            throw e;
+        }
+    }
+
+    // Does the work of newOrder(): generates the orderId, writes the order file and updates the orderMap
+    private Order createOrder(List<OrderLine> trolley) throws IOException {
+        int orderId = generateOrderId(); //get unique orderId
+        long orderedMillis = System.currentTimeMillis(); //exact time for the latency metrics, the file only keeps seconds
         String orderedDateTime = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
         //make an Order Object: id, Ordered_state, orderedDateTime, and productsList(trolley)
         Order theOrder = new Order(orderId,OrderState.Ordered,orderedDateTime,trolley);
 
-        //write order details to file for the orderId in orderedPath (ie. orders/ordered)
-        String orderDetail = theOrder.orderDetails();
-        Path path = orderedPath;
-        OrderFileManager.createOrderFile(path, orderId, orderDetail);
+        if (isInPlaceStorage()) {
+            //write the order record to orders/records and record its state in the state index
+            OrderFileManager.createOrderRecord(orderRecordsPath, orderId, theOrder.getState(),
+                    orderedDateTime, ProductListFormatter.buildString(theOrder.getOrderLines()));
+            OrderStateIndex.setState(orderId, theOrder.getState());
+        } else {
+            //write order details to file for the orderId in orderedPath (ie. orders/ordered)
+            String orderDetail = theOrder.orderDetails();
+            Path path = orderedPath;
+            OrderFileManager.createOrderFile(path, orderId, orderDetail);
+        }
+        // logged once the order file exists, so the log never has an order that pickers cannot claim
+        logEvent(OrderEventType.OrderCreated, orderId, orderedDateTime);
 
         orderMap.put(orderId, theOrder.getState()); //add the order to orderMap,state is Ordered initially
+        queryService.orderCreated(orderId, orderedMillis);
         notifyOrderTrackers(); //notify OrderTrackers
         notifyPickerModels();//notify pickers
-        
+        publishEvent(OrderEventType.OrderCreated, orderId, orderedDateTime); //notify other processes
+
         return theOrder;
     }
 
+    // Generates the next orderId through OrderCounter, timing the file-locked counter update
+    private int generateOrderId() throws IOException {
+        long start = generateOrderIdTimer.start();
+        try {
+            int orderId = OrderCounter.generateOrderId();
+            generateOrderIdTimer.stop(start);
+            return orderId;
+        } catch (IOException | RuntimeException e) {
+            generateOrderIdTimer.stopWithError(start);
+            throw e;
+        }
+    }
+
     //Registers an OrderTracker to receive updates about changes.
     public void registerOrderTracker(OrderTracker orderTracker){
         orderTrackerList.add(orderTracker);
@@ -115,6 +201,7 @@ public class OrderHub  {
         OrderedOrderMap = filterOrdersByState(OrderState.Ordered);
         orderMapForPicker.putAll(progressingOrderMap);
         orderMapForPicker.putAll(OrderedOrderMap);
+        PickingService.getPickingService().setPickableOrders(orderMapForPicker); // hands out the orders to pickers
         for(PickerModel pickerModel : pickerModelList){
             pickerModel.setOrderMap(orderMapForPicker);
         }
@@ -133,26 +220,93 @@ public class OrderHub  {
     }
 
     //Changes the state of the specified order, updates its file, and moves it to the appropriate folder.
-    //trigger by PickerModel
-    public void changeOrderStateMoveFile(int orderId, OrderState newState) throws IOException {
-        if(orderMap.containsKey(orderId) && !orderMap.get(orderId).equals(newState))
-        {
-            //change orderState in OrderMap, notify OrderTrackers and pickers
-            orderMap.put(orderId, newState);
-            notifyOrderTrackers();
-            notifyPickerModels();
+    //Only Ordered -> Progressing and Progressing -> Collected are allowed.
+    //Returns false (and changes nothing) if the order is not in the state before newState,
+    //or if its order file could not be found.
+    public synchronized boolean changeOrderStateMoveFile(int orderId, OrderState newState) throws IOException {
+        long start = changeOrderStateTimer.start();
+        OrderStateChangeEvent event = new OrderStateChangeEvent(); // JFR event, only recorded when enabled
+        event.begin();
+        try {
+            boolean changed = updateOrderState(orderId, newState);
+            changeOrderStateTimer.stop(start);
+            if (changed) {
+                event.orderId = orderId;
+                event.newState = newState.name();
+                event.commit();
+            }
+            return changed;
+        } catch (IOException | RuntimeException e) {
+            changeOrderStateTimer.stopWithError(start);
+            throw e;
+        }
+    }
 
-            //change orderState in order file and move the file to new state folder
-            switch(newState){
-                case OrderState.Progressing:
-                    OrderFileManager.updateAndMoveOrderFile(orderId, newState,orderedPath,progressingPath);
-                    break;
-                case OrderState.Collected:
-                    OrderFileManager.updateAndMoveOrderFile(orderId, newState,progressingPath,collectedPath);
-                    removeCollectedOrder(orderId); //Scheduled removal
-                    break;
+    /**
+     * Claims the first order in the Ordered state (lowest order ID) and moves it to Progressing.
+     * Finding the order and changing its state happen under the OrderHub lock, so two pickers
+     * can never claim the same order, and a collected order can never be claimed again.
+     * @return the claimed order ID, or -1 if no order is waiting
+     */
+    public synchronized int claimNextOrder() throws IOException {
+        for (int orderId : filterOrdersByState(OrderState.Ordered).keySet()) {
+            if (changeOrderStateMoveFile(orderId, OrderState.Progressing)) {
+                return orderId;
+            }
+            // the order file is missing, the order stays Ordered and the next one is tried
+        }
+        return -1;
+    }
+
+    // The only state changes an order can make: Ordered -> Progressing -> Collected
+    private static boolean isAllowedTransition(OrderState oldState, OrderState newState) {
+        return (oldState == OrderState.Ordered && newState == OrderState.Progressing)
+                || (oldState == OrderState.Progressing && newState == OrderState.Collected);
+    }
+
+    // Does the work of changeOrderStateMoveFile().
+    // The order file is changed first; the event log, orderMap and observers are only updated
+    // once that has succeeded, so a failed move never leaves the orderMap out of step with the files.
+    private boolean updateOrderState(int orderId, OrderState newState) throws IOException {
+        OrderState oldState = orderMap.get(orderId);
+        if (!isAllowedTransition(oldState, newState)) {
+            log.debug("Order state change ignored", "orderId", orderId, "from", oldState, "to", newState);
+            return false;
+        }
+
+        boolean fileChanged;
+        if (isInPlaceStorage()) {
+            //overwrite the state and timestamp in the order record, and update the state index
+            fileChanged = OrderFileManager.updateOrderRecordInPlace(orderRecordsPath, orderId, newState);
+            if (fileChanged) {
+                OrderStateIndex.setState(orderId, newState);
             }
+        } else {
+            //change orderState in order file and move the file to new state folder
+            Path sourceDir = newState == OrderState.Progressing ? orderedPath : progressingPath;
+            Path targetDir = newState == OrderState.Progressing ? progressingPath : collectedPath;
+            fileChanged = OrderFileManager.updateAndMoveOrderFile(orderId, newState, sourceDir, targetDir);
         }
+        if (!fileChanged) {
+            return false; // the order file was not found, already logged by OrderFileManager
+        }
+
+        long changedMillis = System.currentTimeMillis(); //exact time for the latency metrics, the file only keeps seconds
+        String changedDateTime = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+        logEvent(OrderEventType.forState(newState), orderId, changedDateTime);
+
+        //change orderState in OrderMap, notify OrderTrackers and pickers
+        orderMap.put(orderId, newState);
+        queryService.stateChanged(orderId, newState, changedMillis);
+        recordLifecycleLatency(orderId, newState);
+        notifyOrderTrackers();
+        notifyPickerModels();
+        publishEvent(OrderEventType.forState(newState), orderId, changedDateTime);
+
+        if (newState == OrderState.Collected) {
+            removeCollectedOrder(orderId); //Scheduled removal
+        }
+        return true;
     }
 
     /**
@@ -167,18 +321,49 @@ public class OrderHub  {
         if (orderMap.containsKey(orderId)) {
             // Schedule removal after a few seconds
             scheduler.schedule(() -> {
-                orderMap.remove(orderId); //remove collected order
-                System.out.println("Order " + orderId + " removed from tracker and OrdersMap.");
-                notifyOrderTrackers();
+                synchronized (this) {
+                    orderMap.remove(orderId); //remove collected order
+                    log.debug("Collected order removed from tracker and orderMap", "orderId", orderId);
+                    notifyOrderTrackers();
+                }
             }, 10, TimeUnit.SECONDS );
         }
     }
 
+    // Records how long the order took to reach its new state, using the millisecond timestamps kept by the query index.
+    // An order placed before the shop was restarted only has its ordered time to the second (from its order file).
+    private void recordLifecycleLatency(int orderId, OrderState newState) {
+        OrderQueryService.OrderSummary summary = queryService.getOrder(orderId);
+        if (summary == null || summary.getOrderedMillis() < 0) {
+            return;
+        }
+        if (newState == OrderState.Progressing && summary.getProgressingMillis() >= 0) {
+            lifecycleMetrics.record(OrderLifecycleMetrics.Transition.TimeToClaim,
+                    summary.getProgressingMillis() - summary.getOrderedMillis());
+        } else if (newState == OrderState.Collected && summary.getCollectedMillis() >= 0) {
+            if (summary.getProgressingMillis() >= 0) {
+                lifecycleMetrics.record(OrderLifecycleMetrics.Transition.TimeToCollect,
+                        summary.getCollectedMillis() - summary.getProgressingMillis());
+            }
+            lifecycleMetrics.record(OrderLifecycleMetrics.Transition.EndToEnd,
+                    summary.getCollectedMillis() - summary.getOrderedMillis());
+        }
+    }
+
+    // Returns the lifecycle latency metrics, eg. to print a report or read a window
+    public OrderLifecycleMetrics getLifecycleMetrics() {
+        return lifecycleMetrics;
+    }
+
     // Reads details of an order for display in the picker once they started preparing the order.
     public String  getOrderDetailForPicker(int orderId) throws IOException {
-        OrderState state = orderMap.get(orderId);
-        if(state.equals(OrderState.Progressing)) {
-            return OrderFileManager.readOrderFile(progressingPath,orderId);
+        OrderState state;
+        synchronized (this) { // orderMap is changed by other threads inside the synchronized methods
+            state = orderMap.get(orderId);
+        }
+        if(OrderState.Progressing.equals(state)) {
+            Path dir = isInPlaceStorage() ? orderRecordsPath : progressingPath;
+            return OrderFileManager.readOrderFile(dir,orderId);
         }else{
             return "the fuction is only for picker";
         }
@@ -186,9 +371,61 @@ public class OrderHub  {
 
     //Initializes the internal order map by loading the uncollected orders from the file system.
     // Called during system startup by the Main class.
-    public void initializeOrderMap(){
-        ArrayList<Integer> orderedIds = orderIdsLoader(orderedPath);
-        ArrayList<Integer> progressingIds = orderIdsLoader(progressingPath);
+    // With event sourcing, the order map is recovered from the snapshot and event log if they exist.
+    public synchronized void initializeOrderMap(){
+        if (eventSourcing && eventLog.exists()) {
+            try {
+                orderMap = eventLog.recover();
+            } catch (IOException | RuntimeException e) {
+                // eg. a damaged event in the middle of the log, whose rest is then in a quarantine file.
+                // The order files have every order; the snapshot taken below makes the next recovery
+                // start after the damage, which stays in the log for the audit trail.
+                log.error("Order event log recovery failed, loading orders from storage", e);
+                orderMap.clear();
+                loadOrderMapFromStorage();
+            }
+        } else {
+            loadOrderMapFromStorage();
+        }
+
+        if (eventSourcing) {
+            takeSnapshot(); // start from a snapshot of what was loaded
+            scheduler.scheduleAtFixedRate(this::snapshotIfChanged,
+                    SNAPSHOT_INTERVAL_SECONDS, SNAPSHOT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+
+        // Build the order query index from the order files in the background; state changes made meanwhile
+        // are kept by the query service until the order's file has been read
+        queryService.loadHistoryInBackground(scheduler);
+
+        // Expose the lifecycle metrics through JMX and dump them periodically
+        lifecycleMetrics.registerMBean();
+        scheduler.scheduleAtFixedRate(() -> log.info(lifecycleMetrics.report().stripTrailing()),
+                METRICS_DUMP_INTERVAL_MINUTES, METRICS_DUMP_INTERVAL_MINUTES, TimeUnit.MINUTES);
+
+        if (OrderEventBus.publish) {
+            startEventBus();
+        }
+
+        notifyOrderTrackers();
+        notifyPickerModels();
+        log.info("orderMap initialized", "total", orderMap.size(),
+                "ordered", filterOrdersByState(OrderState.Ordered).size(),
+                "progressing", filterOrdersByState(OrderState.Progressing).size());
+    }
+
+    // Loads the uncollected orders from the order folders (or the state index in InPlace storage mode).
+    private void loadOrderMapFromStorage() {
+        ArrayList<Integer> orderedIds;
+        ArrayList<Integer> progressingIds;
+        if (isInPlaceStorage()) {
+            TreeMap<Integer, OrderState> states = loadStatesFromIndex();
+            orderedIds = idsInState(states, OrderState.Ordered);
+            progressingIds = idsInState(states, OrderState.Progressing);
+        } else {
+            orderedIds = orderIdsLoader(orderedPath);
+            progressingIds = orderIdsLoader(progressingPath);
+        }
         if(orderedIds.size()>0){
             for(Integer orderId : orderedIds){
                 orderMap.put(orderId, OrderState.Ordered);
@@ -199,10 +436,92 @@ public class OrderHub  {
                 orderMap.put(orderId, OrderState.Progressing);
             }
         }
-        notifyOrderTrackers();
-        notifyPickerModels();
-        System.out.println("orderMap initilized. "+ orderMap.size() + " orders in total, including:");
-        System.out.println( orderedIds.size() + " Ordered orders, " +progressingIds.size() + " Progressing orders " );
+    }
+
+    // Appends an order event to the event log when event sourcing is enabled,
+    // and asks for a snapshot once enough events have been logged.
+    private void logEvent(OrderEventType type, int orderId, String dateTime) throws IOException {
+        if (eventSourcing) {
+            eventLog.append(type, orderId, dateTime);
+            if (eventLog.isSnapshotDue()) {
+                scheduler.execute(this::takeSnapshot);
+            }
+        }
+    }
+
+    // Publishes an order change to the subscribers in other processes when the event bus is running
+    private void publishEvent(OrderEventType type, int orderId, String dateTime) {
+        if (eventBus != null) {
+            eventBus.publish(type, orderId, dateTime);
+        }
+    }
+
+    // Starts the event bus; the order map keeps working without it if the port cannot be opened
+    private void startEventBus() {
+        OrderEventBus bus = new OrderEventBus(this::eventBusSnapshot);
+        try {
+            bus.start();
+            eventBus = bus;
+        } catch (IOException e) {
+            log.error("Order event bus could not start, order changes are not published", e);
+        }
+    }
+
+    // A copy of the order map and the last published event, taken together while holding the OrderHub lock
+    private synchronized OrderEventBus.Snapshot eventBusSnapshot() {
+        return new OrderEventBus.Snapshot(eventBus.lastSequence(), new TreeMap<>(orderMap));
+    }
+
+    // Takes a snapshot periodically, but only if something has changed since the last one.
+    private void snapshotIfChanged() {
+        if (eventLog.hasEventsSinceSnapshot()) {
+            takeSnapshot();
+        }
+    }
+
+    /**
+     * Writes a snapshot of the order map.
+     * The copy of the map and the log position are captured together while holding the OrderHub lock,
+     * the file itself is written outside the lock so customers and pickers are not blocked by it.
+     */
+    private void takeSnapshot() {
+        try {
+            TreeMap<Integer, OrderState> copy;
+            OrderEventLog.LogPosition position;
+            synchronized (this) {
+                copy = new TreeMap<>(orderMap);
+                copy.values().removeIf(state -> state == OrderState.Collected); // collected orders are not active
+                position = eventLog.currentPosition();
+            }
+            eventLog.writeSnapshot(copy, position);
+        } catch (IOException e) {
+            log.error("Error writing order snapshot", e);
+        }
+    }
+
+    private boolean isInPlaceStorage() {
+        return OrderFileManager.storageMode == OrderStorageMode.InPlace;
+    }
+
+    // Loads the states of all orders from the state index, used in InPlace storage mode.
+    private TreeMap<Integer, OrderState> loadStatesFromIndex() {
+        try {
+            return OrderStateIndex.loadStates();
+        } catch (IOException e) {
+            log.error("Error reading order state index", e);
+            return new TreeMap<>();
+        }
+    }
+
+    // Collects the order IDs in the given state, a helper used by initializeOrderMap() in InPlace storage mode.
+    private ArrayList<Integer> idsInState(TreeMap<Integer, OrderState> states, OrderState state) {
+        ArrayList<Integer> orderIds = new ArrayList<>();
+        for (Map.Entry<Integer, OrderState> entry : states.entrySet()) {
+            if (entry.getValue() == state) {
+                orderIds.add(entry.getKey());
+            }
+        }
+        return orderIds;
     }
 
     // Loads a list of order IDs from the specified directory.
@@ -216,7 +535,7 @@ public class OrderHub  {
                 List<Path> files = fileStream.filter(Files::isRegularFile).toList();
 
                 if (files.isEmpty()) {
-                    System.out.println(dir + " is empty");
+                    log.debug("Order folder is empty", "dir", dir);
                 } else {
                     for (Path file : files) {
                         String fileName = file.getFileName().toString();
@@ -224,18 +543,17 @@ public class OrderHub  {
                             try {
                                 int orderId = Integer.parseInt(fileName.substring(0, fileName.lastIndexOf('.')));
                                 orderIds.add(orderId);
-                                System.out.println(orderId);
                             } catch (NumberFormatException e) {
-                                System.out.println("Invalid file name: " + fileName);
+                                log.warn("Invalid order file name", "dir", dir, "file", fileName);
                             }
                         }
                     }
                 }
             } catch (IOException e) {
-                System.out.println("Error reading " + dir + ", " + e.getMessage());
+                log.error("Error reading order folder", e, "dir", dir);
             }
         } else {
-            System.out.println(dir + " does not exist.");
+            log.warn("Order folder does not exist", "dir", dir);
         }
         return orderIds;
     }
@@ -0,0 +1,141 @@
+package ci553.happyshop.orderManagement;
+
+import ci553.happyshop.logging.ShopLogger;
+import ci553.happyshop.utility.LatencyHistogram;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+
+/**
+ * OrderLifecycleMetrics records how long orders spend in each step of their lifecycle:
+ * <pre>
+ *  TimeToClaim   : ordered     → progressing  (waiting for a picker)
+ *  TimeToCollect : progressing → collected    (being prepared and waiting for the customer)
+ *  EndToEnd      : ordered     → collected
+ * </pre>
+ * A growing TimeToClaim is the early sign that more pickers are needed, before customers complain.
+ *
+ * <p>Every latency is recorded in an all-time LatencyHistogram and in a rolling window made of
+ * 60 one-minute slots. A slot is reused (cleared) when its minute comes round again, so the window
+ * queries (last 1, 5, 15 or 60 minutes) merge only the slots that are recent enough.</p>
+ *
+ * <p>OrderHub records the latencies when it changes the state of an order, from the
+ * System.currentTimeMillis() it takes at each transition (not the order file timestamps, which only keep seconds),
+ * registers this class with JMX, and prints {@link #report()} periodically.</p>
+ */
+
+public class OrderLifecycleMetrics implements OrderLifecycleMetricsMXBean {
+    private static final ShopLogger log = ShopLogger.getLogger(OrderLifecycleMetrics.class);
+
+    public enum Transition {
+        TimeToClaim,
+        TimeToCollect,
+        EndToEnd
+    }
+
+    private static final int WINDOW_SLOTS = 60; // one slot per minute, so the longest window is one hour
+    private static final long SLOT_MILLIS = 60_000;
+    private static final int[] REPORT_WINDOWS = {1, 5, 15, 60}; // minutes
+
+    // One minute of latencies for all transitions
+    private static class Slot {
+        private long minute = -1;
+        private final EnumMap<Transition, LatencyHistogram> histograms = newHistograms();
+    }
+
+    private final EnumMap<Transition, LatencyHistogram> allTime = newHistograms();
+    private final Slot[] slots = new Slot[WINDOW_SLOTS];
+
+    public OrderLifecycleMetrics() {
+        for (int i = 0; i < WINDOW_SLOTS; i++) {
+            slots[i] = new Slot();
+        }
+    }
+
+    // Records one latency (in milliseconds) for the given transition.
+    public void record(Transition transition, long millis) {
+        allTime.get(transition).record(millis);
+        long minute = System.currentTimeMillis() / SLOT_MILLIS;
+        Slot slot = slots[(int) (minute % WINDOW_SLOTS)];
+        synchronized (slot) {
+            if (slot.minute != minute) { // the slot still holds an older minute, start it again
+                for (LatencyHistogram histogram : slot.histograms.values()) {
+                    histogram.reset();
+                }
+                slot.minute = minute;
+            }
+            slot.histograms.get(transition).record(millis);
+        }
+    }
+
+    /**
+     * Returns the latencies of a transition over the last few minutes (1 to 60),
+     * merged into a new histogram.
+     */
+    public LatencyHistogram window(Transition transition, int minutes) {
+        int span = Math.max(1, Math.min(WINDOW_SLOTS, minutes));
+        long currentMinute = System.currentTimeMillis() / SLOT_MILLIS;
+        LatencyHistogram merged = new LatencyHistogram();
+        for (Slot slot : slots) {
+            synchronized (slot) {
+                if (slot.minute > currentMinute - span) {
+                    merged.add(slot.histograms.get(transition));
+                }
+            }
+        }
+        return merged;
+    }
+
+    // Returns the all-time latencies of a transition since the system started.
+    public LatencyHistogram allTime(Transition transition) {
+        return allTime.get(transition);
+    }
+
+    @Override
+    public String report() {
+        StringBuilder sb = new StringBuilder("Order lifecycle latencies (ms):\n");
+        for (Transition transition : Transition.values()) {
+            sb.append(transition).append("\n");
+            for (int minutes : REPORT_WINDOWS) {
+                sb.append(String.format("  last %2d min: %s%n", minutes, window(transition, minutes)));
+            }
+            sb.append("  all time   : ").append(allTime.get(transition)).append("\n");
+        }
+        return sb.toString();
+    }
+
+    // Registers this object with the platform MBean server, so JConsole/VisualVM can read it.
+    public void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("ci553.happyshop:type=OrderLifecycleMetrics");
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (Exception e) {
+            log.warn("OrderLifecycleMetrics JMX registration failed", e);
+        }
+    }
+
+    @Override public long getTimeToClaimCountLast5Minutes() { return window(Transition.TimeToClaim, 5).getTotalCount(); }
+    @Override public long getTimeToClaimP50MillisLast5Minutes() { return window(Transition.TimeToClaim, 5).getValueAtPercentile(50); }
+    @Override public long getTimeToClaimP99MillisLast5Minutes() { return window(Transition.TimeToClaim, 5).getValueAtPercentile(99); }
+
+    @Override public long getTimeToCollectCountLast5Minutes() { return window(Transition.TimeToCollect, 5).getTotalCount(); }
+    @Override public long getTimeToCollectP50MillisLast5Minutes() { return window(Transition.TimeToCollect, 5).getValueAtPercentile(50); }
+    @Override public long getTimeToCollectP99MillisLast5Minutes() { return window(Transition.TimeToCollect, 5).getValueAtPercentile(99); }
+
+    @Override public long getEndToEndCountLast5Minutes() { return window(Transition.EndToEnd, 5).getTotalCount(); }
+    @Override public long getEndToEndP50MillisLast5Minutes() { return window(Transition.EndToEnd, 5).getValueAtPercentile(50); }
+    @Override public long getEndToEndP99MillisLast5Minutes() { return window(Transition.EndToEnd, 5).getValueAtPercentile(99); }
+
+    private static EnumMap<Transition, LatencyHistogram> newHistograms() {
+        EnumMap<Transition, LatencyHistogram> histograms = new EnumMap<>(Transition.class);
+        for (Transition transition : Transition.values()) {
+            histograms.put(transition, new LatencyHistogram());
+        }
+        return histograms;
+    }
+}
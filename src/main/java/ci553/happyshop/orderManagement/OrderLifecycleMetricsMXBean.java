@@ -0,0 +1,29 @@
+package ci553.happyshop.orderManagement;
+
+/**
+ * The JMX management interface of OrderLifecycleMetrics.
+ * Registered as "ci553.happyshop:type=OrderLifecycleMetrics", it can be watched in JConsole or VisualVM.
+ *
+ * All latencies are in milliseconds and cover the rolling window of the last 5 minutes,
+ * except for report(), which prints all windows and the all-time totals.
+ */
+
+public interface OrderLifecycleMetricsMXBean {
+    // ordered → progressing (a picker claimed the order)
+    long getTimeToClaimCountLast5Minutes();
+    long getTimeToClaimP50MillisLast5Minutes();
+    long getTimeToClaimP99MillisLast5Minutes();
+
+    // progressing → collected (the customer collected the order)
+    long getTimeToCollectCountLast5Minutes();
+    long getTimeToCollectP50MillisLast5Minutes();
+    long getTimeToCollectP99MillisLast5Minutes();
+
+    // ordered → collected
+    long getEndToEndCountLast5Minutes();
+    long getEndToEndP50MillisLast5Minutes();
+    long getEndToEndP99MillisLast5Minutes();
+
+    // A text report of all transitions over the 1, 5, 15 and 60 minute windows and all time
+    String report();
+}
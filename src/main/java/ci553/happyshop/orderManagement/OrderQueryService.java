@@ -0,0 +1,356 @@
+package ci553.happyshop.orderManagement;
+
+import ci553.happyshop.logging.ShopLogger;
+import ci553.happyshop.utility.LatencyHistogram;
+import ci553.happyshop.utility.StorageLocation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * OrderQueryService answers questions about current and historical orders without opening order files,
+ * eg. "which orders were placed between 10:00 and 11:00?" or "how many orders were collected today?".
+ *
+ * <p>It keeps a summary of every order (ID, state and the three timestamps) in memory, indexed by:
+ * <ul>
+ *   <li>orderedDateTime, in a skip list (ConcurrentSkipListMap) sorted by time, for range queries</li>
+ *   <li>collectedDateTime, in a second skip list, for "collected between" queries</li>
+ *   <li>orderId, in a hash map, to apply state changes</li>
+ * </ul>
+ * It also keeps a counter of orders per state. A range query walks only the orders inside the range,
+ * so it takes milliseconds even with millions of orders in the index.</p>
+ *
+ * <p>The index is filled once at startup by reading only the header lines of the order files
+ * (see {@link #loadHistory()}), and then kept up to date by OrderHub, which reports every new order and
+ * every state change. The files are read in the background, so the shop opens at once whatever the size of
+ * the history; a state change reported for an order whose file has not been read yet is kept aside and applied
+ * when it is (see {@link #loadHistoryInBackground(Executor)}). This class implements the Singleton pattern, like OrderHub.</p>
+ */
+
+public class OrderQueryService {
+    private static final ShopLogger log = ShopLogger.getLogger(OrderQueryService.class);
+    private static OrderQueryService queryService; //singleton instance
+
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /**
+     * Summary of one order, as kept in the index. Times are epoch milliseconds, -1 when not reached yet.
+     * They are exact for orders placed or changed while the shop is running (OrderHub reports
+     * System.currentTimeMillis()), but only to the second for orders loaded from the files,
+     * because the order files keep "yyyy-MM-dd HH:mm:ss" timestamps.
+     */
+    public static class OrderSummary {
+        private final int orderId;
+        private volatile OrderState state;
+        private final long orderedMillis;
+        private volatile long progressingMillis = -1;
+        private volatile long collectedMillis = -1;
+
+        OrderSummary(int orderId, OrderState state, long orderedMillis) {
+            this.orderId = orderId;
+            this.state = state;
+            this.orderedMillis = orderedMillis;
+        }
+
+        public int getOrderId() { return orderId; }
+        public OrderState getState() { return state; }
+        public long getOrderedMillis() { return orderedMillis; }
+        public long getProgressingMillis() { return progressingMillis; }
+        public long getCollectedMillis() { return collectedMillis; }
+
+        @Override
+        public String toString() {
+            return orderId + " " + state;
+        }
+    }
+
+    // Sort key of the time indexes: a timestamp, and the orderId to keep orders placed in the same second apart
+    private record TimeKey(long millis, int orderId) implements Comparable<TimeKey> {
+        @Override
+        public int compareTo(TimeKey other) {
+            int byTime = Long.compare(millis, other.millis);
+            return byTime != 0 ? byTime : Integer.compare(orderId, other.orderId);
+        }
+    }
+
+    private final ConcurrentHashMap<Integer, OrderSummary> ordersById = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<TimeKey, OrderSummary> ordersByOrderedTime = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<TimeKey, OrderSummary> ordersByCollectedTime = new ConcurrentSkipListMap<>();
+    private final EnumMap<OrderState, AtomicLong> stateCounters = new EnumMap<>(OrderState.class);
+
+    // While the history is loading: the state changes of orders that are not in the index yet, by orderId.
+    // Guarded by loadLock, which also covers adding a loaded order, so no change can slip in between.
+    private record PendingChange(OrderState newState, long millis) {}
+    private final Object loadLock = new Object();
+    private volatile boolean loading = false;
+    private final Map<Integer, List<PendingChange>> changesWhileLoading = new HashMap<>();
+
+    //Singleton pattern
+    private OrderQueryService() {
+        for (OrderState state : OrderState.values()) {
+            stateCounters.put(state, new AtomicLong());
+        }
+    }
+    public static synchronized OrderQueryService getOrderQueryService() {
+        if (queryService == null)
+            queryService = new OrderQueryService();
+        return queryService;
+    }
+
+    // --- updates, called by OrderHub ---
+
+    // Adds a newly placed order to the index, with the time it was placed in epoch milliseconds.
+    public void orderCreated(int orderId, long orderedMillis) {
+        OrderSummary summary = new OrderSummary(orderId, OrderState.Ordered, orderedMillis);
+        if (ordersById.putIfAbsent(orderId, summary) == null) {
+            ordersByOrderedTime.put(new TimeKey(summary.orderedMillis, orderId), summary);
+            stateCounters.get(OrderState.Ordered).incrementAndGet();
+        }
+    }
+
+    // Records a state change of an order and the time it happened, in epoch milliseconds.
+    public void stateChanged(int orderId, OrderState newState, long millis) {
+        OrderSummary summary = ordersById.get(orderId);
+        if (summary == null && loading) {
+            synchronized (loadLock) {
+                summary = ordersById.get(orderId);
+                if (summary == null && loading) { // its file has not been read yet
+                    changesWhileLoading.computeIfAbsent(orderId, id -> new ArrayList<>())
+                            .add(new PendingChange(newState, millis));
+                    return;
+                }
+            }
+        }
+        if (summary != null) {
+            applyChange(summary, newState, millis);
+        }
+    }
+
+    // Moves the order forward to the new state. A change the order already has (eg. read from its file) is ignored.
+    private void applyChange(OrderSummary summary, OrderState newState, long millis) {
+        synchronized (summary) {
+            if (newState.compareTo(summary.state) <= 0) {
+                return;
+            }
+            stateCounters.get(summary.state).decrementAndGet();
+            stateCounters.get(newState).incrementAndGet();
+            summary.state = newState;
+            if (newState == OrderState.Progressing) {
+                summary.progressingMillis = millis;
+            } else if (newState == OrderState.Collected) {
+                summary.collectedMillis = millis;
+                ordersByCollectedTime.put(new TimeKey(millis, summary.orderId), summary);
+            }
+        }
+    }
+
+    // --- queries ---
+
+    // Returns the orders placed in [from, to), sorted by ordered time.
+    public List<OrderSummary> ordersPlacedBetween(LocalDateTime from, LocalDateTime to) {
+        return new ArrayList<>(placedBetween(from, to).values());
+    }
+
+    // Counts the orders placed in [from, to).
+    public int countPlacedBetween(LocalDateTime from, LocalDateTime to) {
+        return placedBetween(from, to).size();
+    }
+
+    // Returns the orders collected in [from, to), sorted by collected time.
+    public List<OrderSummary> ordersCollectedBetween(LocalDateTime from, LocalDateTime to) {
+        return new ArrayList<>(collectedBetween(from, to).values());
+    }
+
+    // Counts the orders collected in [from, to), eg. from today's midnight to now.
+    public int countCollectedBetween(LocalDateTime from, LocalDateTime to) {
+        return collectedBetween(from, to).size();
+    }
+
+    // Counts the orders currently in the given state.
+    public long countInState(OrderState state) {
+        return stateCounters.get(state).get();
+    }
+
+    // The total number of orders in the index.
+    public int size() {
+        return ordersById.size();
+    }
+
+    // Returns the summary of one order, or null if it is not in the index.
+    public OrderSummary getOrder(int orderId) {
+        return ordersById.get(orderId);
+    }
+
+    /**
+     * Builds a histogram of the end-to-end latency (ordered → collected, in milliseconds)
+     * of the orders collected in [from, to).
+     */
+    public LatencyHistogram endToEndLatencyHistogram(LocalDateTime from, LocalDateTime to) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (OrderSummary summary : collectedBetween(from, to).values()) {
+            histogram.record(summary.collectedMillis - summary.orderedMillis);
+        }
+        return histogram;
+    }
+
+    /**
+     * Builds a histogram of the time to claim (ordered → progressing, in milliseconds)
+     * of the orders placed in [from, to) that have been claimed by a picker.
+     */
+    public LatencyHistogram timeToClaimHistogram(LocalDateTime from, LocalDateTime to) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (OrderSummary summary : placedBetween(from, to).values()) {
+            if (summary.progressingMillis >= 0) {
+                histogram.record(summary.progressingMillis - summary.orderedMillis);
+            }
+        }
+        return histogram;
+    }
+
+    private Map<TimeKey, OrderSummary> placedBetween(LocalDateTime from, LocalDateTime to) {
+        return ordersByOrderedTime.subMap(lowKey(from), true, lowKey(to), false);
+    }
+
+    private Map<TimeKey, OrderSummary> collectedBetween(LocalDateTime from, LocalDateTime to) {
+        return ordersByCollectedTime.subMap(lowKey(from), true, lowKey(to), false);
+    }
+
+    // The smallest key at the given time, so a range from..to includes every order at "from" and none at "to"
+    private static TimeKey lowKey(LocalDateTime dateTime) {
+        return new TimeKey(dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(), Integer.MIN_VALUE);
+    }
+
+    // --- loading ---
+
+    /**
+     * Loads the history on the given executor, eg. the scheduler of OrderHub. From this call until the load
+     * has finished, state changes of orders that are not in the index yet are kept and applied once their
+     * file has been read, so OrderHub can take orders straight away.
+     */
+    public void loadHistoryInBackground(Executor executor) {
+        loading = true; // before returning, so no change reported after this call is lost
+        executor.execute(this::loadHistory);
+    }
+
+    /**
+     * Fills the index from the order files on disk, reading only the header lines of each file.
+     * It looks in all order folders (ordered, progressing, collected, and records for InPlace storage).
+     * Orders already in the index are kept as they are; state changes reported meanwhile are applied
+     * to the orders as they are read.
+     */
+    public void loadHistory() {
+        loading = true;
+        Path[] folders = {StorageLocation.orderedPath, StorageLocation.progressingPath,
+                StorageLocation.collectedPath, StorageLocation.orderRecordsPath};
+        int before = size();
+        try {
+            for (Path dir : folders) {
+                if (!Files.isDirectory(dir)) {
+                    continue;
+                }
+                try (Stream<Path> files = Files.list(dir)) {
+                    files.filter(file -> file.getFileName().toString().matches("\\d+\\.txt"))
+                            .forEach(this::loadOrderHeader);
+                } catch (IOException e) {
+                    log.error("Error reading order folder", e, "dir", dir);
+                }
+            }
+        } finally {
+            synchronized (loadLock) {
+                // A file moved to another folder while the folders were listed was missed: read it where it is now
+                for (Integer orderId : new ArrayList<>(changesWhileLoading.keySet())) {
+                    for (Path dir : folders) {
+                        Path file = dir.resolve(orderId + ".txt");
+                        if (Files.exists(file)) {
+                            loadOrderHeader(file);
+                            break;
+                        }
+                    }
+                }
+                if (!changesWhileLoading.isEmpty()) {
+                    log.warn("State changes of orders without an order file ignored", "orders", changesWhileLoading.keySet());
+                    changesWhileLoading.clear();
+                }
+                loading = false;
+            }
+        }
+        log.info("Order query index loaded", "added", size() - before, "total", size());
+    }
+
+    // Reads the header of one order file (state and the three timestamps) and adds it to the index,
+    // then applies the state changes reported for the order while the history was loading.
+    private void loadOrderHeader(Path file) {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String idLine = reader.readLine();
+            String stateLine = reader.readLine();
+            String orderedLine = reader.readLine();
+            String progressingLine = reader.readLine();
+            String collectedLine = reader.readLine();
+            if (collectedLine == null) {
+                return; // not a complete order file
+            }
+            int orderId = Integer.parseInt(fieldValue(idLine));
+            OrderState state = OrderState.valueOf(fieldValue(stateLine));
+            OrderSummary summary = new OrderSummary(orderId, state, toMillis(fieldValue(orderedLine)));
+            summary.progressingMillis = toMillis(fieldValue(progressingLine));
+            summary.collectedMillis = toMillis(fieldValue(collectedLine));
+
+            synchronized (loadLock) {
+                if (ordersById.putIfAbsent(orderId, summary) == null) {
+                    ordersByOrderedTime.put(new TimeKey(summary.orderedMillis, orderId), summary);
+                    if (summary.collectedMillis >= 0) {
+                        ordersByCollectedTime.put(new TimeKey(summary.collectedMillis, orderId), summary);
+                    }
+                    stateCounters.get(state).incrementAndGet();
+                }
+                List<PendingChange> changes = changesWhileLoading.remove(orderId);
+                if (changes != null) {
+                    OrderSummary indexed = ordersById.get(orderId);
+                    for (PendingChange change : changes) {
+                        applyChange(indexed, change.newState(), change.millis());
+                    }
+                }
+            }
+        } catch (NoSuchFileException e) {
+            log.debug("Order file moved while loading, read later if it changed state", "path", file);
+        } catch (IOException | IllegalArgumentException e) { // also covers NumberFormatException
+            log.warn("Skipping order file", e, "path", file);
+        }
+    }
+
+    // Returns the trimmed text after the first ':' of a header line, eg. "State: Ordered " -> "Ordered"
+    private static String fieldValue(String line) {
+        return line.substring(line.indexOf(':') + 1).trim();
+    }
+
+    // Converts an order timestamp (yyyy-MM-dd HH:mm:ss, local time) to epoch milliseconds, -1 if empty or invalid
+    private static long toMillis(String dateTime) {
+        if (dateTime == null || dateTime.isBlank()) {
+            return -1;
+        }
+        try {
+            return LocalDateTime.parse(dateTime.trim(), DATE_TIME_FORMAT)
+                    .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,494 @@
+package ci553.happyshop.service;
+
+import ci553.happyshop.api.Json;
+import ci553.happyshop.catalogue.Money;
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.logging.ShopLogger;
+import ci553.happyshop.service.ImportReport.RowError;
+import ci553.happyshop.storageAccess.DatabaseRW;
+import ci553.happyshop.storageAccess.ProductColumns;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * CatalogueFileService imports and exports the whole catalogue as a file, eg. a supplier's catalogue
+ * of thousands of products, without any user interface.
+ *
+ * <p>Two file formats are understood, chosen by the file name:
+ * <pre>
+ *  products.csv     productId,description,price,image,stock          (a header line, then one product per line)
+ *                   0001,"40 inch TV, black",269.00,0001.jpg,100
+ *  products.jsonl   {"productId":"0001","description":"40 inch TV","price":269.00,"image":"0001.jpg","stock":100}
+ * </pre>
+ * In a CSV file the columns can be in any order (the header names them), the image column can be left out
+ * (the image is then named after the product ID, eg. 0001.jpg) and a field in double quotes can hold commas,
+ * line breaks and "" for a quote. A JSON lines file has one JSON object per line.</p>
+ *
+ * <p>An import never holds the whole file in memory. It reads the file in chunks of {@link #chunkSize} rows;
+ * each chunk is checked (the same rules as a product added in the warehouse client) by one of a few validator
+ * threads while the next chunks are read, and the valid rows of a chunk are then inserted in file order with one
+ * JDBC batch and one transaction (see DatabaseRW.insertNewProducts()). A row that is invalid, or whose product ID
+ * is already used, is left out and reported in the {@link ImportReport} with its line number; the other rows
+ * are still imported.</p>
+ *
+ * <p>An export writes every product in the same formats, so an exported file can be imported into another shop.
+ * It reads the products once as columns (see ProductColumns) and writes them row by row.</p>
+ */
+
+public class CatalogueFileService {
+    private static final ShopLogger log = ShopLogger.getLogger(CatalogueFileService.class);
+
+    public static int chunkSize = 1000; // rows checked together and inserted in one transaction
+    public static int maxReportedErrors = 1000; // the report keeps the first errors only, the rest are only counted
+
+    private static final int MAX_TEXT_LENGTH = 100; // description VARCHAR(100), image VARCHAR(100)
+    private static final String[] COLUMNS = {"productId", "description", "price", "image", "stock"};
+
+    // The format of a catalogue file, chosen by its file name
+    public enum FileFormat {
+        Csv,
+        JsonLines;
+
+        // eg. products.csv -> Csv, products.jsonl -> JsonLines
+        public static FileFormat of(Path file) {
+            String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+            if (name.endsWith(".csv")) {
+                return Csv;
+            }
+            if (name.endsWith(".jsonl") || name.endsWith(".ndjson") || name.endsWith(".json")) {
+                return JsonLines;
+            }
+            throw new IllegalArgumentException("Not a .csv or .jsonl file: " + file.getFileName());
+        }
+    }
+
+    private final DatabaseRW databaseRW;
+    private final InventoryWatcher inventoryWatcher = InventoryWatcher.getInventoryWatcher(); // told the new products
+
+    public CatalogueFileService(DatabaseRW databaseRW) {
+        this.databaseRW = databaseRW;
+    }
+
+    // --- import ---
+
+    // One record (product) of the file as text, and the line it starts on
+    private record RawRow(long lineNumber, String text) {}
+
+    // A checked row: the product to insert, or what is wrong with the row
+    private record CheckedRow(long lineNumber, String productId, Product product, String error) {}
+
+    /**
+     * Adds the products of a CSV or JSON lines file as new products.
+     * @throws IllegalArgumentException if the file name is not .csv or .jsonl, or a CSV file has no usable header
+     */
+    public ImportReport importProducts(Path file) throws IOException, SQLException {
+        long start = System.nanoTime();
+        FileFormat format = FileFormat.of(file);
+        ImportProgress progress = new ImportProgress(knownProductIds());
+
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1)); // one core reads and inserts
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService validators = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "catalogue-import-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Chunks being checked, oldest first; at most two per thread, so a large file is never all in memory
+        ArrayDeque<CompletableFuture<List<CheckedRow>>> pending = new ArrayDeque<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            RecordReader records = new RecordReader(reader, format);
+            int[] columns = format == FileFormat.Csv ? readHeader(records) : null;
+            List<RawRow> chunk = new ArrayList<>(chunkSize);
+            RawRow row;
+            while ((row = records.next()) != null) {
+                chunk.add(row);
+                if (chunk.size() == chunkSize) {
+                    List<RawRow> rows = chunk;
+                    pending.add(CompletableFuture.supplyAsync(() -> checkRows(rows, format, columns), validators));
+                    chunk = new ArrayList<>(chunkSize);
+                    if (pending.size() >= threads * 2) {
+                        insert(pending.remove().join(), progress);
+                    }
+                }
+            }
+            if (!chunk.isEmpty()) {
+                List<RawRow> rows = chunk;
+                pending.add(CompletableFuture.supplyAsync(() -> checkRows(rows, format, columns), validators));
+            }
+            while (!pending.isEmpty()) {
+                insert(pending.remove().join(), progress);
+            }
+        } finally {
+            validators.shutdownNow();
+        }
+
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        ImportReport report = new ImportReport(progress.rowsRead, progress.imported, progress.rejected,
+                List.copyOf(progress.errors), millis);
+        log.info("Catalogue imported", "file", file, "rows", progress.rowsRead, "imported", progress.imported,
+                "rejected", progress.rejected, "millis", millis);
+        return report;
+    }
+
+    // What the inserting thread knows while importing
+    private static class ImportProgress {
+        final Set<String> usedIds; // the product IDs in the database and those imported so far
+        final List<RowError> errors = new ArrayList<>();
+        long rowsRead;
+        long imported;
+        long rejected;
+
+        ImportProgress(Set<String> usedIds) {
+            this.usedIds = usedIds;
+        }
+
+        void reject(long lineNumber, String productId, String message) {
+            rejected++;
+            if (errors.size() < maxReportedErrors) {
+                errors.add(new RowError(lineNumber, productId, message));
+            }
+        }
+    }
+
+    // The IDs of the products already in the database, read once through the DatabaseRW
+    private Set<String> knownProductIds() throws SQLException {
+        ProductColumns columns = ProductColumns.load(databaseRW);
+        Set<String> ids = new HashSet<>(columns.size() * 2);
+        for (int row = 0; row < columns.size(); row++) {
+            ids.add(columns.productId(row));
+        }
+        return ids;
+    }
+
+    /**
+     * Inserts the valid rows of one checked chunk in one transaction, on the calling thread, so the chunks
+     * go in file order and a product ID used twice in the file is imported the first time only.
+     * If the transaction fails (eg. a warehouse user added one of the IDs meanwhile), the rows of the chunk
+     * are inserted one by one instead, to find the row that failed.
+     */
+    private void insert(List<CheckedRow> rows, ImportProgress progress) {
+        List<CheckedRow> valid = new ArrayList<>(rows.size());
+        List<Product> products = new ArrayList<>(rows.size());
+        for (CheckedRow row : rows) {
+            progress.rowsRead++;
+            if (row.error() != null) {
+                progress.reject(row.lineNumber(), row.productId(), row.error());
+            } else if (!progress.usedIds.add(row.productId())) {
+                progress.reject(row.lineNumber(), row.productId(), "Product ID " + row.productId() + " is not available.");
+            } else {
+                valid.add(row);
+                products.add(row.product());
+            }
+        }
+        if (products.isEmpty()) {
+            return;
+        }
+        try {
+            databaseRW.insertNewProducts(products);
+            progress.imported += products.size();
+            for (Product product : products) {
+                inventoryWatcher.productChanged(product.getProductId(), databaseRW);
+            }
+        } catch (SQLException e) {
+            log.warn("Import chunk failed, inserting its rows one by one", "rows", products.size(),
+                    "firstLine", valid.get(0).lineNumber(), "error", e.getMessage());
+            for (CheckedRow row : valid) {
+                Product product = row.product();
+                try {
+                    databaseRW.insertNewProduct(product.getProductId(), product.getProductDescription(),
+                            product.getUnitPricePence(), product.getProductImageName(), product.getStockQuantity());
+                    progress.imported++;
+                    inventoryWatcher.productChanged(product.getProductId(), databaseRW);
+                } catch (SQLException rowError) {
+                    progress.reject(row.lineNumber(), row.productId(), rowError.getMessage());
+                }
+            }
+        }
+    }
+
+    // Finds the column of each field in the CSV header, eg. "productId,price,description,stock"
+    private static int[] readHeader(RecordReader records) throws IOException {
+        RawRow header = records.next();
+        if (header == null) {
+            throw new IllegalArgumentException("The CSV file is empty, it needs a header line: " + String.join(",", COLUMNS));
+        }
+        List<String> names = splitCsv(header.text());
+        int[] columns = new int[COLUMNS.length];
+        for (int field = 0; field < COLUMNS.length; field++) {
+            columns[field] = -1;
+            for (int column = 0; column < names.size(); column++) {
+                if (names.get(column).trim().equalsIgnoreCase(COLUMNS[field])) {
+                    columns[field] = column;
+                }
+            }
+            if (columns[field] < 0 && !COLUMNS[field].equals("image")) {
+                throw new IllegalArgumentException("The CSV header has no " + COLUMNS[field] + " column: " + header.text());
+            }
+        }
+        return columns;
+    }
+
+    // Runs on a validator thread
+    private static List<CheckedRow> checkRows(List<RawRow> rows, FileFormat format, int[] columns) {
+        List<CheckedRow> checked = new ArrayList<>(rows.size());
+        for (RawRow row : rows) {
+            checked.add(checkRow(row, format, columns));
+        }
+        return checked;
+    }
+
+    // Reads the fields of a row and checks them like InventoryService checks a new product
+    private static CheckedRow checkRow(RawRow row, FileFormat format, int[] columns) {
+        String[] fields;
+        try {
+            fields = format == FileFormat.Csv ? csvFields(row.text(), columns) : jsonFields(row.text());
+        } catch (IllegalArgumentException e) {
+            return new CheckedRow(row.lineNumber(), "", null, e.getMessage());
+        }
+        String id = fields[0] == null ? "" : fields[0].trim();
+        String description = fields[1] == null ? "" : fields[1].trim();
+        String image = fields[3] == null || fields[3].isBlank() ? id + ".jpg" : fields[3].trim();
+
+        List<String> errors = new ArrayList<>();
+        if (!id.matches("\\d{4}")) {
+            errors.add("Product ID must be exactly 4 digits.");
+        }
+        long pricePence = 0;
+        try {
+            pricePence = Money.parse(fields[2] == null ? "" : fields[2]);
+            if (pricePence <= 0) {
+                errors.add("Price must be a positive number.");
+            }
+        } catch (NumberFormatException e) {
+            errors.add("Invalid price format, eg. 12.50 expected.");
+        }
+        int stock = 0;
+        try {
+            stock = Integer.parseInt(fields[4] == null ? "" : fields[4].trim());
+            if (stock < 0) {
+                errors.add("Stock quantity cannot be negative.");
+            }
+        } catch (NumberFormatException e) {
+            errors.add("Invalid stock quantity format.");
+        }
+        if (description.isEmpty()) {
+            errors.add("Product description cannot be empty.");
+        } else if (description.length() > MAX_TEXT_LENGTH) {
+            errors.add("Product description is longer than " + MAX_TEXT_LENGTH + " characters.");
+        }
+        if (image.length() > MAX_TEXT_LENGTH) {
+            errors.add("Image name is longer than " + MAX_TEXT_LENGTH + " characters.");
+        }
+
+        if (!errors.isEmpty()) {
+            return new CheckedRow(row.lineNumber(), id, null, String.join(" ", errors));
+        }
+        return new CheckedRow(row.lineNumber(), id, new Product(id, description, image, pricePence, stock), null);
+    }
+
+    // The fields of a CSV row in COLUMNS order, null for a missing field
+    private static String[] csvFields(String text, int[] columns) {
+        List<String> values = splitCsv(text);
+        String[] fields = new String[COLUMNS.length];
+        for (int field = 0; field < COLUMNS.length; field++) {
+            int column = columns[field];
+            fields[field] = column >= 0 && column < values.size() ? values.get(column) : null;
+        }
+        return fields;
+    }
+
+    // The fields of a JSON lines row in COLUMNS order; numbers are turned back into text, eg. 12.5 -> "12.5"
+    private static String[] jsonFields(String text) {
+        if (!(Json.parse(text) instanceof Map<?, ?> object)) {
+            throw new IllegalArgumentException("A JSON object {...} expected.");
+        }
+        String[] fields = new String[COLUMNS.length];
+        for (int field = 0; field < COLUMNS.length; field++) {
+            Object value = object.get(COLUMNS[field]);
+            if (value instanceof Double number) {
+                fields[field] = BigDecimal.valueOf(number).toPlainString();
+            } else if (value != null) {
+                fields[field] = value.toString();
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Splits one CSV record into its fields. A field in double quotes can hold commas and line breaks,
+     * and "" stands for one double quote inside it.
+     * @throws IllegalArgumentException if a quoted field is not closed
+     */
+    private static List<String> splitCsv(String text) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("A quoted field is not closed.");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * Reads the file one record at a time, skipping blank lines. In a CSV file a record goes on
+     * over the next lines while a quoted field is open (an odd number of quotes so far).
+     */
+    private static class RecordReader {
+        private final BufferedReader reader;
+        private final FileFormat format;
+        private long lineNumber = 0;
+
+        RecordReader(BufferedReader reader, FileFormat format) {
+            this.reader = reader;
+            this.format = format;
+        }
+
+        RawRow next() throws IOException {
+            String line;
+            do {
+                line = reader.readLine();
+                lineNumber++;
+                if (line == null) {
+                    return null;
+                }
+            } while (line.isBlank());
+            long firstLine = lineNumber;
+            if (lineNumber == 1 && line.startsWith("\uFEFF")) {
+                line = line.substring(1); // byte order mark written by some spreadsheets
+            }
+            if (format == FileFormat.Csv && isQuoteOpen(line)) {
+                StringBuilder record = new StringBuilder(line);
+                String more;
+                while ((more = reader.readLine()) != null) {
+                    lineNumber++;
+                    record.append('\n').append(more);
+                    if (isQuoteOpen(record)) {
+                        continue;
+                    }
+                    break;
+                }
+                line = record.toString();
+            }
+            return new RawRow(firstLine, line);
+        }
+
+        private static boolean isQuoteOpen(CharSequence text) {
+            int quotes = 0;
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == '"') {
+                    quotes++;
+                }
+            }
+            return quotes % 2 == 1;
+        }
+    }
+
+    // --- export ---
+
+    /**
+     * Writes every product to a CSV or JSON lines file (chosen by the file name), sorted by product ID.
+     * @return the number of products written
+     * @throws IllegalArgumentException if the file name is not .csv or .jsonl
+     */
+    public int exportProducts(Path file) throws IOException, SQLException {
+        long start = System.nanoTime();
+        FileFormat format = FileFormat.of(file);
+        ProductColumns columns = ProductColumns.load(databaseRW);
+        StringBuilder line = new StringBuilder(160);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            if (format == FileFormat.Csv) {
+                writer.write(String.join(",", COLUMNS));
+                writer.newLine();
+            }
+            for (int row = 0; row < columns.size(); row++) {
+                line.setLength(0);
+                if (format == FileFormat.Csv) {
+                    appendCsvField(line, columns.productId(row)).append(',');
+                    appendCsvField(line, columns.description(row)).append(',');
+                    Money.appendTo(line, columns.pricePence(row));
+                    line.append(',');
+                    appendCsvField(line, columns.imageName(row)).append(',');
+                    line.append(columns.stock(row));
+                } else {
+                    Map<String, Object> product = new LinkedHashMap<>();
+                    product.put("productId", columns.productId(row));
+                    product.put("description", columns.description(row));
+                    product.put("price", BigDecimal.valueOf(columns.pricePence(row), 2)); // eg. 29.99
+                    product.put("image", columns.imageName(row));
+                    product.put("stock", columns.stock(row));
+                    line.append(Json.write(product));
+                }
+                writer.append(line);
+                writer.newLine();
+            }
+        }
+        log.info("Catalogue exported", "file", file, "products", columns.size(),
+                "millis", (System.nanoTime() - start) / 1_000_000);
+        return columns.size();
+    }
+
+    // Writes the field, in double quotes if it holds a comma, a quote or a line break
+    private static StringBuilder appendCsvField(StringBuilder sb, String value) {
+        if (value == null) {
+            return sb;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            return sb.append(value);
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                sb.append('"');
+            }
+            sb.append(c);
+        }
+        return sb.append('"');
+    }
+}
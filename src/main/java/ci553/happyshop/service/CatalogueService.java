@@ -0,0 +1,82 @@
+package ci553.happyshop.service;
+
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.metrics.SearchEvent;
+import ci553.happyshop.storageAccess.DatabaseRW;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+/**
+ * CatalogueService answers product searches, without any user interface.
+ *
+ * It is used by the customer client (search by product ID) and the warehouse client
+ * (search by ID or name), and can be used the same way by a server or a load test.
+ */
+
+public class CatalogueService {
+    private final DatabaseRW databaseRW;
+
+    public CatalogueService(DatabaseRW databaseRW) {
+        this.databaseRW = databaseRW;
+    }
+
+    /**
+     * Finds a product a customer can buy: it must exist and have at least one unit in stock
+     * that is not reserved by a trolley (see availableStock()).
+     * @param productId the product ID, eg. 0001 (surrounding spaces are ignored)
+     * @return the product, or null if the ID is empty, unknown or the product is out of stock
+     */
+    public Product findAvailableProduct(String productId) throws SQLException {
+        String id = productId == null ? "" : productId.trim();
+        if (id.isEmpty()) {
+            return null;
+        }
+        SearchEvent event = new SearchEvent(); // JFR event, only recorded when enabled
+        event.begin();
+        event.keyword = id;
+        event.byId = true;
+        try {
+            Product product = databaseRW.searchByProductId(id);
+            if (product == null || availableStock(product) <= 0) {
+                return null;
+            }
+            event.resultCount = 1;
+            return product;
+        } finally {
+            event.commit(); // also when the database fails, with no result
+        }
+    }
+
+    /**
+     * The units of a product a customer can still add to a trolley: its stock minus the units reserved
+     * by trolleys, or simply its stock when reservations are switched off.
+     */
+    public int availableStock(Product product) {
+        if (!ReservationService.enabled) {
+            return product.getStockQuantity();
+        }
+        return ReservationService.getReservationService().availableStock(product);
+    }
+
+    /**
+     * Searches products by ID or by a word in their description.
+     * @return the matching products, or an empty list if the keyword is empty
+     */
+    public ArrayList<Product> searchProducts(String keyword) throws SQLException {
+        String word = keyword == null ? "" : keyword.trim();
+        if (word.isEmpty()) {
+            return new ArrayList<>();
+        }
+        SearchEvent event = new SearchEvent(); // JFR event, only recorded when enabled
+        event.begin();
+        event.keyword = word;
+        try {
+            ArrayList<Product> products = databaseRW.searchProduct(word);
+            event.resultCount = products.size();
+            return products;
+        } finally {
+            event.commit(); // also when the database fails, with no result
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package ci553.happyshop.service;
+
+import ci553.happyshop.catalogue.Order;
+import ci553.happyshop.catalogue.OrderLine;
+
+import java.util.List;
+
+/**
+ * The result of a checkout (see {@link TrolleyService#checkOut()}).
+ *
+ * @param order                the order that was placed, or null if the checkout failed
+ * @param insufficientLines the trolley lines whose product did not have enough stock; empty if the checkout
+ *                          succeeded. These products have been removed from the trolley.
+ */
+public record CheckoutResult(Order order, List<OrderLine> insufficientLines) {
+
+    public boolean isSuccess() {
+        return order != null;
+    }
+}
@@ -0,0 +1,34 @@
+package ci553.happyshop.service;
+
+import java.util.List;
+
+/**
+ * The result of a bulk import (see {@link CatalogueFileService#importProducts(java.nio.file.Path)}).
+ *
+ * @param rowsRead the product rows read from the file (not counting the CSV header and blank lines)
+ * @param imported the products inserted into the database
+ * @param rejected the rows that were not imported
+ * @param errors   why rows were rejected, in file order; only the first CatalogueFileService.maxReportedErrors
+ * @param millis   how long the import took
+ */
+public record ImportReport(long rowsRead, long imported, long rejected, List<RowError> errors, long millis) {
+
+    /**
+     * A row that was not imported.
+     * @param lineNumber the line of the file the row starts on, eg. 2 for the first row after a CSV header
+     * @param productId  the product ID of the row, or "" if it has none
+     * @param message    what is wrong with the row
+     */
+    public record RowError(long lineNumber, String productId, String message) {
+        @Override
+        public String toString() {
+            return "line " + lineNumber + (productId.isEmpty() ? "" : " (" + productId + ")") + ": " + message;
+        }
+    }
+
+    // eg. "Imported 199998 of 200000 products (2 rejected) in 4.2 s"
+    public String summary() {
+        return "Imported " + imported + " of " + rowsRead + " products (" + rejected + " rejected) in "
+                + (millis / 100) / 10.0 + " s";
+    }
+}
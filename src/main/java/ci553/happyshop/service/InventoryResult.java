@@ -0,0 +1,24 @@
+package ci553.happyshop.service;
+
+/**
+ * The result of an InventoryService request.
+ *
+ * @param success      true if the request was carried out
+ * @param errorMessage why the input was rejected, one bullet line per problem; empty on success
+ * @param conflict     true if the input was fine, but the product changed since the user read it
+ *                     (see InventoryService.editProduct()), so the user should look at it again
+ */
+public record InventoryResult(boolean success, String errorMessage, boolean conflict) {
+
+    public static InventoryResult ok() {
+        return new InventoryResult(true, "", false);
+    }
+
+    public static InventoryResult rejected(String errorMessage) {
+        return new InventoryResult(false, errorMessage, false);
+    }
+
+    public static InventoryResult conflict(String errorMessage) {
+        return new InventoryResult(false, errorMessage, true);
+    }
+}
@@ -0,0 +1,279 @@
+package ci553.happyshop.service;
+
+import ci553.happyshop.catalogue.Money;
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.catalogue.StockAdjustment;
+import ci553.happyshop.storageAccess.DatabaseRW;
+import ci553.happyshop.storageAccess.ImageFileManager;
+import ci553.happyshop.storageAccess.ProductColumns;
+import ci553.happyshop.utility.StorageLocation;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * InventoryService manages the products in stock for warehouse staff, without any user interface:
+ * searching, editing, deleting and adding products, including their image files.
+ *
+ * <p>Edits and new products arrive as request objects holding the text typed by the user
+ * (see {@link ProductEditRequest} and {@link NewProductRequest}). The input is validated first, and nothing
+ * is changed unless it is all valid; the {@link InventoryResult} then lists every problem found.</p>
+ *
+ * <p>adjustStocks() changes the stock of many products together, eg. when a delivery arrives,
+ * in one transaction instead of one edit per product.</p>
+ *
+ * <p>findLowStock() lists the products running out, scanning the stock column of the whole catalogue kept by
+ * InventoryWatcher (see ProductColumns) rather than reading the table and a Product object per row.</p>
+ */
+
+public class InventoryService {
+    private final DatabaseRW databaseRW;
+    private final InventoryWatcher inventoryWatcher = InventoryWatcher.getInventoryWatcher(); // told every stock change
+
+    public InventoryService(DatabaseRW databaseRW) {
+        this.databaseRW = databaseRW;
+    }
+
+    // Searches products by ID or description; an empty keyword finds nothing
+    public ArrayList<Product> searchProducts(String keyword) throws SQLException {
+        String word = keyword == null ? "" : keyword.trim();
+        if (word.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return databaseRW.searchProduct(word);
+    }
+
+    // The products with less stock than the default reorder threshold (see InventoryWatcher), sorted by product ID
+    public ArrayList<Product> findLowStock() throws SQLException {
+        return findLowStock(InventoryWatcher.defaultReorderThreshold);
+    }
+
+    // The products with less stock than the threshold, sorted by product ID
+    public ArrayList<Product> findLowStock(int threshold) throws SQLException {
+        ProductColumns columns = inventoryWatcher.stockColumns(databaseRW);
+        int[] rows = columns.rowsWithStockBelow(threshold);
+        ArrayList<Product> products = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            products.add(columns.product(row));
+        }
+        return products;
+    }
+
+    // Deletes the product from the database and its image from the image folder
+    public void deleteProduct(Product product) throws SQLException, IOException {
+        databaseRW.deleteProduct(product.getProductId());
+        inventoryWatcher.productDeleted(product.getProductId());
+        String imageName = product.getProductImageName(); //eg 0011.jpg;
+        ImageFileManager.deleteImageFile(StorageLocation.imageFolder, imageName);
+    }
+
+    /**
+     * Changes an existing product after validating the input.
+     * If a new image was chosen, the old image file is replaced by a copy of the new one,
+     * named after the product ID (eg. 0001.png).
+     *
+     * <p>The product is only changed if nobody else edited it since request.product() was read, and checkouts
+     * made meanwhile are kept (see DatabaseRW.updateProduct()). Otherwise nothing is changed, not even the image,
+     * and the result is a conflict that says what changed.</p>
+     */
+    public InventoryResult editProduct(ProductEditRequest request) throws SQLException, IOException {
+        String errors = validateEdit(request);
+        if (!errors.isEmpty()) {
+            return InventoryResult.rejected(errors);
+        }
+        Product product = request.product();
+        String id = product.getProductId();
+        String imageName = product.getProductImageName();
+        if (request.newImageUri() != null) {  //if the user changed image
+            //we use productId as image name, but we need to get its extension from the user selected image
+            imageName = ImageFileManager.imageFileName(request.newImageUri(), id);
+        }
+        long pricePence = Money.parse(request.priceText()); // eg. "12.50" -> 1250
+        int stock = Integer.parseInt(request.stockText().trim());
+        if (!databaseRW.updateProduct(product, request.description().trim(), pricePence, imageName, stock)) {
+            return InventoryResult.conflict(conflictMessage(product));
+        }
+        inventoryWatcher.productChanged(id, databaseRW);
+        if (request.newImageUri() != null) {  //only now that the product is updated
+            ImageFileManager.deleteImageFile(StorageLocation.imageFolder, product.getProductImageName()); //delete the old image
+            //copy the user selected image to project image folder
+            ImageFileManager.copyFileToDestination(request.newImageUri(), StorageLocation.imageFolder, id);
+        }
+        return InventoryResult.ok();
+    }
+
+    // Says why an edit of the product (as read) was not saved, comparing it with the product now
+    private String conflictMessage(Product read) throws SQLException {
+        String id = read.getProductId();
+        Product current = databaseRW.searchByProductId(id);
+        if (current == null) {
+            return "\u2022 Product " + id + " was deleted by someone else, your changes were not saved.\n";
+        }
+        if (current.getVersion() != read.getVersion()) {
+            return "\u2022 Product " + id + " was edited by someone else since you opened it (now \u00A3"
+                    + Money.format(current.getUnitPricePence()) + ", stock " + current.getStockQuantity()
+                    + "), your changes were not saved.\n";
+        }
+        return "\u2022 Customers bought product " + id + " since you opened it (stock " + read.getStockQuantity()
+                + " then, " + current.getStockQuantity() + " now), there is not enough stock left to take away"
+                + " what you did, your changes were not saved.\n";
+    }
+
+    /**
+     * Adds a new product after validating the input.
+     * The chosen image is copied to the image folder, named after the product ID (eg. 0012.jpg).
+     */
+    public InventoryResult addProduct(NewProductRequest request) throws SQLException, IOException {
+        String errors = validateNew(request);
+        if (!errors.isEmpty()) {
+            return InventoryResult.rejected(errors);
+        }
+        String id = request.productId().trim();
+        //copy the user selected image to project image folder and using productId as image name
+        //and get the image extension from the source image, we write this name to database
+        String imageNameWithExtension = ImageFileManager.copyFileToDestination(request.imageUri(), StorageLocation.imageFolder, id);
+        long pricePence = Money.parse(request.priceText()); // eg. "12.50" -> 1250
+        int stock = Integer.parseInt(request.stockText().trim());
+
+        //a record in databse looks like ('0001', '40 inch TV', 26900,'0001TV.jpg',100)"
+        databaseRW.insertNewProduct(id, request.description().trim(), pricePence, imageNameWithExtension, stock);
+        inventoryWatcher.productChanged(id, databaseRW);
+        return InventoryResult.ok();
+    }
+
+    // Checks the amount typed in "change stock by" is a whole number
+    public InventoryResult validateStockChange(String changeByText) {
+        try {
+            Integer.parseInt(changeByText.trim());
+            return InventoryResult.ok();
+        } catch (NumberFormatException e) {
+            return InventoryResult.rejected("Invalid stock quantity format.\n");
+        }
+    }
+
+    /**
+     * Checks one line of the stock adjustment list before it is queued: an existing product and a whole number,
+     * either the change (eg. "+40" or "-2") or, with setTo, the counted stock (eg. "12", not negative).
+     */
+    public InventoryResult validateStockAdjustment(String productId, String amountText, boolean setTo) throws SQLException {
+        StringBuilder errorMessage = new StringBuilder();
+        String id = productId == null ? "" : productId.trim();
+        if (!id.matches("\\d{4}")) {
+            errorMessage.append("\u2022 Product ID must be exactly 4 digits.\n");
+        } else if (databaseRW.isProIdAvailable(id)) {
+            errorMessage.append("\u2022 There is no product with ID " + id + ".\n");
+        }
+        try {
+            int amount = Integer.parseInt(amountText.trim());
+            if (setTo && amount < 0) {
+                errorMessage.append("\u2022 Stock quantity cannot be negative.\n");
+            }
+        } catch (NumberFormatException e) {
+            errorMessage.append("\u2022 Invalid stock quantity format.\n");
+        }
+        return errorMessage.isEmpty() ? InventoryResult.ok() : InventoryResult.rejected(errorMessage.toString());
+    }
+
+    /**
+     * Applies many stock adjustments together, eg. a delivery, in one transaction (see DatabaseRW.adjustStocks()).
+     * If any of them cannot be applied, no stock is changed and the result says which ones and why.
+     */
+    public InventoryResult adjustStocks(List<StockAdjustment> adjustments) throws SQLException {
+        if (adjustments.isEmpty()) {
+            return InventoryResult.rejected("\u2022 There are no stock adjustments to submit.\n");
+        }
+        ArrayList<StockAdjustment> rejected = databaseRW.adjustStocks(adjustments);
+        if (rejected.isEmpty()) {
+            for (StockAdjustment adjustment : adjustments) {
+                inventoryWatcher.stockChanged(adjustment.productId(), databaseRW);
+            }
+            return InventoryResult.ok();
+        }
+        StringBuilder errorMessage = new StringBuilder("No stock was changed:\n");
+        for (StockAdjustment adjustment : rejected) {
+            Product product = databaseRW.searchByProductId(adjustment.productId());
+            if (product == null) {
+                errorMessage.append("\u2022 " + adjustment + ": there is no product with this ID.\n");
+            } else {
+                errorMessage.append("\u2022 " + adjustment + ": the stock (" + product.getStockQuantity()
+                        + " now) cannot go below zero.\n");
+            }
+        }
+        return InventoryResult.rejected(errorMessage.toString());
+    }
+
+    // --- validation, each returns the error lines, or "" if the input is valid ---
+
+    private String validateEdit(ProductEditRequest request) {
+        StringBuilder errorMessage = new StringBuilder();
+        validatePrice(request.priceText().trim(), errorMessage);
+
+        // Validate if there is unperformed stock changeBy:
+        if (request.stockChangePending()) {
+            errorMessage.append("\u2022 Change stock by not applied.\n");
+        }
+        validateStock(request.stockText().trim(), errorMessage);
+
+        // Validate Description
+        if (request.description().trim().isEmpty())
+            errorMessage.append("\u2022 Product description cannot be empty.");
+        return errorMessage.toString();
+    }
+
+    private String validateNew(NewProductRequest request) throws SQLException {
+        StringBuilder errorMessage = new StringBuilder();
+        String id = request.productId() == null ? null : request.productId().trim();
+        // Validate Id (must be exactly 4 digits)
+        if (id == null || !id.matches("\\d{4}"))
+            errorMessage.append("\u2022 Product ID must be exactly 4 digits.\n");
+
+        //check Id is unique
+        if (!databaseRW.isProIdAvailable(id))
+            errorMessage.append("\u2022 Product ID " + id + " is not available.\n");
+
+        validatePrice(request.priceText().trim(), errorMessage);
+        validateStock(request.stockText().trim(), errorMessage);
+
+        // Validate Description
+        if (request.description().trim().isEmpty())
+            errorMessage.append("\u2022 Product description cannot be empty.\n");
+
+        // Validate Image Path
+        if (request.imageUri() == null)
+            errorMessage.append("\u2022 An image must be selected.");
+        return errorMessage.toString();
+    }
+
+    // Validate Price (must be a positive number, and two digitals )
+    private static void validatePrice(String txPrice, StringBuilder errorMessage) {
+        try {
+            double price = Double.parseDouble(txPrice);
+
+            // Validate: Ensure at most two decimal places
+            if (!txPrice.matches("^[0-9]+(\\.[0-9]{0,2})?$")) {
+                errorMessage.append("\u2022 Price can have at most two decimal places.\n");
+            }
+
+            if (price <= 0) {
+                errorMessage.append("\u2022 Price must be a positive number.\n");
+            }
+
+        } catch (NumberFormatException e) {
+            errorMessage.append("\u2022 Invalid price format.\n");
+        }
+    }
+
+    // Validate Stock Quantity (must be a non-negative integer)
+    private static void validateStock(String txStock, StringBuilder errorMessage) {
+        try {
+            int stock = Integer.parseInt(txStock);
+            if (stock < 0) {
+                errorMessage.append("\u2022 Stock quantity cannot be negative.\n");
+            }
+        } catch (NumberFormatException e) {
+            errorMessage.append("\u2022 Invalid stock quantity format.\n");
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package ci553.happyshop.service;
+
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.logging.ShopLogger;
+import ci553.happyshop.metrics.Counter;
+import ci553.happyshop.metrics.MetricsRegistry;
+import ci553.happyshop.storageAccess.DatabaseRW;
+import ci553.happyshop.storageAccess.DatabaseTopology;
+import ci553.happyshop.storageAccess.ProductColumns;
+import ci553.happyshop.storageAccess.StorageConfig;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * InventoryWatcher tells the warehouse when a product runs low on stock, as soon as it happens.
+ *
+ * <p>Every product has a reorder threshold: {@link #defaultReorderThreshold}, or its own value in
+ * {@link #reorderThresholds} (both read from happyShop.properties by StorageConfig, eg.
+ * inventory.reorderThreshold.0001=25). The services call stockChanged() once a change of the stock of some
+ * products is committed (a checkout in TrolleyService, a warehouse edit, delivery or new product in InventoryService,
+ * an import in CatalogueFileService), so the watcher never polls or scans the table: it only reads the stock
+ * of the changed products and compares each with the product's threshold.</p>
+ *
+ * <p>The stock is read again on the alert thread, after the commit, rather than passed in. Two checkouts of the same
+ * product on two tills commit in one order but may call stockChanged() in the other, so a stock passed in could
+ * arrive older than the one before it. Read after the commit, the last read of a product always has its latest
+ * stock. A product changed many times before the alert thread gets to it is read only once.</p>
+ *
+ * <p>Alerts are sent when a product crosses its threshold, not on every purchase:
+ * <pre>
+ *  stock 12 -> 9   (threshold 10)   alert: low on stock
+ *  stock  9 -> 7                    nothing, already low
+ *  stock  7 -> 100                  alert: restocked
+ * </pre>
+ * Alerts are written to the log and given to the listeners (eg. the warehouse client, see addListener())
+ * on one alert thread, in the order the stock was read, so a purchase never waits for a read or a listener.
+ * Listeners are called on the alert thread, so JavaFX windows must use Platform.runLater().</p>
+ *
+ * <p>The watcher also keeps the stock of every product as one ProductColumns, for scans such as
+ * InventoryService.findLowStock(): see stockColumns().</p>
+ *
+ * <p>The watcher sees the stock changes of this process. With database.mode=client, purchases made by
+ * the tills of other processes are only seen through the next change of the product made here.</p>
+ */
+
+public class InventoryWatcher {
+    private static final ShopLogger log = ShopLogger.getLogger(InventoryWatcher.class);
+    private static InventoryWatcher inventoryWatcher; //singleton instance
+
+    // Settings, read from happyShop.properties by StorageConfig
+    public static int defaultReorderThreshold = 10; // a product with less stock than this is low on stock
+    public static final Map<String, Integer> reorderThresholds = new ConcurrentHashMap<>(); // productId -> threshold
+
+    private static final Counter lowStockCounter = MetricsRegistry.counter("inventory.lowStock");
+    private static final Counter restockedCounter = MetricsRegistry.counter("inventory.restocked");
+
+    /**
+     * An alert about one product.
+     * @param productId        the product
+     * @param stock            its stock after the change
+     * @param reorderThreshold its reorder threshold
+     * @param low              true: the stock went below the threshold; false: it is back at or above it
+     */
+    public record StockAlert(String productId, int stock, int reorderThreshold, boolean low) {}
+
+    private final Set<String> lowProducts = ConcurrentHashMap.newKeySet(); // products last read below their threshold
+    // Products changed since the alert thread last read them -> the DatabaseRW that changed them, to read them with
+    private final ConcurrentHashMap<String, DatabaseRW> changedProducts = new ConcurrentHashMap<>();
+    private final AtomicBoolean readScheduled = new AtomicBoolean(); // a readChangedProducts() is waiting to run
+
+    private final Object columnsLock = new Object(); // held while stockColumns is loaded, or a stock in it is set
+    private volatile ProductColumns stockColumns; // every product, null until the first scan asks for it
+    private volatile boolean columnsStale; // a product was added, edited or deleted since stockColumns was loaded
+    private final List<Consumer<StockAlert>> listeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService alertThread = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "inventory-alerts");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    //Singleton pattern
+    private InventoryWatcher() {}
+    public static synchronized InventoryWatcher getInventoryWatcher() {
+        if (inventoryWatcher == null) {
+            inventoryWatcher = new InventoryWatcher();
+        }
+        return inventoryWatcher;
+    }
+
+    // The reorder threshold of a product
+    public static int reorderThreshold(String productId) {
+        return reorderThresholds.getOrDefault(productId, defaultReorderThreshold);
+    }
+
+    public void addListener(Consumer<StockAlert> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<StockAlert> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Called by the services after a change of the stock of a product was committed.
+     * The alert thread reads its stock through databaseRW, and sends an alert if the product went below
+     * its threshold, or back above it. Nothing is read or sent on the calling thread.
+     */
+    public void stockChanged(String productId, DatabaseRW databaseRW) {
+        changedProducts.put(productId, databaseRW);
+        if (readScheduled.compareAndSet(false, true)) {
+            alertThread.execute(this::readChangedProducts);
+        }
+    }
+
+    // Called by the services after a product was added or edited (not only its stock) and committed
+    public void productChanged(String productId, DatabaseRW databaseRW) {
+        columnsStale = true; // the product is not in stockColumns, or has other details there
+        stockChanged(productId, databaseRW);
+    }
+
+    // Called when a product is deleted, so a new product with the same ID starts without an alert.
+    // On the alert thread, so a read of the product that is running now cannot mark it low again afterwards.
+    public void productDeleted(String productId) {
+        columnsStale = true;
+        changedProducts.remove(productId);
+        alertThread.execute(() -> lowProducts.remove(productId));
+    }
+
+    // Whether the product was below its threshold when its stock was last read
+    public boolean isLow(String productId) {
+        return lowProducts.contains(productId);
+    }
+
+    /**
+     * The stock of every product as columns, eg. for a low-stock scan. There is one ProductColumns for the process:
+     * it is loaded through databaseRW the first time, and again only after a product was added, edited or deleted.
+     * In between, the alert thread sets the stock of each changed product it reads, so a scan does not read the
+     * whole table. With database.mode=server or client, tills of other processes change the table without telling
+     * this watcher, so it is loaded every time.
+     */
+    public ProductColumns stockColumns(DatabaseRW databaseRW) throws SQLException {
+        ProductColumns columns = stockColumns; // volatile read, so the stock set before the last write is seen
+        if (columns != null && !columnsStale && !sharedDatabase()) {
+            return columns;
+        }
+        synchronized (columnsLock) {
+            if (stockColumns == null || columnsStale || sharedDatabase()) {
+                columnsStale = false; // before the load: a product changed during the load makes it stale again
+                stockColumns = ProductColumns.load(databaseRW);
+            }
+            return stockColumns;
+        }
+    }
+
+    private static boolean sharedDatabase() {
+        return StorageConfig.mode == DatabaseTopology.Server || StorageConfig.mode == DatabaseTopology.Client;
+    }
+
+    // Runs on the alert thread. Under columnsLock, so the stock is never set in columns that a load is replacing.
+    // A stock read before a load is older than the loaded one, but then a change came after the read,
+    // and that change was told to stockChanged() after its commit, so the product is read and set again.
+    private void setColumnsStock(String productId, int stock) {
+        synchronized (columnsLock) {
+            ProductColumns columns = stockColumns;
+            int row = columns == null ? -1 : columns.rowOf(productId);
+            if (row >= 0) {
+                columns.setStock(row, stock);
+                stockColumns = columns; // volatile write, so the next scan sees the new stock
+            }
+        }
+    }
+
+    // Runs on the alert thread: reads each changed product once, however many changes it had since the last read
+    private void readChangedProducts() {
+        readScheduled.set(false); // a change from now on schedules another read
+        for (String productId : changedProducts.keySet()) {
+            DatabaseRW databaseRW = changedProducts.remove(productId);
+            if (databaseRW == null) {
+                continue; // deleted meanwhile
+            }
+            try {
+                Product product = databaseRW.searchByProductId(productId);
+                if (product != null) {
+                    setColumnsStock(productId, product.getStockQuantity());
+                    checkThreshold(productId, product.getStockQuantity());
+                }
+            } catch (SQLException e) { // the next change of the product reads it again
+                log.warn("Cannot read the stock of a changed product", "productId", productId, "error", e.getMessage());
+            }
+        }
+    }
+
+    // Runs on the alert thread
+    private void checkThreshold(String productId, int stock) {
+        int threshold = reorderThreshold(productId);
+        boolean low = stock < threshold;
+        boolean crossed = low ? lowProducts.add(productId) : lowProducts.remove(productId);
+        if (crossed) {
+            send(new StockAlert(productId, stock, threshold, low));
+        }
+    }
+
+    // Runs on the alert thread
+    private void send(StockAlert alert) {
+        if (alert.low()) {
+            lowStockCounter.increment();
+            log.warn("Low stock", "productId", alert.productId(), "stock", alert.stock(),
+                    "reorderThreshold", alert.reorderThreshold());
+        } else {
+            restockedCounter.increment();
+            log.info("Restocked", "productId", alert.productId(), "stock", alert.stock(),
+                    "reorderThreshold", alert.reorderThreshold());
+        }
+        for (Consumer<StockAlert> listener : listeners) {
+            try {
+                listener.accept(alert);
+            } catch (RuntimeException e) {
+                log.error("Stock alert listener failed", e, "productId", alert.productId());
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package ci553.happyshop.service;
+
+/**
+ * A request to add a new product (see {@link InventoryService#addProduct(NewProductRequest)}).
+ * Price and stock are the text typed by the user; InventoryService validates them.
+ *
+ * @param productId   the new product ID, exactly 4 digits, eg. 0012
+ * @param priceText   the price, eg. "12.50"
+ * @param stockText   the stock quantity, eg. "40"
+ * @param description the description
+ * @param imageUri    the URI of the image chosen by the user
+ */
+public record NewProductRequest(String productId, String priceText, String stockText, String description,
+                                String imageUri) {
+}
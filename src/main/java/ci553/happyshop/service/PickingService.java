@@ -0,0 +1,88 @@
+package ci553.happyshop.service;
+
+import ci553.happyshop.orderManagement.OrderHub;
+import ci553.happyshop.orderManagement.OrderState;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * PickingService hands out orders to pickers, without any user interface.
+ *
+ * <p>OrderHub tells the PickingService which orders are waiting to be picked (Ordered or Progressing)
+ * every time its orderMap changes. A picker claims the next order with {@link #claimNextOrder()}: the order
+ * is locked for that picker, moved to Progressing, and its details are returned for picking. When the customer
+ * has collected it, the picker calls {@link #collect(int)}, which moves the order to Collected.</p>
+ *
+ * <p>All pickers share one PickingService (Singleton pattern). It is safe to use from many threads:
+ * the order is chosen and moved to Progressing in one step under the OrderHub lock (OrderHub.claimNextOrder()),
+ * so an order is never given to two pickers, and an order that has been collected is never handed out again.</p>
+ */
+
+public class PickingService {
+    private static final PickingService pickingService = new PickingService(); //singleton instance
+
+    // Orders waiting to be picked, as last reported by OrderHub (replaced, never changed)
+    private volatile NavigableMap<Integer, OrderState> pickableOrders = Collections.emptyNavigableMap();
+    // Orders claimed by a picker through claimNextOrder() and not collected yet
+    private final Set<Integer> lockedOrderIds = ConcurrentHashMap.newKeySet();
+
+    /**
+     * An order claimed by a picker.
+     * @param orderId     the order ID
+     * @param orderDetail the content of the order file, to show to the picker
+     */
+    public record PickTask(int orderId, String orderDetail) {}
+
+    //Singleton pattern
+    private PickingService() {}
+    public static PickingService getPickingService() {
+        return pickingService;
+    }
+
+    // Called by OrderHub with the orders in the Ordered or Progressing state
+    public void setPickableOrders(Map<Integer, OrderState> orders) {
+        pickableOrders = Collections.unmodifiableNavigableMap(new TreeMap<>(orders));
+    }
+
+    // The orders waiting to be picked, sorted by order ID
+    public NavigableMap<Integer, OrderState> getPickableOrders() {
+        return pickableOrders;
+    }
+
+    /**
+     * Claims the first order in the Ordered state and marks it as progressing.
+     * @return the claimed order and its details, or null if no order is waiting
+     */
+    public PickTask claimNextOrder() throws IOException {
+        OrderHub orderHub = OrderHub.getOrderHub();
+        int orderId = orderHub.claimNextOrder(); // atomic: find the order and move it to Progressing
+        if (orderId < 0) {
+            return null;
+        }
+        lockedOrderIds.add(orderId); // remember the order is with a picker, so it can be collected
+        // Read order file, ie. order details
+        return new PickTask(orderId, orderHub.getOrderDetailForPicker(orderId));
+    }
+
+    /**
+     * Marks an order claimed with claimNextOrder() as collected and unlocks it.
+     * @return false if the order was not claimed, or has already been collected (nothing is changed)
+     */
+    public boolean collect(int orderId) throws IOException {
+        if (!lockedOrderIds.contains(orderId)) {
+            return false;
+        }
+        // OrderHub only moves Progressing -> Collected, so two pickers collecting at once cannot both succeed
+        if (!OrderHub.getOrderHub().changeOrderStateMoveFile(orderId, OrderState.Collected)) {
+            return false;
+        }
+        lockedOrderIds.remove(orderId);
+        return true;
+    }
+}
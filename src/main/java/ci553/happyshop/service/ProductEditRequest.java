@@ -0,0 +1,19 @@
+package ci553.happyshop.service;
+
+import ci553.happyshop.catalogue.Product;
+
+/**
+ * A request to change an existing product (see {@link InventoryService#editProduct(ProductEditRequest)}).
+ * Price and stock are the text typed by the user; InventoryService validates them.
+ *
+ * @param product            the product as it was read when the user started editing it; its ID, image,
+ *                           stock and version are used to notice changes made meanwhile
+ * @param priceText          the new price, eg. "12.50"
+ * @param stockText          the new stock quantity, eg. "40"
+ * @param description        the new description
+ * @param newImageUri        the URI of a new image chosen by the user, or null to keep the current image
+ * @param stockChangePending true if the user typed a "change stock by" amount but did not apply it
+ */
+public record ProductEditRequest(Product product, String priceText, String stockText, String description,
+                                 String newImageUri, boolean stockChangePending) {
+}
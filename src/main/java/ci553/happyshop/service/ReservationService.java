@@ -0,0 +1,220 @@
+package ci553.happyshop.service;
+
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.logging.ShopLogger;
+import ci553.happyshop.metrics.Counter;
+import ci553.happyshop.metrics.MetricsRegistry;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ReservationService holds stock for the trolleys of this process from the moment a product is added,
+ * so a customer finds out straight away when there is not enough, instead of at checkout when the
+ * whole trolley is rolled back.
+ *
+ * <p>Every trolley (TrolleyService) has a reservation ID. Adding a product reserves its quantity for that trolley,
+ * which only succeeds if the product's available stock is high enough:
+ * <pre>
+ *  available = inStock - reserved      (reserved = the units of the product held by all trolleys)
+ * </pre>
+ * The reservations of a trolley are released when it is checked out or cancelled,
+ * and when the trolley has not been changed for {@link #ttlSeconds} seconds (the customer walked away).</p>
+ *
+ * <p>Expiry uses a DelayQueue with one entry per trolley, sorted by expiry time, and a daemon thread
+ * that takes the entries as they fall due. Adding to a trolley only moves its expiry time forward;
+ * when the old entry falls due the thread sees the later time and puts the entry back for then,
+ * so renewing a reservation never has to search the queue.</p>
+ *
+ * <p>A reservation only holds stock inside this process, and checkout still buys the stock with
+ * purchaseStocks(), so the stock in the database can never go wrong: at worst a checkout fails as it did before.
+ * Reservations are switched off with reservation.enabled=false in happyShop.properties (see StorageConfig).</p>
+ */
+
+public class ReservationService {
+    private static final ShopLogger log = ShopLogger.getLogger(ReservationService.class);
+    private static ReservationService reservationService; //singleton instance
+
+    // Settings, read from happyShop.properties by StorageConfig
+    public static boolean enabled = true;
+    public static int ttlSeconds = 900; // a trolley not changed for this long loses its reservations
+
+    private static final Counter refusedCounter = MetricsRegistry.counter("reservation.refused");
+    private static final Counter expiredCounter = MetricsRegistry.counter("reservation.expired");
+
+    /**
+     * The reservations of one trolley. Guarded by its own lock; once released it is never used again,
+     * the next reservation of the trolley creates a new one.
+     */
+    private static class TrolleyReservation {
+        final long reservationId;
+        final Map<String, Integer> quantities = new HashMap<>(); // productId -> units reserved
+        long expiresAtNanos;
+        boolean released = false;
+
+        TrolleyReservation(long reservationId) {
+            this.reservationId = reservationId;
+        }
+    }
+
+    // The entry of a trolley in the expiry queue, due at deadlineNanos (System.nanoTime())
+    private record Expiry(TrolleyReservation reservation, long deadlineNanos) implements Delayed {
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(deadlineNanos, ((Expiry) other).deadlineNanos);
+        }
+    }
+
+    private final ConcurrentHashMap<String, Integer> reservedByProduct = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, TrolleyReservation> trolleys = new ConcurrentHashMap<>();
+    private final DelayQueue<Expiry> expiryQueue = new DelayQueue<>();
+    private final AtomicLong lastReservationId = new AtomicLong();
+
+    //Singleton pattern
+    private ReservationService() {}
+    public static synchronized ReservationService getReservationService() {
+        if (reservationService == null) {
+            reservationService = new ReservationService();
+            Thread expiryThread = new Thread(reservationService::expireReservations, "reservation-expiry");
+            expiryThread.setDaemon(true);
+            expiryThread.start();
+        }
+        return reservationService;
+    }
+
+    // A new reservation ID for a trolley
+    public long newReservationId() {
+        return lastReservationId.incrementAndGet();
+    }
+
+    /**
+     * Reserves more units of a product for a trolley, if enough units are available,
+     * and moves the trolley's expiry to ttlSeconds from now.
+     *
+     * @param product  the product, with its stock as read from the database (getStockQuantity())
+     * @param quantity the units to add to the trolley's reservation
+     * @return true if the units were reserved, false if fewer than quantity units are available
+     */
+    public boolean reserve(long reservationId, Product product, int quantity) {
+        String productId = product.getProductId();
+        int inStock = product.getStockQuantity();
+        while (true) {
+            TrolleyReservation reservation = trolleys.computeIfAbsent(reservationId, this::newTrolleyReservation);
+            synchronized (reservation) {
+                if (reservation.released) {
+                    continue; // expired or released just now, start a new one
+                }
+                boolean[] reserved = {false};
+                reservedByProduct.compute(productId, (id, current) -> {
+                    int units = current == null ? 0 : current;
+                    if (units + quantity > inStock) {
+                        return current; // not enough available, nothing changes
+                    }
+                    reserved[0] = true;
+                    return units + quantity;
+                });
+                if (!reserved[0]) {
+                    refusedCounter.increment();
+                    log.debug("Not enough stock to reserve", "productId", productId, "quantity", quantity,
+                            "inStock", inStock);
+                    return false;
+                }
+                reservation.quantities.merge(productId, quantity, Integer::sum);
+                reservation.expiresAtNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(ttlSeconds);
+                return true;
+            }
+        }
+    }
+
+    // Releases what a trolley holds of one product, eg. when the product is removed from the trolley
+    public void release(long reservationId, String productId) {
+        TrolleyReservation reservation = trolleys.get(reservationId);
+        if (reservation == null) {
+            return;
+        }
+        synchronized (reservation) {
+            Integer quantity = reservation.quantities.remove(productId);
+            if (quantity != null) {
+                unreserve(productId, quantity);
+            }
+        }
+    }
+
+    // Releases everything a trolley holds, when it is checked out or cancelled
+    public void releaseAll(long reservationId) {
+        TrolleyReservation reservation = trolleys.remove(reservationId);
+        if (reservation != null) {
+            synchronized (reservation) {
+                releaseQuantities(reservation);
+            }
+        }
+    }
+
+    // The units of the product that can still be reserved: inStock - reserved
+    public int availableStock(Product product) {
+        return product.getStockQuantity() - reservedStock(product.getProductId());
+    }
+
+    // The units of the product held by all trolleys
+    public int reservedStock(String productId) {
+        return reservedByProduct.getOrDefault(productId, 0);
+    }
+
+    private TrolleyReservation newTrolleyReservation(long reservationId) {
+        TrolleyReservation reservation = new TrolleyReservation(reservationId);
+        reservation.expiresAtNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(ttlSeconds);
+        expiryQueue.add(new Expiry(reservation, reservation.expiresAtNanos));
+        return reservation;
+    }
+
+    // Runs on the expiry thread: releases the trolleys whose time is up
+    private void expireReservations() {
+        while (true) {
+            Expiry expiry;
+            try {
+                expiry = expiryQueue.take(); // waits until the first entry is due
+            } catch (InterruptedException e) {
+                return;
+            }
+            TrolleyReservation reservation = expiry.reservation();
+            synchronized (reservation) {
+                if (reservation.released) {
+                    continue; // checked out or cancelled before it expired
+                }
+                if (reservation.expiresAtNanos - System.nanoTime() > 0) {
+                    expiryQueue.add(new Expiry(reservation, reservation.expiresAtNanos)); // renewed since
+                    continue;
+                }
+                trolleys.remove(reservation.reservationId, reservation);
+                int products = reservation.quantities.size();
+                releaseQuantities(reservation);
+                expiredCounter.increment();
+                log.info("Trolley reservation expired", "reservationId", reservation.reservationId,
+                        "products", products);
+            }
+        }
+    }
+
+    // Gives back all units of a trolley; called holding the trolley's lock
+    private void releaseQuantities(TrolleyReservation reservation) {
+        reservation.released = true;
+        for (Map.Entry<String, Integer> entry : reservation.quantities.entrySet()) {
+            unreserve(entry.getKey(), entry.getValue());
+        }
+        reservation.quantities.clear();
+    }
+
+    private void unreserve(String productId, int quantity) {
+        reservedByProduct.computeIfPresent(productId, (id, units) -> units == quantity ? null : units - quantity);
+    }
+}
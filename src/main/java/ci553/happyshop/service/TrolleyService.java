@@ -0,0 +1,151 @@
+package ci553.happyshop.service;
+
+import ci553.happyshop.catalogue.Order;
+import ci553.happyshop.catalogue.OrderLine;
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.catalogue.Trolley;
+import ci553.happyshop.metrics.CheckoutEvent;
+import ci553.happyshop.metrics.ShopFlightRecorder;
+import ci553.happyshop.orderManagement.OrderHub;
+import ci553.happyshop.storageAccess.DatabaseRW;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * TrolleyService holds the trolley of one customer and checks it out, without any user interface.
+ *
+ * <p>Create one TrolleyService per customer (the customer client does this in CustomerModel).
+ * The trolley (see Trolley) has one line per product, with its ordered quantity, sorted by product ID.
+ * A checkout buys the stock of all products in one database transaction and, if every product has
+ * enough stock, asks OrderHub to create the order.</p>
+ *
+ * <p>When reservations are enabled (see ReservationService), adding a product also reserves its units for this
+ * trolley, and add() refuses the product if not enough units are left. The reservation is released when the
+ * trolley is checked out or cleared.</p>
+ *
+ * <p>A TrolleyService is used by one customer at a time, so it is not thread-safe.</p>
+ */
+
+public class TrolleyService {
+    private final DatabaseRW databaseRW;
+    private final Trolley trolley = new Trolley();
+    private final ReservationService reservationService = ReservationService.getReservationService();
+    private final long reservationId = reservationService.newReservationId();
+    private final InventoryWatcher inventoryWatcher = InventoryWatcher.getInventoryWatcher(); // told the stock bought
+
+    public TrolleyService(DatabaseRW databaseRW) {
+        this.databaseRW = databaseRW;
+    }
+
+    /**
+     * Adds one unit of the product to the trolley.
+     * If the product is already in the trolley its quantity goes up by one,
+     * otherwise a line with quantity 1 is added for it.
+     * @return true if it was added, false if the unit could not be reserved (all units are in trolleys)
+     */
+    public boolean add(Product product) {
+        return add(product, 1);
+    }
+
+    /**
+     * Adds a number of units of the product to the trolley, eg. for an order sent by a web client.
+     * @param product the product as just read from the database; its stock is used to check the reservation
+     * @return true if they were added, false if they could not be reserved (the trolley is not changed)
+     */
+    public boolean add(Product product, int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("quantity must be positive: " + quantity);
+        }
+        if (ReservationService.enabled && !reservationService.reserve(reservationId, product, quantity)) {
+            return false;
+        }
+        trolley.add(product, quantity); // merges with the same product, found by ID
+        return true;
+    }
+
+    /**
+     * Removes a product from the trolley and releases its reservation.
+     * @return false if the product was not in the trolley
+     */
+    public boolean remove(String productId) {
+        if (trolley.remove(productId) == null) {
+            return false;
+        }
+        reservationService.release(reservationId, productId);
+        return true;
+    }
+
+    // The lines of the trolley, sorted by product ID
+    public ArrayList<OrderLine> getTrolley() {
+        return trolley.getLines();
+    }
+
+    // The trolley as text for the trolley page, the same as ProductListFormatter.buildString(getTrolley())
+    public String getTrolleyDisplay() {
+        return trolley.display();
+    }
+
+    // The total price of the trolley in pence
+    public long getTotalPence() {
+        return trolley.getTotalPence();
+    }
+
+    public boolean isEmpty() {
+        return trolley.isEmpty();
+    }
+
+    // Empties the trolley and releases its reservations
+    public void clear() {
+        trolley.clear();
+        reservationService.releaseAll(reservationId);
+    }
+
+    /**
+     * Checks out the trolley.
+     * - If all products have enough stock, the stock is bought, the order is placed and the trolley is emptied.
+     * - Otherwise nothing is bought, and the products without enough stock are removed from the trolley
+     *   so the customer can check out the rest.
+     * Checking out an empty trolley does nothing and returns a failed result with no insufficient products.
+     */
+    public CheckoutResult checkOut() throws IOException, SQLException {
+        if (trolley.isEmpty()) {
+            return new CheckoutResult(null, List.of());
+        }
+        CheckoutEvent checkoutEvent = new CheckoutEvent(); // JFR event, only recorded when enabled
+        checkoutEvent.begin();
+        ArrayList<OrderLine> orderLines = trolley.getLines();
+        checkoutEvent.lineCount = orderLines.size();
+        if (checkoutEvent.shouldCommit()) {
+            checkoutEvent.products = ShopFlightRecorder.productIds(orderLines);
+        }
+        try {
+            // Check the database for sufficient stock for all products in the trolley.
+            // If any products are insufficient, the update will be rolled back.
+            // If all products are sufficient, the database will be updated, and insufficientLines will be empty.
+            // The trolley has one line per product, sorted by ID, so every transaction locks the rows in the same order.
+            ArrayList<OrderLine> insufficientLines = databaseRW.purchaseStocks(orderLines);
+
+            if (insufficientLines.isEmpty()) { // If stock is sufficient for all products
+                for (OrderLine line : orderLines) { // the purchase is committed, the watcher reads the new stock
+                    inventoryWatcher.stockChanged(line.productId(), databaseRW);
+                }
+                //get OrderHub and tell it to make a new Order
+                Order theOrder = OrderHub.getOrderHub().newOrder(orderLines);
+                checkoutEvent.orderId = theOrder.getOrderId();
+                checkoutEvent.success = true;
+                clear(); // the stock is bought, so the reservations are no longer needed
+                return new CheckoutResult(theOrder, List.of());
+            }
+            // Remove products with insufficient stock from the trolley
+            for (OrderLine bad : insufficientLines) {
+                remove(bad.productId());
+            }
+            return new CheckoutResult(null, insufficientLines);
+        } finally {
+            checkoutEvent.commit(); // also when purchaseStocks() or newOrder() throws, with success false
+        }
+    }
+}
@@ -1,16 +1,20 @@
 package ci553.happyshop.storageAccess;
 
+import ci553.happyshop.catalogue.OrderLine;
 import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.catalogue.StockAdjustment;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * The DatabaseRW interface defines the contract for interacting with the product database.
- * It is currently implemented by the DerbyRW class, which provides the actual functionality.
+ * It is implemented by the DerbyRW class, which provides the actual functionality,
+ * and by InMemoryRW, which keeps the data in memory (database.mode=inmemory).
  *
  * Responsibilities:
- * - Searching for products by keyword or product ID.
+ * - Searching for products by keyword or product ID (the products come from ProductCatalogue, so they are shared).
  * - Performing stock updates and validations during purchases.
  * - Updating, deleting, or inserting products.
  * - Checking whether a product ID is available before insertion.
@@ -41,30 +45,49 @@ public interface DatabaseRW {
      * Searches for a product by its unique product ID.
      * @param productId the product ID
      * @return the matching product, or null if not found
+     * @throws SQLException if the database cannot be read (never reported as not found)
      */
     Product searchByProductId(String productId) throws SQLException;
 
     /**
-     * Attempts to purchase (reduce stocks of) the given list of products.
+     * Attempts to purchase (reduce stocks of) the products of the given order lines.
      * Behavior:
      * - If all requested quantities are available, stocks are reduced and an empty list is returned.
-     * - If any product does not have sufficient stock, no stock is updated and a list of all insufficient products is returned.
+     * - If any product does not have sufficient stock (or no longer exists), no stock is updated and a list of all
+     *   insufficient lines is returned.
+     * - If the database fails, no stock is updated and the SQLException is thrown: the checkout must not make an order.
      *
-     * @param proList the list of products with requested quantities to purchase
+     * @param orderLines the products with the requested quantities to purchase
      */
-    ArrayList<Product> purchaseStocks(ArrayList<Product> proList) throws SQLException;
+    ArrayList<OrderLine> purchaseStocks(ArrayList<OrderLine> orderLines) throws SQLException;
+
+    /**
+     * Changes the stock of many products in one transaction, eg. a delivery of 300 lines,
+     * applying the adjustments in list order (a product may appear more than once).
+     * Behavior, as purchaseStocks():
+     * - If every product exists and no stock would go below zero, all adjustments are applied and an empty list is returned.
+     * - Otherwise no stock is changed and a list of the adjustments that cannot be applied is returned.
+     *
+     * @param adjustments the stock changes, see StockAdjustment
+     */
+    ArrayList<StockAdjustment> adjustStocks(List<StockAdjustment> adjustments) throws SQLException;
 
 
     /**
-     * Updates the details of a product identified by its ID.
+     * Updates the details of a product, if nobody else has edited it since it was read (optimistic concurrency):
+     * - The product is only changed if it still has the version of read (compare-and-set), and its version goes up by 1.
+     * - The stock is changed by stock - read's stock, so checkouts made since the product was read are kept.
+     * No lock is held while the warehouse user is editing, and checkouts never wait for an edit.
      *
-     * @param id         the product ID
+     * @param read       the product as read when the edit started (its ID, version and stock are used)
      * @param des        the new description
-     * @param price      the new price
+     * @param pricePence the new price in pence, eg. 2999 for £29.99
      * @param imageName  the new image file name
-     * @param stock      the updated stock quantity
+     * @param stock      the stock quantity the user wants, based on the stock of read
+     * @return true if the product was updated; false if it was edited or deleted meanwhile, or if checkouts
+     *         left less stock than the edit takes away (nothing is changed, read the product again)
      */
-    void updateProduct(String id, String des, double price, String imageName, int stock) throws SQLException;
+    boolean updateProduct(Product read, String des, long pricePence, String imageName, int stock) throws SQLException;
 
 
     // Deletes a product identified by its ID.
@@ -74,11 +97,18 @@ public interface DatabaseRW {
      * Inserts a new product into the database.
      * @param id      the product ID
      * @param des     the product description
-     * @param price   the product price
+     * @param pricePence the product price in pence, eg. 2999 for £29.99
      * @param image   the image file name
      * @param stock   the initial stock quantity
      */
-    void insertNewProduct(String id, String des, double price, String image, int stock) throws SQLException;
+    void insertNewProduct(String id, String des, long pricePence, String image, int stock) throws SQLException;
+
+    /**
+     * Inserts many new products in one transaction: either all of them are inserted, or none
+     * (eg. if one product ID is already used). Used by the bulk import, once per chunk of rows.
+     * @param products the new products with their initial stock (the objects are only read, not shared)
+     */
+    void insertNewProducts(List<Product> products) throws SQLException;
 
     /**
      * Checks whether the given product ID is available for use (i.e., not already in use).
@@ -1,5 +1,7 @@
 package ci553.happyshop.storageAccess;
 
+import ci553.happyshop.metrics.MetricsRegistry;
+
 /**
  * The DatabaseRWFactory class centralizes database configuration and object creation.
  * It acts as a factory pattern to provide flexible instantiation of the DatabaseRW interface.
@@ -18,6 +20,12 @@ package ci553.happyshop.storageAccess;
  *     DatabaseRW db = DatabaseRWFactory.createDatabaseRW();
  *
  * This hides the actual implementation (e.g., DerbyRW) from the rest of the system.
+ *
+ * With database.mode=inmemory (see StorageConfig) it creates an InMemoryRW instead of a DerbyRW,
+ * and with stock.mode=writebehind the DerbyRW is wrapped in a WriteBehindRW.
+ *
+ * When metrics are enabled (see MetricsRegistry), the DatabaseRW is wrapped in a TimedDatabaseRW,
+ * which records the latency of every database call.
  */
 
 public class DatabaseRWFactory {
@@ -25,10 +33,22 @@ public class DatabaseRWFactory {
     public static String dbURL = "jdbc:derby:happyShopDB"; //or other database URL in the future (eg MySQLRW or SQLiteRW)
 
     /**
-     * Creates an instance of DatabaseRW (currently returning DerbyRW, but can be modified to return other implementations).
+     * Creates an instance of DatabaseRW: an InMemoryRW in the in-memory storage mode, otherwise a DerbyRW.
      */
     public static DatabaseRW createDatabaseRW() {
-        return new DerbyRW(); // or other database implementations in the future (eg MySQLRW or SQLiteRW)
+        DatabaseRW databaseRW;
+        if (StorageConfig.mode == DatabaseTopology.InMemory) {
+            databaseRW = new InMemoryRW();
+        } else {
+            databaseRW = new DerbyRW(); // or other database implementations in the future (eg MySQLRW or SQLiteRW)
+            if (StorageConfig.stockMode == StockMode.WriteBehind) {
+                databaseRW = new WriteBehindRW(databaseRW); // stock in memory, written to Derby in batches
+            }
+        }
+        if (MetricsRegistry.isEnabled()) {
+            return new TimedDatabaseRW(databaseRW);
+        }
+        return databaseRW;
     }
 }
 
@@ -0,0 +1,24 @@
+package ci553.happyshop.storageAccess;
+
+/**
+ * Represents how this process reaches the product database (set with database.mode in happyShop.properties).
+ *
+ * - Embedded: The original setup. Derby runs inside this process and opens the database folder directly.
+ *   Derby locks the folder (db.lck), so no other process can use the database at the same time.
+ *
+ * - Server: Like Embedded, and this process also starts a Derby Network Server, so other processes
+ *   (eg. more customer tills on other cores or computers) can share the same database over the network.
+ *
+ * - Client: The database is opened through the Derby Network Server of another process
+ *   (one running in Server mode), using the Derby client driver.
+ *
+ * - InMemory: No Derby at all. The products and users are kept in the memory of this process
+ *   (see InMemoryRW), optionally saved to a snapshot file. For load tests, demos and kiosks.
+ */
+
+public enum DatabaseTopology {
+    Embedded,
+    Server,
+    Client,
+    InMemory
+}
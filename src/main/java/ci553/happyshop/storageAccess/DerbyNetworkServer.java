@@ -0,0 +1,71 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.logging.ShopLogger;
+import org.apache.derby.drda.NetworkServerControl;
+
+import java.io.PrintWriter;
+import java.net.InetAddress;
+
+/**
+ * Starts and stops a Derby Network Server inside this process, so that other processes can open
+ * the same database with the Derby client driver (eg. jdbc:derby://localhost:1527/happyShopDB).
+ *
+ * The process running the server keeps using the embedded driver itself, which is faster
+ * because its queries do not go through the network.
+ * Used by StorageConfig when database.mode=server.
+ */
+
+public class DerbyNetworkServer {
+    private static final ShopLogger log = ShopLogger.getLogger(DerbyNetworkServer.class);
+    private static final int START_TIMEOUT_MILLIS = 10_000;
+
+    private static NetworkServerControl server; // the running server, or null
+
+    /**
+     * Starts the server and waits until it accepts connections.
+     * @param host the address to listen on, eg. localhost, or 0.0.0.0 for all network interfaces
+     * @param port the port to listen on, eg. 1527 (Derby's default)
+     */
+    public static synchronized void start(String host, int port) throws Exception {
+        if (server != null) {
+            return; // already running
+        }
+        NetworkServerControl control = new NetworkServerControl(InetAddress.getByName(host), port);
+        control.start(new PrintWriter(System.out, true)); // the server writes its start message to the console
+
+        // start() returns straight away; ping until the server answers
+        long deadline = System.currentTimeMillis() + START_TIMEOUT_MILLIS;
+        while (true) {
+            try {
+                control.ping();
+                break;
+            } catch (Exception e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException("Derby Network Server did not start on " + host + ":" + port, e);
+                }
+                Thread.sleep(100);
+            }
+        }
+        server = control;
+        Runtime.getRuntime().addShutdownHook(new Thread(DerbyNetworkServer::stop));
+        log.info("Derby Network Server started", "host", host, "port", port);
+    }
+
+    // Stops the server; clients connected to it lose their connections
+    public static synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        try {
+            server.shutdown();
+            log.info("Derby Network Server stopped");
+        } catch (Exception e) {
+            log.warn("Derby Network Server did not stop cleanly", e);
+        }
+        server = null;
+    }
+
+    public static synchronized boolean isRunning() {
+        return server != null;
+    }
+}
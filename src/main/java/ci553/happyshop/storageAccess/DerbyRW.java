@@ -1,9 +1,21 @@
 package ci553.happyshop.storageAccess;
 
+import ci553.happyshop.catalogue.OrderLine;
 import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.catalogue.ProductCatalogue;
+import ci553.happyshop.catalogue.StockAdjustment;
+import ci553.happyshop.logging.ShopLogger;
+import ci553.happyshop.metrics.PurchaseStocksEvent;
+import ci553.happyshop.metrics.ShopFlightRecorder;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import ci553.happyshop.security.User;
@@ -14,16 +26,30 @@ import java.time.Instant;
  * "CREATE TABLE ProductTable(" +
  *         "productID CHAR(4) PRIMARY KEY," +
  *         "description VARCHAR(100)," +
- *         "unitPrice DOUBLE," +
+ *         "unitPricePence BIGINT NOT NULL," +   (pence, see Money; older databases are moved by PriceMigration)
  *         "image VARCHAR(100)," +
  *         "inStock INT," +
+ *         "version BIGINT NOT NULL DEFAULT 0," +   (warehouse edits, see updateProduct(); added by VersionMigration)
  *         "CHECK (inStock >= 0)" +
  *           ")",
  */
 
 public class DerbyRW implements DatabaseRW {
-    private static String dbURL = DatabaseRWFactory.dbURL; // Shared by all instances
+    private static final ShopLogger log = ShopLogger.getLogger(DerbyRW.class);
+    private final String dbURL;
     private  Lock lock = new ReentrantLock(); // Each instance has its own lock
+    private final ProductCatalogue catalogue = ProductCatalogue.getProductCatalogue(); // shares the Product objects
+
+    public DerbyRW() {
+        this(DatabaseRWFactory.dbURL);
+    }
+
+    // A DerbyRW for another database than DatabaseRWFactory.dbURL, eg. a test database
+    DerbyRW(String dbURL) {
+        this.dbURL = dbURL;
+        PriceMigration.migrateOnce(dbURL); // an old database still has prices in pounds (unitPrice DOUBLE)
+        VersionMigration.migrateOnce(dbURL); // and no version column
+    }
 
     //search product by product Id or name, return a list of products or null
     //search by Id at first, if get null, search by product name
@@ -40,9 +66,9 @@ public class DerbyRW implements DatabaseRW {
             productList = searchByProName(keyword);
         }
 
-        // If still no products found, print a message
+        // If still no products found, log a message
         if (productList.isEmpty()) {
-            System.out.println("Product " + keyword + " not found.");
+            log.debug("Product not found", "keyword", keyword);
         }
         return productList;
     }
@@ -60,14 +86,15 @@ public class DerbyRW implements DatabaseRW {
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()){
                     product= makeProObjFromDbRecord(rs);
-                    System.out.println("Product " + proId + " found.");
+                    log.debug("Product found", "productId", proId);
                 }else{
-                    System.out.println("Product " + proId + " not found.");
+                    log.debug("Product not found", "productId", proId);
                 }
 
             }
         } catch (SQLException e) {
-            e.printStackTrace();
+            log.error("Database query error, search by ID", e, "productId", proId);
+            throw e; // not found (null) and the database failing are not the same
         }
         return product;
     }
@@ -89,172 +116,231 @@ public class DerbyRW implements DatabaseRW {
                 }
 
                 if (productList.isEmpty()) {
-                    System.out.println("Product " + name + " not found.");
+                    log.debug("Product not found", "name", name);
                 }
             }
 
         } catch (SQLException e) {
-            System.out.println("Database query error, search by name: " + name + " " + e.getMessage());
+            log.error("Database query error, search by name", e, "name", name);
         }
 
         return productList; // could be empty if no matches
     }
 
-    //make a Product object from the database record
+    //get the Product object of the database record from the catalogue, a new one only if the product changed
     private Product makeProObjFromDbRecord(ResultSet rs) throws SQLException {
         Product product = null;
         String productId = rs.getString("productID");
         String description = rs.getString("description");
         String imagePath = rs.getString("image");
-        double unitPrice = rs.getDouble("unitPrice");
+        long unitPricePence = rs.getLong("unitPricePence");
         int inStock = rs.getInt("inStock");
-        product =new Product(productId,description,imagePath,unitPrice,inStock);
-
-        // Show product details
-        System.out.println("Product ID: " + productId);
-        System.out.println("Description: " + description);
-        System.out.println("Image: " + imagePath);
-        System.out.println("unitPrice: " + unitPrice);
-
-        // Check availability and display message
-        if(inStock <= 0){
-            System.out.println("Product " + productId+ " is NOT in stock");
-        }
-        else if(inStock < 10) {
-            System.out.println("Product " + productId+ "low stock warning!" + inStock + " units left.");
-        }
-        else {
-            System.out.println("Product " + productId+ " is available");
+        long version = rs.getLong("version");
+        product = catalogue.intern(productId,description,imagePath,unitPricePence,inStock,version);
+
+        // Debug dump of the product details, skipped entirely when debug is off
+        // (low stock is found with InventoryService.findLowStock(), not by searching)
+        if (log.isDebugEnabled()) {
+            log.debug("Product read", "productId", productId, "description", description, "image", imagePath,
+                    "unitPricePence", unitPricePence, "inStock", inStock, "version", version);
         }
-
-        System.out.println("-----"); // Divider for readability
         return product;
     }
 
-    public ArrayList<Product> purchaseStocks(ArrayList<Product> proList) throws SQLException {
+    //customer buys the products of the order lines, all of them or none.
+    //The stock is checked by the UPDATE itself (WHERE inStock >= quantity), not by an earlier SELECT: the UPDATE
+    //locks the row, so a checkout of another DerbyRW (each client and API request has its own, and its own lock)
+    //can never take the same stock between the check and the update. 0 rows updated: not enough stock, or no product.
+    public ArrayList<OrderLine> purchaseStocks(ArrayList<OrderLine> orderLines) throws SQLException {
+        PurchaseStocksEvent event = new PurchaseStocksEvent(); // JFR event, includes the time waiting for the lock
+        event.begin();
         lock.lock();  // Lock the critical section to prevent concurrent access
-        ArrayList<Product> insufficientProducts = new ArrayList<>();
+        ArrayList<OrderLine> insufficientLines = new ArrayList<>();
 
-        String checkSql = "SELECT inStock FROM ProductTable WHERE productId = ?";
-        String updateSql = "UPDATE ProductTable SET inStock = inStock - ? WHERE productId = ?";
+        String updateSql = "UPDATE ProductTable SET inStock = inStock - ? WHERE productId = ? AND inStock >= ?";
 
         // Use try-with-resources for Connection and PreparedStatements
         try (Connection conn = DriverManager.getConnection(dbURL)) {
             conn.setAutoCommit(false); // Turn off auto-commit for transaction
 
             // Use a second try-with-resources for the PreparedStatements
-            try (PreparedStatement checkStmt = conn.prepareStatement(checkSql);
-                 PreparedStatement updateStmt = conn.prepareStatement(updateSql)) {
-
-                boolean allSufficient = true; // Flag to track if all products have sufficient stock
-
-                for (Product product : proList) {
-                    checkStmt.setString(1, product.getProductId());
-                    ResultSet rs = checkStmt.executeQuery();
-
-                    if (rs.next()) {
-                        int currentStock = rs.getInt("inStock");
-                        int newStock = currentStock - product.getOrderedQuantity();
-
-                        // Debugging: Print values before update
-                        System.out.println("Product ID: " + product.getProductId());
-                        System.out.println("Before change: " + currentStock);
-                        System.out.println("Quantity Ordered: " + product.getOrderedQuantity());
-
-                        if (newStock >= 0) { // Ensure stock doesn't go negative
-                            updateStmt.setInt(1, product.getOrderedQuantity());
-                            updateStmt.setString(2, product.getProductId());
-                            updateStmt.addBatch();
-
-                            // Debugging: Print values after update
-                            System.out.println("After change: " + newStock);
-                            System.out.println("Update successful for Product ID: " + product.getProductId());
-                        } else {
-                            insufficientProducts.add(product);
-                            allSufficient = false; // Mark that there's at least one insufficient product
-                            System.out.println("Not enough stock for Product ID: " + product.getProductId());
-                        }
-                        System.out.println("--------------------------------");
+            try (PreparedStatement updateStmt = conn.prepareStatement(updateSql)) {
+
+                for (OrderLine line : orderLines) {
+                    updateStmt.setInt(1, line.quantity());
+                    updateStmt.setString(2, line.productId());
+                    updateStmt.setInt(3, line.quantity());
+                    if (updateStmt.executeUpdate() == 0) {
+                        insufficientLines.add(line); // the other lines are still tried, to report all of them
+                        continue;
+                    }
+                    if (log.isDebugEnabled()) {
+                        log.debug("Stock taken", "productId", line.productId(), "ordered", line.quantity());
                     }
                 }
 
-                if (allSufficient) {
-                    // If all products have sufficient stock, execute the batch and commit
-                    updateStmt.executeBatch();
+                if (insufficientLines.isEmpty()) {
                     conn.commit();  // Commit all updates if all updates succeed
-                    System.out.println("Database update successful.");
+                    log.debug("Stock purchase committed", "lines", orderLines.size());
                 } else {
                     // If there's insufficient stock for any product, rollback the entire transaction
                     conn.rollback();
-                    System.out.println("Insufficient stock for some products, all updates rolled back.");
+                    log.info("Insufficient stock for some products, all updates rolled back",
+                            "lines", orderLines.size(), "insufficient", insufficientLines.size());
                 }
 
             } catch (SQLException e) {
                 conn.rollback();  // Rollback if anything failed inside
-                System.out.println("Database update error, update failed");
+                log.error("Database update error, stock purchase rolled back", e);
+                throw e; // no stock was taken, the checkout must not make an order
             }
         } finally {
             lock.unlock(); // Always release the lock after the operation
         }
 
-        return insufficientProducts;
+        event.lineCount = orderLines.size();
+        event.insufficientCount = insufficientLines.size();
+        if (event.shouldCommit()) {
+            event.products = ShopFlightRecorder.productIds(orderLines);
+        }
+        event.commit();
+        return insufficientLines;
     }
 
 
-    //warehouse edits an existing product
-    public void updateProduct(String id, String des, double price, String iName, int stock) throws SQLException {
+    //warehouse changes the stock of many products at once, eg. a delivery
+    //the stocks are read first (one SELECT per product), every adjustment is checked, then the changes are
+    //written with one JDBC batch (one UPDATE per product) and one commit, instead of a connection per product
+    public ArrayList<StockAdjustment> adjustStocks(List<StockAdjustment> adjustments) throws SQLException {
         lock.lock();
-        String selectSql = "SELECT * FROM ProductTable WHERE productID = ?";
-        String updateSql = "UPDATE ProductTable SET " +
-                "description = ?, " +
-                "unitPrice = ?, " +
-                "image = ?, "+
-                "inStock = ? " +
-                "WHERE productID = ?";
+        ArrayList<StockAdjustment> rejected = new ArrayList<>();
+        Map<String, Integer> newStock = new LinkedHashMap<>(); // productId -> stock after its adjustments
+        Set<String> setProducts = new HashSet<>(); // products with an absolute adjustment, written as inStock = ?
 
-        try (Connection conn = DriverManager.getConnection(dbURL);
-             PreparedStatement selectStmt = conn.prepareStatement(selectSql);
-             PreparedStatement updateStmt = conn.prepareStatement(updateSql)) {
+        String checkSql = "SELECT inStock FROM ProductTable WHERE productID = ?";
+        String setSql = "UPDATE ProductTable SET inStock = ? WHERE productID = ?";
+        String changeSql = "UPDATE ProductTable SET inStock = inStock + ? WHERE productID = ?"; // keeps checkouts made meanwhile
 
-            // Print Before Update
-            selectStmt.setString(1, id);
-            try (ResultSet rs = selectStmt.executeQuery()) {
-                if (rs.next()) {
-                    System.out.println("Before Update:");
-                    System.out.println("ID: " + rs.getString("productID"));
-                    System.out.println("Description: " + rs.getString("description"));
-                    System.out.println("Unit Price: " + rs.getDouble("unitPrice"));
-                    System.out.println("Stock: " + rs.getInt("inStock"));
-                    System.out.println("Image: " + rs.getString("image"));
+        try (Connection conn = DriverManager.getConnection(dbURL)) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement checkStmt = conn.prepareStatement(checkSql);
+                 PreparedStatement setStmt = conn.prepareStatement(setSql);
+                 PreparedStatement changeStmt = conn.prepareStatement(changeSql)) {
+
+                Map<String, Integer> oldStock = new HashMap<>();
+                for (StockAdjustment adjustment : adjustments) {
+                    String id = adjustment.productId();
+                    if (!oldStock.containsKey(id)) {
+                        checkStmt.setString(1, id);
+                        try (ResultSet rs = checkStmt.executeQuery()) { // closed before the UPDATEs, see purchaseStocks()
+                            oldStock.put(id, rs.next() ? rs.getInt("inStock") : null);
+                        }
+                        newStock.put(id, oldStock.get(id));
+                    }
+                    Integer current = newStock.get(id);
+                    if (current == null) {
+                        rejected.add(adjustment); // unknown product
+                        continue;
+                    }
+                    long after = adjustment.absolute() ? adjustment.amount() : (long) current + adjustment.amount();
+                    if (after < 0 || after > Integer.MAX_VALUE) {
+                        rejected.add(adjustment);
+                        continue;
+                    }
+                    newStock.put(id, (int) after);
+                    if (adjustment.absolute()) {
+                        setProducts.add(id);
+                    }
+                }
+
+                if (rejected.isEmpty()) {
+                    for (Map.Entry<String, Integer> product : newStock.entrySet()) {
+                        String id = product.getKey();
+                        if (setProducts.contains(id)) {
+                            setStmt.setInt(1, product.getValue());
+                            setStmt.setString(2, id);
+                            setStmt.addBatch();
+                        } else {
+                            changeStmt.setInt(1, product.getValue() - oldStock.get(id));
+                            changeStmt.setString(2, id);
+                            changeStmt.addBatch();
+                        }
+                    }
+                    setStmt.executeBatch();
+                    changeStmt.executeBatch();
+                    conn.commit();
+                    log.info("Stock adjusted", "adjustments", adjustments.size(), "products", newStock.size());
                 } else {
-                    System.out.println("Product not found: " + id);
-                    return; // Exit if product doesn't exist
+                    conn.rollback();
+                    log.info("Some stock adjustments cannot be applied, all rolled back",
+                            "adjustments", adjustments.size(), "rejected", rejected.size());
                 }
+            } catch (SQLException e) {
+                conn.rollback(); // eg. a checkout took the stock below zero meanwhile (CHECK inStock >= 0)
+                throw e;
             }
+        } finally {
+            lock.unlock(); // Always release the lock after the operation
+        }
 
-            // Perform Update
-            updateStmt.setString(1, des);
-            updateStmt.setDouble(2, price);
-            updateStmt.setString(3, iName);
-            updateStmt.setInt(4, stock);
-            updateStmt.setString(5, id);
-            updateStmt.executeUpdate();
+        return rejected;
+    }
 
-            // Print After Update
-            try (ResultSet rs = selectStmt.executeQuery()) {
-                if (rs.next()) {
-                    System.out.println("After Update:");
-                    System.out.println("ID: " + rs.getString("productID"));
-                    System.out.println("Description: " + rs.getString("description"));
-                    System.out.println("Unit Price: " + rs.getDouble("unitPrice"));
-                    System.out.println("Stock: " + rs.getInt("inStock"));
-                    System.out.println("image: " + rs.getString("image"));
+    //warehouse edits an existing product, without the lock: optimistic concurrency on the version column.
+    //The UPDATE only changes the row if it still has the version that was read (compare-and-set), so an edit made
+    //by someone else meanwhile is never overwritten, and it changes the stock by the difference from the stock
+    //that was read (inStock = inStock + ?), so checkouts made meanwhile are kept instead of being overwritten.
+    //Returns false if the row changed (or was deleted), or the checkouts left less stock than the edit takes away.
+    public boolean updateProduct(Product read, String des, long pricePence, String iName, int stock) throws SQLException {
+        String id = read.getProductId();
+        int stockChange = stock - read.getStockQuantity();
+        String updateSql = "UPDATE ProductTable SET " +
+                "description = ?, " +
+                "unitPricePence = ?, " +
+                "image = ?, "+
+                "inStock = inStock + ?, " +
+                "version = version + 1 " +
+                "WHERE productID = ? AND version = ?";
+        String selectSql = "SELECT * FROM ProductTable WHERE productID = ?";
+        int newStock;
+
+        try (Connection conn = DriverManager.getConnection(dbURL)) {
+            conn.setAutoCommit(false); // the new stock is read in the same transaction
+            try (PreparedStatement updateStmt = conn.prepareStatement(updateSql);
+                 PreparedStatement selectStmt = conn.prepareStatement(selectSql)) {
+                updateStmt.setString(1, des);
+                updateStmt.setLong(2, pricePence);
+                updateStmt.setString(3, iName);
+                updateStmt.setInt(4, stockChange);
+                updateStmt.setString(5, id);
+                updateStmt.setLong(6, read.getVersion());
+                if (updateStmt.executeUpdate() == 0) {
+                    conn.rollback();
+                    log.info("Product not updated, it changed meanwhile", "productId", id, "readVersion", read.getVersion());
+                    return false;
+                }
+
+                selectStmt.setString(1, id);
+                try (ResultSet rs = selectStmt.executeQuery()) {
+                    rs.next(); // the row was just updated in this transaction
+                    newStock = rs.getInt("inStock");
+                    logProductRecord("After update", rs);
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                if ("23513".equals(e.getSQLState())) { // CHECK (inStock >= 0)
+                    log.info("Product not updated, checkouts left less stock than the edit takes away",
+                            "productId", id, "stockChange", stockChange);
+                    return false;
                 }
+                throw e;
             }
         }
-        finally {
-            lock.unlock(); // Always release the lock after the operation
-        }
+
+        log.info("Product updated", "productId", id, "unitPricePence", pricePence, "stockChange", stockChange,
+                "inStock", newStock, "version", read.getVersion() + 1);
+        return true;
     }
 
 //warehouse delete an existing product
@@ -268,17 +354,13 @@ public class DerbyRW implements DatabaseRW {
              PreparedStatement deleteStmt = conn.prepareStatement(deleteSql)) {
             conn.setAutoCommit(true); // Set auto-commit to true immediately
 
-            // print product details before deletion
+            // log product details before deletion
             selectStmt.setString(1, proId);
             try (ResultSet rs = selectStmt.executeQuery()) {
                 if (rs.next()) {
-                    System.out.println("Before delete:");
-                    System.out.println("ID: " + rs.getString("productID"));
-                    System.out.println("Description: " + rs.getString("description"));
-                    System.out.println("Unit Price: " + rs.getDouble("unitPrice"));
-                    System.out.println("Stock: " + rs.getInt("inStock"));
+                    logProductRecord("Before delete", rs);
                 } else {
-                    System.out.println("Product not found: " + proId);
+                    log.warn("Product not found for delete", "productId", proId);
                     return; // Exit if product does not exist
                 }
             }
@@ -286,7 +368,8 @@ public class DerbyRW implements DatabaseRW {
             // delete from database
             deleteStmt.setString(1, proId);
             deleteStmt.executeUpdate();
-            System.out.println("Product " + proId + " deleted from database.");
+            catalogue.forget(proId);
+            log.info("Product deleted", "productId", proId);
         }
 
         finally {
@@ -317,9 +400,10 @@ public class DerbyRW implements DatabaseRW {
 
     //   /images/0001TV.jpg
     //warehouse adds a new product to database
-    public void insertNewProduct(String id, String des,double price,String image,int stock) throws SQLException {
+    public void insertNewProduct(String id, String des,long pricePence,String image,int stock) throws SQLException {
         lock.lock();
-        String insertSql = "INSERT INTO ProductTable VALUES(?, ?, ?, ?, ?)";
+        // the columns are named: a migrated table has unitPricePence last
+        String insertSql = "INSERT INTO ProductTable(productID, description, unitPricePence, image, inStock) VALUES(?, ?, ?, ?, ?)";
         String selectSql = "SELECT * FROM ProductTable WHERE productID = ?";
         try (Connection conn = DriverManager.getConnection(dbURL);
         PreparedStatement insertStmt = conn.prepareStatement(insertSql);
@@ -327,23 +411,61 @@ public class DerbyRW implements DatabaseRW {
             conn.setAutoCommit(true); // Set auto-commit to true immediately
             insertStmt.setString(1, id);
             insertStmt.setString(2, des);
-            insertStmt.setDouble(3, price);
+            insertStmt.setLong(3, pricePence);
             insertStmt.setString(4, image);
             insertStmt.setInt(5, stock);
             selectStmt.setString(1, id);
             insertStmt.executeUpdate();
-            ResultSet rs = selectStmt.executeQuery();
-            if (rs.next()) { //print the inserted record
-                System.out.println("Insert successful for Product ID: \" + id");
-                System.out.println("ID: " + rs.getString("productID"));
-                System.out.println("Description: " + rs.getString("description"));
-                System.out.println("Unit Price: " + rs.getDouble("unitPrice"));
-                System.out.println("Stock: " + rs.getInt("inStock"));
+            log.info("Product inserted", "productId", id, "unitPricePence", pricePence, "inStock", stock);
+            if (log.isDebugEnabled()) {
+                ResultSet rs = selectStmt.executeQuery();
+                if (rs.next()) { //log the inserted record
+                    logProductRecord("Inserted", rs);
+                }
+            }
+        }
+        finally {
+            lock.unlock(); // Always release the lock after the operation
+        }
+    }
+
+    //bulk import adds a chunk of new products: one connection, one JDBC batch and one commit for all of them,
+    //instead of a connection and an auto-commit (a log write to disk) per product
+    public void insertNewProducts(List<Product> products) throws SQLException {
+        lock.lock();
+        String insertSql = "INSERT INTO ProductTable(productID, description, unitPricePence, image, inStock) VALUES(?, ?, ?, ?, ?)";
+        try (Connection conn = DriverManager.getConnection(dbURL)) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement insertStmt = conn.prepareStatement(insertSql)) {
+                for (Product product : products) {
+                    insertStmt.setString(1, product.getProductId());
+                    insertStmt.setString(2, product.getProductDescription());
+                    insertStmt.setLong(3, product.getUnitPricePence());
+                    insertStmt.setString(4, product.getProductImageName());
+                    insertStmt.setInt(5, product.getStockQuantity());
+                    insertStmt.addBatch();
+                }
+                insertStmt.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback(); // none of the chunk is inserted
+                throw e;
             }
         }
         finally {
             lock.unlock(); // Always release the lock after the operation
         }
+
+        log.info("Products inserted", "products", products.size());
+    }
+
+    // Debug dump of a ProductTable record, eg. before and after a warehouse update
+    private void logProductRecord(String message, ResultSet rs) throws SQLException {
+        if (log.isDebugEnabled()) {
+            log.debug(message, "productId", rs.getString("productID"), "description", rs.getString("description"),
+                    "unitPricePence", rs.getLong("unitPricePence"), "inStock", rs.getInt("inStock"), "image", rs.getString("image"),
+                    "version", rs.getLong("version"));
+        }
     }
 
     @Override
@@ -357,7 +479,7 @@ public class DerbyRW implements DatabaseRW {
             int rows = ps.executeUpdate();
             return rows == 1;
         } catch (SQLException e) {
-            System.out.println("createUser error: " + e.getMessage());
+            log.error("createUser error", e, "username", username);
             throw e;
         }
     }
@@ -383,7 +505,7 @@ public class DerbyRW implements DatabaseRW {
                 }
             }
         } catch (SQLException e) {
-            System.out.println("findUserByUsername error: " + e.getMessage());
+            log.error("findUserByUsername error", e, "username", username);
             throw e;
         }
     }
@@ -398,7 +520,7 @@ public class DerbyRW implements DatabaseRW {
             int rows = ps.executeUpdate();
             return rows == 1;
         } catch (SQLException e) {
-            System.out.println("updateUserPassword error: " + e.getMessage());
+            log.error("updateUserPassword error", e, "username", username);
             throw e;
         }
     }
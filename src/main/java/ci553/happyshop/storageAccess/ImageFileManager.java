@@ -1,5 +1,7 @@
 package ci553.happyshop.storageAccess;
 
+import ci553.happyshop.logging.ShopLogger;
+
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -18,6 +20,8 @@ import java.nio.file.StandardCopyOption;
  */
 
 public class ImageFileManager {
+    private static final ShopLogger log = ShopLogger.getLogger(ImageFileManager.class);
+
     /**
      * Deletes an image file from the specified folder.
      *
@@ -31,9 +35,9 @@ public class ImageFileManager {
 
         if (Files.exists(iPath)) { // Check if the file exists
             Files.delete(iPath); // Permanently delete the file
-            System.out.println("Deleted: " + iPath);
+            log.info("Image deleted", "path", iPath);
         } else {
-            System.out.println("File not found: " + iPath);
+            log.warn("Image not found", "path", iPath);
         }
     }
 
@@ -47,23 +51,30 @@ public class ImageFileManager {
      * @return The name of the copied image file (with extension).
      */
     public static String copyFileToDestination(String sourceUri, String destinationFolder, String fileNameWithoutExtension) throws IOException {
-        // Get the source file path and file name
         Path sourcePath = Paths.get(sourceUri);  // Source image uri (e.g., "C:/Users/shan/Desktop/mark.jpg")
-        String sourceFileName = sourcePath.getFileName().toString();  // e.g., "mark.jpg"
-
-        // Extract file extension from the source file
-        String fileExtension = sourceFileName.substring(sourceFileName.lastIndexOf('.'));  // e.g., ".jpg"
 
         // Prepare the destination file path
         Path destinationFolderPath = Paths.get(destinationFolder);  // Destination folder path
 
-        String fileNameWithExtension = fileNameWithoutExtension + fileExtension;
+        String fileNameWithExtension = imageFileName(sourceUri, fileNameWithoutExtension);
         Path destinationPath = destinationFolderPath.resolve(fileNameWithExtension);  // Combine the product ID (fileNameWithoutExtension) with the extension
 
         // Copy the file to the destination folder with the specified name
         Files.copy(sourcePath, destinationPath, StandardCopyOption.REPLACE_EXISTING);
-        System.out.println("File copied successfully to: " + destinationPath);
+        log.info("Image copied", "path", destinationPath);
         return fileNameWithExtension;
     }
 
+    /**
+     * The name copyFileToDestination() gives the copy, without copying anything yet.
+     * eg. imageFileName("C:/Users/shan/Desktop/mark.jpg", "0001") is "0001.jpg"
+     */
+    public static String imageFileName(String sourceUri, String fileNameWithoutExtension) {
+        String sourceFileName = Paths.get(sourceUri).getFileName().toString();  // e.g., "mark.jpg"
+
+        // Extract file extension from the source file
+        String fileExtension = sourceFileName.substring(sourceFileName.lastIndexOf('.'));  // e.g., ".jpg"
+        return fileNameWithoutExtension + fileExtension;
+    }
+
 }
@@ -0,0 +1,268 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Money;
+import ci553.happyshop.logging.ShopLogger;
+import ci553.happyshop.security.User;
+import org.mindrot.jbcrypt.BCrypt;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.UnaryOperator;
+
+/**
+ * InMemoryDatabase holds the products and users of the in-memory storage mode (database.mode=inmemory),
+ * shared by all InMemoryRW objects of the process.
+ *
+ * <p>Products and users are kept in ConcurrentHashMaps, so searches never wait for a lock.
+ * The stock of each product is an AtomicInteger of its own, so purchases of different products
+ * never wait for each other either (see InMemoryRW.purchaseStocks()).</p>
+ *
+ * <p>Without a snapshot file the data only lives as long as the process, which suits load tests and demos.
+ * With database.snapshotFile set, the data is loaded from that file at startup, and written back to it
+ * every {@link #snapshotIntervalSeconds} seconds and when the process exits. The file is a plain text file:
+ * <pre>
+ *  P|0001|40 inch TV|269.00|0001.jpg|100             a product: ID, description, price in pounds, image, stock
+ *  U|1|admin|$2a$12$...|ADMIN|2025-05-03T16:52:24Z   a user: ID, username, password hash, role, created at
+ * </pre>
+ * If there is no snapshot file yet, the database starts with the same products and admin user as SetDatabase.</p>
+ */
+
+public class InMemoryDatabase {
+    private static final ShopLogger log = ShopLogger.getLogger(InMemoryDatabase.class);
+    private static InMemoryDatabase database; //singleton instance
+
+    // Settings, read from happyShop.properties by StorageConfig
+    public static Path snapshotFile = null; // null: the data is not saved
+    public static int snapshotIntervalSeconds = 30;
+
+    /**
+     * A product in memory. The details change together (by replacing the record, compare-and-set on
+     * the version that was read, see InMemoryRW.updateProduct()), the stock changes on its own through the atomic counter.
+     */
+    static class StoredProduct {
+        private static final AtomicReferenceFieldUpdater<StoredProduct, ProductDetails> DETAILS =
+                AtomicReferenceFieldUpdater.newUpdater(StoredProduct.class, ProductDetails.class, "details");
+
+        final String productId;
+        volatile ProductDetails details;
+        final AtomicInteger stock;
+
+        StoredProduct(String productId, ProductDetails details, int stock) {
+            this.productId = productId;
+            this.details = details;
+            this.stock = new AtomicInteger(stock);
+        }
+
+        // Replaces the details only if they are still the expected ones, eg. nobody edited the product meanwhile
+        boolean replaceDetails(ProductDetails expected, ProductDetails newDetails) {
+            return DETAILS.compareAndSet(this, expected, newDetails);
+        }
+    }
+
+    // version: how many times the details were edited, like the version column of ProductTable (not saved in the snapshot)
+    record ProductDetails(String description, long unitPricePence, String imageName, long version) {
+        ProductDetails(String description, long unitPricePence, String imageName) {
+            this(description, unitPricePence, imageName, 0);
+        }
+    }
+
+    private final Path file; // the snapshot file of this database, null if it is not saved
+    private final ConcurrentHashMap<String, StoredProduct> products = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, User> users = new ConcurrentHashMap<>();
+    private final AtomicInteger lastUserId = new AtomicInteger();
+
+    //Singleton pattern
+    private InMemoryDatabase() {
+        this(snapshotFile);
+    }
+
+    // A database of its own with the given snapshot file (null: not saved), eg. in a test; call open() next
+    InMemoryDatabase(Path file) {
+        this.file = file;
+    }
+
+    public static synchronized InMemoryDatabase getInMemoryDatabase() {
+        if (database == null) {
+            InMemoryDatabase created = new InMemoryDatabase();
+            created.open();
+            created.startSaving();
+            database = created;
+        }
+        return database;
+    }
+
+    StoredProduct getProduct(String productId) {
+        return products.get(productId);
+    }
+
+    // All products, sorted by product ID like the rows of ProductTable
+    List<StoredProduct> getProducts() {
+        List<StoredProduct> list = new ArrayList<>(products.values());
+        list.sort(Comparator.comparing(product -> product.productId));
+        return list;
+    }
+
+    // Adds the product and returns true, or returns false if the product ID is already used
+    boolean addProduct(StoredProduct product) {
+        return products.putIfAbsent(product.productId, product) == null;
+    }
+
+    boolean removeProduct(String productId) {
+        return products.remove(productId) != null;
+    }
+
+    User getUser(String username) {
+        return users.get(username);
+    }
+
+    // Replaces a user with a changed copy and returns true, or returns false if there is no such user
+    boolean replaceUser(String username, UnaryOperator<User> change) {
+        return users.computeIfPresent(username, (name, user) -> change.apply(user)) != null;
+    }
+
+    Collection<User> getUsers() {
+        return users.values();
+    }
+
+    // Adds a user with the next user ID and returns true, or returns false if the username is already used.
+    // Like an identity column, a failed insert still uses up its user ID.
+    boolean addUser(String username, String passwordHash, String role) {
+        User user = new User(lastUserId.incrementAndGet(), username, passwordHash, role, Instant.now());
+        return users.putIfAbsent(username, user) == null;
+    }
+
+    // Loads the snapshot, or the default data if there is no snapshot file yet
+    void open() {
+        if (file != null && Files.exists(file)) {
+            try {
+                load(file);
+                log.info("In-memory database loaded", "file", file, "products", products.size(),
+                        "users", users.size());
+            } catch (IOException | RuntimeException e) {
+                throw new IllegalStateException("Cannot read the database snapshot " + file, e);
+            }
+        } else {
+            addDefaultData();
+            log.info("In-memory database created with the default products", "products", products.size());
+        }
+    }
+
+    // Saves the data every snapshotIntervalSeconds and when the process exits, if there is a snapshot file
+    private void startSaving() {
+        if (file != null) {
+            ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "in-memory-database-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleAtFixedRate(this::saveQuietly, snapshotIntervalSeconds, snapshotIntervalSeconds,
+                    TimeUnit.SECONDS);
+            Runtime.getRuntime().addShutdownHook(new Thread(this::saveQuietly));
+        }
+    }
+
+    /**
+     * Writes all products and users to the snapshot file.
+     * The file is written to a temp file first and then moved over the old one,
+     * so a crash while saving never leaves a half-written snapshot.
+     */
+    public synchronized void save() throws IOException {
+        if (file == null) {
+            return;
+        }
+        Path parent = file.toAbsolutePath().getParent();
+        Path temp = parent.resolve(file.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (StoredProduct product : getProducts()) {
+                ProductDetails details = product.details;
+                writer.write(String.join("|", "P", product.productId, clean(details.description()),
+                        Money.format(details.unitPricePence()), clean(details.imageName()),
+                        String.valueOf(product.stock.get())));
+                writer.newLine();
+            }
+            for (User user : getUsers()) {
+                writer.write(String.join("|", "U", String.valueOf(user.getUserId()), user.getUsername(),
+                        user.getPasswordHash(), user.getRole(), String.valueOf(user.getCreatedAt())));
+                writer.newLine();
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.debug("In-memory database saved", "file", file, "products", products.size());
+    }
+
+    private void saveQuietly() {
+        try {
+            save();
+        } catch (IOException e) {
+            log.error("Error saving the in-memory database", e, "file", file);
+        }
+    }
+
+    private void load(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                String[] fields = line.split("\\|", -1);
+                if (fields[0].equals("P") && fields.length == 6) {
+                    long unitPricePence = Money.fromPounds(Double.parseDouble(fields[3])); // also reads older files, eg. 269.0
+                    addProduct(new StoredProduct(fields[1], new ProductDetails(fields[2], unitPricePence, fields[4]),
+                            Integer.parseInt(fields[5])));
+                } else if (fields[0].equals("U") && fields.length == 6) {
+                    int userId = Integer.parseInt(fields[1]);
+                    Instant createdAt = fields[5].equals("null") ? null : Instant.parse(fields[5]);
+                    users.put(fields[2], new User(userId, fields[2], fields[3], fields[4], createdAt));
+                    lastUserId.accumulateAndGet(userId, Math::max);
+                } else {
+                    throw new IOException("Invalid line in " + file + ": " + line);
+                }
+            }
+        }
+    }
+
+    // The products and admin user that SetDatabase puts in a fresh Derby database
+    private void addDefaultData() {
+        String[][] defaultProducts = {
+                {"0001", "40 inch TV", "269.00", "0001.jpg"},
+                {"0002", "DAB Radio", "29.99", "0002.jpg"},
+                {"0003", "Toaster", "19.99", "0003.jpg"},
+                {"0004", "Watch", "29.99", "0004.jpg"},
+                {"0005", "Digital Camera", "89.99", "0005.jpg"},
+                {"0006", "MP3 player", "7.99", "0006.jpg"},
+                {"0007", "USB drive", "6.99", "0007.jpg"},
+                {"0008", "USB2 drive", "7.99", "0008.jpg"},
+                {"0009", "USB3 drive", "8.99", "0009.jpg"},
+                {"0010", "USB4 drive", "9.99", "0010.jpg"},
+                {"0011", "USB5 drive", "10.99", "0011.jpg"},
+                {"0012", "USB6 drive", "10.99", "0011.jpg"},
+        };
+        for (String[] product : defaultProducts) {
+            addProduct(new StoredProduct(product[0],
+                    new ProductDetails(product[1], Money.parse(product[2]), product[3]), 100));
+        }
+        addUser("admin", BCrypt.hashpw("admin123", BCrypt.gensalt(12)), "ADMIN");
+    }
+
+    // Keeps the field separator and line breaks out of the snapshot file
+    private static String clean(String text) {
+        return text == null ? "" : text.replace('|', '/').replace('\n', ' ').replace('\r', ' ');
+    }
+}
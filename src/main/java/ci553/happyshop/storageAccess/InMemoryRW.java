@@ -0,0 +1,335 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.OrderLine;
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.catalogue.ProductCatalogue;
+import ci553.happyshop.catalogue.StockAdjustment;
+import ci553.happyshop.logging.ShopLogger;
+import ci553.happyshop.metrics.PurchaseStocksEvent;
+import ci553.happyshop.metrics.ShopFlightRecorder;
+import ci553.happyshop.security.User;
+import ci553.happyshop.storageAccess.InMemoryDatabase.ProductDetails;
+import ci553.happyshop.storageAccess.InMemoryDatabase.StoredProduct;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * InMemoryRW is the DatabaseRW of the in-memory storage mode (database.mode=inmemory).
+ * The products and users are kept in the memory of this process by InMemoryDatabase instead of in Derby,
+ * so there is no database to start and no disk I/O on a purchase; meant for load tests, demos and kiosks.
+ *
+ * <p>It behaves like DerbyRW: searches return the same products in the same order, purchaseStocks() is all
+ * or nothing, and the same mistakes fail with an SQLException (a product or username that is already used,
+ * a negative stock).</p>
+ */
+
+public class InMemoryRW implements DatabaseRW {
+    private static final ShopLogger log = ShopLogger.getLogger(InMemoryRW.class);
+    private final InMemoryDatabase database; // the shared InMemoryDatabase, unless another one is given
+    private final ProductCatalogue catalogue = ProductCatalogue.getProductCatalogue(); // shares the Product objects
+
+    public InMemoryRW() {
+        this(InMemoryDatabase.getInMemoryDatabase());
+    }
+
+    // An InMemoryRW over a database of its own, eg. in a test
+    InMemoryRW(InMemoryDatabase database) {
+        this.database = database;
+    }
+
+    //search by product Id at first, if not found, search by product name (like DerbyRW)
+    public ArrayList<Product> searchProduct(String keyword) throws SQLException {
+        ArrayList<Product> productList = new ArrayList<>();
+        Product product = searchByProductId(keyword);
+        if (product != null) {
+            productList.add(product);
+            return productList;
+        }
+        String lowerCaseName = keyword.toLowerCase(Locale.ROOT);
+        for (StoredProduct stored : database.getProducts()) {
+            if (stored.details.description().toLowerCase(Locale.ROOT).contains(lowerCaseName)) {
+                productList.add(makeProduct(stored));
+            }
+        }
+        if (productList.isEmpty()) {
+            log.debug("Product not found", "keyword", keyword);
+        }
+        return productList;
+    }
+
+    public Product searchByProductId(String proId) throws SQLException {
+        StoredProduct stored = database.getProduct(proId);
+        return stored == null ? null : makeProduct(stored);
+    }
+
+    /**
+     * Reduces the stock of all products in the list, or of none of them.
+     *
+     * <p>There is no lock: each line takes its quantity from the product's atomic stock counter
+     * (compareAndSet, so the stock never goes below zero). If a line does not have enough stock,
+     * the quantities already taken by the earlier lines are put back, and the remaining lines are only checked,
+     * so every insufficient product is reported, as DerbyRW does. Checkouts of different products never wait
+     * for each other; a checkout that is rolled back can make another one see a lower stock for a moment,
+     * the same as a Derby transaction that is still running.</p>
+     */
+    public ArrayList<OrderLine> purchaseStocks(ArrayList<OrderLine> orderLines) throws SQLException {
+        PurchaseStocksEvent event = new PurchaseStocksEvent(); // JFR event
+        event.begin();
+        ArrayList<OrderLine> insufficientLines = new ArrayList<>();
+        List<TakenStock> taken = new ArrayList<>(); // lines whose quantity was taken from the stock
+
+        for (OrderLine line : orderLines) {
+            StoredProduct stored = database.getProduct(line.productId());
+            if (stored == null) {
+                insufficientLines.add(line); // a deleted product has no stock, as in DerbyRW
+                continue;
+            }
+            int quantity = line.quantity();
+            if (!insufficientLines.isEmpty()) {
+                if (stored.stock.get() < quantity) { // only checking, the purchase is already failing
+                    insufficientLines.add(line);
+                }
+            } else {
+                int stockAfter = takeStock(stored, quantity);
+                if (stockAfter >= 0) {
+                    taken.add(new TakenStock(stored, quantity));
+                } else {
+                    insufficientLines.add(line);
+                }
+            }
+        }
+
+        if (insufficientLines.isEmpty()) {
+            log.debug("Stock purchase committed", "lines", orderLines.size());
+        } else {
+            for (TakenStock line : taken) { // roll back
+                line.stored().stock.addAndGet(line.quantity());
+            }
+            log.info("Insufficient stock for some products, all updates rolled back",
+                    "lines", orderLines.size(), "insufficient", insufficientLines.size());
+        }
+
+        event.lineCount = orderLines.size();
+        event.insufficientCount = insufficientLines.size();
+        if (event.shouldCommit()) {
+            event.products = ShopFlightRecorder.productIds(orderLines);
+        }
+        event.commit();
+        return insufficientLines;
+    }
+
+    // A quantity taken from a product's stock (negative: added to it), put back if the purchase or adjustment is rolled back
+    private record TakenStock(StoredProduct stored, int quantity) {}
+
+    // Takes the quantity from the stock if there is enough, and returns the stock left, or -1 if it did not
+    private int takeStock(StoredProduct stored, int quantity) {
+        while (true) {
+            int current = stored.stock.get();
+            if (current < quantity) {
+                return -1;
+            }
+            if (stored.stock.compareAndSet(current, current - quantity)) {
+                return current - quantity;
+            }
+        }
+    }
+
+    /**
+     * Changes the stock of all products in the list, or of none of them.
+     * Every adjustment is checked against the current stock first; the stock of each product is then changed
+     * once, by its net change (compareAndSet, like a purchase) or set to its counted stock. If a checkout took
+     * the stock of a product too low meanwhile, the products already changed are put back.
+     */
+    public ArrayList<StockAdjustment> adjustStocks(List<StockAdjustment> adjustments) throws SQLException {
+        ArrayList<StockAdjustment> rejected = new ArrayList<>();
+        Map<String, Integer> newStock = new LinkedHashMap<>(); // productId -> stock after its adjustments
+        Map<String, Integer> oldStock = new HashMap<>();
+        Set<String> setProducts = new HashSet<>(); // products with an absolute adjustment
+        for (StockAdjustment adjustment : adjustments) {
+            String id = adjustment.productId();
+            StoredProduct stored = database.getProduct(id);
+            if (stored == null) {
+                rejected.add(adjustment);
+                continue;
+            }
+            Integer current = newStock.get(id);
+            if (current == null) { // the first adjustment of this product
+                current = stored.stock.get();
+                oldStock.put(id, current);
+            }
+            long after = adjustment.absolute() ? adjustment.amount() : (long) current + adjustment.amount();
+            if (after < 0 || after > Integer.MAX_VALUE) {
+                rejected.add(adjustment);
+                continue;
+            }
+            newStock.put(id, (int) after);
+            if (adjustment.absolute()) {
+                setProducts.add(id);
+            }
+        }
+
+        List<TakenStock> changed = new ArrayList<>(); // the net change applied to each product, to roll back
+        if (rejected.isEmpty()) {
+            for (Map.Entry<String, Integer> product : newStock.entrySet()) {
+                StoredProduct stored = database.getProduct(product.getKey());
+                int change = product.getValue() - oldStock.get(product.getKey());
+                if (stored == null) {
+                    rejected.addAll(adjustmentsOf(adjustments, product.getKey())); // deleted meanwhile
+                    break;
+                }
+                if (setProducts.contains(product.getKey())) {
+                    change = product.getValue() - stored.stock.getAndSet(product.getValue());
+                } else if (change < 0 && takeStock(stored, -change) < 0) {
+                    rejected.addAll(adjustmentsOf(adjustments, product.getKey())); // a checkout took the stock meanwhile
+                    break;
+                } else if (change >= 0) {
+                    stored.stock.addAndGet(change);
+                }
+                changed.add(new TakenStock(stored, -change));
+            }
+        }
+
+        if (rejected.isEmpty()) {
+            log.info("Stock adjusted", "adjustments", adjustments.size(), "products", newStock.size());
+        } else {
+            for (TakenStock product : changed) { // roll back
+                product.stored().stock.addAndGet(product.quantity());
+            }
+            log.info("Some stock adjustments cannot be applied, all rolled back",
+                    "adjustments", adjustments.size(), "rejected", rejected.size());
+        }
+        return rejected;
+    }
+
+    private static List<StockAdjustment> adjustmentsOf(List<StockAdjustment> adjustments, String productId) {
+        List<StockAdjustment> ofProduct = new ArrayList<>();
+        for (StockAdjustment adjustment : adjustments) {
+            if (adjustment.productId().equals(productId)) {
+                ofProduct.add(adjustment);
+            }
+        }
+        return ofProduct;
+    }
+
+    // Without a lock, like DerbyRW: the details are replaced only if they are still the version that was read,
+    // and the stock is changed by the difference from the stock that was read, so checkouts made meanwhile are kept.
+    // Stock taken away is taken first and given back if the details changed; stock added is added last.
+    public boolean updateProduct(Product read, String des, long pricePence, String iName, int stock) throws SQLException {
+        String id = read.getProductId();
+        checkStock(id, stock);
+        StoredProduct stored = database.getProduct(id);
+        if (stored == null) {
+            log.info("Product not updated, it was deleted meanwhile", "productId", id);
+            return false;
+        }
+        ProductDetails details = stored.details;
+        int stockChange = stock - read.getStockQuantity();
+        if (details.version() != read.getVersion() || (stockChange < 0 && takeStock(stored, -stockChange) < 0)) {
+            log.info("Product not updated, it changed meanwhile", "productId", id,
+                    "readVersion", read.getVersion(), "version", details.version());
+            return false;
+        }
+        if (!stored.replaceDetails(details, new ProductDetails(des, pricePence, iName, details.version() + 1))) {
+            if (stockChange < 0) {
+                stored.stock.addAndGet(-stockChange); // give the stock back
+            }
+            log.info("Product not updated, it changed meanwhile", "productId", id, "readVersion", read.getVersion());
+            return false;
+        }
+        int newStock = stockChange > 0 ? stored.stock.addAndGet(stockChange) : stored.stock.get();
+        log.info("Product updated", "productId", id, "unitPricePence", pricePence, "stockChange", stockChange,
+                "inStock", newStock, "version", details.version() + 1);
+        return true;
+    }
+
+    public void deleteProduct(String proId) throws SQLException {
+        if (database.removeProduct(proId)) {
+            catalogue.forget(proId);
+            log.info("Product deleted", "productId", proId);
+        } else {
+            log.warn("Product not found for delete", "productId", proId);
+        }
+    }
+
+    public boolean isProIdAvailable(String proId) throws SQLException {
+        return database.getProduct(proId) == null;
+    }
+
+    public void insertNewProduct(String id, String des, long pricePence, String image, int stock) throws SQLException {
+        checkStock(id, stock);
+        if (!database.addProduct(new StoredProduct(id, new ProductDetails(des, pricePence, image), stock))) {
+            throw new SQLException("Product ID already exists: " + id, "23505"); // Derby's duplicate key state
+        }
+        log.info("Product inserted", "productId", id, "unitPricePence", pricePence, "inStock", stock);
+    }
+
+    // All or nothing, like the transaction of DerbyRW: the products added before a failing one are removed again
+    public void insertNewProducts(List<Product> products) throws SQLException {
+        for (Product product : products) {
+            checkStock(product.getProductId(), product.getStockQuantity());
+        }
+        List<String> added = new ArrayList<>(products.size());
+        for (Product product : products) {
+            StoredProduct stored = new StoredProduct(product.getProductId(), new ProductDetails(
+                    product.getProductDescription(), product.getUnitPricePence(), product.getProductImageName()),
+                    product.getStockQuantity());
+            if (!database.addProduct(stored)) {
+                for (String id : added) { // roll back
+                    database.removeProduct(id);
+                }
+                throw new SQLException("Product ID already exists: " + product.getProductId(), "23505");
+            }
+            added.add(product.getProductId());
+        }
+        log.info("Products inserted", "products", products.size());
+    }
+
+    @Override
+    public boolean createUser(String username, String passwordHash, String role) throws SQLException {
+        if (!database.addUser(username, passwordHash, role)) {
+            SQLException e = new SQLException("Username already exists: " + username, "23505");
+            log.error("createUser error", e, "username", username);
+            throw e;
+        }
+        return true;
+    }
+
+    @Override
+    public User findUserByUsername(String username) throws SQLException {
+        User stored = database.getUser(username);
+        if (stored == null) {
+            return null;
+        }
+        // a copy, so the caller cannot change the stored user
+        return new User(stored.getUserId(), stored.getUsername(), stored.getPasswordHash(),
+                stored.getRole(), stored.getCreatedAt());
+    }
+
+    @Override
+    public boolean updateUserPassword(String username, String newPasswordHash) throws SQLException {
+        return database.replaceUser(username, user -> new User(user.getUserId(), user.getUsername(),
+                newPasswordHash, user.getRole(), user.getCreatedAt()));
+    }
+
+    // The stock can never be negative, as the CHECK (inStock >= 0) of ProductTable
+    private static void checkStock(String id, int stock) throws SQLException {
+        if (stock < 0) {
+            throw new SQLException("Stock cannot be negative for product " + id + ": " + stock, "23513");
+        }
+    }
+
+    // The shared Product of the stored product, see ProductCatalogue
+    private Product makeProduct(StoredProduct stored) {
+        ProductDetails details = stored.details;
+        return catalogue.intern(stored.productId, details.description(), details.imageName(),
+                details.unitPricePence(), stored.stock.get(), details.version());
+    }
+}
@@ -1,14 +1,18 @@
 package ci553.happyshop.storageAccess;
 
+import ci553.happyshop.logging.ShopLogger;
 import ci553.happyshop.orderManagement.OrderState;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
@@ -40,9 +44,38 @@ import java.time.format.DateTimeFormatter;
  *  1. update state from Ordered to Progressing, (then move the file to progressing folder)
  *  2. update state from Progressing to Collected (then move the file to collected folder)
  * </p>
+ *
+ * <p>
+ * In the InPlace storage mode (see {@link OrderStorageMode}), all order files are kept in one folder and the
+ * header is written with fixed-width fields, so that the state and timestamps always sit at the same offsets:
+ *  <pre>
+ *  Order ID: 12
+ *  State: Ordered
+ *  OrderedDateTime: 2025-03-11 19:53:45
+ *  ProgressingDateTime:
+ *  CollectedDateTime:
+ *  Items:
+ *  ...
+ *  </pre>
+ * The state field is padded to 11 characters ("Progressing") and each timestamp field to 19 characters,
+ * so the file is still readable as plain text. A state change reads the small header block,
+ * patches it in memory, and writes it back with one positional FileChannel write.
+ * The state itself is recorded in {@link OrderStateIndex} instead of moving the file.
+ * </p>
  */
 
 public class OrderFileManager {
+    private static final ShopLogger log = ShopLogger.getLogger(OrderFileManager.class);
+    // The storage mode used by OrderHub, read from happyShop.properties (orders.storageMode) by StorageConfig
+    public static OrderStorageMode storageMode = OrderStorageMode.FolderPerState;
+
+    // Widths of the fixed-width header fields used in InPlace mode
+    private static final int STATE_WIDTH = 11;  // "Progressing" is the longest state name
+    private static final int DATE_TIME_WIDTH = 19; // yyyy-MM-dd HH:mm:ss
+    private static final String STATE_LABEL = "State: ";
+    private static final String ORDERED_LABEL = " \nOrderedDateTime: ";
+    private static final String PROGRESSING_LABEL = " \nProgressingDateTime: ";
+    private static final String COLLECTED_LABEL = " \nCollectedDateTime: ";
 
     //Creates a new order file in the specified directory with the given content.
     public static void createOrderFile(Path dir, int orderId, String orderDetail) throws IOException {
@@ -53,11 +86,11 @@ public class OrderFileManager {
             try (BufferedWriter writer = Files.newBufferedWriter(path)) {
                 writer.write(orderDetail);
                 writer.newLine();
-                System.out.println(path + " created");
+                log.debug("Order file created", "path", path);
             }
         }
         else{
-            System.out.println(path + " already exists");
+            log.warn("Order file already exists", "path", path);
         }
     }
 
@@ -76,7 +109,7 @@ public class OrderFileManager {
             return true;
         }
         else{
-            System.out.println(sourcePath + " not found in ");
+            log.warn("Order file not found", "path", sourcePath);
             return false;
         }
     }
@@ -112,11 +145,91 @@ public class OrderFileManager {
         try {
             Files.move(tempFilePath, sourcePath, StandardCopyOption.REPLACE_EXISTING);
         } catch (IOException e) {
-            System.err.println("Move failed: " + e.getMessage());
+            log.error("Order file move failed", e, "path", sourcePath);
             Files.deleteIfExists(tempFilePath); // Delete temp file ONLY IF move failed and it still exists
         }
     }
 
+    /**
+     * Creates a new order file with a fixed-width header, used in InPlace mode.
+     * The file is written once; later state changes only overwrite the header fields in place.
+     *
+     * @param dir the folder for all order records, ie orders/records
+     * @param items the formatted item list of the order (see ProductListFormatter)
+     */
+    public static void createOrderRecord(Path dir, int orderId, OrderState state,
+                                         String orderedDateTime, String items) throws IOException {
+        String orderFileName = String.valueOf(orderId)+".txt";
+        Path path = dir.resolve(orderFileName); // eg. orders/records/12.txt
+        if(Files.notExists(path)) {
+            String record = "Order ID: " + orderId + " \n" +
+                    STATE_LABEL + pad(state.toString(), STATE_WIDTH) +
+                    ORDERED_LABEL + pad(orderedDateTime, DATE_TIME_WIDTH) +
+                    PROGRESSING_LABEL + pad("", DATE_TIME_WIDTH) +
+                    COLLECTED_LABEL + pad("", DATE_TIME_WIDTH) + "\n" +
+                    "Items:\n" + items + "\n";
+            Files.writeString(path, record, StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW);
+            log.debug("Order record created", "path", path);
+        }
+        else{
+            log.warn("Order record already exists", "path", path);
+        }
+    }
+
+    /**
+     * Updates the state and the matching timestamp of an order record in place, used in InPlace mode.
+     * Only the header block (from the state field to the end of the CollectedDateTime field) is read and
+     * written back at its fixed offset; the file is never copied or moved.
+     *
+     * @return true if the record exists and was updated
+     */
+    public static boolean updateOrderRecordInPlace(Path dir, int orderId, OrderState newState) throws IOException {
+        String orderFileName = String.valueOf(orderId)+".txt";
+        Path path = dir.resolve(orderFileName);
+        if (Files.notExists(path)) {
+            log.warn("Order record not found", "path", path);
+            return false;
+        }
+
+        // Offsets are relative to the start of the state field, which follows the "Order ID" line
+        long stateOffset = ("Order ID: " + orderId + " \n" + STATE_LABEL).length();
+        int orderedOffset = STATE_WIDTH + ORDERED_LABEL.length();
+        int progressingOffset = orderedOffset + DATE_TIME_WIDTH + PROGRESSING_LABEL.length();
+        int collectedOffset = progressingOffset + DATE_TIME_WIDTH + COLLECTED_LABEL.length();
+        int headerLength = collectedOffset + DATE_TIME_WIDTH;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(headerLength);
+            while (header.hasRemaining() && channel.read(header, stateOffset + header.position()) > 0) {
+                // keep reading until the whole header block is in the buffer
+            }
+            byte[] bytes = header.array();
+            String now = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+            putField(bytes, 0, pad(newState.toString(), STATE_WIDTH));
+            if (newState.equals(OrderState.Progressing)) {
+                putField(bytes, progressingOffset, now);
+            } else if (newState.equals(OrderState.Collected)) {
+                putField(bytes, collectedOffset, now);
+            }
+            channel.write(ByteBuffer.wrap(bytes), stateOffset); // one positional write of the header block
+        }
+        return true;
+    }
+
+    // Pads (or truncates) a value to a fixed width, so the field always takes the same number of bytes
+    private static String pad(String value, int width) {
+        if (value.length() >= width) {
+            return value.substring(0, width);
+        }
+        return value + " ".repeat(width - value.length());
+    }
+
+    // Copies an ASCII field value into the header bytes at the given offset
+    private static void putField(byte[] header, int offset, String value) {
+        byte[] valueBytes = value.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(valueBytes, 0, header, offset, valueBytes.length);
+    }
+
     //Reads the content of an order file as a single string.
     public static String readOrderFile(Path dir, int orderId) throws IOException {
         String orderFileName = String.valueOf(orderId)+".txt";
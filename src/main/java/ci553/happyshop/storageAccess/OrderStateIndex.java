@@ -0,0 +1,93 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.orderManagement.OrderState;
+import ci553.happyshop.utility.StorageLocation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.TreeMap;
+
+/**
+ * OrderStateIndex keeps the state of every order in a single binary file (orders/orderStateIndex.dat).
+ * It is used in the InPlace order storage mode, where it replaces the ordered/progressing/collected folders.
+ *
+ * <p>The file holds one byte per order, and the byte for an order is found at the position equal to its orderId.
+ * (orderIds are generated sequentially by OrderCounter, so the file stays small: 1 MB for one million orders.)
+ * <pre>
+ *  0 : no order with this ID
+ *  1 : Ordered
+ *  2 : Progressing
+ *  3 : Collected
+ * </pre>
+ * </p>
+ *
+ * <p>Changing the state of an order is a single one-byte positional write with FileChannel,
+ * instead of moving a file between folders. Loading all states at startup is one sequential read,
+ * instead of listing the folders.</p>
+ */
+
+public class OrderStateIndex {
+    private static final OrderState[] STATES = OrderState.values();
+
+    // Writes the state of the order at the position of its orderId.
+    public static void setState(int orderId, OrderState state) throws IOException {
+        Path path = StorageLocation.orderStateIndexPath;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(new byte[]{toByte(state)});
+            channel.write(buffer, orderId); // positional write, does not move or truncate anything else
+        }
+    }
+
+    // Reads the state of one order, returns null if the order is not in the index.
+    public static OrderState getState(int orderId) throws IOException {
+        Path path = StorageLocation.orderStateIndexPath;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (orderId >= channel.size()) {
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(1);
+            channel.read(buffer, orderId);
+            return fromByte(buffer.get(0));
+        }
+    }
+
+    /**
+     * Loads the states of all orders from the index with one read.
+     * @return a map of orderId and state, for all orders found in the index
+     */
+    public static TreeMap<Integer, OrderState> loadStates() throws IOException {
+        TreeMap<Integer, OrderState> states = new TreeMap<>();
+        Path path = StorageLocation.orderStateIndexPath;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+                // keep reading until the whole index is in the buffer
+            }
+            buffer.flip();
+            for (int orderId = 0; orderId < buffer.limit(); orderId++) {
+                OrderState state = fromByte(buffer.get(orderId));
+                if (state != null) {
+                    states.put(orderId, state);
+                }
+            }
+        }
+        return states;
+    }
+
+    private static byte toByte(OrderState state) {
+        return (byte) (state.ordinal() + 1);
+    }
+
+    private static OrderState fromByte(byte b) {
+        if (b <= 0 || b > STATES.length) {
+            return null;
+        }
+        return STATES[b - 1];
+    }
+}
@@ -0,0 +1,18 @@
+package ci553.happyshop.storageAccess;
+
+/**
+ * Represents how order files are stored and how their state changes are written.
+ *
+ * - FolderPerState: The original layout. Each order file lives in the folder of its state
+ *   (orders/ordered, orders/progressing, orders/collected). A state change rewrites the file
+ *   through a temp file and then moves it to the folder of the new state.
+ *
+ * - InPlace: All order files live in one folder (orders/records). The state and the timestamps
+ *   are written at fixed offsets in the file header, so a state change is a positional write of a few bytes.
+ *   Folder membership is replaced by a state index (orders/orderStateIndex.dat), see OrderStateIndex.
+ */
+
+public enum OrderStorageMode {
+    FolderPerState,
+    InPlace
+}
@@ -0,0 +1,90 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Money;
+import ci553.happyshop.logging.ShopLogger;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * PriceMigration moves the prices of a database made before prices were kept in pence:
+ * <pre>
+ *  before: unitPrice DOUBLE               eg. 29.99 (pounds, not exact in a double)
+ *  after:  unitPricePence BIGINT NOT NULL eg. 2999  (pence, exact, see Money)
+ * </pre>
+ * The new column is added, every price is copied to it rounded to the nearest penny, and the old column
+ * is dropped, all in one transaction, so the table is either moved completely or not at all.
+ *
+ * <p>DerbyRW runs it when it is created, so an old happyShopDB folder (or a copy of it, eg. in a load test)
+ * is moved the first time the shop opens it. After the first check the database is not asked again.</p>
+ */
+
+public class PriceMigration {
+    private static final ShopLogger log = ShopLogger.getLogger(PriceMigration.class);
+    private static final Set<String> checkedUrls = ConcurrentHashMap.newKeySet(); // databases already up to date
+
+    // Moves the prices of the database at dbURL if it still has the old column; does nothing after the first time
+    public static void migrateOnce(String dbURL) {
+        if (checkedUrls.contains(dbURL)) {
+            return;
+        }
+        synchronized (PriceMigration.class) {
+            if (checkedUrls.contains(dbURL)) {
+                return;
+            }
+            try {
+                migrate(dbURL);
+                checkedUrls.add(dbURL);
+            } catch (SQLException e) {
+                log.error("Could not move the prices to pence, will try again", e, "url", dbURL); // checked again next time
+            }
+        }
+    }
+
+    private static void migrate(String dbURL) throws SQLException {
+        try (Connection conn = DriverManager.getConnection(dbURL)) {
+            if (!hasColumn(conn, "UNITPRICE")) {
+                return; // already in pence, or no ProductTable yet (SetDatabase creates it in pence)
+            }
+            conn.setAutoCommit(false);
+            int rows = 0;
+            try (Statement stmt = conn.createStatement()) {
+                if (!hasColumn(conn, "UNITPRICEPENCE")) {
+                    stmt.executeUpdate("ALTER TABLE ProductTable ADD COLUMN unitPricePence BIGINT NOT NULL DEFAULT 0");
+                }
+                try (ResultSet rs = stmt.executeQuery("SELECT productID, unitPrice FROM ProductTable");
+                     PreparedStatement update = conn.prepareStatement(
+                             "UPDATE ProductTable SET unitPricePence = ? WHERE productID = ?")) {
+                    while (rs.next()) {
+                        update.setLong(1, Money.fromPounds(rs.getDouble("unitPrice")));
+                        update.setString(2, rs.getString("productID"));
+                        update.addBatch();
+                        rows++;
+                    }
+                    update.executeBatch();
+                }
+                stmt.executeUpdate("ALTER TABLE ProductTable DROP COLUMN unitPrice");
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+            log.info("Product prices moved to pence", "url", dbURL, "products", rows);
+        }
+    }
+
+    // Whether ProductTable has the column (Derby keeps unquoted names in upper case)
+    private static boolean hasColumn(Connection conn, String column) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        try (ResultSet rs = metaData.getColumns(null, null, "PRODUCTTABLE", column)) {
+            return rs.next();
+        }
+    }
+}
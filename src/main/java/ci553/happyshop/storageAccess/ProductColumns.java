@@ -0,0 +1,183 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.catalogue.ProductCatalogue;
+import ci553.happyshop.logging.ShopLogger;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * ProductColumns is a snapshot of the whole ProductTable held column by column, for work that looks at every
+ * product at once: low-stock scans, stock value reports and the like.
+ *
+ * <p>Instead of one Product object per row, each column is one array, and row i of the table is entry i
+ * of every array:
+ * <pre>
+ *  productIds    ["0001", "0002", ...]
+ *  pricePence    [26900,  2999,   ...]   long[]
+ *  stock         [100,    7,      ...]   int[]
+ * </pre>
+ * A scan such as "all products with inStock &lt; 10" then reads one int[] from start to end, which is
+ * a few bytes per product in memory order instead of following a pointer to an object per product,
+ * and simple loops over primitive arrays like sumStockValuePence() can be vectorised by the JIT compiler.
+ * A product is found by ID through a hash index of row numbers (an int[] with open addressing, no boxed Integers).</p>
+ *
+ * <p>load() reads every product once through a DatabaseRW, so it sees what that DatabaseRW sees
+ * (eg. the stock in memory in writebehind mode). Rows are sorted by product ID, like the rows of ProductTable.
+ * Only the stock can change afterwards, with setStock(): InventoryWatcher keeps one ProductColumns for the whole
+ * process and sets the stock of every product it reads after a checkout or stock adjustment, instead of
+ * loading the table again for every scan. Other changes (a new, edited or deleted product) need a new load().</p>
+ */
+
+public final class ProductColumns {
+    private static final ShopLogger log = ShopLogger.getLogger(ProductColumns.class);
+
+    private final int size;
+    private final String[] productIds;
+    private final String[] descriptions;
+    private final String[] imageNames;
+    private final long[] pricePence;
+    private final int[] stock;
+    private final long[] versions; // see Product.getVersion()
+    private final int[] index; // hash of product ID -> row + 1, 0 for an empty slot; the length is a power of two
+
+    private ProductColumns(int size, String[] productIds, String[] descriptions, String[] imageNames,
+                           long[] pricePence, int[] stock, long[] versions) {
+        this.size = size;
+        this.productIds = productIds;
+        this.descriptions = descriptions;
+        this.imageNames = imageNames;
+        this.pricePence = pricePence;
+        this.stock = stock;
+        this.versions = versions;
+        this.index = new int[Math.max(16, Integer.highestOneBit(Math.max(1, size) * 2) * 2)]; // at most half full
+        for (int row = 0; row < size; row++) {
+            int slot = slotOf(productIds[row]);
+            while (index[slot] != 0) {
+                slot = (slot + 1) & (index.length - 1);
+            }
+            index[slot] = row + 1;
+        }
+    }
+
+    /**
+     * Reads every product through the DatabaseRW into columns, sorted by product ID.
+     */
+    public static ProductColumns load(DatabaseRW databaseRW) throws SQLException {
+        long start = System.nanoTime();
+        ArrayList<Product> products = databaseRW.searchProduct(""); // "" matches every description
+        products.sort(Comparator.comparing(Product::getProductId));
+        ProductColumns columns = of(products);
+        log.debug("Product columns loaded", "products", columns.size,
+                "millis", (System.nanoTime() - start) / 1_000_000);
+        return columns;
+    }
+
+    // Columns of the given products, in the order of the list
+    public static ProductColumns of(List<Product> products) {
+        int size = products.size();
+        String[] ids = new String[size];
+        String[] descriptions = new String[size];
+        String[] images = new String[size];
+        long[] prices = new long[size];
+        int[] stock = new int[size];
+        long[] versions = new long[size];
+        for (int row = 0; row < size; row++) {
+            Product product = products.get(row);
+            ids[row] = product.getProductId();
+            descriptions[row] = product.getProductDescription();
+            images[row] = product.getProductImageName();
+            prices[row] = product.getUnitPricePence();
+            stock[row] = product.getStockQuantity();
+            versions[row] = product.getVersion();
+        }
+        return new ProductColumns(size, ids, descriptions, images, prices, stock, versions);
+    }
+
+    // The number of products (rows)
+    public int size() {
+        return size;
+    }
+
+    // The row of a product, or -1 if there is no product with that ID
+    public int rowOf(String productId) {
+        int slot = slotOf(productId);
+        while (true) {
+            int entry = index[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            if (productIds[entry - 1].equals(productId)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & (index.length - 1);
+        }
+    }
+
+    // The values of one row
+    public String productId(int row) { checkRow(row); return productIds[row]; }
+    public String description(int row) { checkRow(row); return descriptions[row]; }
+    public String imageName(int row) { checkRow(row); return imageNames[row]; }
+    public long pricePence(int row) { checkRow(row); return pricePence[row]; }
+    public int stock(int row) { checkRow(row); return stock[row]; }
+
+    // Changes the stock of one row, eg. after a checkout. A scan running meanwhile sees the old or the new stock;
+    // another thread only surely sees it after a happens-before edge, eg. a volatile write (see InventoryWatcher).
+    public void setStock(int row, int stockQuantity) { checkRow(row); stock[row] = stockQuantity; }
+
+    // The row as the shared Product object (see ProductCatalogue), eg. to show it in a client
+    public Product product(int row) {
+        checkRow(row);
+        return ProductCatalogue.getProductCatalogue().intern(productIds[row], descriptions[row], imageNames[row],
+                pricePence[row], stock[row], versions[row]);
+    }
+
+    /**
+     * The rows of the products with a stock below the threshold, eg. 10 for "inStock &lt; 10", in product ID order.
+     * The stock column is read twice (count, then collect), so the result array has exactly the right length.
+     * If setStock() changed a row between the two reads, the result only has the rows found by the second one.
+     */
+    public int[] rowsWithStockBelow(int threshold) {
+        int[] stock = this.stock;
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            if (stock[row] < threshold) {
+                count++;
+            }
+        }
+        int[] rows = new int[count];
+        int next = 0;
+        for (int row = 0; row < size && next < count; row++) {
+            if (stock[row] < threshold) {
+                rows[next++] = row;
+            }
+        }
+        return next == count ? rows : Arrays.copyOf(rows, next);
+    }
+
+    // The value of all stock in pence: the sum of price x stock over every product
+    public long sumStockValuePence() {
+        long[] pricePence = this.pricePence;
+        int[] stock = this.stock;
+        long total = 0;
+        for (int row = 0; row < size; row++) {
+            total += pricePence[row] * stock[row];
+        }
+        return total;
+    }
+
+    private int slotOf(String productId) {
+        int hash = productId.hashCode() * 0x9E3779B9; // spreads IDs that only differ in the last digits
+        return (hash ^ (hash >>> 16)) & (index.length - 1);
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("row " + row + " of " + size + " products");
+        }
+    }
+}
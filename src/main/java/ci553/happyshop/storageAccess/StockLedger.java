@@ -0,0 +1,212 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.logging.ShopLogger;
+import ci553.happyshop.utility.LogFileRecovery;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * StockLedger is the durable file behind the write-behind stock mode (see WriteBehindStock).
+ * Every checkout appends one line with the stock it took, and the line is forced to disk
+ * before the checkout is confirmed:
+ * <pre>
+ *  sequence|productId:quantity,productId:quantity,...
+ *  eg. 42|0001:2,0007:1
+ * </pre>
+ * One line per checkout means a checkout is either completely in the ledger or not at all:
+ * a line cut off by a crash has no newline at the end, and is cut off the ledger when it is read
+ * (see {@link #recover(long)}).
+ *
+ * <p>The ledger also adds up the quantities that are not in Derby yet (the pending deltas).
+ * {@link #takePending()} hands them to the flush, and {@link #compact(Pending)} drops the lines
+ * that Derby already has, so the file only holds what still has to be written.</p>
+ */
+
+public class StockLedger {
+    private static final ShopLogger log = ShopLogger.getLogger(StockLedger.class);
+
+    // Rewrite the ledger without the flushed lines once it is this big; an empty tail is truncated at once
+    private static final long COMPACT_SIZE_BYTES = 1024 * 1024;
+
+    private final Path ledgerPath;
+    private FileChannel channel;    // kept open for appending
+    private long lastSequence = 0;  // sequence number of the last line appended
+    private Map<String, Integer> pending = new HashMap<>(); // productId -> quantity taken, not in Derby yet
+
+    /**
+     * The quantities taken up to a sequence number, handed to the flush.
+     * @param sequence the last ledger line included
+     * @param offset   the byte offset in the ledger just after that line
+     * @param deltas   productId -> quantity taken
+     */
+    public record Pending(long sequence, long offset, Map<String, Integer> deltas) {}
+
+    public StockLedger(Path ledgerPath) {
+        this.ledgerPath = ledgerPath;
+    }
+
+    /**
+     * Reads the lines after the given sequence number (the ones Derby does not have yet) into the
+     * pending quantities, so the first flush writes them to Derby.
+     * The ledger is read with LogFileRecovery: a last line without its newline was cut off by a crash before
+     * the checkout was confirmed, and is removed. A damaged line in the middle is not skipped, as the checkouts
+     * after it were confirmed: the rest of the ledger is copied to a quarantine file and a DamagedLogException
+     * is thrown, so the shop does not start with too much stock (the ledger is kept).
+     * Sequence numbers continue after the last line, or after appliedSequence if the ledger is empty.
+     *
+     * @param appliedSequence the last ledger line already written to Derby
+     * @throws LogFileRecovery.DamagedLogException if a line in the middle of the ledger cannot be read
+     */
+    public synchronized void recover(long appliedSequence) throws IOException {
+        Map<String, Integer> deltas = new HashMap<>();
+        lastSequence = appliedSequence;
+        LogFileRecovery.Result result = LogFileRecovery.replay(open(), 0, ledgerPath, line -> {
+            Long sequence = parseLine(line, deltas, appliedSequence);
+            if (sequence == null) {
+                return false; // damaged line
+            }
+            lastSequence = Math.max(lastSequence, sequence);
+            return true;
+        });
+        if (result.tornBytes() > 0) {
+            log.warn("Stock ledger ended with an incomplete line, cut off", "bytes", result.tornBytes());
+        }
+        pending = deltas;
+        log.info("Stock ledger read", "lines", result.lines(), "appliedSequence", appliedSequence,
+                "lastSequence", lastSequence, "productsToFlush", deltas.size());
+    }
+
+    /**
+     * Appends one checkout and forces it to disk.
+     * @param quantities productId -> quantity taken
+     * @return the sequence number of the line
+     */
+    public synchronized long append(Map<String, Integer> quantities) throws IOException {
+        long sequence = lastSequence + 1;
+        StringBuilder line = new StringBuilder().append(sequence).append('|');
+        for (Map.Entry<String, Integer> entry : quantities.entrySet()) {
+            if (line.charAt(line.length() - 1) != '|') {
+                line.append(',');
+            }
+            line.append(entry.getKey()).append(':').append(entry.getValue());
+        }
+        line.append('\n');
+        ByteBuffer buffer = ByteBuffer.wrap(line.toString().getBytes(StandardCharsets.UTF_8));
+        FileChannel ledger = open();
+        while (buffer.hasRemaining()) {
+            ledger.write(buffer);
+        }
+        ledger.force(false); // durable before the checkout is confirmed
+        lastSequence = sequence;
+        for (Map.Entry<String, Integer> entry : quantities.entrySet()) {
+            pending.merge(entry.getKey(), entry.getValue(), Integer::sum);
+        }
+        return sequence;
+    }
+
+    // Takes the pending quantities for a flush; later appends start a new set
+    public synchronized Pending takePending() throws IOException {
+        Pending taken = new Pending(lastSequence, open().size(), pending);
+        pending = new HashMap<>();
+        return taken;
+    }
+
+    // Puts quantities back after a failed flush, so the next flush writes them
+    public synchronized void restorePending(Pending failed) {
+        for (Map.Entry<String, Integer> entry : failed.deltas().entrySet()) {
+            pending.merge(entry.getKey(), entry.getValue(), Integer::sum);
+        }
+    }
+
+    public synchronized boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Drops the lines that Derby has, after a successful flush of the given pending quantities.
+     * If nothing was appended since, the ledger is simply truncated; otherwise it is rewritten with only
+     * the newer lines once it has grown big, through a temp file so a crash never loses a line.
+     */
+    public synchronized void compact(Pending flushed) throws IOException {
+        FileChannel ledger = open();
+        if (lastSequence == flushed.sequence()) {
+            ledger.truncate(0);
+            ledger.force(false);
+            return;
+        }
+        if (ledger.size() < COMPACT_SIZE_BYTES) {
+            return; // the flushed lines are skipped by sequence number when recovering
+        }
+        Path tempPath = ledgerPath.resolveSibling(ledgerPath.getFileName() + ".tmp");
+        try (FileChannel temp = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long position = flushed.offset();
+            long end = ledger.size();
+            while (position < end) {
+                position += ledger.transferTo(position, end - position, temp);
+            }
+            temp.force(false);
+        }
+        ledger.close();
+        Files.move(tempPath, ledgerPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = null; // reopened at the new file
+        log.debug("Stock ledger compacted", "flushedSequence", flushed.sequence(), "lastSequence", lastSequence);
+    }
+
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Parses one ledger line and adds its quantities to deltas if it comes after appliedSequence.
+     * @return the sequence number of the line, or null if the line is incomplete or not valid
+     */
+    private static Long parseLine(String line, Map<String, Integer> deltas, long appliedSequence) {
+        int bar = line.indexOf('|');
+        if (bar < 0) {
+            return null;
+        }
+        try {
+            long sequence = Long.parseLong(line.substring(0, bar));
+            Map<String, Integer> quantities = new LinkedHashMap<>();
+            for (String item : line.substring(bar + 1).split(",")) {
+                int colon = item.lastIndexOf(':');
+                if (colon <= 0) {
+                    return null;
+                }
+                int quantity = Integer.parseInt(item.substring(colon + 1));
+                if (quantity <= 0) {
+                    return null; // a checkout always takes at least one unit
+                }
+                quantities.put(item.substring(0, colon), quantity);
+            }
+            if (sequence > appliedSequence) {
+                quantities.forEach((productId, quantity) -> deltas.merge(productId, quantity, Integer::sum));
+            }
+            return sequence;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private FileChannel open() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(ledgerPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.position(channel.size()); // append at the end of the ledger
+        }
+        return channel;
+    }
+}
@@ -0,0 +1,16 @@
+package ci553.happyshop.storageAccess;
+
+/**
+ * Represents where the stock of the products is kept while the shop runs (set with stock.mode in happyShop.properties).
+ *
+ * - Direct: The original behaviour. Every checkout updates ProductTable.inStock in Derby in its own transaction.
+ *
+ * - WriteBehind: The stock is kept in memory and each checkout is appended to a durable ledger file;
+ *   the changes are written to Derby in batches every few hundred milliseconds (see WriteBehindStock).
+ *   A checkout is then a memory operation plus one ledger append.
+ */
+
+public enum StockMode {
+    Direct,
+    WriteBehind
+}
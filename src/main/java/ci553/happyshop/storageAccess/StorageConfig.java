@@ -0,0 +1,187 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.logging.ShopLogger;
+import ci553.happyshop.metrics.MetricsRegistry;
+import ci553.happyshop.orderManagement.OrderEventBus;
+import ci553.happyshop.orderManagement.OrderHub;
+import ci553.happyshop.service.InventoryWatcher;
+import ci553.happyshop.service.ReservationService;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * StorageConfig reads the storage settings from the config file happyShop.properties
+ * (in the working folder, or the file named by the system property happyshop.config)
+ * and sets up the database connection for this process.
+ *
+ * <p>Settings (all optional, the defaults give the original embedded setup):
+ * <pre>
+ *  database.mode=embedded     embedded, server, client or inmemory, see DatabaseTopology
+ *  database.name=happyShopDB  the database folder (embedded, server) or the database name on the server (client)
+ *  database.host=localhost    server: the address to listen on; client: the computer running the server
+ *  database.port=1527         the Derby Network Server port
+ *  database.snapshotFile=     inmemory: the file the data is loaded from and saved to, empty for none
+ *  database.snapshotSeconds=30 inmemory: how often the data is saved
+ *  stock.mode=direct          direct or writebehind, see StockMode (embedded and server only)
+ *  stock.ledgerFile=stockLedger.log  writebehind: the ledger of checkouts not yet written to Derby
+ *  stock.flushMillis=200      writebehind: how often the ledger is written to Derby
+ * </pre>
+ * The same file also holds the order event settings, copied into OrderEventBus:
+ * <pre>
+ *  orderEvents.publish=false  true: the process running OrderHub publishes order changes to other processes
+ *  orderEvents.host=localhost the address to publish on (and the hub address for OrderTrackerClient --hub)
+ *  orderEvents.port=5570      the port to publish on
+ * </pre>
+ * and the reservation settings, copied into ReservationService:
+ * <pre>
+ *  reservation.enabled=true   adding to a trolley reserves the stock, see ReservationService
+ *  reservation.ttlSeconds=900 a trolley not changed for this long loses its reservations
+ * </pre>
+ * and the order storage settings, copied into OrderFileManager and OrderHub:
+ * <pre>
+ *  orders.storageMode=folderperstate  folderperstate or inplace, see OrderStorageMode
+ *  orders.eventSourcing=false         true: log every order change and recover the orders from it, see OrderEventLog
+ * </pre>
+ * and the reorder thresholds, copied into InventoryWatcher:
+ * <pre>
+ *  inventory.reorderThreshold=10       a product with less stock than this is low on stock
+ *  inventory.reorderThreshold.0001=25  the threshold of one product (any number of these)
+ * </pre>
+ * and the metrics switch:
+ * <pre>
+ *  metrics.enabled=false      true: time the database and order operations, see MetricsRegistry
+ * </pre>
+ * For example, to let several customer tills share one database, run one Launcher with database.mode=server
+ * and the others with database.mode=client and database.host set to the first computer.</p>
+ *
+ * <p>{@link #configure()} must be called at startup, before any DatabaseRW is created,
+ * because every DerbyRW reads DatabaseRWFactory.dbURL when it is made.</p>
+ */
+
+public class StorageConfig {
+    private static final ShopLogger log = ShopLogger.getLogger(StorageConfig.class);
+
+    public static Path configFile = Path.of(System.getProperty("happyshop.config", "happyShop.properties"));
+
+    // The settings, read from configFile by load()
+    public static DatabaseTopology mode = DatabaseTopology.Embedded;
+    public static String databaseName = "happyShopDB";
+    public static String host = "localhost";
+    public static int port = 1527;
+    public static StockMode stockMode = StockMode.Direct;
+    public static boolean metricsEnabled = false;
+
+    /**
+     * Reads the config file, points DatabaseRWFactory at the database,
+     * and starts the Derby Network Server if database.mode=server.
+     */
+    public static void configure() throws Exception {
+        load();
+        if (metricsEnabled) {
+            MetricsRegistry.enable(); // before any DatabaseRW is created, so DatabaseRWFactory times them
+        }
+        DatabaseRWFactory.dbURL = databaseURL();
+        if (stockMode == StockMode.WriteBehind
+                && (mode == DatabaseTopology.Client || mode == DatabaseTopology.Server)) {
+            // The stock in memory would not see the checkouts that client processes make in Derby:
+            // it would sell stock that is gone, and the flush would then break the inStock >= 0 check.
+            throw new IllegalArgumentException("stock.mode=writebehind cannot be used with database.mode="
+                    + mode.name().toLowerCase() + " in " + configFile);
+        }
+        if (mode == DatabaseTopology.InMemory) {
+            InMemoryDatabase.getInMemoryDatabase(); // load the data now rather than at the first search
+        } else if (mode == DatabaseTopology.Server) {
+            DerbyNetworkServer.start(host, port);
+        }
+        if (stockMode == StockMode.WriteBehind && mode != DatabaseTopology.InMemory) {
+            WriteBehindStock.getWriteBehindStock(); // write the checkouts left in the ledger to Derby now
+        }
+        log.info("Storage configured", "mode", mode, "url", DatabaseRWFactory.dbURL);
+    }
+
+    // Reads the settings from the config file; keeps the defaults if there is no file
+    public static void load() throws IOException {
+        if (!Files.exists(configFile)) {
+            log.info("No storage config file, using defaults", "file", configFile.toAbsolutePath());
+            return;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(configFile, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        mode = parseEnum(DatabaseTopology.class, "database.mode", properties.getProperty("database.mode", mode.name()));
+        databaseName = properties.getProperty("database.name", databaseName).trim();
+        host = properties.getProperty("database.host", host).trim();
+        port = parseNumber(properties, "database.port", port);
+        String snapshotFile = properties.getProperty("database.snapshotFile", "").trim();
+        InMemoryDatabase.snapshotFile = snapshotFile.isEmpty() ? null : Path.of(snapshotFile);
+        InMemoryDatabase.snapshotIntervalSeconds =
+                parseNumber(properties, "database.snapshotSeconds", InMemoryDatabase.snapshotIntervalSeconds);
+        stockMode = parseEnum(StockMode.class, "stock.mode", properties.getProperty("stock.mode", stockMode.name()));
+        WriteBehindStock.ledgerFile = Path.of(
+                properties.getProperty("stock.ledgerFile", WriteBehindStock.ledgerFile.toString()).trim());
+        WriteBehindStock.flushMillis = parseNumber(properties, "stock.flushMillis", WriteBehindStock.flushMillis);
+
+        OrderEventBus.publish = Boolean.parseBoolean(
+                properties.getProperty("orderEvents.publish", String.valueOf(OrderEventBus.publish)).trim());
+        OrderEventBus.host = properties.getProperty("orderEvents.host", OrderEventBus.host).trim();
+        OrderEventBus.port = parseNumber(properties, "orderEvents.port", OrderEventBus.port);
+
+        ReservationService.enabled = Boolean.parseBoolean(
+                properties.getProperty("reservation.enabled", String.valueOf(ReservationService.enabled)).trim());
+        ReservationService.ttlSeconds = parseNumber(properties, "reservation.ttlSeconds", ReservationService.ttlSeconds);
+
+        OrderFileManager.storageMode = parseEnum(OrderStorageMode.class, "orders.storageMode",
+                properties.getProperty("orders.storageMode", OrderFileManager.storageMode.name()));
+        OrderHub.eventSourcing = Boolean.parseBoolean(
+                properties.getProperty("orders.eventSourcing", String.valueOf(OrderHub.eventSourcing)).trim());
+
+        metricsEnabled = Boolean.parseBoolean(
+                properties.getProperty("metrics.enabled", String.valueOf(metricsEnabled)).trim());
+
+        InventoryWatcher.defaultReorderThreshold =
+                parseNumber(properties, "inventory.reorderThreshold", InventoryWatcher.defaultReorderThreshold);
+        String productThreshold = "inventory.reorderThreshold.";
+        for (String name : properties.stringPropertyNames()) {
+            if (name.startsWith(productThreshold)) {
+                InventoryWatcher.reorderThresholds.put(name.substring(productThreshold.length()),
+                        parseNumber(properties, name, InventoryWatcher.defaultReorderThreshold));
+            }
+        }
+    }
+
+    // Reads a number setting, eg. a port, or returns the default if it is not set
+    private static int parseNumber(Properties properties, String name, int defaultValue) {
+        String text = properties.getProperty(name, String.valueOf(defaultValue)).trim();
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a number in " + configFile + ": " + text);
+        }
+    }
+
+    // The JDBC URL for the settings, eg. jdbc:derby:happyShopDB or jdbc:derby://localhost:1527/happyShopDB
+    public static String databaseURL() {
+        if (mode == DatabaseTopology.Client) {
+            return "jdbc:derby://" + host + ":" + port + "/" + databaseName;
+        }
+        return "jdbc:derby:" + databaseName; // embedded, also used by the process running the server (not used by inmemory)
+    }
+
+    // Accepts a setting in any case, eg. "server" or "Server", "writebehind" or "WriteBehind"
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String name, String text) {
+        StringBuilder allowed = new StringBuilder();
+        for (E value : type.getEnumConstants()) {
+            if (value.name().equalsIgnoreCase(text.trim())) {
+                return value;
+            }
+            allowed.append(allowed.length() == 0 ? "" : ", ").append(value.name().toLowerCase());
+        }
+        throw new IllegalArgumentException(name + " must be one of " + allowed + " in " + configFile + ": " + text);
+    }
+}
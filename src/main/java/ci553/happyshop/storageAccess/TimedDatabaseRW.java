@@ -0,0 +1,135 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.OrderLine;
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.catalogue.StockAdjustment;
+import ci553.happyshop.metrics.Counter;
+import ci553.happyshop.metrics.MetricsRegistry;
+import ci553.happyshop.metrics.Timer;
+import ci553.happyshop.security.User;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * TimedDatabaseRW is a decorator around another DatabaseRW (eg. DerbyRW).
+ * Every call is passed on to the wrapped DatabaseRW unchanged, and its latency, call count and errors
+ * are recorded in a Timer of the MetricsRegistry named "db." + the method name, eg. "db.purchaseStocks".
+ *
+ * DatabaseRWFactory wraps the DatabaseRW it creates in a TimedDatabaseRW when metrics are enabled,
+ * so the clients do not need to know whether they are being measured.
+ */
+
+public class TimedDatabaseRW implements DatabaseRW {
+    private static final Timer searchProductTimer = MetricsRegistry.timer("db.searchProduct");
+    private static final Timer searchByProductIdTimer = MetricsRegistry.timer("db.searchByProductId");
+    private static final Timer purchaseStocksTimer = MetricsRegistry.timer("db.purchaseStocks");
+    private static final Timer adjustStocksTimer = MetricsRegistry.timer("db.adjustStocks");
+    private static final Timer updateProductTimer = MetricsRegistry.timer("db.updateProduct");
+    private static final Timer deleteProductTimer = MetricsRegistry.timer("db.deleteProduct");
+    private static final Timer insertNewProductTimer = MetricsRegistry.timer("db.insertNewProduct");
+    private static final Timer insertNewProductsTimer = MetricsRegistry.timer("db.insertNewProducts");
+    private static final Timer isProIdAvailableTimer = MetricsRegistry.timer("db.isProIdAvailable");
+    private static final Timer createUserTimer = MetricsRegistry.timer("db.createUser");
+    private static final Timer findUserByUsernameTimer = MetricsRegistry.timer("db.findUserByUsername");
+    private static final Timer updateUserPasswordTimer = MetricsRegistry.timer("db.updateUserPassword");
+    private static final Counter insufficientStockCounter = MetricsRegistry.counter("db.purchaseStocks.insufficient");
+
+    private final DatabaseRW databaseRW; // the wrapped implementation
+
+    // A database call that may throw SQLException, so it can be timed by one helper method
+    private interface DatabaseCall<T> {
+        T call() throws SQLException;
+    }
+
+    public TimedDatabaseRW(DatabaseRW databaseRW) {
+        this.databaseRW = databaseRW;
+    }
+
+    // Runs the call and records its latency; any exception is counted as an error and re-thrown.
+    private static <T> T timed(Timer timer, DatabaseCall<T> call) throws SQLException {
+        long start = timer.start();
+        try {
+            T result = call.call();
+            timer.stop(start);
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            timer.stopWithError(start);
+            throw e;
+        }
+    }
+
+    @Override
+    public ArrayList<Product> searchProduct(String keyword) throws SQLException {
+        return timed(searchProductTimer, () -> databaseRW.searchProduct(keyword));
+    }
+
+    @Override
+    public Product searchByProductId(String productId) throws SQLException {
+        return timed(searchByProductIdTimer, () -> databaseRW.searchByProductId(productId));
+    }
+
+    @Override
+    public ArrayList<OrderLine> purchaseStocks(ArrayList<OrderLine> orderLines) throws SQLException {
+        ArrayList<OrderLine> insufficientLines = timed(purchaseStocksTimer, () -> databaseRW.purchaseStocks(orderLines));
+        if (!insufficientLines.isEmpty()) {
+            insufficientStockCounter.increment(); // checkout rolled back because of a stock conflict
+        }
+        return insufficientLines;
+    }
+
+    @Override
+    public ArrayList<StockAdjustment> adjustStocks(List<StockAdjustment> adjustments) throws SQLException {
+        return timed(adjustStocksTimer, () -> databaseRW.adjustStocks(adjustments));
+    }
+
+    @Override
+    public boolean updateProduct(Product read, String des, long pricePence, String imageName, int stock) throws SQLException {
+        return timed(updateProductTimer, () -> databaseRW.updateProduct(read, des, pricePence, imageName, stock));
+    }
+
+    @Override
+    public void deleteProduct(String id) throws SQLException {
+        timed(deleteProductTimer, () -> {
+            databaseRW.deleteProduct(id);
+            return null;
+        });
+    }
+
+    @Override
+    public void insertNewProduct(String id, String des, long pricePence, String image, int stock) throws SQLException {
+        timed(insertNewProductTimer, () -> {
+            databaseRW.insertNewProduct(id, des, pricePence, image, stock);
+            return null;
+        });
+    }
+
+    @Override
+    public void insertNewProducts(List<Product> products) throws SQLException {
+        timed(insertNewProductsTimer, () -> {
+            databaseRW.insertNewProducts(products);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean isProIdAvailable(String productId) throws SQLException {
+        return timed(isProIdAvailableTimer, () -> databaseRW.isProIdAvailable(productId));
+    }
+
+    @Override
+    public boolean createUser(String username, String passwordHash, String role) throws SQLException {
+        return timed(createUserTimer, () -> databaseRW.createUser(username, passwordHash, role));
+    }
+
+    @Override
+    public User findUserByUsername(String username) throws SQLException {
+        return timed(findUserByUsernameTimer, () -> databaseRW.findUserByUsername(username));
+    }
+
+    @Override
+    public boolean updateUserPassword(String username, String newPasswordHash) throws SQLException {
+        return timed(updateUserPasswordTimer, () -> databaseRW.updateUserPassword(username, newPasswordHash));
+    }
+}
@@ -0,0 +1,73 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.logging.ShopLogger;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * VersionMigration adds the version column to the ProductTable of a database made before warehouse edits
+ * were checked for conflicts:
+ * <pre>
+ *  version BIGINT NOT NULL DEFAULT 0    how many times the warehouse has edited the product
+ * </pre>
+ * Every product starts at version 0. DerbyRW.updateProduct() only changes a product if it still has the
+ * version that was read when the warehouse opened it, and adds 1, so an edit made meanwhile is noticed.
+ *
+ * <p>Like PriceMigration, DerbyRW runs it when it is created, and the database is only asked once.</p>
+ */
+
+public class VersionMigration {
+    private static final ShopLogger log = ShopLogger.getLogger(VersionMigration.class);
+    private static final Set<String> checkedUrls = ConcurrentHashMap.newKeySet(); // databases already up to date
+
+    // Adds the version column to the database at dbURL if it has none yet; does nothing after the first time
+    public static void migrateOnce(String dbURL) {
+        if (checkedUrls.contains(dbURL)) {
+            return;
+        }
+        synchronized (VersionMigration.class) {
+            if (checkedUrls.contains(dbURL)) {
+                return;
+            }
+            try {
+                migrate(dbURL);
+                checkedUrls.add(dbURL);
+            } catch (SQLException e) {
+                log.error("Could not add the version column, will try again", e, "url", dbURL); // checked again next time
+            }
+        }
+    }
+
+    private static void migrate(String dbURL) throws SQLException {
+        try (Connection conn = DriverManager.getConnection(dbURL)) {
+            if (!hasTable(conn) || hasVersionColumn(conn)) {
+                return; // no ProductTable yet (SetDatabase creates it with the column), or already added
+            }
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("ALTER TABLE ProductTable ADD COLUMN version BIGINT NOT NULL DEFAULT 0");
+            }
+            log.info("Product version column added", "url", dbURL);
+        }
+    }
+
+    private static boolean hasTable(Connection conn) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getTables(null, null, "PRODUCTTABLE", null)) {
+            return rs.next();
+        }
+    }
+
+    // Whether ProductTable has the column (Derby keeps unquoted names in upper case)
+    private static boolean hasVersionColumn(Connection conn) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        try (ResultSet rs = metaData.getColumns(null, null, "PRODUCTTABLE", "VERSION")) {
+            return rs.next();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.OrderLine;
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.catalogue.ProductCatalogue;
+import ci553.happyshop.catalogue.StockAdjustment;
+import ci553.happyshop.security.User;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * WriteBehindRW is the DatabaseRW used when stock.mode=writebehind.
+ * It wraps a DerbyRW and passes every call on to it, except that:
+ * - purchaseStocks() takes the stock in memory and appends it to the stock ledger (see WriteBehindStock),
+ * - searches show the stock in memory, which can be ahead of Derby until the next flush,
+ * - warehouse edits, deletes and stock adjustments wait until Derby has all checkouts (see WriteBehindStock.changeProduct()).
+ */
+
+public class WriteBehindRW implements DatabaseRW {
+    private final DatabaseRW derbyRW;
+    private final WriteBehindStock stock = WriteBehindStock.getWriteBehindStock(); // Shared by all instances
+
+    public WriteBehindRW(DatabaseRW derbyRW) {
+        this.derbyRW = derbyRW;
+    }
+
+    @Override
+    public ArrayList<Product> searchProduct(String keyword) throws SQLException {
+        ArrayList<Product> productList = derbyRW.searchProduct(keyword);
+        productList.replaceAll(this::withCurrentStock);
+        return productList;
+    }
+
+    @Override
+    public Product searchByProductId(String productId) throws SQLException {
+        Product product = derbyRW.searchByProductId(productId);
+        return product == null ? null : withCurrentStock(product);
+    }
+
+    @Override
+    public ArrayList<OrderLine> purchaseStocks(ArrayList<OrderLine> orderLines) throws SQLException {
+        return stock.purchase(orderLines);
+    }
+
+    @Override
+    public ArrayList<StockAdjustment> adjustStocks(List<StockAdjustment> adjustments) throws SQLException {
+        Set<String> productIds = new HashSet<>();
+        for (StockAdjustment adjustment : adjustments) {
+            productIds.add(adjustment.productId());
+        }
+        List<ArrayList<StockAdjustment>> rejected = new ArrayList<>(1); // set inside the change
+        stock.changeProducts(productIds, () -> rejected.add(derbyRW.adjustStocks(adjustments)));
+        return rejected.get(0);
+    }
+
+    @Override
+    public boolean updateProduct(Product read, String des, long pricePence, String imageName, int stock) throws SQLException {
+        List<Boolean> updated = new ArrayList<>(1); // set inside the change
+        this.stock.changeProduct(read.getProductId(),
+                () -> updated.add(derbyRW.updateProduct(read, des, pricePence, imageName, stock)));
+        return updated.get(0);
+    }
+
+    @Override
+    public void deleteProduct(String id) throws SQLException {
+        stock.changeProduct(id, () -> derbyRW.deleteProduct(id));
+    }
+
+    @Override
+    public void insertNewProduct(String id, String des, long pricePence, String image, int stock) throws SQLException {
+        derbyRW.insertNewProduct(id, des, pricePence, image, stock); // a new product has no checkouts yet
+    }
+
+    @Override
+    public void insertNewProducts(List<Product> products) throws SQLException {
+        derbyRW.insertNewProducts(products);
+    }
+
+    @Override
+    public boolean isProIdAvailable(String productId) throws SQLException {
+        return derbyRW.isProIdAvailable(productId);
+    }
+
+    @Override
+    public boolean createUser(String username, String passwordHash, String role) throws SQLException {
+        return derbyRW.createUser(username, passwordHash, role);
+    }
+
+    @Override
+    public User findUserByUsername(String username) throws SQLException {
+        return derbyRW.findUserByUsername(username);
+    }
+
+    @Override
+    public boolean updateUserPassword(String username, String newPasswordHash) throws SQLException {
+        return derbyRW.updateUserPassword(username, newPasswordHash);
+    }
+
+    // The product as read from Derby, with the stock in memory if the product was bought since the shop started
+    private Product withCurrentStock(Product product) {
+        Integer current = stock.stockOf(product.getProductId());
+        if (current == null || current == product.getStockQuantity()) {
+            return product;
+        }
+        return ProductCatalogue.getProductCatalogue().withStock(product, current);
+    }
+}
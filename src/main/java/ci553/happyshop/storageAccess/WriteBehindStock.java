@@ -0,0 +1,349 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.OrderLine;
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.logging.ShopLogger;
+import ci553.happyshop.metrics.MetricsRegistry;
+import ci553.happyshop.metrics.PurchaseStocksEvent;
+import ci553.happyshop.metrics.ShopFlightRecorder;
+import ci553.happyshop.metrics.Timer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * WriteBehindStock keeps the stock of the products in memory when stock.mode=writebehind (see StockMode),
+ * and writes the changes to Derby in batches instead of on every checkout.
+ *
+ * <p>A checkout takes its quantities from an atomic counter per product (filled from Derby the first time
+ * the product is bought), appends one line to the StockLedger and forces it to disk. That is all:
+ * no Derby transaction and no lock shared with other checkouts. Every {@link #flushMillis} ms the quantities
+ * taken since the last flush are added up per product and written to ProductTable in one transaction.</p>
+ *
+ * <p>The same transaction records the last ledger line it includes in the StockLedgerState table,
+ * so after a crash the lines after it are written to Derby when the shop starts again,
+ * and no line is ever written twice.</p>
+ *
+ * <p>Warehouse changes (edit, delete) first flush the ledger and hold back checkouts while they run,
+ * so the new stock typed in by the warehouse is never overwritten by an older checkout.
+ * Only one process may change the stock in this mode, so it cannot be used with database.mode=server
+ * or client.</p>
+ */
+
+public class WriteBehindStock {
+    private static final ShopLogger log = ShopLogger.getLogger(WriteBehindStock.class);
+    private static WriteBehindStock writeBehindStock; //singleton instance
+
+    // Settings, read from happyShop.properties by StorageConfig
+    public static Path ledgerFile = Path.of("stockLedger.log");
+    public static int flushMillis = 200;
+
+    private static final Timer flushTimer = MetricsRegistry.timer("stock.flush");
+
+    // A change of a product in Derby by the warehouse, see changeProduct()
+    public interface ProductChange {
+        void run() throws SQLException;
+    }
+
+    private final String dbURL;
+    private final Path ledgerPath;
+    private final DatabaseRW derbyRW; // reads the stock of a product the first time it is bought
+    private final ConcurrentHashMap<String, AtomicInteger> stock = new ConcurrentHashMap<>();
+    private final StockLedger ledger;
+    private ScheduledExecutorService scheduler; // runs the periodic flush, started by open()
+    private Thread shutdownFlush;               // flushes when the JVM exits
+
+    // Checkouts share the read lock; a warehouse change takes the write lock so no checkout runs during it
+    private final ReentrantReadWriteLock productLock = new ReentrantReadWriteLock();
+    private final ReentrantLock flushLock = new ReentrantLock(); // one flush at a time
+
+    //Singleton pattern
+    private WriteBehindStock() {
+        this(DatabaseRWFactory.dbURL, ledgerFile);
+    }
+
+    // A WriteBehindStock for another database and ledger than the settings, eg. in a test; call open() next
+    WriteBehindStock(String dbURL, Path ledgerPath) {
+        this.dbURL = dbURL;
+        this.ledgerPath = ledgerPath;
+        this.derbyRW = new DerbyRW(dbURL);
+        this.ledger = new StockLedger(ledgerPath);
+    }
+
+    public static synchronized WriteBehindStock getWriteBehindStock() {
+        if (writeBehindStock == null) {
+            WriteBehindStock created = new WriteBehindStock();
+            created.open();
+            writeBehindStock = created;
+        }
+        return writeBehindStock;
+    }
+
+    /**
+     * Writes the ledger lines Derby does not have yet, then starts the periodic flush.
+     * The shop cannot start if this fails, as the stock in Derby would be too high.
+     */
+    void open() {
+        try {
+            ledger.recover(readAppliedSequence());
+            flush();
+        } catch (IOException | SQLException e) {
+            throw new IllegalStateException("Cannot bring the stock in Derby up to date with " + ledgerPath, e);
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stock-ledger-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        shutdownFlush = new Thread(this::flushQuietly);
+        Runtime.getRuntime().addShutdownHook(shutdownFlush);
+        log.info("Write-behind stock started", "ledger", ledgerPath, "flushMillis", flushMillis);
+    }
+
+    // Flushes and stops the periodic flush, eg. at the end of a test. The shop itself flushes when the JVM exits.
+    void close() throws SQLException, IOException {
+        scheduler.shutdown();
+        Runtime.getRuntime().removeShutdownHook(shutdownFlush);
+        flush();
+        ledger.close();
+    }
+
+    /**
+     * Takes the stock for all products in the list, or for none of them, like DerbyRW.purchaseStocks().
+     * Each line takes its quantity from the product's counter with compareAndSet, so the stock never goes below zero.
+     * If a line does not have enough stock, the quantities already taken are put back and every insufficient
+     * product is reported. Otherwise the checkout is appended to the ledger before returning.
+     *
+     * @return the lines without enough stock, empty if the purchase went through
+     */
+    public ArrayList<OrderLine> purchase(ArrayList<OrderLine> orderLines) throws SQLException {
+        PurchaseStocksEvent event = new PurchaseStocksEvent(); // JFR event
+        event.begin();
+        ArrayList<OrderLine> insufficientLines = new ArrayList<>();
+        Map<String, Integer> taken = new LinkedHashMap<>(); // productId -> quantity taken from the counter
+
+        productLock.readLock().lock();
+        try {
+            for (OrderLine line : orderLines) {
+                AtomicInteger counter;
+                try {
+                    counter = counterFor(line.productId());
+                } catch (SQLException e) {
+                    putBack(taken); // Derby could not be read, nothing is bought
+                    throw e;
+                }
+                if (counter == null) {
+                    insufficientLines.add(line); // the product no longer exists, as in DerbyRW
+                    continue;
+                }
+                int quantity = line.quantity();
+                if (!insufficientLines.isEmpty()) {
+                    if (counter.get() < quantity) { // only checking, the purchase is already failing
+                        insufficientLines.add(line);
+                    }
+                } else if (take(counter, quantity)) {
+                    taken.merge(line.productId(), quantity, Integer::sum);
+                } else {
+                    insufficientLines.add(line);
+                }
+            }
+
+            if (!insufficientLines.isEmpty()) {
+                putBack(taken);
+                log.info("Insufficient stock for some products, all updates rolled back",
+                        "lines", orderLines.size(), "insufficient", insufficientLines.size());
+            } else if (!taken.isEmpty()) {
+                try {
+                    ledger.append(taken);
+                } catch (IOException e) {
+                    putBack(taken);
+                    throw new SQLException("Cannot write the stock ledger " + ledgerPath, e);
+                }
+                log.debug("Stock purchase logged", "lines", orderLines.size());
+            }
+        } finally {
+            productLock.readLock().unlock();
+        }
+
+        event.lineCount = orderLines.size();
+        event.insufficientCount = insufficientLines.size();
+        if (event.shouldCommit()) {
+            event.products = ShopFlightRecorder.productIds(orderLines);
+        }
+        event.commit();
+        return insufficientLines;
+    }
+
+    // The stock of a product in memory, or null if it has not been bought since the shop started (Derby has it)
+    public Integer stockOf(String productId) {
+        AtomicInteger counter = stock.get(productId);
+        return counter == null ? null : counter.get();
+    }
+
+    /**
+     * Runs a warehouse change of a product in Derby (edit or delete) with no checkout running:
+     * the ledger is flushed first so Derby has the current stock, and afterwards the product's counter
+     * is dropped, so the next checkout reads the new stock from Derby.
+     */
+    public void changeProduct(String productId, ProductChange change) throws SQLException {
+        changeProducts(List.of(productId), change);
+    }
+
+    // The same for a change of many products at once, eg. a batch of stock adjustments
+    public void changeProducts(Collection<String> productIds, ProductChange change) throws SQLException {
+        productLock.writeLock().lock();
+        try {
+            flush(); // if this fails, the counters are kept: Derby does not have all of their checkouts yet
+            try {
+                change.run();
+            } finally {
+                for (String productId : productIds) {
+                    stock.remove(productId);
+                }
+            }
+        } finally {
+            productLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the quantities taken since the last flush to ProductTable in one transaction,
+     * together with the last ledger line included. If it fails, the quantities are kept for the next flush.
+     */
+    public void flush() throws SQLException {
+        flushLock.lock();
+        try {
+            if (!ledger.hasPending()) {
+                return;
+            }
+            long start = flushTimer.start();
+            StockLedger.Pending pending = ledger.takePending();
+            try {
+                writeToDerby(pending);
+                flushTimer.stop(start);
+            } catch (SQLException | RuntimeException e) {
+                ledger.restorePending(pending);
+                flushTimer.stopWithError(start);
+                throw e;
+            }
+            ledger.compact(pending);
+            log.debug("Stock ledger flushed", "sequence", pending.sequence(), "products", pending.deltas().size());
+        } catch (IOException e) {
+            // Derby is up to date; the ledger keeps the flushed lines, which are skipped by sequence number
+            log.warn("Stock ledger could not be compacted", e);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (SQLException e) {
+            log.error("Stock ledger flush failed, will retry", e);
+        }
+    }
+
+    private void writeToDerby(StockLedger.Pending pending) throws SQLException {
+        String updateStock = "UPDATE ProductTable SET inStock = inStock - ? WHERE productID = ?";
+        String updateApplied = "UPDATE StockLedgerState SET appliedSequence = ? WHERE id = 1";
+        try (Connection conn = DriverManager.getConnection(dbURL)) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement stockStmt = conn.prepareStatement(updateStock);
+                 PreparedStatement appliedStmt = conn.prepareStatement(updateApplied)) {
+                List<String> productIds = new ArrayList<>(pending.deltas().keySet());
+                productIds.sort(null); // always the same row order, so a flush never deadlocks with a warehouse change
+                for (String productId : productIds) {
+                    stockStmt.setInt(1, pending.deltas().get(productId));
+                    stockStmt.setString(2, productId);
+                    stockStmt.addBatch();
+                }
+                stockStmt.executeBatch();
+                appliedStmt.setLong(1, pending.sequence());
+                appliedStmt.executeUpdate();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    // Reads the last ledger line in Derby, creating the StockLedgerState table the first time
+    private long readAppliedSequence() throws SQLException {
+        try (Connection conn = DriverManager.getConnection(dbURL);
+             Statement stmt = conn.createStatement()) {
+            try {
+                stmt.executeUpdate("CREATE TABLE StockLedgerState(id INT PRIMARY KEY, appliedSequence BIGINT NOT NULL)");
+                stmt.executeUpdate("INSERT INTO StockLedgerState VALUES(1, 0)");
+            } catch (SQLException e) {
+                if (!"X0Y32".equals(e.getSQLState())) { // X0Y32 = table already exists
+                    throw e;
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT appliedSequence FROM StockLedgerState WHERE id = 1")) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * The counter of a product, filled from Derby the first time; null if the product does not exist.
+     * Derby is read outside the map, not in computeIfAbsent(), which would block other checkouts of products
+     * in the same part of the map while waiting for Derby. Two checkouts may both read a new product;
+     * they read the same stock (no counter means nothing is pending for it), and putIfAbsent() keeps one counter.
+     *
+     * @throws SQLException if Derby cannot be read, so a failing database is not taken for an unknown product
+     */
+    private AtomicInteger counterFor(String productId) throws SQLException {
+        AtomicInteger counter = stock.get(productId);
+        if (counter != null) {
+            return counter;
+        }
+        Product product = derbyRW.searchByProductId(productId);
+        if (product == null) {
+            return null;
+        }
+        AtomicInteger loaded = new AtomicInteger(product.getStockQuantity());
+        AtomicInteger existing = stock.putIfAbsent(productId, loaded);
+        return existing != null ? existing : loaded;
+    }
+
+    // Takes the quantity from the counter if there is enough, and returns whether it did
+    private static boolean take(AtomicInteger counter, int quantity) {
+        while (true) {
+            int current = counter.get();
+            if (current < quantity) {
+                return false;
+            }
+            if (counter.compareAndSet(current, current - quantity)) {
+                return true;
+            }
+        }
+    }
+
+    private void putBack(Map<String, Integer> taken) {
+        for (Map.Entry<String, Integer> entry : taken.entrySet()) {
+            stock.get(entry.getKey()).addAndGet(entry.getValue());
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package ci553.happyshop.systemSetup;
 
+import ci553.happyshop.catalogue.Money;
 import ci553.happyshop.storageAccess.DatabaseRWFactory;
+import ci553.happyshop.storageAccess.WriteBehindStock;
 import ci553.happyshop.utility.StorageLocation;
 import org.mindrot.jbcrypt.BCrypt;
 
@@ -23,6 +25,7 @@ import java.util.concurrent.locks.ReentrantLock;
  * 1. Deletes all existing tables in the database.
  * 2. Recreates the database tables based on the initial schema.
  * 3. Inserts default values into the newly created tables.
+ *    The write-behind stock ledger (StockLedgerState table and ledger file) is removed, as it belongs to the old data.
  * 4. Deletes all existing image files from the working image folder (images/).
  * 5. Copies all image files from the backup folder (images_resetDB/) into the working image folder.
  */
@@ -36,14 +39,15 @@ public class SetDatabase {
     private static Path imageWorkingFolderPath = StorageLocation.imageFolderPath;
     private static Path imageBackupFolderPath = StorageLocation.imageResetFolderPath;
 
-    private String[] tables = {"ProductTable", "UserTable"};
-    // Updated to include both tables
+    private String[] tables = {"ProductTable", "UserTable", "StockLedgerState"};
+    // StockLedgerState only exists if stock.mode=writebehind was used, see WriteBehindStock
 
     private static final Lock lock = new ReentrantLock();    // Create a global lock
 
     public static void main(String[] args) throws SQLException, IOException {
         SetDatabase setDB = new SetDatabase();
         setDB.clearTables(); // clear all tables in the tables array from database if they are existing
+        Files.deleteIfExists(WriteBehindStock.ledgerFile); // checkouts of the old data must not be replayed
         setDB.initializeTable(); // create and initialize database and tables
         setDB.queryTableAfterInitilization();
         deleteFilesInFolder(imageWorkingFolderPath);
@@ -82,25 +86,26 @@ public class SetDatabase {
                 "CREATE TABLE ProductTable(" +
                         "productID CHAR(4) PRIMARY KEY," +
                         "description VARCHAR(100)," +
-                        "unitPrice DOUBLE," +
+                        "unitPricePence BIGINT NOT NULL," + // eg. 2999 for £29.99, see Money
                         "image VARCHAR(100)," +
                         "inStock INT," +
+                        "version BIGINT NOT NULL DEFAULT 0," + // counts warehouse edits, see DerbyRW.updateProduct()
                         "CHECK (inStock >= 0)" +
                         ")",
 
                 // Insert data into ProductTable
-                "INSERT INTO ProductTable VALUES('0001', '40 inch TV', 269.00,'0001.jpg',100)",
-                "INSERT INTO ProductTable VALUES('0002', 'DAB Radio', 29.99, '0002.jpg',100)",
-                "INSERT INTO ProductTable VALUES('0003', 'Toaster', 19.99, '0003.jpg',100)",
-                "INSERT INTO ProductTable VALUES('0004', 'Watch', 29.99, '0004.jpg',100)",
-                "INSERT INTO ProductTable VALUES('0005', 'Digital Camera', 89.99, '0005.jpg',100)",
-                "INSERT INTO ProductTable VALUES('0006', 'MP3 player', 7.99, '0006.jpg',100)",
-                "INSERT INTO ProductTable VALUES('0007', 'USB drive', 6.99, '0007.jpg',100)",
-                "INSERT INTO ProductTable VALUES('0008', 'USB2 drive', 7.99, '0008.jpg',100)",
-                "INSERT INTO ProductTable VALUES('0009', 'USB3 drive', 8.99, '0009.jpg',100)",
-                "INSERT INTO ProductTable VALUES('0010', 'USB4 drive', 9.99, '0010.jpg',100)",
-                "INSERT INTO ProductTable VALUES('0011', 'USB5 drive', 10.99, '0011.jpg',100)",
-                "INSERT INTO ProductTable VALUES('0012', 'USB6 drive', 10.99, '0011.jpg',100)",
+                "INSERT INTO ProductTable VALUES('0001', '40 inch TV', 26900,'0001.jpg',100,0)",
+                "INSERT INTO ProductTable VALUES('0002', 'DAB Radio', 2999, '0002.jpg',100,0)",
+                "INSERT INTO ProductTable VALUES('0003', 'Toaster', 1999, '0003.jpg',100,0)",
+                "INSERT INTO ProductTable VALUES('0004', 'Watch', 2999, '0004.jpg',100,0)",
+                "INSERT INTO ProductTable VALUES('0005', 'Digital Camera', 8999, '0005.jpg',100,0)",
+                "INSERT INTO ProductTable VALUES('0006', 'MP3 player', 799, '0006.jpg',100,0)",
+                "INSERT INTO ProductTable VALUES('0007', 'USB drive', 699, '0007.jpg',100,0)",
+                "INSERT INTO ProductTable VALUES('0008', 'USB2 drive', 799, '0008.jpg',100,0)",
+                "INSERT INTO ProductTable VALUES('0009', 'USB3 drive', 899, '0009.jpg',100,0)",
+                "INSERT INTO ProductTable VALUES('0010', 'USB4 drive', 999, '0010.jpg',100,0)",
+                "INSERT INTO ProductTable VALUES('0011', 'USB5 drive', 1099, '0011.jpg',100,0)",
+                "INSERT INTO ProductTable VALUES('0012', 'USB6 drive', 1099, '0011.jpg',100,0)",
         };
 
         try (Connection connection = DriverManager.getConnection(dbURL)) {
@@ -188,10 +193,11 @@ public class SetDatabase {
                 while (resultSet.next()) {
                     String productID = resultSet.getString("productID");
                     String description = resultSet.getString("description");
-                    double unitPrice = resultSet.getDouble("unitPrice");
+                    long unitPricePence = resultSet.getLong("unitPricePence");
                     String image = resultSet.getString("image");
                     int inStock = resultSet.getInt("inStock");
-                    String record = String.format("%-12s %-20s %-10.2f %-10d %s", productID, description, unitPrice, inStock, image);
+                    String record = String.format("%-12s %-20s %-10s %-10d %s", productID, description,
+                            Money.format(unitPricePence), inStock, image);
                     System.out.println(record);  // Print formatted output
                 }
             }
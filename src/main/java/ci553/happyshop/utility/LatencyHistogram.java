@@ -0,0 +1,128 @@
+package ci553.happyshop.utility;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A small HDR-style (high dynamic range) histogram for latencies and other non-negative long values.
+ *
+ * <p>Values are counted in log-linear buckets: every power-of-two range is split into 64 equal
+ * sub-buckets, so any recorded value is reported with a relative error below 1.6%, whether it is
+ * 3 ms or 3 hours. Values below 128 are counted exactly. The whole range of long values fits in
+ * 3712 buckets (about 30 KB), and recording a value is a few bit operations plus an atomic increment,
+ * so the histogram can be shared by many threads.</p>
+ *
+ * <p>It is used for order lifecycle latencies (eg. ordered → collected, in milliseconds) and for
+ * timing hot paths. The unit is up to the caller; all queries return values in the same unit.</p>
+ */
+
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;   // 128 exact values at the bottom
+    private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2; // 64 sub-buckets per power of two
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (63 - SUB_BUCKET_BITS) * HALF_SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalSum = new AtomicLong();
+    private final AtomicLong maxValue = new AtomicLong(0);
+    private final AtomicLong minValue = new AtomicLong(Long.MAX_VALUE);
+
+    // Records one value. Negative values are counted as 0.
+    public void record(long value) {
+        recordCount(value, 1);
+    }
+
+    // Records the same value a number of times.
+    public void recordCount(long value, long count) {
+        long v = Math.max(0, value);
+        counts.addAndGet(bucketIndex(v), count);
+        totalCount.addAndGet(count);
+        totalSum.addAndGet(v * count);
+        maxValue.accumulateAndGet(v, Math::max);
+        minValue.accumulateAndGet(v, Math::min);
+    }
+
+    // Adds all values recorded in another histogram to this one.
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long c = other.counts.get(i);
+            if (c != 0) {
+                counts.addAndGet(i, c);
+            }
+        }
+        totalCount.addAndGet(other.totalCount.get());
+        totalSum.addAndGet(other.totalSum.get());
+        maxValue.accumulateAndGet(other.maxValue.get(), Math::max);
+        minValue.accumulateAndGet(other.minValue.get(), Math::min);
+    }
+
+    // Clears all recorded values.
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        totalSum.set(0);
+        maxValue.set(0);
+        minValue.set(Long.MAX_VALUE);
+    }
+
+    public long getTotalCount() { return totalCount.get(); }
+    public long getMax() { return maxValue.get(); }
+    public long getMin() { return getTotalCount() == 0 ? 0 : minValue.get(); }
+    public double getMean() {
+        long count = getTotalCount();
+        return count == 0 ? 0 : (double) totalSum.get() / count;
+    }
+
+    /**
+     * Returns the value at the given percentile, eg. 50 for the median or 99 for the 99th percentile.
+     * The result is the highest value of the bucket the percentile falls in (never above the recorded max).
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = getTotalCount();
+        if (count == 0) {
+            return 0;
+        }
+        double p = Math.min(100.0, Math.max(0.0, percentile));
+        long target = Math.max(1, (long) Math.ceil(p / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestValueInBucket(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    // A one-line summary, eg. "count=120 mean=35.2 p50=31 p90=58 p99=97 max=120"
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.1f p50=%d p90=%d p99=%d max=%d",
+                getTotalCount(), getMean(), getValueAtPercentile(50), getValueAtPercentile(90),
+                getValueAtPercentile(99), getMax());
+    }
+
+    // Maps a value to its bucket: values below 128 map to themselves, larger values keep their top 7 bits.
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int highestBit = 63 - Long.numberOfLeadingZeros(value);
+        int shift = highestBit - (SUB_BUCKET_BITS - 1);
+        int top = (int) (value >>> shift); // 64..127
+        return SUB_BUCKET_COUNT + (shift - 1) * HALF_SUB_BUCKET_COUNT + (top - HALF_SUB_BUCKET_COUNT);
+    }
+
+    // The highest value that maps to the given bucket.
+    private static long highestValueInBucket(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / HALF_SUB_BUCKET_COUNT + 1;
+        long top = (index - SUB_BUCKET_COUNT) % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT;
+        return ((top + 1) << shift) - 1;
+    }
+}
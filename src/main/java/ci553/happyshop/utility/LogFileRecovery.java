@@ -0,0 +1,115 @@
+package ci553.happyshop.utility;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Predicate;
+
+/**
+ * LogFileRecovery reads an append-only log file line by line when the system starts,
+ * eg. the order event log (OrderEventLog) and the stock ledger (StockLedger).
+ * Each line is written with its newline last and forced to disk, which gives two kinds of bad line:
+ * <ul>
+ *   <li>A torn tail: the last bytes of the file have no newline, because the system stopped while writing them.
+ *   That line was never confirmed to anyone, so it is cut off the file.</li>
+ *   <li>A damaged line: a complete line (with its newline) that cannot be read, eg. a disk error.
+ *   The lines after it were confirmed, so they must not be lost: the log is left as it is, everything from
+ *   the damaged line to the end is copied to a quarantine file next to the log, and a
+ *   {@link DamagedLogException} is thrown so the caller stops instead of carrying on without them.</li>
+ * </ul>
+ */
+
+public class LogFileRecovery {
+
+    /**
+     * What {@link #replay} read.
+     * @param lines       the number of complete lines passed to the handler
+     * @param tornBytes   the number of bytes cut off the end of the file (0 if the last line was complete)
+     */
+    public record Result(int lines, long tornBytes) {}
+
+    /**
+     * Thrown when a complete line in the middle of a log cannot be read.
+     * The log is not changed; the damaged line and everything after it are in the quarantine file.
+     */
+    public static class DamagedLogException extends IOException {
+        private static final long serialVersionUID = 1L;
+        private final Path quarantinePath;
+
+        DamagedLogException(String message, Path quarantinePath) {
+            super(message);
+            this.quarantinePath = quarantinePath;
+        }
+
+        public Path getQuarantinePath() {
+            return quarantinePath;
+        }
+    }
+
+    private LogFileRecovery() {}
+
+    /**
+     * Passes every complete line from the given offset to the handler, then leaves the channel positioned
+     * at the end of the file, ready for appending.
+     *
+     * @param channel the log, open for reading and writing
+     * @param offset  the byte offset to start reading at (eg. just after a snapshot)
+     * @param logPath the path of the log, used to name the quarantine file
+     * @param handler reads one line (without its newline) and returns false if it is damaged
+     * @throws DamagedLogException if the handler returns false for a line
+     */
+    public static Result replay(FileChannel channel, long offset, Path logPath, Predicate<String> handler)
+            throws IOException {
+        channel.position(offset);
+        long lineStart = offset; // byte offset of the line being read
+        int lines = 0;
+        // Not closed: closing the stream would close the log channel
+        InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b != '\n') {
+                line.write(b);
+                continue;
+            }
+            if (!handler.test(line.toString(StandardCharsets.UTF_8))) {
+                throw quarantine(channel, lineStart, logPath);
+            }
+            lineStart += line.size() + 1;
+            lines++;
+            line.reset();
+        }
+
+        long tornBytes = channel.size() - lineStart; // a last line without its newline
+        if (tornBytes > 0) {
+            channel.truncate(lineStart);
+            channel.force(false);
+        }
+        channel.position(channel.size());
+        return new Result(lines, tornBytes);
+    }
+
+    // Copies the log from the damaged line to the end into <log>.damaged-<time> and returns the exception to throw
+    private static DamagedLogException quarantine(FileChannel channel, long damagedOffset, Path logPath)
+            throws IOException {
+        Path quarantinePath = logPath.resolveSibling(logPath.getFileName() + ".damaged-" + System.currentTimeMillis());
+        try (FileChannel quarantine = FileChannel.open(quarantinePath,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long position = damagedOffset;
+            long end = channel.size();
+            while (position < end) {
+                position += channel.transferTo(position, end - position, quarantine);
+            }
+            quarantine.force(false);
+        }
+        channel.position(channel.size()); // the log is kept as it is, later lines are appended after the damage
+        return new DamagedLogException("Damaged line in " + logPath + " at byte " + damagedOffset
+                + ", the log was not changed and the rest of it was copied to " + quarantinePath, quarantinePath);
+    }
+}
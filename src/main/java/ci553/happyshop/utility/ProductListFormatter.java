@@ -1,46 +1,156 @@
 package ci553.happyshop.utility;
 
+import ci553.happyshop.catalogue.Money;
+import ci553.happyshop.catalogue.OrderLine;
 import ci553.happyshop.catalogue.Product;
 
-import java.util.ArrayList;
+import java.text.DecimalFormatSymbols;
+import java.util.List;
+import java.util.Locale;
 
 /**
- * This class builds a formatted, receipt-like summary from a list of products.
+ * This class builds a formatted, receipt-like summary from a list of order lines (product + quantity).
  * It is used by:
  * 1. CustomerModel – to display the trolley and receipt
  * 2. The Order class – to generate a summary for writing to an order's file
+ * 3. The Trolley class – to format each trolley line once, see formatLine()
+ *
+ * The text is the same as formatting every line with String.format(" %-7s %-18.18s (%2d) £%7.2f\n", ...)
+ * and the total with String.format(" %-35s £%7.2f\n", "Total", ...), but the columns are written straight into
+ * a StringBuilder, so no Formatter, format string parsing or boxed arguments are created for each line.
+ * Use appendTo() to write into a StringBuilder you keep and reuse.
+ *
+ * Prices are in pence (see Money), so the total is added up exactly and written without any rounding.
+ * Locales that do not write numbers as 0-9 with a '.' are still formatted by String.format, so the text
+ * never differs from it.
  */
 
 public class ProductListFormatter {
+    private static final int LINE_LENGTH = 42;   // length of a product line with a short ID
+    private static final int FOOTER_LENGTH = 91; // separator line and total line
+    private static final String SEPARATOR = "-".repeat(44) + "\n";
+
+    // The last default locale seen, and whether it writes numbers like Locale.ROOT does
+    private record LocaleCheck(Locale locale, boolean plainNumbers) {}
+    private static volatile LocaleCheck localeCheck = new LocaleCheck(null, false);
+
     /**
      * Builds a formatted string showing each product's ID, description,
      * quantity ordered, and total price. Also includes a total price at the end.
-     * @param proList a List of products
-     * @return A nicely formatted string representation of the product list with totals
+     * @param orderLines the lines of a trolley or an order
+     * @return A nicely formatted string representation of the lines with totals
      */
-    public static String buildString(ArrayList<Product> proList) {
-        StringBuilder sb = new StringBuilder();
-        double totalPrice=0;
-        for (Product pr : proList) {
-            int orderedQuantity = pr.getOrderedQuantity();
-            //%-18.18s, format the argument as a String,
-            // -18 → Left-align the string in 18-character wide space.
-            //.18 → Truncate the string to at most 18 characters
-            String aProduct=String.format(" %-7s %-18.18s (%2d) £%7.2f\n",
-                    pr.getProductId(),
-                    pr.getProductDescription(),
-                    pr.getOrderedQuantity(),
-                    pr.getUnitPrice() * orderedQuantity);
-
-            sb.append(aProduct);
-            totalPrice = totalPrice + pr.getUnitPrice() * orderedQuantity;
-        }
-
-        String lineSeparator = "-".repeat(44) + "\n";
-        String total = String.format(" %-35s £%7.2f\n", "Total", totalPrice);
-
-        sb.append(lineSeparator);
-        sb.append(total);
+    public static String buildString(List<OrderLine> orderLines) {
+        StringBuilder sb = new StringBuilder(orderLines.size() * LINE_LENGTH + FOOTER_LENGTH); // never has to grow
+        appendTo(sb, orderLines);
         return sb.toString();
     }
+
+    // Writes the same text as buildString() at the end of sb
+    public static void appendTo(StringBuilder sb, List<OrderLine> orderLines) {
+        long totalPence = 0;
+        for (OrderLine line : orderLines) {
+            appendLine(sb, line);
+            totalPence = totalPence + line.lineTotalPence();
+        }
+        appendFooter(sb, totalPence);
+    }
+
+    /**
+     * Formats one order line, eg. " 0002    DAB Radio          ( 1) £  29.99\n".
+     * Also used by Trolley, which keeps the text of each line until its quantity changes.
+     */
+    public static String formatLine(OrderLine line) {
+        StringBuilder sb = new StringBuilder(LINE_LENGTH);
+        appendLine(sb, line);
+        return sb.toString();
+    }
+
+    // Writes one order line at the end of sb, the same as formatLine()
+    public static void appendLine(StringBuilder sb, OrderLine line) {
+        Product pr = line.product();
+        sb.append(' ');
+        appendLeft(sb, String.valueOf(pr.getProductId()), 7, Integer.MAX_VALUE);  // %-7s
+        sb.append(' ');
+        appendLeft(sb, String.valueOf(pr.getProductDescription()), 18, 18);     // %-18.18s: padded or cut to 18
+        sb.append(" (");
+        appendNumber(sb, line.quantity(), 2);                                   // %2d
+        sb.append(") £");
+        appendPrice(sb, line.lineTotalPence(), 7);                               // %7.2f
+        sb.append('\n');
+    }
+
+    // Formats the separator line and the total (in pence) at the end of the list
+    public static String formatFooter(long totalPence) {
+        StringBuilder sb = new StringBuilder(FOOTER_LENGTH);
+        appendFooter(sb, totalPence);
+        return sb.toString();
+    }
+
+    // Writes the separator line and the total at the end of sb, the same as formatFooter()
+    public static void appendFooter(StringBuilder sb, long totalPence) {
+        sb.append(SEPARATOR);
+        sb.append(' ');
+        appendLeft(sb, "Total", 35, Integer.MAX_VALUE);                          // %-35s
+        sb.append(" £");
+        appendPrice(sb, totalPence, 7);                                           // %7.2f
+        sb.append('\n');
+    }
+
+    // Writes text cut to maxLength characters, then spaces up to width (left-aligned, like %-<width>.<maxLength>s)
+    private static void appendLeft(StringBuilder sb, String text, int width, int maxLength) {
+        int length = Math.min(text.length(), maxLength);
+        sb.append(text, 0, length);
+        for (int i = length; i < width; i++) {
+            sb.append(' ');
+        }
+    }
+
+    // Writes a whole number right-aligned in width characters, like %<width>d
+    private static void appendNumber(StringBuilder sb, int number, int width) {
+        if (!plainNumbers()) {
+            sb.append(String.format("%" + width + "d", number));
+            return;
+        }
+        for (int digits = stringSize(number); digits < width; digits++) {
+            sb.append(' ');
+        }
+        sb.append(number);
+    }
+
+    // Writes an amount in pence in pounds with two decimals, right-aligned in width characters, like %<width>.2f
+    private static void appendPrice(StringBuilder sb, long pence, int width) {
+        if (!plainNumbers()) {
+            sb.append(String.format("%" + width + ".2f", Money.toPounds(pence)));
+            return;
+        }
+        for (int length = Money.formattedLength(pence); length < width; length++) {
+            sb.append(' ');
+        }
+        Money.appendTo(sb, pence);
+    }
+
+    // The number of characters of a whole number written in decimal, with the '-' of a negative number
+    private static int stringSize(int number) {
+        int size = number < 0 ? 2 : 1;
+        long rest = Math.abs(number / 10);
+        while (rest > 0) {
+            size++;
+            rest /= 10;
+        }
+        return size;
+    }
+
+    // True if the default locale writes numbers with the digits 0-9 and a '.' decimal point, as the fast path does
+    private static boolean plainNumbers() {
+        Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+        LocaleCheck check = localeCheck;
+        if (check.locale() != locale) {
+            DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+            check = new LocaleCheck(locale, symbols.getZeroDigit() == '0' && symbols.getDecimalSeparator() == '.'
+                    && symbols.getMinusSign() == '-');
+            localeCheck = check;
+        }
+        return check.plainNumbers();
+    }
 }
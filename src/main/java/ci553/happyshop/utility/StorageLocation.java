@@ -25,6 +25,14 @@ import java.nio.file.Paths;
  *         Subfolder to store orders in the "Progressing" state (e.g., being prepared by a picker).
  *    - collectedPath:
  *         Subfolder to store orders in the "Collected" state (e.g., customer collected).
+ *    - orderRecordsPath / orderStateIndexPath:
+ *         Used instead of the three state folders when orders are stored in InPlace mode
+ *         (see OrderStorageMode). All order files stay in orders/records and their states
+ *         are kept in a one-byte-per-order index file (orders/orderStateIndex.dat).
+ *
+ *    - orderEventLogPath / orderSnapshotPath:
+ *         The order event log (orders/orderEvents.log) and the latest snapshot of the order map
+ *         (orders/orderSnapshot.txt), used by OrderHub when event sourcing is enabled (see OrderEventLog).
  *
  * 3. Order ID Tracking:
  *    - orderCounterFile / orderCounterPath:
@@ -55,12 +63,22 @@ public class StorageLocation {
     public static final Path imageResetFolderPath = Paths.get(imageResetFolder);
 
     // Orders folders and their Path
-    public static final String ordersFolder = "orders";
+    // The system property "happyshop.ordersFolder" moves all order files elsewhere, eg. to a temp folder for benchmarks.
+    // It must be set before this class is first used.
+    public static final String ordersFolder = System.getProperty("happyshop.ordersFolder", "orders");
     public static final Path ordersPath = Paths.get(ordersFolder);
     public static final Path orderedPath = ordersPath.resolve("ordered");//orders/ordered to store orders at Ordered state
     public static final Path progressingPath = ordersPath.resolve("progressing");// orders/progressing to store orders at Progressing state
     public static final Path collectedPath = ordersPath.resolve("collected");//orders/collected to store orders at Collected state
 
+    // InPlace order storage: a single records folder plus a state index file
+    public static final Path orderRecordsPath = ordersPath.resolve("records");// orders/records to store orders in any state
+    public static final Path orderStateIndexPath = ordersPath.resolve("orderStateIndex.dat");// orders/orderStateIndex.dat
+
+    // Order event log and snapshot used by OrderHub's event sourcing
+    public static final Path orderEventLogPath = ordersPath.resolve("orderEvents.log");// orders/orderEvents.log
+    public static final Path orderSnapshotPath = ordersPath.resolve("orderSnapshot.txt");// orders/orderSnapshot.txt
+
     //OrderCounter File and its Path, ie orders/orderCounter.txt
     public static final String orderCounterFile = "orderCounter.txt";
     public static final Path orderCounterPath = ordersPath.resolve(orderCounterFile);
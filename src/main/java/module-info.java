@@ -4,6 +4,10 @@ module ci553.happyshop {
     requires java.sql;
     requires javafx.graphics;
     requires jbcrypt;
+    requires java.management;
+    requires jdk.jfr;
+    requires jdk.httpserver;
+    requires org.apache.derby.server;
 
     opens ci553.happyshop to javafx.fxml;
     opens ci553.happyshop.client to javafx.fxml;
@@ -20,5 +24,7 @@ module ci553.happyshop {
     exports ci553.happyshop.client.orderTracker;
     exports ci553.happyshop.client.emergency;
     exports ci553.happyshop.systemSetup;
+    exports ci553.happyshop.orderManagement to java.management; // JMX reads the MXBean interfaces
+    exports ci553.happyshop.metrics to java.management;
 
 }
\ No newline at end of file
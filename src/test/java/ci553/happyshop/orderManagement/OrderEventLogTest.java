@@ -0,0 +1,106 @@
+package ci553.happyshop.orderManagement;
+
+import ci553.happyshop.utility.LogFileRecovery;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the recovery of the order map from the OrderEventLog: replaying only the events after the snapshot,
+ * a log shorter than the snapshot, a cut-off last event and a damaged event.
+ * (How the lines are read is tested in LogFileRecoveryTest.)
+ */
+class OrderEventLogTest {
+    private static final String TIME = "2025-05-03 16:52:24";
+
+    @TempDir
+    Path dir;
+
+    private OrderEventLog newLog() {
+        return new OrderEventLog(dir.resolve("orderEvents.log"), dir.resolve("orderSnapshot.txt"));
+    }
+
+    private static TreeMap<Integer, OrderState> orders(Object... pairs) {
+        TreeMap<Integer, OrderState> orderMap = new TreeMap<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            orderMap.put((Integer) pairs[i], (OrderState) pairs[i + 1]);
+        }
+        return orderMap;
+    }
+
+    @Test
+    void onlyEventsAfterTheSnapshotAreReplayed() throws IOException {
+        Path file = dir.resolve("orderEvents.log");
+        OrderEventLog eventLog = newLog();
+        eventLog.recover();
+        eventLog.append(OrderEventType.OrderCreated, 1, TIME);
+        eventLog.append(OrderEventType.OrderCreated, 2, TIME);
+        eventLog.writeSnapshot(orders(1, OrderState.Ordered, 2, OrderState.Ordered), eventLog.currentPosition());
+        assertFalse(eventLog.hasEventsSinceSnapshot());
+        eventLog.append(OrderEventType.OrderClaimed, 1, TIME);
+        eventLog.append(OrderEventType.OrderCollected, 1, TIME);
+
+        // Change the snapshotted part of the log: if it were replayed, order 9 would appear
+        String text = Files.readString(file, StandardCharsets.UTF_8);
+        Files.writeString(file, text.replaceFirst("\\|OrderCreated\\|2\\|", "|OrderCreated|9|"), StandardCharsets.UTF_8);
+
+        OrderEventLog recovered = newLog();
+        assertEquals(orders(2, OrderState.Ordered), recovered.recover());
+        assertTrue(recovered.hasEventsSinceSnapshot());
+        assertEquals(5, recovered.append(OrderEventType.OrderCreated, 3, TIME).sequence());
+    }
+
+    @Test
+    void logShorterThanTheSnapshotIsReplayedFromTheStart() throws IOException {
+        Path file = dir.resolve("orderEvents.log");
+        OrderEventLog eventLog = newLog();
+        eventLog.recover();
+        eventLog.append(OrderEventType.OrderCreated, 1, TIME);
+        eventLog.append(OrderEventType.OrderCreated, 2, TIME);
+        eventLog.writeSnapshot(orders(1, OrderState.Ordered, 2, OrderState.Ordered), eventLog.currentPosition());
+        Files.writeString(file, "1|OrderCreated|5|" + TIME + "\n", StandardCharsets.UTF_8); // log replaced
+
+        assertEquals(orders(5, OrderState.Ordered), newLog().recover());
+    }
+
+    @Test
+    void cutOffEventIsDroppedAndSequenceNumbersContinue() throws IOException {
+        Path file = dir.resolve("orderEvents.log");
+        OrderEventLog eventLog = newLog();
+        eventLog.recover();
+        eventLog.append(OrderEventType.OrderCreated, 1, TIME);
+        eventLog.append(OrderEventType.OrderClaimed, 1, TIME);
+        // the system stopped before the end of the line was written
+        Files.writeString(file, "3|OrderCollected|1|2025-05", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        OrderEventLog recovered = newLog();
+        assertEquals(orders(1, OrderState.Progressing), recovered.recover());
+        assertEquals(3, recovered.append(OrderEventType.OrderCreated, 2, TIME).sequence());
+    }
+
+    @Test
+    void damagedEventStopsTheRecoveryWithoutLosingLaterEvents() throws IOException {
+        Path file = dir.resolve("orderEvents.log");
+        String text = "1|OrderCreated|1|" + TIME + "\n"
+                + "2|OrderCreated|2|2025-13-45 99:00:00\n" // not a valid date
+                + "3|OrderCreated|3|" + TIME + "\n";
+        Files.writeString(file, text, StandardCharsets.UTF_8);
+
+        OrderEventLog eventLog = newLog();
+        LogFileRecovery.DamagedLogException e = assertThrows(LogFileRecovery.DamagedLogException.class,
+                eventLog::recover);
+        assertEquals(text, Files.readString(file, StandardCharsets.UTF_8));
+        assertTrue(Files.readString(e.getQuarantinePath(), StandardCharsets.UTF_8).endsWith("3|OrderCreated|3|" + TIME + "\n"));
+    }
+}
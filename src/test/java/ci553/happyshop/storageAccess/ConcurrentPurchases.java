@@ -0,0 +1,96 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.OrderLine;
+import ci553.happyshop.catalogue.Product;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs many checkouts at the same time against one way of buying stock (eg. InMemoryRW.purchaseStocks() or
+ * WriteBehindStock.purchase()), and adds up what the successful ones bought. A purchase is all or nothing
+ * if afterwards the stock of every product is its start stock minus {@link #bought(String)}.
+ */
+class ConcurrentPurchases {
+    private static final int THREADS = 16;
+    private static final int PURCHASES_PER_THREAD = 200;
+
+    // Buys the lines and returns the ones without enough stock, empty if the purchase went through
+    interface Purchase {
+        List<OrderLine> buy(ArrayList<OrderLine> lines) throws SQLException;
+    }
+
+    private final ConcurrentHashMap<String, AtomicInteger> bought = new ConcurrentHashMap<>();
+    private final AtomicInteger succeeded = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    /**
+     * Starts the threads together, each buying random trolleys of the given products until it has made its
+     * purchases, and checks that the stock ran out (some purchases failed) after some went through.
+     */
+    static ConcurrentPurchases run(List<Product> products, Purchase purchase) throws Exception {
+        ConcurrentPurchases result = new ConcurrentPurchases();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Void>> threads = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                Random random = new Random(t);
+                threads.add(pool.submit(() -> {
+                    start.await();
+                    for (int n = 0; n < PURCHASES_PER_THREAD; n++) {
+                        result.buy(purchase, randomTrolley(products, random));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<Void> thread : threads) {
+                thread.get(); // rethrows anything a checkout threw
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertTrue(result.succeeded.get() > 0, "some purchases should succeed");
+        assertTrue(result.failed.get() > 0, "the stock should run out, so some purchases fail");
+        return result;
+    }
+
+    // The units of the product bought by the purchases that went through
+    int bought(String productId) {
+        AtomicInteger units = bought.get(productId);
+        return units == null ? 0 : units.get();
+    }
+
+    private void buy(Purchase purchase, ArrayList<OrderLine> lines) throws SQLException {
+        if (!purchase.buy(lines).isEmpty()) {
+            failed.incrementAndGet();
+            return;
+        }
+        succeeded.incrementAndGet();
+        for (OrderLine line : lines) {
+            bought.computeIfAbsent(line.productId(), id -> new AtomicInteger()).addAndGet(line.quantity());
+        }
+    }
+
+    // One product up to all of them, one to three units each
+    private static ArrayList<OrderLine> randomTrolley(List<Product> products, Random random) {
+        ArrayList<OrderLine> lines = new ArrayList<>();
+        int first = random.nextInt(products.size());
+        int count = 1 + random.nextInt(products.size());
+        for (int i = 0; i < count; i++) {
+            lines.add(new OrderLine(products.get((first + i) % products.size()), 1 + random.nextInt(3)));
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,82 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.OrderLine;
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.security.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests InMemoryRW over a new InMemoryDatabase for each test (not the shared one of the process):
+ * concurrent purchases are all or nothing, and the data survives saving and loading the snapshot file.
+ */
+class InMemoryRWTest {
+
+    @TempDir
+    Path dir;
+
+    // A new database with the default products (100 of each) and the admin user
+    private static InMemoryDatabase newDatabase(Path snapshotFile) {
+        InMemoryDatabase database = new InMemoryDatabase(snapshotFile);
+        database.open();
+        return database;
+    }
+
+    @Test
+    void concurrentPurchasesAreAllOrNothing() throws Exception {
+        InMemoryRW databaseRW = new InMemoryRW(newDatabase(null));
+        List<Product> products = new ArrayList<>();
+        for (String productId : List.of("0001", "0002", "0003")) {
+            products.add(databaseRW.searchByProductId(productId));
+        }
+
+        ConcurrentPurchases purchases = ConcurrentPurchases.run(products, databaseRW::purchaseStocks);
+
+        for (Product product : products) {
+            String productId = product.getProductId();
+            assertEquals(product.getStockQuantity() - purchases.bought(productId),
+                    databaseRW.searchByProductId(productId).getStockQuantity(), productId);
+        }
+    }
+
+    @Test
+    void snapshotKeepsProductsStockAndUsers() throws SQLException, IOException {
+        Path snapshotFile = dir.resolve("inMemoryDB.txt");
+        InMemoryDatabase database = newDatabase(snapshotFile);
+        InMemoryRW databaseRW = new InMemoryRW(database);
+        databaseRW.insertNewProduct("9201", "Kettle | 1.7 litre", 2499, "9201.jpg", 40);
+        databaseRW.purchaseStocks(new ArrayList<>(List.of(new OrderLine(databaseRW.searchByProductId("9201"), 3))));
+        databaseRW.updateProduct(databaseRW.searchByProductId("0002"), "DAB+ Radio", 3499, "0002.jpg", 80);
+        databaseRW.deleteProduct("0012");
+        databaseRW.createUser("till1", "$2a$12$hash", "STAFF");
+        database.save();
+
+        InMemoryRW reloaded = new InMemoryRW(newDatabase(snapshotFile));
+        Product kettle = reloaded.searchByProductId("9201");
+        assertEquals("Kettle / 1.7 litre", kettle.getProductDescription()); // '|' separates the fields of the file
+        assertEquals(2499, kettle.getUnitPricePence());
+        assertEquals(37, kettle.getStockQuantity());
+        Product radio = reloaded.searchByProductId("0002");
+        assertEquals("DAB+ Radio", radio.getProductDescription());
+        assertEquals(3499, radio.getUnitPricePence());
+        assertEquals(80, radio.getStockQuantity());
+        assertNull(reloaded.searchByProductId("0012"));
+        User user = reloaded.findUserByUsername("till1");
+        assertNotNull(user);
+        assertEquals("$2a$12$hash", user.getPasswordHash());
+        assertEquals("STAFF", user.getRole());
+        assertNotNull(reloaded.findUserByUsername("admin"));
+        assertTrue(user.getUserId() > reloaded.findUserByUsername("admin").getUserId(), "user IDs carry on");
+    }
+}
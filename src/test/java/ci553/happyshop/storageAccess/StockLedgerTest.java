@@ -0,0 +1,103 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.utility.LogFileRecovery;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests which checkouts the StockLedger hands to the flush after a restart: only the lines Derby does not have,
+ * with the sequence numbers carrying on. (How the lines are read is tested in LogFileRecoveryTest.)
+ */
+class StockLedgerTest {
+
+    @TempDir
+    Path dir;
+
+    // productId:quantity pairs in order, eg. items("0001", 2, "0007", 1)
+    private static Map<String, Integer> items(Object... pairs) {
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            quantities.put((String) pairs[i], (Integer) pairs[i + 1]);
+        }
+        return quantities;
+    }
+
+    @Test
+    void linesAlreadyInDerbyAreNotFlushedAgain() throws IOException {
+        Path file = dir.resolve("stockLedger.log");
+        StockLedger ledger = new StockLedger(file);
+        ledger.recover(0);
+        ledger.append(items("0001", 1));
+        StockLedger.Pending flushed = ledger.takePending(); // written to Derby up to sequence 1
+        ledger.append(items("0001", 2, "0007", 1));
+        ledger.append(items("0002", 4));
+        ledger.compact(flushed); // small ledger: the flushed line stays, skipped by its sequence number
+        ledger.close();
+
+        StockLedger recovered = new StockLedger(file);
+        recovered.recover(flushed.sequence());
+        assertEquals(items("0001", 2, "0007", 1, "0002", 4), recovered.takePending().deltas());
+        assertEquals(4, recovered.append(items("0003", 1)));
+        recovered.close();
+    }
+
+    @Test
+    void sequenceNumbersCarryOnAfterEverythingIsFlushed() throws IOException {
+        Path file = dir.resolve("stockLedger.log");
+        StockLedger ledger = new StockLedger(file);
+        ledger.recover(0);
+        ledger.append(items("0001", 1));
+        ledger.append(items("0002", 2));
+        StockLedger.Pending flushed = ledger.takePending();
+        ledger.compact(flushed);
+        assertFalse(ledger.hasPending());
+        ledger.close();
+        assertEquals(0, Files.size(file));
+
+        // The ledger is empty, Derby has everything up to sequence 2
+        StockLedger recovered = new StockLedger(file);
+        recovered.recover(flushed.sequence());
+        assertFalse(recovered.hasPending());
+        assertEquals(3, recovered.append(items("0001", 1)));
+        assertTrue(recovered.hasPending());
+        recovered.close();
+    }
+
+    @Test
+    void failedFlushIsWrittenByTheNextOne() throws IOException {
+        StockLedger ledger = new StockLedger(dir.resolve("stockLedger.log"));
+        ledger.recover(0);
+        ledger.append(items("0001", 1));
+        StockLedger.Pending failed = ledger.takePending();
+        ledger.append(items("0001", 2));
+        ledger.restorePending(failed); // Derby could not be written
+        StockLedger.Pending next = ledger.takePending();
+        assertEquals(items("0001", 3), next.deltas());
+        assertEquals(2, next.sequence());
+        ledger.close();
+    }
+
+    @Test
+    void checkoutOfNoUnitsIsADamagedLine() throws IOException {
+        Path file = dir.resolve("stockLedger.log");
+        String text = "1|0001:2\n2|0001:0\n3|0002:4\n";
+        Files.writeString(file, text, StandardCharsets.UTF_8);
+
+        StockLedger ledger = new StockLedger(file);
+        assertThrows(LogFileRecovery.DamagedLogException.class, () -> ledger.recover(0));
+        ledger.close();
+        assertEquals(text, Files.readString(file, StandardCharsets.UTF_8), "the confirmed checkout 3 is kept");
+    }
+}
@@ -0,0 +1,116 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests that WriteBehindStock.purchase() is all or nothing when many checkouts run at the same time,
+ * and that a flush brings ProductTable to exactly the stock left in memory.
+ * It uses a new Derby database and ledger in a temp folder, passed to WriteBehindStock and DerbyRW,
+ * so none of the settings (DatabaseRWFactory.dbURL, WriteBehindStock.ledgerFile) is changed.
+ */
+class WriteBehindStockTest {
+    private static final String[] PRODUCT_IDS = {"9101", "9102", "9103"};
+    private static final int[] START_STOCK = {100, 50, 30};
+
+    @TempDir
+    static Path dir;
+    private static String dbURL;
+    private static String derbyErrorFile; // the setting before this test, put back afterwards
+
+    private WriteBehindStock writeBehindStock;
+
+    @BeforeAll
+    static void createDatabase() throws SQLException {
+        derbyErrorFile = System.setProperty("derby.stream.error.file", dir.resolve("derby.log").toString());
+        dbURL = "jdbc:derby:" + dir.resolve("testDB").toAbsolutePath();
+        try (Connection conn = DriverManager.getConnection(dbURL + ";create=true");
+             Statement stmt = conn.createStatement()) {
+            // the same table as SetDatabase makes
+            stmt.executeUpdate("CREATE TABLE ProductTable(" +
+                    "productID CHAR(4) PRIMARY KEY," +
+                    "description VARCHAR(100)," +
+                    "unitPricePence BIGINT NOT NULL," +
+                    "image VARCHAR(100)," +
+                    "inStock INT," +
+                    "version BIGINT NOT NULL DEFAULT 0," +
+                    "CHECK (inStock >= 0)" +
+                    ")");
+            for (int i = 0; i < PRODUCT_IDS.length; i++) {
+                stmt.executeUpdate("INSERT INTO ProductTable VALUES('" + PRODUCT_IDS[i] + "', 'Test product " + i
+                        + "', 100, '0001.jpg', " + START_STOCK[i] + ", 0)");
+            }
+        }
+    }
+
+    @AfterAll
+    static void shutDownDatabase() throws SQLException {
+        try {
+            DriverManager.getConnection(dbURL + ";shutdown=true");
+        } catch (SQLException e) {
+            if (!"08006".equals(e.getSQLState())) { // 08006 = the database was shut down
+                throw e;
+            }
+        } finally {
+            if (derbyErrorFile == null) {
+                System.clearProperty("derby.stream.error.file");
+            } else {
+                System.setProperty("derby.stream.error.file", derbyErrorFile);
+            }
+        }
+    }
+
+    @BeforeEach
+    void openStock() {
+        writeBehindStock = new WriteBehindStock(dbURL, dir.resolve("stockLedger.log"));
+        writeBehindStock.open();
+    }
+
+    @AfterEach
+    void closeStock() throws Exception {
+        writeBehindStock.close();
+    }
+
+    @Test
+    void concurrentPurchasesAreAllOrNothing() throws Exception {
+        DerbyRW derbyRW = new DerbyRW(dbURL);
+        List<Product> products = new ArrayList<>();
+        for (String productId : PRODUCT_IDS) {
+            products.add(derbyRW.searchByProductId(productId));
+        }
+
+        ConcurrentPurchases purchases = ConcurrentPurchases.run(products, writeBehindStock::purchase);
+        writeBehindStock.flush();
+
+        for (int i = 0; i < PRODUCT_IDS.length; i++) {
+            int expected = START_STOCK[i] - purchases.bought(PRODUCT_IDS[i]);
+            assertEquals(expected, writeBehindStock.stockOf(PRODUCT_IDS[i]), "in memory " + PRODUCT_IDS[i]);
+            assertEquals(expected, stockInDerby(PRODUCT_IDS[i]), "in Derby " + PRODUCT_IDS[i]);
+        }
+    }
+
+    private static int stockInDerby(String productId) throws SQLException {
+        try (Connection conn = DriverManager.getConnection(dbURL);
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT inStock FROM ProductTable WHERE productID = '" + productId + "'")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package ci553.happyshop.utility;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests LogFileRecovery with a log whose valid lines are numbers: a torn last line is cut off,
+ * a damaged line in the middle stops the recovery without changing the log.
+ */
+class LogFileRecoveryTest {
+
+    @TempDir
+    Path dir;
+
+    private final List<String> read = new ArrayList<>();
+
+    private LogFileRecovery.Result replay(Path file, long offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return LogFileRecovery.replay(channel, offset, file, line -> {
+                if (!line.matches("\\d+")) {
+                    return false;
+                }
+                read.add(line);
+                return true;
+            });
+        }
+    }
+
+    @Test
+    void lastLineWithoutNewlineIsCutOff() throws IOException {
+        Path file = dir.resolve("test.log");
+        Files.writeString(file, "1\n2\n3", StandardCharsets.UTF_8);
+
+        LogFileRecovery.Result result = replay(file, 0);
+        assertEquals(List.of("1", "2"), read);
+        assertEquals(new LogFileRecovery.Result(2, 1), result);
+        assertEquals("1\n2\n", Files.readString(file, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void completeLogIsNotChanged() throws IOException {
+        Path file = dir.resolve("test.log");
+        Files.writeString(file, "1\n2\n3\n", StandardCharsets.UTF_8);
+
+        assertEquals(new LogFileRecovery.Result(2, 0), replay(file, 2)); // starts after the first line
+        assertEquals(List.of("2", "3"), read);
+        assertEquals("1\n2\n3\n", Files.readString(file, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void damagedLineInTheMiddleKeepsTheLogAndQuarantinesTheRest() throws IOException {
+        Path file = dir.resolve("test.log");
+        Files.writeString(file, "1\nx2\n3\n4", StandardCharsets.UTF_8);
+
+        LogFileRecovery.DamagedLogException e = assertThrows(LogFileRecovery.DamagedLogException.class,
+                () -> replay(file, 0));
+        assertEquals(List.of("1"), read);
+        assertEquals("1\nx2\n3\n4", Files.readString(file, StandardCharsets.UTF_8), "no confirmed line is lost");
+        assertEquals("x2\n3\n4", Files.readString(e.getQuarantinePath(), StandardCharsets.UTF_8));
+    }
+}